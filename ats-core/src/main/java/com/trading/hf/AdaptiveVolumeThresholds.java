@@ -0,0 +1,176 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-symbol volume-bar thresholds derived from a rolling average daily volume (ADV / N bars per day).
+ *
+ * Thresholds live in a primitive table indexed by a slot per symbol. They are recalibrated
+ * at session start from backtest_data.db and nudged intraday so the realised bar rate tracks
+ * the target rate, bounded to [min.factor, max.factor] x the calibrated value.
+ *
+ * Writers (registration, calibration, bar completions) synchronize; a new symbol that
+ * outgrows the table publishes an enlarged copy through a volatile field, so the per-tick
+ * {@link #thresholdAt(int)} reads it without locking and never sees a half-built table.
+ */
+public class AdaptiveVolumeThresholds {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveVolumeThresholds.class);
+    private static final long SESSION_OPEN_MINUTE = 9 * 60 + 15;
+    private static final int SESSION_MINUTES = 375; // 09:15 - 15:30
+    private static final int ADJUST_EVERY_BARS = 5;
+
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final long defaultThreshold;
+    private final String dbUrl;
+    private final int lookbackDays;
+    private final double barsPerDay;
+    private final double minFactor;
+    private final double maxFactor;
+    private final long floor;
+
+    private volatile Table table = new Table(64);
+    private int size = 0;
+
+    /** Primitive table, one entry per slot; replaced whole when it grows. */
+    private static final class Table {
+        final double[] baseThreshold;
+        final long[] threshold;
+        final int[] barsToday;
+        final long[] sessionDay;
+
+        Table(int capacity) {
+            this(new double[capacity], new long[capacity], new int[capacity], new long[capacity]);
+        }
+
+        private Table(double[] baseThreshold, long[] threshold, int[] barsToday, long[] sessionDay) {
+            this.baseThreshold = baseThreshold;
+            this.threshold = threshold;
+            this.barsToday = barsToday;
+            this.sessionDay = sessionDay;
+        }
+
+        Table grow(int capacity) {
+            return new Table(Arrays.copyOf(baseThreshold, capacity), Arrays.copyOf(threshold, capacity),
+                    Arrays.copyOf(barsToday, capacity), Arrays.copyOf(sessionDay, capacity));
+        }
+    }
+
+    public AdaptiveVolumeThresholds(long defaultThreshold) {
+        this.defaultThreshold = defaultThreshold;
+        this.dbUrl = ConfigLoader.getProperty("backtest.db.url", "jdbc:sqlite:backtest_data.db");
+        this.lookbackDays = Integer.parseInt(ConfigLoader.getProperty("volume.adaptive.lookback.days", "10"));
+        this.barsPerDay = Double.parseDouble(ConfigLoader.getProperty("volume.adaptive.bars.per.day", "375"));
+        this.minFactor = Double.parseDouble(ConfigLoader.getProperty("volume.adaptive.min.factor", "0.5"));
+        this.maxFactor = Double.parseDouble(ConfigLoader.getProperty("volume.adaptive.max.factor", "2.0"));
+        this.floor = Long.parseLong(ConfigLoader.getProperty("volume.adaptive.floor", "100"));
+    }
+
+    /**
+     * Recomputes every symbol's base threshold from the last N sessions in backtest_candles
+     * before the given session date (the session being traded, excluded). Intended to run
+     * once at session start, before the feed connects.
+     */
+    public void calibrate(LocalDate sessionDate) {
+        String sql = "SELECT symbol, AVG(day_volume) AS adv FROM (" +
+                     "  SELECT symbol, date, SUM(volume) AS day_volume FROM backtest_candles" +
+                     "  WHERE date IN (SELECT DISTINCT date FROM backtest_candles WHERE date < ? ORDER BY date DESC LIMIT ?)" +
+                     "  GROUP BY symbol, date" +
+                     ") GROUP BY symbol";
+
+        int calibrated = 0;
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, sessionDate.toString());
+            pstmt.setInt(2, lookbackDays);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    double adv = rs.getDouble("adv");
+                    if (adv <= 0) continue; // Indices carry no volume
+                    setAverageDailyVolume(SymbolUtil.toInternalSymbol(rs.getString("symbol")), adv);
+                    calibrated++;
+                }
+            }
+            logger.info("Calibrated volume-bar thresholds for {} symbols from last {} sessions.", calibrated, lookbackDays);
+        } catch (SQLException e) {
+            logger.warn("Volume threshold calibration skipped ({}). Using default threshold {}.", e.getMessage(), defaultThreshold);
+        }
+    }
+
+    public synchronized void setAverageDailyVolume(String symbol, double adv) {
+        int slot = slotOf(symbol);
+        Table t = table;
+        double base = Math.max(floor, adv / barsPerDay);
+        t.baseThreshold[slot] = base;
+        t.threshold[slot] = (long) base;
+        t.barsToday[slot] = 0;
+    }
+
+    /**
+     * Returns a stable slot for the symbol, registering it with the default threshold on first use.
+     * Callers on the hot path should resolve the slot once and use {@link #thresholdAt(int)}.
+     */
+    public int slotOf(String symbol) {
+        Integer slot = slots.get(symbol);
+        if (slot != null) return slot;
+        return register(symbol);
+    }
+
+    private synchronized int register(String symbol) {
+        Integer existing = slots.get(symbol);
+        if (existing != null) return existing;
+        Table t = table;
+        if (size == t.threshold.length) t = t.grow(size * 2);
+        int slot = size++;
+        t.baseThreshold[slot] = defaultThreshold;
+        t.threshold[slot] = defaultThreshold;
+        table = t; // Filled in before it is published
+        slots.put(symbol, slot);
+        return slot;
+    }
+
+    public long thresholdFor(String symbol) {
+        return thresholdAt(slotOf(symbol));
+    }
+
+    public long thresholdAt(int slot) {
+        return table.threshold[slot];
+    }
+
+    /**
+     * Records a completed volume bar and, every few bars, moves the threshold towards the
+     * value that would have produced the target bar rate for the elapsed part of the session.
+     */
+    public synchronized void onBarCompleted(int slot, long barTime) {
+        Table t = table;
+        long epochMinute = Math.floorDiv(barTime, 60_000L) + 330; // IST = UTC+5:30
+        long day = Math.floorDiv(epochMinute, 1440);
+        if (t.sessionDay[slot] != day) {
+            t.sessionDay[slot] = day;
+            t.barsToday[slot] = 0;
+            t.threshold[slot] = (long) t.baseThreshold[slot];
+        }
+        int bars = ++t.barsToday[slot];
+        if (bars % ADJUST_EVERY_BARS != 0) return;
+
+        long minuteOfDay = Math.floorMod(epochMinute, 1440);
+        double elapsed = Math.min(SESSION_MINUTES, Math.max(1, minuteOfDay - SESSION_OPEN_MINUTE));
+        double expected = barsPerDay * elapsed / SESSION_MINUTES;
+        double base = t.baseThreshold[slot];
+        double target = t.threshold[slot] * (bars / Math.max(1.0, expected));
+        target = Math.max(base * minFactor, Math.min(base * maxFactor, target));
+        // Smooth the move so one burst does not swing the threshold
+        t.threshold[slot] = Math.max(floor, (long) (0.7 * t.threshold[slot] + 0.3 * target));
+    }
+}
@@ -0,0 +1,301 @@
+package com.trading.hf;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * BarAggregationEngine builds every bar resolution from a single pass over the input:
+ * 1m/5m/15m time bars plus volume, tick and range bars.
+ *
+ * Input is either raw MarketEvents (ticks) or the bridge's 1-minute candles. 5m and 15m
+ * bars are rolled up from completed 1m bars instead of being recomputed from scratch.
+ * A rolled-up bar is published when the first minute of the next bucket arrives
+ * (or when {@link #closeBarsBefore(long)} is called by a clock).
+ */
+public class BarAggregationEngine implements MarketEventListener {
+
+    public enum Resolution {
+        M1(60_000L), M5(300_000L), M15(900_000L), VOLUME(0L), TICK(0L), RANGE(0L);
+
+        private final long periodMs;
+
+        Resolution(long periodMs) {
+            this.periodMs = periodMs;
+        }
+
+        public long getPeriodMs() {
+            return periodMs;
+        }
+
+        public boolean isTimeBased() {
+            return periodMs > 0;
+        }
+    }
+
+    // Resolutions derived from completed 1m bars
+    private static final Resolution[] ROLLUPS = { Resolution.M5, Resolution.M15 };
+
+    private final Map<Resolution, List<Consumer<VolumeBar>>> subscribers = new EnumMap<>(Resolution.class);
+    private final ConcurrentHashMap<String, SymbolBars> states = new ConcurrentHashMap<>();
+    private final long volumeThreshold;
+    private final AdaptiveVolumeThresholds thresholds;
+    private final int tickCount;
+    private final double rangeBps;
+    private final int depthLevels = Integer.parseInt(ConfigLoader.getProperty("depth.imbalance.levels", "5"));
+
+    public BarAggregationEngine() {
+        this(Long.parseLong(ConfigLoader.getProperty("volume.threshold", "1000")),
+                Integer.parseInt(ConfigLoader.getProperty("bars.tick.count", "100")),
+                Double.parseDouble(ConfigLoader.getProperty("bars.range.bps", "10")));
+    }
+
+    public BarAggregationEngine(AdaptiveVolumeThresholds thresholds) {
+        this(thresholds, 0,
+                Integer.parseInt(ConfigLoader.getProperty("bars.tick.count", "100")),
+                Double.parseDouble(ConfigLoader.getProperty("bars.range.bps", "10")));
+    }
+
+    public BarAggregationEngine(long volumeThreshold, int tickCount, double rangeBps) {
+        this(null, volumeThreshold, tickCount, rangeBps);
+    }
+
+    private BarAggregationEngine(AdaptiveVolumeThresholds thresholds, long volumeThreshold, int tickCount, double rangeBps) {
+        this.thresholds = thresholds;
+        this.volumeThreshold = volumeThreshold;
+        this.tickCount = tickCount;
+        this.rangeBps = rangeBps;
+        for (Resolution r : Resolution.values()) {
+            subscribers.put(r, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    public void subscribe(Resolution resolution, Consumer<VolumeBar> consumer) {
+        subscribers.get(resolution).add(consumer);
+    }
+
+    @Override
+    public void onEvent(MarketEvent event) {
+        String symbol = event.getSymbol();
+        if (symbol == null || event.getLtp() <= 0) return;
+
+        SymbolBars s = states.computeIfAbsent(symbol, this::newSymbolBars);
+        synchronized (s) {
+            double price = event.getLtp();
+            long qty = event.getLtq();
+            int side = VolumeBarGenerator.determineSide(event);
+            s.book.update(event);
+            // Depth-weighted imbalance of the first levels when the feed carries depth
+            double obi = s.book.hasDepth() ? s.book.imbalance(depthLevels) : VolumeBarGenerator.calculateOBI(event);
+            long minuteStart = floor(event.getLtt(), Resolution.M1.periodMs);
+
+            // 1m bars from ticks: a tick from a later minute completes the running one
+            if (s.tickMinute != null && minuteStart > s.tickMinute.getStartTime()) {
+                VolumeBar done = s.tickMinute;
+                s.tickMinute = null;
+                rollUp(s, done);
+                publish(Resolution.M1, done);
+            }
+            if (s.tickMinute == null) {
+                s.tickMinute = new VolumeBar(symbol, minuteStart, price, qty);
+            } else {
+                s.tickMinute.addTick(price, qty, side);
+            }
+            s.tickMinute.setOrderBookImbalance(obi);
+            s.stampDepth(s.tickMinute);
+
+            onPrint(s, event.getLtt(), price, qty, side, obi, true);
+        }
+    }
+
+    /**
+     * Feeds a 1-minute candle from the bridge. The bridge re-sends the running minute
+     * every few seconds, so a candle with the same start time as the previous one is a
+     * revision: it replaces that minute in the roll-ups and only its extra volume is
+     * counted towards volume/range bars. The candle itself is passed through to M1.
+     */
+    public void onCandle(VolumeBar candle) {
+        SymbolBars s = states.computeIfAbsent(candle.getSymbol(), this::newSymbolBars);
+        synchronized (s) {
+            long start = candle.getStartTime();
+            if (start >= s.lastCandleStart) {
+                long delta = (start == s.lastCandleStart)
+                        ? Math.max(0, candle.getVolume() - s.lastCandleVolume)
+                        : candle.getVolume();
+                s.lastCandleStart = start;
+                s.lastCandleVolume = candle.getVolume();
+
+                rollUp(s, candle);
+                onPrint(s, start, candle.getClose(), delta, 0, candle.getOrderBookImbalance(), false);
+            }
+            publish(Resolution.M1, candle);
+        }
+    }
+
+    /**
+     * Publishes every running time bar whose period ended at or before marketTime.
+     * Lets a clock close 5m/15m bars when the feed goes quiet.
+     */
+    public void closeBarsBefore(long marketTime) {
+        for (SymbolBars s : states.values()) {
+            synchronized (s) {
+                if (s.tickMinute != null && s.tickMinute.getStartTime() + Resolution.M1.periodMs <= marketTime) {
+                    VolumeBar done = s.tickMinute;
+                    s.tickMinute = null;
+                    rollUp(s, done);
+                    publish(Resolution.M1, done);
+                }
+                for (int i = 0; i < ROLLUPS.length; i++) {
+                    TimeRollup t = s.rollups[i];
+                    if (t.current != null && t.bucketStart + ROLLUPS[i].periodMs <= marketTime) {
+                        publish(ROLLUPS[i], t.build(s.symbol));
+                        t.reset(t.bucketStart + ROLLUPS[i].periodMs); // Late revisions of the closed bucket are dropped
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the running bars of a symbol that has gone idle.
+     */
+    public void evictSymbol(String symbol) {
+        states.remove(symbol);
+    }
+
+    private void rollUp(SymbolBars s, VolumeBar minute) {
+        for (int i = 0; i < ROLLUPS.length; i++) {
+            TimeRollup t = s.rollups[i];
+            long bucket = floor(minute.getStartTime(), ROLLUPS[i].periodMs);
+            if (bucket < t.bucketStart) continue; // Late minute for an already published bucket
+
+            if (bucket != t.bucketStart) {
+                if (t.current != null) {
+                    publish(ROLLUPS[i], t.build(s.symbol));
+                }
+                t.reset(bucket);
+            }
+            if (t.current != null && t.current.getStartTime() != minute.getStartTime()) {
+                t.fold();
+            }
+            t.current = minute;
+        }
+    }
+
+    private void onPrint(SymbolBars s, long ts, double price, long qty, int side, double obi, boolean isTick) {
+        // Volume bars (per-symbol threshold when adaptive thresholds are configured)
+        s.volumeBar = accumulate(s.volumeBar, s.symbol, ts, price, qty, side);
+        long threshold = (s.thresholdSlot >= 0) ? thresholds.thresholdAt(s.thresholdSlot) : volumeThreshold;
+        if (s.volumeBar.getVolume() >= threshold) {
+            if (s.thresholdSlot >= 0) thresholds.onBarCompleted(s.thresholdSlot, s.volumeBar.getStartTime());
+            s.volumeBar.setOrderBookImbalance(obi);
+            s.stampDepth(s.volumeBar);
+            VolumeBar done = s.volumeBar;
+            s.volumeBar = null;
+            publish(Resolution.VOLUME, done);
+        }
+
+        // Tick bars only count real prints, not candle snapshots
+        if (isTick) {
+            s.tickBar = accumulate(s.tickBar, s.symbol, ts, price, qty, side);
+            if (++s.tickBarCount >= tickCount) {
+                s.tickBar.setOrderBookImbalance(obi);
+                s.stampDepth(s.tickBar);
+                VolumeBar done = s.tickBar;
+                s.tickBar = null;
+                s.tickBarCount = 0;
+                publish(Resolution.TICK, done);
+            }
+        }
+
+        // Range bars: cut when high-low exceeds rangeBps of the bar's open
+        s.rangeBar = accumulate(s.rangeBar, s.symbol, ts, price, qty, side);
+        if (s.rangeBar.getHigh() - s.rangeBar.getLow() >= s.rangeBar.getOpen() * rangeBps / 10_000.0) {
+            s.rangeBar.setOrderBookImbalance(obi);
+            s.stampDepth(s.rangeBar);
+            VolumeBar done = s.rangeBar;
+            s.rangeBar = null;
+            publish(Resolution.RANGE, done);
+        }
+    }
+
+    private SymbolBars newSymbolBars(String symbol) {
+        return new SymbolBars(symbol, (thresholds != null) ? thresholds.slotOf(symbol) : -1);
+    }
+
+    private static VolumeBar accumulate(VolumeBar bar, String symbol, long ts, double price, long qty, int side) {
+        if (bar == null) {
+            return new VolumeBar(symbol, ts, price, qty);
+        }
+        bar.addTick(price, qty, side);
+        return bar;
+    }
+
+    private void publish(Resolution resolution, VolumeBar bar) {
+        for (Consumer<VolumeBar> consumer : subscribers.get(resolution)) {
+            consumer.accept(bar);
+        }
+    }
+
+    private static long floor(long ts, long periodMs) {
+        return ts - Math.floorMod(ts, periodMs);
+    }
+
+    private static class SymbolBars {
+        final String symbol;
+        final int thresholdSlot;
+        final TimeRollup[] rollups = new TimeRollup[ROLLUPS.length];
+        final DepthBook book = new DepthBook();
+        VolumeBar tickMinute;
+        VolumeBar volumeBar;
+        VolumeBar tickBar;
+        int tickBarCount;
+        VolumeBar rangeBar;
+        long lastCandleStart = Long.MIN_VALUE;
+        long lastCandleVolume;
+
+        SymbolBars(String symbol, int thresholdSlot) {
+            this.symbol = symbol;
+            this.thresholdSlot = thresholdSlot;
+            for (int i = 0; i < rollups.length; i++) rollups[i] = new TimeRollup();
+        }
+
+        void stampDepth(VolumeBar bar) {
+            if (book.hasDepth()) bar.setDepth(book.getMicroprice(), book.getSpreadBps(), book.queueImbalance());
+        }
+    }
+
+    /**
+     * Higher timeframe bucket: minutes already completed are folded into 'committed',
+     * the latest (possibly still revising) minute is kept separately in 'current'.
+     */
+    private static class TimeRollup {
+        long bucketStart = -1;
+        VolumeBar committed;
+        VolumeBar current;
+
+        void reset(long bucket) {
+            bucketStart = bucket;
+            committed = null;
+            current = null;
+        }
+
+        void fold() {
+            if (committed == null) {
+                committed = new VolumeBar(current.getSymbol(), bucketStart, current.getOpen(), 0);
+            }
+            committed.merge(current);
+        }
+
+        VolumeBar build(String symbol) {
+            VolumeBar first = (committed != null) ? committed : current;
+            VolumeBar out = new VolumeBar(symbol, bucketStart, first.getOpen(), 0);
+            if (committed != null) out.merge(committed);
+            out.merge(current);
+            return out;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.trading.hf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Small helpers shared by the binary checkpoint/snapshot formats.
+ */
+final class BinaryCodec {
+
+    private BinaryCodec() {
+    }
+
+    static void putString(ByteBuffer buf, String value) {
+        if (value == null) {
+            buf.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buf.putInt(bytes.length);
+        buf.put(bytes);
+    }
+
+    static String getString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Upper bound of the bytes {@link #putString} writes for the value. */
+    static int sizeOf(String value) {
+        return 4 + (value == null ? 0 : value.length() * 3);
+    }
+
+    static void putDoubleMap(ByteBuffer buf, Map<String, Double> map) {
+        buf.putInt(map.size());
+        for (Map.Entry<String, Double> e : map.entrySet()) {
+            putString(buf, e.getKey());
+            buf.putDouble(e.getValue());
+        }
+    }
+
+    static void getDoubleMap(ByteBuffer buf, Map<String, Double> into) {
+        into.clear();
+        int n = buf.getInt();
+        for (int i = 0; i < n; i++) into.put(getString(buf), buf.getDouble());
+    }
+
+    static void putLongMap(ByteBuffer buf, Map<String, Long> map) {
+        buf.putInt(map.size());
+        for (Map.Entry<String, Long> e : map.entrySet()) {
+            putString(buf, e.getKey());
+            buf.putLong(e.getValue());
+        }
+    }
+
+    static void getLongMap(ByteBuffer buf, Map<String, Long> into) {
+        into.clear();
+        int n = buf.getInt();
+        for (int i = 0; i < n; i++) into.put(getString(buf), buf.getLong());
+    }
+
+    static void putIntMap(ByteBuffer buf, Map<String, Integer> map) {
+        buf.putInt(map.size());
+        for (Map.Entry<String, Integer> e : map.entrySet()) {
+            putString(buf, e.getKey());
+            buf.putInt(e.getValue());
+        }
+    }
+
+    static void getIntMap(ByteBuffer buf, Map<String, Integer> into) {
+        into.clear();
+        int n = buf.getInt();
+        for (int i = 0; i < n; i++) into.put(getString(buf), buf.getInt());
+    }
+
+    static void putStringMap(ByteBuffer buf, Map<String, String> map) {
+        buf.putInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            putString(buf, e.getKey());
+            putString(buf, e.getValue());
+        }
+    }
+
+    static void getStringMap(ByteBuffer buf, Map<String, String> into) {
+        into.clear();
+        int n = buf.getInt();
+        for (int i = 0; i < n; i++) into.put(getString(buf), getString(buf));
+    }
+
+    static int sizeOfKeys(Map<String, ?> map, int valueBytes) {
+        int size = 4;
+        for (String key : map.keySet()) size += sizeOf(key) + valueBytes;
+        return size;
+    }
+}
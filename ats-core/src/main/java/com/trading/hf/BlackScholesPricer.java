@@ -0,0 +1,367 @@
+package com.trading.hf;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Black-Scholes prices and Greeks for a strip of strikes around ATM, per underlying.
+ *
+ * A {@link Surface} holds CE/PE price, delta and theta plus gamma, vega and the implied vol
+ * of every strike in primitive arrays, filled in one pass that evaluates d1/d2 and the normal
+ * CDF once per strike (the put side follows from put-call parity). A surface is repriced only
+ * when the spot moves more than option.pricer.reprice.bps, the calibrated vols change, the
+ * clock advances option.pricer.reprice.ms or ATM leaves the strip; otherwise callers get the
+ * previous one.
+ *
+ * Vols come from bridge chains: {@link #calibrate} solves the implied vol of each strike's
+ * out-of-the-money side (safeguarded Newton, bisection when a step leaves the bracket).
+ * Strikes without a quote use the nearest calibrated strike, or option.pricer.default.iv
+ * before the first chain.
+ */
+public class BlackScholesPricer {
+
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final LocalTime EXPIRY_TIME = LocalTime.of(15, 30);
+    private static final double YEAR_MS = 365.0 * 86_400_000L;
+    private static final double MIN_YEARS = 5 * 60_000L / YEAR_MS; // Floor near expiry
+    private static final double MIN_VOL = 0.01;
+    private static final double MAX_VOL = 3.0;
+    private static final double MIN_PRICE = 0.05; // One tick
+
+    private final double rate = Double.parseDouble(ConfigLoader.getProperty("option.pricer.rate", "0.065"));
+    private final double defaultVol = Double.parseDouble(ConfigLoader.getProperty("option.pricer.default.iv", "0.13"));
+    private final int halfWidth = Integer.parseInt(ConfigLoader.getProperty("option.pricer.strikes", "10"));
+    private final double repriceBps = Double.parseDouble(ConfigLoader.getProperty("option.pricer.reprice.bps", "2"));
+    private final long repriceMs = Long.parseLong(ConfigLoader.getProperty("option.pricer.reprice.ms", "60000"));
+    private final DayOfWeek expiryWeekday = DayOfWeek.valueOf(
+            ConfigLoader.getProperty("option.expiry.weekday", "TUESDAY").trim().toUpperCase());
+    // Underlyings whose nearest contract is the monthly one (last expiry weekday of the month)
+    private final Set<String> monthlyExpiry = Set.copyOf(Arrays.asList(
+            ConfigLoader.getProperty("option.expiry.monthly", "BANKNIFTY,FINNIFTY,MIDCPNIFTY").trim().toUpperCase().split("\\s*,\\s*")));
+
+    private final Map<String, Surface> surfaces = new ConcurrentHashMap<>();
+    private final Map<String, Smile> smiles = new ConcurrentHashMap<>();
+
+    /**
+     * The underlying's surface for the spot at the given time, repriced first when it is
+     * stale (see class doc). Null when the spot is not positive.
+     */
+    public Surface surface(String underlying, double spot, long now) {
+        if (spot <= 0) return null;
+        String key = SymbolUtil.canonicalUnderlying(underlying);
+        Smile smile = smiles.get(key);
+        Surface current = surfaces.get(key);
+        if (current != null && !current.stale(spot, now, smile, repriceBps, repriceMs)) return current;
+
+        int step = SymbolUtil.strikeStep(key);
+        int atm = (int) (Math.round(spot / step) * step);
+        double years = yearsToExpiry(key, (smile != null) ? smile.expiry : "", now);
+        Surface next = new Surface(key, spot, now, years, atm - halfWidth * step, step, 2 * halfWidth + 1, smile);
+        for (int i = 0; i < next.size(); i++) {
+            next.sigma[i] = (smile != null) ? smile.volAt(next.strikeAt(i)) : defaultVol;
+        }
+        next.price(rate);
+        surfaces.put(key, next);
+        return next;
+    }
+
+    /**
+     * Solves the implied vols of a bridge chain at the spot: each strike uses its OTM side
+     * (calls at and above the spot, puts below), falling back to the other side when that one
+     * has no quote. The result replaces the underlying's smile and so marks its surface stale.
+     */
+    public void calibrate(OptionChainRegistry.ChainVersion chain, double spot, long now) {
+        if (chain == null || spot <= 0) return;
+        double years = yearsToExpiry(chain.underlying, chain.expiry, now);
+        double[] vols = new double[chain.size()];
+        double atmVol = Double.NaN;
+        int atm = chain.atmIndex(spot);
+        for (int i = 0; i < vols.length; i++) {
+            int strike = chain.strikeAt(i);
+            boolean call = strike >= spot;
+            double ltp = chain.ltp(i, call);
+            if (ltp <= 0) {
+                call = !call;
+                ltp = chain.ltp(i, call);
+            }
+            vols[i] = (ltp > 0) ? impliedVol(call, spot, strike, years, rate, ltp) : Double.NaN;
+            if (i == atm) atmVol = vols[i];
+        }
+        Smile smile = new Smile(chain.expiry, chain.minStrike, chain.step, vols,
+                Double.isNaN(atmVol) ? defaultVol : atmVol);
+        if (smile.calibrated > 0) smiles.put(chain.underlying, smile);
+    }
+
+    public void clear() {
+        surfaces.clear();
+        smiles.clear();
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Years (calendar) from now (market time) until the expiry's 15:30 IST close: the expiry
+     * date when the chain names one (yyyy-MM-dd), else the underlying's next contract - the
+     * monthly one (last option.expiry.weekday of the month) for option.expiry.monthly, the
+     * weekly one otherwise. Exchange holidays are not taken into account.
+     */
+    double yearsToExpiry(String underlying, String expiry, long now) {
+        ZonedDateTime time = Instant.ofEpochMilli(now).atZone(IST);
+        LocalDate date = null;
+        if (expiry != null && !expiry.isEmpty()) {
+            try {
+                date = LocalDate.parse(expiry.length() > 10 ? expiry.substring(0, 10) : expiry);
+            } catch (DateTimeParseException e) {
+                // Unknown format; use the weekly expiry
+            }
+        }
+        if (date == null) {
+            LocalDate today = time.toLocalDate();
+            boolean closed = !time.toLocalTime().isBefore(EXPIRY_TIME); // Today's contract has expired
+            if (monthlyExpiry.contains(SymbolUtil.canonicalUnderlying(underlying))) {
+                date = today.with(TemporalAdjusters.lastInMonth(expiryWeekday));
+                if (date.isBefore(today) || (date.equals(today) && closed)) {
+                    date = today.plusMonths(1).with(TemporalAdjusters.lastInMonth(expiryWeekday));
+                }
+            } else {
+                int days = (expiryWeekday.getValue() - today.getDayOfWeek().getValue() + 7) % 7;
+                date = today.plusDays(days);
+                if (days == 0 && closed) date = date.plusWeeks(1);
+            }
+        }
+        long ms = date.atTime(EXPIRY_TIME).atZone(IST).toInstant().toEpochMilli() - now;
+        return Math.max(MIN_YEARS, ms / YEAR_MS);
+    }
+
+    /**
+     * Vol that reproduces the option price, or NaN when the price is outside the no-arbitrage
+     * bounds.
+     */
+    static double impliedVol(boolean call, double spot, double strike, double years, double rate, double price) {
+        double discounted = strike * Math.exp(-rate * years);
+        double intrinsic = call ? Math.max(0, spot - discounted) : Math.max(0, discounted - spot);
+        double upper = call ? spot : discounted;
+        if (price <= intrinsic || price >= upper) return Double.NaN;
+
+        double sqrtT = Math.sqrt(years);
+        double lo = MIN_VOL, hi = MAX_VOL;
+        // Brenner-Subrahmanyam start, exact at the money
+        double vol = Math.max(lo, Math.min(hi, Math.sqrt(2 * Math.PI / years) * price / spot));
+        for (int iter = 0; iter < 50; iter++) {
+            double d1 = (Math.log(spot / strike) + (rate + 0.5 * vol * vol) * years) / (vol * sqrtT);
+            double d2 = d1 - vol * sqrtT;
+            double model = call ? spot * cdf(d1) - discounted * cdf(d2)
+                    : discounted * cdf(-d2) - spot * cdf(-d1);
+            double diff = model - price;
+            if (Math.abs(diff) < 1e-6) return vol;
+            if (diff > 0) hi = vol;
+            else lo = vol;
+            double vega = spot * pdf(d1) * sqrtT;
+            double next = (vega > 1e-8) ? vol - diff / vega : Double.NaN;
+            vol = (next > lo && next < hi) ? next : 0.5 * (lo + hi);
+            if (hi - lo < 1e-7) return vol;
+        }
+        return vol;
+    }
+
+    /** Black-Scholes price of one option (no floor). */
+    public static double price(boolean call, double spot, double strike, double years, double rate, double vol) {
+        double volT = vol * Math.sqrt(years);
+        double d1 = (Math.log(spot / strike) + (rate + 0.5 * vol * vol) * years) / volT;
+        double kd = strike * Math.exp(-rate * years);
+        double c = spot * cdf(d1) - kd * cdf(d1 - volT);
+        return call ? c : c - spot + kd;
+    }
+
+    /** Standard normal density. */
+    static double pdf(double x) {
+        return Math.exp(-0.5 * x * x) * 0.3989422804014327;
+    }
+
+    /** Standard normal CDF (Abramowitz-Stegun 26.2.17, |error| < 7.5e-8). */
+    static double cdf(double x) {
+        double ax = Math.abs(x);
+        double t = 1.0 / (1.0 + 0.2316419 * ax);
+        double poly = t * (0.319381530 + t * (-0.356563782 + t * (1.781477937 + t * (-1.821255978 + t * 1.330274429))));
+        double tail = pdf(ax) * poly;
+        return (x >= 0) ? 1.0 - tail : tail;
+    }
+
+    /** Calibrated vols of one chain on its strike grid; NaN where a strike had no quote. */
+    private static final class Smile {
+        final String expiry;
+        final int minStrike;
+        final int step;
+        final double[] vols;
+        final double atmVol;
+        final int calibrated;
+
+        Smile(String expiry, int minStrike, int step, double[] vols, double atmVol) {
+            this.expiry = expiry;
+            this.minStrike = minStrike;
+            this.step = step;
+            this.vols = vols;
+            this.atmVol = atmVol;
+            int n = 0;
+            for (double v : vols) {
+                if (!Double.isNaN(v)) n++;
+            }
+            this.calibrated = n;
+        }
+
+        /** Vol of the strike, or of the nearest calibrated strike (flat beyond the chain). */
+        double volAt(int strike) {
+            int i = Math.max(0, Math.min(vols.length - 1, Math.round((strike - minStrike) / (float) step)));
+            for (int d = 0; d < vols.length; d++) {
+                if (i - d >= 0 && !Double.isNaN(vols[i - d])) return vols[i - d];
+                if (i + d < vols.length && !Double.isNaN(vols[i + d])) return vols[i + d];
+            }
+            return atmVol;
+        }
+    }
+
+    /**
+     * Prices and Greeks of one strip of strikes at one spot and time; immutable once priced.
+     * Theta is per calendar day, vega per vol point (0.01).
+     */
+    public static final class Surface {
+        public final String underlying;
+        public final double spot;
+        public final long timestamp;
+        public final double years;
+        public final int minStrike;
+        public final int step;
+        private final Smile smile;
+        private final double[] sigma;
+        private final double[] cePrice;
+        private final double[] pePrice;
+        private final double[] ceDelta;
+        private final double[] gamma;
+        private final double[] vega;
+        private final double[] ceTheta;
+        private final double[] peTheta;
+
+        private Surface(String underlying, double spot, long timestamp, double years, int minStrike, int step,
+                int size, Smile smile) {
+            this.underlying = underlying;
+            this.spot = spot;
+            this.timestamp = timestamp;
+            this.years = years;
+            this.minStrike = minStrike;
+            this.step = step;
+            this.smile = smile;
+            this.sigma = new double[size];
+            this.cePrice = new double[size];
+            this.pePrice = new double[size];
+            this.ceDelta = new double[size];
+            this.gamma = new double[size];
+            this.vega = new double[size];
+            this.ceTheta = new double[size];
+            this.peTheta = new double[size];
+        }
+
+        private void price(double rate) {
+            double sqrtT = Math.sqrt(years);
+            double growth = Math.exp(-rate * years);
+            for (int i = 0; i < sigma.length; i++) {
+                double k = strikeAt(i);
+                double vol = sigma[i];
+                double volT = vol * sqrtT;
+                double d1 = (Math.log(spot / k) + (rate + 0.5 * vol * vol) * years) / volT;
+                double d2 = d1 - volT;
+                double nd1 = cdf(d1);
+                double nd2 = cdf(d2);
+                double density = pdf(d1);
+                double kd = k * growth;
+                double call = spot * nd1 - kd * nd2;
+                cePrice[i] = Math.max(MIN_PRICE, call);
+                pePrice[i] = Math.max(MIN_PRICE, call - spot + kd);
+                ceDelta[i] = nd1;
+                gamma[i] = density / (spot * volT);
+                vega[i] = spot * density * sqrtT / 100.0;
+                double decay = -spot * density * vol / (2 * sqrtT);
+                ceTheta[i] = (decay - rate * kd * nd2) / 365.0;
+                peTheta[i] = (decay + rate * kd * (1 - nd2)) / 365.0;
+            }
+        }
+
+        boolean stale(double spot, long now, Smile current, double repriceBps, long repriceMs) {
+            if (current != smile || now - timestamp >= repriceMs || now < timestamp) return true;
+            int atm = (int) Math.round((spot - minStrike) / step);
+            if (atm <= 0 || atm >= size() - 1) return true;
+            return Math.abs(spot - this.spot) / this.spot * 10_000.0 > repriceBps;
+        }
+
+        public int size() {
+            return sigma.length;
+        }
+
+        public int strikeAt(int i) {
+            return minStrike + i * step;
+        }
+
+        /** Slot of the strike, or -1 outside the strip. */
+        public int indexOf(int strike) {
+            int offset = strike - minStrike;
+            if (offset < 0 || offset % step != 0) return -1;
+            int i = offset / step;
+            return i < size() ? i : -1;
+        }
+
+        /** Slot whose delta is closest to the target (absolute, e.g. 0.5 = ATM) on the side. */
+        public int indexOfDelta(double target, boolean call) {
+            int best = 0;
+            double bestGap = Double.MAX_VALUE;
+            for (int i = 0; i < size(); i++) {
+                double gap = Math.abs(Math.abs(delta(i, call)) - target);
+                if (gap < bestGap) {
+                    bestGap = gap;
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        public double price(int i, boolean call) {
+            return call ? cePrice[i] : pePrice[i];
+        }
+
+        public double delta(int i, boolean call) {
+            return call ? ceDelta[i] : ceDelta[i] - 1.0;
+        }
+
+        public double gamma(int i) {
+            return gamma[i];
+        }
+
+        public double vega(int i) {
+            return vega[i];
+        }
+
+        public double theta(int i, boolean call) {
+            return call ? ceTheta[i] : peTheta[i];
+        }
+
+        public double iv(int i) {
+            return sigma[i];
+        }
+
+        /** Vol of the strike, or of the nearest end of the strip outside it. */
+        public double ivAt(int strike) {
+            int i = Math.round((strike - minStrike) / (float) step);
+            return sigma[Math.max(0, Math.min(size() - 1, i))];
+        }
+    }
+}
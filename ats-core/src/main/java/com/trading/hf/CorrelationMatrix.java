@@ -0,0 +1,275 @@
+package com.trading.hf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Rolling covariance/correlation of 1-minute returns across the indices and their heavyweight
+ * constituents, maintained incrementally from candle_update batches.
+ *
+ * Returns for the last correlation.window.minutes minutes sit in a ring buffer (one flat
+ * row of D values per minute). Each completed minute adds its row to the running sums and
+ * subtracts the row it evicts: O(D^2) per minute over a flat D x D cross-product array, with
+ * the rows split across threads when D is large. The sums are re-derived from the ring once
+ * per window so rounding drift cannot build up. Overnight gaps are not counted as returns.
+ *
+ * A symbol missing from a minute's batch has no return for that minute or the next (NaN in
+ * the ring) rather than a stale zero. Statistics are pairwise: each pair of symbols is
+ * measured over the minutes in which both have a return.
+ */
+public class CorrelationMatrix {
+
+    private static final String NIFTY = "NSE_INDEX|Nifty 50";
+    private static final String[] INDICES = { NIFTY, "NSE_INDEX|Nifty Bank" };
+    // Approximate index weights (%) of the heavyweights the bridge streams
+    private static final String DEFAULT_HEAVYWEIGHTS =
+            "HDFCBANK:13,RELIANCE:9,ICICIBANK:8,INFY:6,BHARTIARTL:4,TCS:4,LT:4,ITC:4,KOTAKBANK:3," +
+            "AXISBANK:3,SBIN:3,BAJFINANCE:2,HINDUNILVR:2,MARUTI:2,SUNPHARMA:2,HCLTECH:2,TITAN:1," +
+            "ASIANPAINT:1,NTPC:1,POWERGRID:1,ULTRACEMCO:1,WIPRO:1,ADANIENT:1";
+
+    private final int dims;
+    private final int window;
+    private final int confirmMinutes;
+    private final boolean parallel;
+    private final Map<String, Integer> dimOf = new HashMap<>();
+    private final double[] weight; // Index weight per dimension (0 for indices)
+
+    // Ring of return rows: row r occupies [r * dims, (r + 1) * dims)
+    private final double[] ring;
+    private int head;
+    private int count;
+    private int sinceRefresh;
+
+    // Running sums over the ring, over the rows where both i and j have a return:
+    // cross[i * dims + j] and pairs[i * dims + j] for j >= i, and sum[i * dims + j] of x_i
+    private final double[] sum;
+    private final double[] cross;
+    private final double[] pairs;
+
+    // Current minute's latest closes and the previous minute's final closes
+    private long minute = Long.MIN_VALUE;
+    private final double[] close;
+    private final double[] prevClose;
+    private final boolean[] seen; // In the current minute's batches
+    private final double[] row;
+    private final double[] evicted;
+    // Rows being added/evicted with missing returns as 0, and 1/0 for present/missing
+    private final double[] x;
+    private final double[] xValid;
+    private final double[] old;
+    private final double[] oldValid;
+    private boolean primed;
+
+    public CorrelationMatrix() {
+        String[] heavy = ConfigLoader.getProperty("correlation.heavyweights", DEFAULT_HEAVYWEIGHTS).split(",");
+        this.dims = INDICES.length + heavy.length;
+        this.weight = new double[dims];
+        for (int i = 0; i < INDICES.length; i++) dimOf.put(INDICES[i], i);
+        for (int k = 0; k < heavy.length; k++) {
+            String[] parts = heavy[k].split(":");
+            int d = INDICES.length + k;
+            dimOf.put(SymbolUtil.toInternalSymbol(parts[0].trim()), d);
+            weight[d] = parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 1.0;
+        }
+        this.window = Integer.parseInt(ConfigLoader.getProperty("correlation.window.minutes", "60"));
+        this.confirmMinutes = Integer.parseInt(ConfigLoader.getProperty("correlation.confirm.minutes", "5"));
+        this.parallel = dims >= Integer.parseInt(ConfigLoader.getProperty("correlation.parallel.dims", "128"));
+        this.ring = new double[window * dims];
+        this.sum = new double[dims * dims];
+        this.cross = new double[dims * dims];
+        this.pairs = new double[dims * dims];
+        this.close = new double[dims];
+        this.prevClose = new double[dims];
+        this.seen = new boolean[dims];
+        this.row = new double[dims];
+        this.evicted = new double[dims];
+        this.x = new double[dims];
+        this.xValid = new double[dims];
+        this.old = new double[dims];
+        this.oldValid = new double[dims];
+    }
+
+    /**
+     * Takes one candle_update batch. A batch for a later minute first completes the previous
+     * minute and folds its returns into the window.
+     */
+    public synchronized void onBatch(List<VolumeBar> bars) {
+        if (bars.isEmpty()) return;
+        long batchMinute = bars.get(0).getStartTime();
+        if (batchMinute > minute) {
+            if (minute != Long.MIN_VALUE) completeMinute(batchMinute);
+            minute = batchMinute;
+        }
+        for (VolumeBar bar : bars) {
+            Integer d = dimOf.get(bar.getSymbol());
+            if (d != null && bar.getStartTime() == minute && bar.getClose() > 0) {
+                close[d] = bar.getClose();
+                seen[d] = true;
+            }
+        }
+    }
+
+    private void completeMinute(long nextMinute) {
+        boolean sameDay = Math.floorDiv(minute + 19_800_000L, 86_400_000L)
+                == Math.floorDiv(nextMinute + 19_800_000L, 86_400_000L);
+        if (primed) {
+            for (int i = 0; i < dims; i++) {
+                row[i] = (seen[i] && prevClose[i] > 0) ? close[i] / prevClose[i] - 1.0 : Double.NaN;
+            }
+            add(row);
+        }
+        // A symbol absent this minute is no base for the next one's return either
+        for (int i = 0; i < dims; i++) {
+            prevClose[i] = seen[i] ? close[i] : 0.0;
+            seen[i] = false;
+        }
+        // The last minute of a day is the base for nothing: tomorrow's first return would be the gap
+        primed = sameDay;
+    }
+
+    private void add(double[] next) {
+        int offset = head * dims;
+        boolean full = count == window;
+        if (full) {
+            System.arraycopy(ring, offset, evicted, 0, dims);
+        } else {
+            Arrays.fill(evicted, Double.NaN);
+            count++;
+        }
+        System.arraycopy(next, 0, ring, offset, dims);
+        head = (head + 1) % window;
+
+        if (++sinceRefresh >= window) {
+            refresh();
+            return;
+        }
+        split(next, x, xValid);
+        split(evicted, old, oldValid);
+        if (parallel) {
+            IntStream.range(0, dims).parallel().forEach(this::updateRow);
+        } else {
+            for (int i = 0; i < dims; i++) updateRow(i);
+        }
+    }
+
+    /** Copies a ring row with missing returns as 0 into values, and 1/0 into valid. */
+    private static void split(double[] from, double[] values, double[] valid) {
+        for (int i = 0; i < from.length; i++) {
+            boolean present = !Double.isNaN(from[i]);
+            values[i] = present ? from[i] : 0.0;
+            valid[i] = present ? 1.0 : 0.0;
+        }
+    }
+
+    private void updateRow(int i) {
+        int base = i * dims;
+        double xi = x[i], vi = xValid[i];
+        double oi = old[i], ovi = oldValid[i];
+        for (int j = 0; j < dims; j++) {
+            sum[base + j] += xi * xValid[j] - oi * oldValid[j];
+        }
+        for (int j = i; j < dims; j++) {
+            cross[base + j] += xi * x[j] - oi * old[j];
+            pairs[base + j] += vi * xValid[j] - ovi * oldValid[j];
+        }
+    }
+
+    /** Re-derives the sums from the ring (once per window) to shed accumulated rounding. */
+    private void refresh() {
+        sinceRefresh = 0;
+        Arrays.fill(sum, 0.0);
+        Arrays.fill(cross, 0.0);
+        Arrays.fill(pairs, 0.0);
+        if (parallel) {
+            IntStream.range(0, dims).parallel().forEach(this::refreshRow);
+        } else {
+            for (int i = 0; i < dims; i++) refreshRow(i);
+        }
+    }
+
+    private void refreshRow(int i) {
+        int base = i * dims;
+        for (int r = 0; r < count; r++) {
+            int offset = r * dims;
+            double xi = ring[offset + i];
+            if (Double.isNaN(xi)) continue;
+            for (int j = 0; j < dims; j++) {
+                double xj = ring[offset + j];
+                if (Double.isNaN(xj)) continue;
+                sum[base + j] += xi;
+                if (j >= i) {
+                    cross[base + j] += xi * xj;
+                    pairs[base + j] += 1;
+                }
+            }
+        }
+    }
+
+    /** Covariance over the minutes in which both symbols have a return. */
+    private double covariance(int i, int j) {
+        int a = Math.min(i, j), b = Math.max(i, j);
+        double n = Math.rint(pairs[a * dims + b]);
+        if (n < 2) return 0.0;
+        return (cross[a * dims + b] - sum[i * dims + j] * sum[j * dims + i] / n) / (n - 1);
+    }
+
+    private double correlation(int i, int j) {
+        double vi = covariance(i, i), vj = covariance(j, j);
+        if (!(vi > 0 && vj > 0)) return 0.0;
+        // Pairwise windows can differ from the variances' own; keep the result a correlation
+        return Math.max(-1.0, Math.min(1.0, covariance(i, j) / Math.sqrt(vi * vj)));
+    }
+
+    /** Whether the window holds enough minutes (half of it) for the statistics to mean much. */
+    public synchronized boolean isWarm() {
+        return count >= Math.max(2, window / 2);
+    }
+
+    /** Correlation of 1-minute returns of two tracked symbols; NaN if either is not tracked. */
+    public synchronized double correlation(String a, String b) {
+        Integer i = dimOf.get(a), j = dimOf.get(b);
+        return (i == null || j == null) ? Double.NaN : correlation(i, j);
+    }
+
+    /** Beta of the symbol's 1-minute returns to Nifty 50's; NaN if not tracked. */
+    public synchronized double beta(String symbol) {
+        Integer d = dimOf.get(symbol);
+        if (d == null) return Double.NaN;
+        double var = covariance(0, 0);
+        return var > 0 ? covariance(d, 0) / var : Double.NaN;
+    }
+
+    /**
+     * How far the heavyweights back a move in the given index over the last
+     * correlation.confirm.minutes: +1 when every heavyweight moves with the signal direction,
+     * -1 when all move against it. Each heavyweight counts by its index weight times its
+     * (positive) correlation with that index. NaN if the index is not tracked or nothing
+     * correlates yet.
+     */
+    public synchronized double heavyweightConfirmation(String index, boolean bullish) {
+        Integer idx = dimOf.get(index);
+        if (idx == null || count == 0) return Double.NaN;
+        int k = Math.min(confirmMinutes, count);
+        double agree = 0, total = 0;
+        for (int d = INDICES.length; d < dims; d++) {
+            double w = weight[d] * Math.max(0.0, correlation(d, idx));
+            if (w == 0) continue;
+            double move = 0;
+            for (int r = 1; r <= k; r++) {
+                double ret = ring[((head - r + window) % window) * dims + d];
+                if (!Double.isNaN(ret)) move += ret; // Missing minutes count as no move
+            }
+            if (move == 0) continue;
+            agree += ((move > 0) == bullish) ? w : -w;
+            total += w;
+        }
+        return total > 0 ? agree / total : Double.NaN;
+    }
+
+    public int dimensions() {
+        return dims;
+    }
+}
@@ -0,0 +1,256 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranks every symbol of a candle_update batch against the others once per minute and stamps
+ * the results on the bars (VolumeBar#setCrossSection) before they reach the engine, so gates
+ * read them as plain fields.
+ *
+ * Features per equity: relative strength versus Nifty since the day's open, relative volume
+ * (against the time-of-day profile when there is one), distance from VWAP, and the mean
+ * relative strength of its sector. Long and short composite ranks combine the four. Per-symbol
+ * state lives in primitive columns indexed by slot; a batch is a few passes over arrays.
+ * Indices are not ranked; Nifty 50 is the benchmark.
+ */
+public class CrossSectionEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrossSectionEngine.class);
+    private static final String NIFTY = "NSE_INDEX|Nifty 50";
+    private static final double VOLUME_EWMA_ALPHA = 0.05;
+    private static final String DEFAULT_SECTORS =
+            "BANK:HDFCBANK,ICICIBANK,KOTAKBANK,AXISBANK,SBIN,BAJFINANCE;" +
+            "IT:INFY,TCS,WIPRO,HCLTECH;" +
+            "ENERGY:RELIANCE,NTPC,POWERGRID,ADANIENT;" +
+            "CONSUMER:ITC,HINDUNILVR,TITAN,ASIANPAINT,MARUTI;" +
+            "OTHER:BHARTIARTL,LT,SUNPHARMA,ULTRACEMCO";
+
+    private final VolumeProfileCache volumeProfile;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<String, Integer> sectorIds = new HashMap<>();
+    private final Map<String, Integer> symbolSectors = new HashMap<>();
+    private final int sectorTotal;
+
+    // Per-slot columns
+    private long[] day = new long[64];
+    private double[] dayOpen = new double[64];
+    private long[] lastMinute = new long[64];
+    private long[] lastVolume = new long[64];
+    private double[] avgVolume = new double[64];
+    private int[] sectorOf = new int[64];
+    private double niftyReturn;
+    private long niftyDay = Long.MIN_VALUE;
+
+    // Per-batch scratch columns
+    private VolumeBar[] batch = new VolumeBar[64];
+    private int[] batchSector = new int[64];
+    private double[] rs = new double[64];
+    private double[] rvol = new double[64];
+    private double[] vwapDist = new double[64];
+    private double[] longScore = new double[64];
+    private double[] shortScore = new double[64];
+    private int[] idx = new int[64];
+    private int[] rsRank = new int[64];
+    private int[] rvolRank = new int[64];
+    private int[] vwapRank = new int[64];
+    private int[] longRank = new int[64];
+    private int[] shortRank = new int[64];
+    private final double[] sectorSum;
+    private final int[] sectorCount;
+    private final int[] sectorRank;
+    private final double[] sectorMean;
+    private final int[] sectorOrder;
+    private final int[] sectorRanked;
+
+    public CrossSectionEngine(VolumeProfileCache volumeProfile) {
+        this.volumeProfile = volumeProfile;
+        for (String group : ConfigLoader.getProperty("cross.section.sectors", DEFAULT_SECTORS).split(";")) {
+            String[] parts = group.split(":");
+            if (parts.length != 2) continue;
+            int id = sectorIds.computeIfAbsent(parts[0].trim(), k -> sectorIds.size());
+            for (String symbol : parts[1].split(",")) {
+                symbolSectors.put(SymbolUtil.toInternalSymbol(symbol.trim()), id);
+            }
+        }
+        this.sectorTotal = sectorIds.size();
+        this.sectorSum = new double[sectorTotal];
+        this.sectorCount = new int[sectorTotal];
+        this.sectorRank = new int[sectorTotal];
+        this.sectorMean = new double[sectorTotal];
+        this.sectorOrder = new int[sectorTotal];
+        this.sectorRanked = new int[sectorTotal];
+    }
+
+    /**
+     * Ranks one minute's cross-section and stamps the features on its bars. Called with every
+     * candle_update batch (revisions of the running minute included) before the bars are
+     * dispatched.
+     */
+    public synchronized void onBatch(List<VolumeBar> bars) {
+        ensureBatchCapacity(bars.size());
+        int n = 0;
+        for (VolumeBar bar : bars) {
+            int slot = slotOf(bar.getSymbol());
+            double ret = track(slot, bar);
+            if (bar.getSymbol().startsWith("NSE_INDEX|")) {
+                if (NIFTY.equals(bar.getSymbol())) {
+                    niftyReturn = ret;
+                    niftyDay = day[slot];
+                }
+                continue;
+            }
+            batch[n] = bar;
+            batchSector[n] = sectorOf[slot];
+            rs[n] = ret;
+            double expected = (volumeProfile != null)
+                    ? volumeProfile.expectedVolume(bar.getSymbol(), bar.getStartTime()) : Double.NaN;
+            if (Double.isNaN(expected)) expected = avgVolume[slot];
+            rvol[n] = expected > 0 ? bar.getVolume() / expected : 1.0;
+            vwapDist[n] = bar.getVwap() > 0 ? (bar.getClose() - bar.getVwap()) / bar.getVwap() : 0.0;
+            n++;
+        }
+        if (n == 0) return;
+
+        // Relative strength in percent; the benchmark only counts on the same day
+        long benchmarkDay = Math.floorDiv(batch[0].getStartTime() + 19_800_000L, 86_400_000L);
+        double benchmark = (niftyDay == benchmarkDay) ? niftyReturn : 0.0;
+        Arrays.fill(sectorSum, 0.0);
+        Arrays.fill(sectorCount, 0);
+        for (int i = 0; i < n; i++) {
+            rs[i] = (rs[i] - benchmark) * 100.0;
+            int sector = batchSector[i];
+            if (sector >= 0) {
+                sectorSum[sector] += rs[i];
+                sectorCount[sector]++;
+            }
+        }
+        rankSectors();
+
+        rankDescending(rs, n, rsRank);
+        rankDescending(rvol, n, rvolRank);
+        rankDescending(vwapDist, n, vwapRank);
+        int sectors = 0;
+        for (int c : sectorCount) if (c > 0) sectors++;
+        for (int i = 0; i < n; i++) {
+            int sector = batchSector[i];
+            double pSector = (sector >= 0 && sectors > 1) ? percentile(sectorRank[sector], sectors) : 0.5;
+            double pRs = percentile(rsRank[i], n);
+            double pVwap = percentile(vwapRank[i], n);
+            double pRvol = percentile(rvolRank[i], n);
+            longScore[i] = pRs + pVwap + pSector + pRvol;
+            shortScore[i] = (1 - pRs) + (1 - pVwap) + (1 - pSector) + pRvol; // Volume confirms either way
+        }
+        rankDescending(longScore, n, longRank);
+        rankDescending(shortScore, n, shortRank);
+
+        for (int i = 0; i < n; i++) {
+            int sector = batchSector[i];
+            batch[i].setCrossSection(rs[i], rvolRank[i], vwapRank[i], sector >= 0 ? sectorRank[sector] : 0,
+                    longRank[i], shortRank[i], n);
+            batch[i] = null;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Cross-section of {} symbols ranked; benchmark return {}%", n,
+                    String.format("%.2f", benchmark * 100));
+        }
+    }
+
+    /**
+     * Updates the slot's day open and volume average; returns the return since the day's open.
+     */
+    private double track(int slot, VolumeBar bar) {
+        long barDay = Math.floorDiv(bar.getStartTime() + 19_800_000L, 86_400_000L); // IST date
+        if (barDay != day[slot]) {
+            day[slot] = barDay;
+            dayOpen[slot] = bar.getOpen();
+        }
+        long minute = bar.getStartTime();
+        if (minute > lastMinute[slot]) {
+            // The previous minute is final now; fold its volume into the average
+            if (lastMinute[slot] != 0) {
+                avgVolume[slot] = (avgVolume[slot] == 0) ? lastVolume[slot]
+                        : avgVolume[slot] + VOLUME_EWMA_ALPHA * (lastVolume[slot] - avgVolume[slot]);
+            }
+            lastMinute[slot] = minute;
+        }
+        lastVolume[slot] = bar.getVolume();
+        return dayOpen[slot] > 0 ? bar.getClose() / dayOpen[slot] - 1.0 : 0.0;
+    }
+
+    private void rankSectors() {
+        int m = 0;
+        for (int s = 0; s < sectorTotal; s++) {
+            sectorRank[s] = 0;
+            if (sectorCount[s] == 0) continue;
+            sectorMean[m] = sectorSum[s] / sectorCount[s];
+            sectorOrder[m++] = s;
+        }
+        rankDescending(sectorMean, m, sectorRanked);
+        for (int i = 0; i < m; i++) sectorRank[sectorOrder[i]] = sectorRanked[i];
+    }
+
+    /** 1.0 for rank 1 down to 0.0 for the last rank. */
+    private static double percentile(int rank, int n) {
+        return (n <= 1) ? 1.0 : (double) (n - rank) / (n - 1);
+    }
+
+    /**
+     * Writes each value's rank (1 = largest) into ranks. Insertion sort over an index column:
+     * batches are tens to a few hundred symbols.
+     */
+    private void rankDescending(double[] values, int n, int[] ranks) {
+        for (int i = 0; i < n; i++) {
+            int v = i;
+            int j = i - 1;
+            while (j >= 0 && values[idx[j]] < values[v]) {
+                idx[j + 1] = idx[j];
+                j--;
+            }
+            idx[j + 1] = v;
+        }
+        for (int k = 0; k < n; k++) ranks[idx[k]] = k + 1;
+    }
+
+    private int slotOf(String symbol) {
+        Integer slot = slots.get(symbol);
+        if (slot != null) return slot;
+        int s = slots.size();
+        if (s == day.length) {
+            int cap = s * 2;
+            day = Arrays.copyOf(day, cap);
+            dayOpen = Arrays.copyOf(dayOpen, cap);
+            lastMinute = Arrays.copyOf(lastMinute, cap);
+            lastVolume = Arrays.copyOf(lastVolume, cap);
+            avgVolume = Arrays.copyOf(avgVolume, cap);
+            sectorOf = Arrays.copyOf(sectorOf, cap);
+        }
+        day[s] = Long.MIN_VALUE;
+        sectorOf[s] = symbolSectors.getOrDefault(symbol, -1);
+        slots.put(symbol, s);
+        return s;
+    }
+
+    private void ensureBatchCapacity(int size) {
+        if (size <= batch.length) return;
+        int cap = Math.max(size, batch.length * 2);
+        batch = Arrays.copyOf(batch, cap);
+        batchSector = Arrays.copyOf(batchSector, cap);
+        rs = Arrays.copyOf(rs, cap);
+        rvol = Arrays.copyOf(rvol, cap);
+        vwapDist = Arrays.copyOf(vwapDist, cap);
+        longScore = Arrays.copyOf(longScore, cap);
+        shortScore = Arrays.copyOf(shortScore, cap);
+        idx = Arrays.copyOf(idx, cap);
+        rsRank = Arrays.copyOf(rsRank, cap);
+        rvolRank = Arrays.copyOf(rvolRank, cap);
+        vwapRank = Arrays.copyOf(vwapRank, cap);
+        longRank = Arrays.copyOf(longRank, cap);
+        shortRank = Arrays.copyOf(shortRank, cap);
+    }
+}
@@ -0,0 +1,99 @@
+package com.trading.hf;
+
+/**
+ * Level-2 book of one instrument from the feed's MarketLevel depth quotes (5 or 30 levels,
+ * full_d5/full_d30), held in fixed primitive arrays and overwritten in place on every
+ * snapshot.
+ *
+ * Besides the top of book it provides the microprice (the mid weighted towards the thinner
+ * side), a depth-weighted imbalance over the first k levels (level i counts 1/(i+1)), the
+ * spread and the best-level queue imbalance.
+ */
+public class DepthBook {
+
+    public static final int MAX_LEVELS = 30;
+
+    private final double[] bidPrice = new double[MAX_LEVELS];
+    private final long[] bidQty = new long[MAX_LEVELS];
+    private final double[] askPrice = new double[MAX_LEVELS];
+    private final long[] askQty = new long[MAX_LEVELS];
+    private int levels;
+
+    /**
+     * Copies the event's depth levels into the book. Events without depth leave the book as
+     * it is.
+     */
+    public void update(MarketEvent event) {
+        int n = Math.min(event.getDepthLevels(), MAX_LEVELS);
+        if (n == 0) return;
+        for (int i = 0; i < n; i++) {
+            bidPrice[i] = event.getBidPrice(i);
+            bidQty[i] = event.getBidQty(i);
+            askPrice[i] = event.getAskPrice(i);
+            askQty[i] = event.getAskQty(i);
+        }
+        levels = n;
+    }
+
+    /** Whether a two-sided book has been received. */
+    public boolean hasDepth() {
+        return levels > 0 && bidPrice[0] > 0 && askPrice[0] > 0;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public double getBestBid() {
+        return bidPrice[0];
+    }
+
+    public double getBestAsk() {
+        return askPrice[0];
+    }
+
+    public double getMid() {
+        return hasDepth() ? (bidPrice[0] + askPrice[0]) / 2 : 0.0;
+    }
+
+    public double getSpread() {
+        return hasDepth() ? askPrice[0] - bidPrice[0] : 0.0;
+    }
+
+    /** Spread in basis points of the mid; 0 without depth. */
+    public double getSpreadBps() {
+        double mid = getMid();
+        return mid > 0 ? getSpread() / mid * 10_000.0 : 0.0;
+    }
+
+    /**
+     * Mid price weighted by the opposite queue, i.e. closer to the ask when the bid is
+     * heavier; 0 without depth.
+     */
+    public double getMicroprice() {
+        if (!hasDepth()) return 0.0;
+        long total = bidQty[0] + askQty[0];
+        if (total == 0) return getMid();
+        return (bidPrice[0] * askQty[0] + askPrice[0] * bidQty[0]) / total;
+    }
+
+    /**
+     * (bid - ask) / (bid + ask) over the first k levels, level i weighted 1/(i+1); in [-1, 1],
+     * 0 without depth.
+     */
+    public double imbalance(int k) {
+        int n = Math.min(k, levels);
+        double bid = 0, ask = 0;
+        for (int i = 0; i < n; i++) {
+            double w = 1.0 / (i + 1);
+            bid += w * bidQty[i];
+            ask += w * askQty[i];
+        }
+        return (bid + ask) > 0 ? (bid - ask) / (bid + ask) : 0.0;
+    }
+
+    /** Best-level queue imbalance: (bid qty - ask qty) / (bid qty + ask qty). */
+    public double queueImbalance() {
+        return imbalance(1);
+    }
+}
@@ -0,0 +1,191 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Periodic binary snapshot of the full ScalpingSignalEngine state for crash recovery.
+ *
+ * The trading thread encodes the engine into a reusable direct buffer (no per-snapshot
+ * allocation); a background thread maps a temp file, writes the buffer in one bulk put,
+ * forces it and atomically renames it over the previous snapshot. A capture is skipped
+ * while the previous write is still in flight, so the trading thread never waits on disk.
+ */
+public class EngineSnapshotter {
+
+    private static final Logger logger = LoggerFactory.getLogger(EngineSnapshotter.class);
+    private static final int SNAPSHOT_MAGIC = 0x41545353; // "ATSS"
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 4;
+
+    private final ScalpingSignalEngine engine;
+    private final Path snapshotFile;
+    private final Path tmpFile;
+    private final long intervalMs;
+    private final AtomicBoolean inFlight = new AtomicBoolean(false);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "engine-snapshot-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+    private long lastCaptureMs = 0;
+
+    public EngineSnapshotter(ScalpingSignalEngine engine) {
+        this.engine = engine;
+        this.snapshotFile = Paths.get(ConfigLoader.getProperty("snapshot.file", "engine.snap"));
+        this.tmpFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        this.intervalMs = Long.parseLong(ConfigLoader.getProperty("snapshot.interval.ms", "5000"));
+    }
+
+    /**
+     * Called on the trading thread after each bar; captures at most once per interval.
+     */
+    public void onBar(VolumeBar bar) {
+        long now = System.currentTimeMillis();
+        if (now - lastCaptureMs < intervalMs) return;
+        if (!inFlight.compareAndSet(false, true)) return;
+        lastCaptureMs = now;
+
+        try {
+            capture(now);
+        } catch (RuntimeException e) {
+            inFlight.set(false);
+            logger.error("Engine snapshot capture failed", e);
+            return;
+        }
+        try {
+            writer.execute(() -> {
+                try {
+                    write();
+                } finally {
+                    inFlight.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.set(false); // Shutting down; the final snapshot is taken by snapshotNow()
+        }
+    }
+
+    /**
+     * Synchronous capture and write, for shutdown. Skipped before the first bar so a restart
+     * that saw no data keeps the previous snapshot.
+     */
+    public void snapshotNow() {
+        if (engine.getLastMarketTime() == 0) return;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!inFlight.compareAndSet(false, true)) {
+            if (System.nanoTime() > deadline) {
+                logger.warn("Previous engine snapshot still in flight, skipping final snapshot");
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        try {
+            capture(System.currentTimeMillis());
+            write();
+        } finally {
+            inFlight.set(false);
+        }
+    }
+
+    private void capture(long now) {
+        synchronized (engine) { // Price updates can reach the engine from the feed thread
+            encode(now);
+        }
+    }
+
+    private void encode(long now) {
+        int needed = HEADER_BYTES + engine.stateSize();
+        if (buffer.capacity() < needed) {
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(needed) << 1);
+        }
+        buffer.clear();
+        buffer.putInt(SNAPSHOT_MAGIC);
+        buffer.putLong(Math.floorDiv(engine.getLastMarketTime() + 19_800_000L, 86_400_000L)); // IST date of the last bar
+        buffer.putLong(now);
+        buffer.putInt(0); // Reserved
+        engine.writeState(buffer);
+        buffer.flip();
+    }
+
+    private void write() {
+        long start = System.nanoTime();
+        int length = buffer.remaining();
+        try (FileChannel ch = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            map.put(buffer.duplicate());
+            map.force();
+        } catch (IOException e) {
+            logger.error("Failed to write engine snapshot", e);
+            return;
+        }
+        try {
+            Files.move(tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Failed to replace engine snapshot", e);
+            return;
+        }
+        logger.debug("Engine snapshot written: {} bytes in {} us", length, (System.nanoTime() - start) / 1_000);
+    }
+
+    /**
+     * Rebuilds the engine from a snapshot of the session being traded (today when live, the
+     * replayed date in simulation), if there is one. Returns true when restored. Call before
+     * the feed connects (after any indicator warm-start, which it supersedes).
+     */
+    public boolean restore(LocalDate sessionDate) {
+        if (!Files.exists(snapshotFile)) return false;
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (map.getInt() != SNAPSHOT_MAGIC) {
+                logger.warn("Ignoring {}: not an engine snapshot", snapshotFile);
+                return false;
+            }
+            long day = map.getLong();
+            long takenAt = map.getLong();
+            map.getInt();
+            if (day != sessionDate.toEpochDay()) {
+                logger.info("Engine snapshot is from {}, not the {} session; not restoring", LocalDate.ofEpochDay(day),
+                        sessionDate);
+                return false;
+            }
+            synchronized (engine) {
+                engine.readState(map);
+            }
+            logger.info("Engine state restored from snapshot taken {} ms ago in {} us",
+                    System.currentTimeMillis() - takenAt, (System.nanoTime() - start) / 1_000);
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to restore engine snapshot", e);
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
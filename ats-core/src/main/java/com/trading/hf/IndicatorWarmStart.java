@@ -0,0 +1,207 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Warm-starts TechnicalIndicators before the open so EMAs (incl. EMA200), ATR/ADX and the
+ * yesterday stats used by the Day-2/MMM gates are meaningful from the first bar.
+ *
+ * Sources, in order: the binary checkpoint written at the last shutdown, else prior sessions
+ * bulk-read from backtest_data.db (backtest_candles). Symbols are replayed in parallel.
+ */
+public class IndicatorWarmStart {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndicatorWarmStart.class);
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final int CHECKPOINT_MAGIC = 0x41545349; // "ATSI"
+
+    private final String dbUrl;
+    private final int days;
+    private final int maxCheckpointAgeDays;
+    private final Path checkpointFile;
+
+    public IndicatorWarmStart() {
+        this.dbUrl = ConfigLoader.getProperty("backtest.db.url", "jdbc:sqlite:backtest_data.db");
+        this.days = Integer.parseInt(ConfigLoader.getProperty("warmstart.days", "5"));
+        this.maxCheckpointAgeDays = Integer.parseInt(ConfigLoader.getProperty("warmstart.checkpoint.max.age.days", "4"));
+        this.checkpointFile = Paths.get(ConfigLoader.getProperty("indicator.checkpoint.file", "indicators.ckpt"));
+    }
+
+    /**
+     * Prepares indicators for the session being traded (today when live, the replay date in
+     * simulation); nothing from that session or later is used.
+     */
+    public Map<String, TechnicalIndicators> load(LocalDate sessionDate) {
+        long start = System.nanoTime();
+        Map<String, TechnicalIndicators> result = loadFromCheckpoint(sessionDate);
+        String source = "checkpoint";
+        if (result.isEmpty()) {
+            result = loadFromDatabase(sessionDate);
+            source = "backtest_candles";
+        }
+        logger.info("Indicator warm-start: {} symbols from {} in {} ms", result.size(), source,
+                (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    /**
+     * Restores the shutdown checkpoint. A checkpoint of the session date is taken as-is (intraday
+     * restart); one from an earlier session is rolled forward so its session becomes yesterday's
+     * stats. A checkpoint from a later session (replaying an earlier date) is ignored.
+     */
+    public Map<String, TechnicalIndicators> loadFromCheckpoint(LocalDate sessionDate) {
+        if (!Files.exists(checkpointFile)) return Collections.emptyMap();
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(checkpointFile));
+            if (buf.getInt() != CHECKPOINT_MAGIC) {
+                logger.warn("Ignoring {}: not an indicator checkpoint", checkpointFile);
+                return Collections.emptyMap();
+            }
+            long checkpointDay = buf.getLong();
+            long today = sessionDate.toEpochDay();
+            if (checkpointDay > today) {
+                logger.info("Indicator checkpoint is from {}, after the {} session; rebuilding from history instead",
+                        LocalDate.ofEpochDay(checkpointDay), sessionDate);
+                return Collections.emptyMap();
+            }
+            if (today - checkpointDay > maxCheckpointAgeDays) {
+                logger.info("Indicator checkpoint is {} days old, rebuilding from history instead", today - checkpointDay);
+                return Collections.emptyMap();
+            }
+            int count = buf.getInt();
+            Map<String, TechnicalIndicators> result = new ConcurrentHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String symbol = BinaryCodec.getString(buf);
+                TechnicalIndicators ind = new TechnicalIndicators();
+                ind.readState(buf);
+                if (checkpointDay < today) ind.startNewSession();
+                result.put(symbol, ind);
+            }
+            return result;
+        } catch (Exception e) {
+            logger.warn("Failed to read indicator checkpoint {}: {}", checkpointFile, e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Bulk-reads the last N sessions before the session date and replays them per symbol in
+     * parallel. Each session boundary rolls the indicators so yesterday's stats end up set.
+     */
+    public Map<String, TechnicalIndicators> loadFromDatabase(LocalDate sessionDate) {
+        String sql = "SELECT symbol, date, timestamp, open, high, low, close, volume FROM backtest_candles " +
+                     "WHERE date IN (SELECT DISTINCT date FROM backtest_candles WHERE date < ? ORDER BY date DESC LIMIT ?) " +
+                     "ORDER BY symbol, date, timestamp";
+
+        Map<String, List<VolumeBar>> barsBySymbol = new LinkedHashMap<>();
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, sessionDate.toString());
+            pstmt.setInt(2, days);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String symbol = SymbolUtil.toInternalSymbol(rs.getString("symbol"));
+                    long ts = LocalDate.parse(rs.getString("date"))
+                            .atTime(LocalTime.parse(rs.getString("timestamp")))
+                            .atZone(IST).toInstant().toEpochMilli();
+                    VolumeBar bar = new VolumeBar(symbol, ts, rs.getDouble("open"), rs.getLong("volume"));
+                    bar.setHigh(rs.getDouble("high"));
+                    bar.setLow(rs.getDouble("low"));
+                    bar.setClose(rs.getDouble("close"));
+                    bar.setVwap(rs.getDouble("close"));
+                    barsBySymbol.computeIfAbsent(symbol, k -> new ArrayList<>()).add(bar);
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Indicator warm-start from {} skipped: {}", dbUrl, e.getMessage());
+            return Collections.emptyMap();
+        }
+
+        Map<String, TechnicalIndicators> result = new ConcurrentHashMap<>();
+        barsBySymbol.entrySet().parallelStream().forEach(entry -> {
+            TechnicalIndicators ind = new TechnicalIndicators();
+            long day = Long.MIN_VALUE;
+            for (VolumeBar bar : entry.getValue()) {
+                long barDay = Math.floorDiv(bar.getStartTime() + 19_800_000L, 86_400_000L); // IST date
+                if (day != Long.MIN_VALUE && barDay != day) ind.startNewSession();
+                day = barDay;
+                ind.update(bar);
+            }
+            ind.startNewSession(); // The session date is a new session
+            result.put(entry.getKey(), ind);
+        });
+        return result;
+    }
+
+    /**
+     * Writes every symbol's indicator state to a compact binary file (written to a temp file,
+     * then atomically moved over the previous checkpoint), stamped with the market day of the
+     * engine's last bar. Nothing is written before the first bar.
+     */
+    public void checkpoint(ScalpingSignalEngine engine) {
+        long start = System.nanoTime();
+        ByteBuffer buf;
+        int count;
+        synchronized (engine) { // Bars update the indicators under the engine lock
+            long lastBar = engine.getLastMarketTime();
+            if (lastBar == 0) return;
+            List<Map.Entry<String, TechnicalIndicators>> entries = new ArrayList<>(engine.getIndicators().entrySet());
+            count = entries.size();
+            int size = 4 + 8 + 4;
+            for (Map.Entry<String, TechnicalIndicators> e : entries) {
+                size += BinaryCodec.sizeOf(e.getKey()) + e.getValue().stateSize();
+            }
+            buf = ByteBuffer.allocate(size);
+            buf.putInt(CHECKPOINT_MAGIC);
+            buf.putLong(Math.floorDiv(lastBar + 19_800_000L, 86_400_000L)); // IST date
+            buf.putInt(count);
+            for (Map.Entry<String, TechnicalIndicators> e : entries) {
+                BinaryCodec.putString(buf, e.getKey());
+                e.getValue().writeState(buf);
+            }
+        }
+        buf.flip();
+        int size = buf.remaining();
+
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(true);
+        } catch (IOException e) {
+            logger.error("Failed to write indicator checkpoint", e);
+            return;
+        }
+        try {
+            Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Indicator checkpoint written: {} symbols, {} bytes in {} us", count, size,
+                    (System.nanoTime() - start) / 1_000);
+        } catch (IOException e) {
+            logger.error("Failed to replace indicator checkpoint", e);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Pre-open JIT warm-up: replays synthetic sessions through a sandboxed copy of the whole
+ * pipeline (bridge JSON parsing, bar aggregation, market clock, signal engine, position
+ * store, dashboard rendering) so the hot paths are compiled before the first live bar.
+ *
+ * Every sandbox component is a fresh instance over a temporary SQLite file that is deleted
+ * afterwards; nothing is shared with the live engine. The sandbox instances are muted (no-op
+ * logger, discarded console lines) so no [SIGNAL_DATA]/[EXIT_DATA] lines reach the trading
+ * log, while other threads keep logging normally. Run it before the feed connects.
+ */
+public class JitWarmup {
+
+    private static final Logger logger = LoggerFactory.getLogger(JitWarmup.class);
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final int SESSION_MINUTES = 375;
+    private static final String[] INDICES = { "NIFTY", "BANKNIFTY" };
+    // First minutes at which the gates run (they need 20 bars of history)
+    private static final int LATENCY_FROM = 20;
+    private static final int LATENCY_TO = 40;
+
+    /** Renders the dashboard view for a bar from the given components (see DashboardBridge). */
+    public interface DashboardRenderer {
+        void render(VolumeBar bar, OptionChainProvider optionChainProvider, ScalpingSignalEngine engine,
+                PositionManager positionManager);
+    }
+
+    private final DashboardRenderer dashboard;
+    private final int sessions;
+    private final int equities;
+
+    public JitWarmup(DashboardRenderer dashboard) {
+        this.dashboard = dashboard;
+        this.sessions = Integer.parseInt(ConfigLoader.getProperty("warmup.sessions", "4"));
+        this.equities = Integer.parseInt(ConfigLoader.getProperty("warmup.symbols", "10"));
+    }
+
+    /**
+     * Runs the warm-up sessions and logs how the latency of the first gate-evaluating bars
+     * changed between the first (cold) and the last (warm) session.
+     */
+    public void run() {
+        LotSizeProvider.getInstance(); // One-time load with its own console output, before the timing
+        long start = System.nanoTime();
+        long[] cold = null;
+        long[] warm = null;
+        int trades = 0;
+
+        try {
+            for (int s = 0; s < sessions; s++) {
+                Path db = Files.createTempFile("ats-warmup", ".db");
+                Sandbox sandbox = null;
+                try {
+                    sandbox = new Sandbox(db, dashboard);
+                    long[] latency = sandbox.replaySession(new Random(42 + s), equities);
+                    trades += sandbox.positionManager.getClosedPositions().size()
+                            + sandbox.positionManager.getAllPositions().size();
+                    if (s == 0) cold = latency;
+                    warm = latency;
+                } finally {
+                    if (sandbox != null) sandbox.positionManager.close();
+                    Files.deleteIfExists(db);
+                    Files.deleteIfExists(db.resolveSibling(db.getFileName() + "-wal"));
+                    Files.deleteIfExists(db.resolveSibling(db.getFileName() + "-shm"));
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("JIT warm-up aborted: {}", e.getMessage());
+        }
+        if (cold == null) return;
+
+        logger.info("JIT warm-up: {} sessions x {} symbols ({} sandbox trades) in {} ms", sessions,
+                equities + INDICES.length, trades, (System.nanoTime() - start) / 1_000_000);
+        logger.info("JIT warm-up: first-bar latency (minutes {}-{}) cold mean={} us max={} us -> warm mean={} us max={} us",
+                LATENCY_FROM, LATENCY_TO, mean(cold) / 1_000, max(cold) / 1_000, mean(warm) / 1_000, max(warm) / 1_000);
+    }
+
+    private static long mean(long[] latency) {
+        long sum = 0;
+        for (int i = LATENCY_FROM; i < LATENCY_TO; i++) sum += latency[i];
+        return sum / (LATENCY_TO - LATENCY_FROM);
+    }
+
+    private static long max(long[] latency) {
+        return Arrays.stream(latency, LATENCY_FROM, LATENCY_TO).max().orElse(0);
+    }
+
+    /**
+     * One throwaway copy of the live pipeline, wired the way Main wires the real one.
+     */
+    private static final class Sandbox {
+        final PositionManager positionManager;
+        final OptionChainProvider optionChainProvider;
+        final ScalpingSignalEngine engine;
+        final TVMarketDataStreamer streamer;
+
+        Sandbox(Path db, DashboardRenderer dashboard) {
+            positionManager = new PositionManager("jdbc:sqlite:" + db, true);
+            optionChainProvider = new OptionChainProvider(positionManager);
+            engine = new ScalpingSignalEngine(positionManager, optionChainProvider, true);
+            engine.mute();
+            SessionScheduler scheduler = new SessionScheduler(false); // Market clock, no thread
+            scheduler.mute();
+            engine.setScheduler(scheduler);
+            ScenarioRiskEngine scenarioRisk = new ScenarioRiskEngine(positionManager, optionChainProvider);
+            optionChainProvider.setSpotListener(scenarioRisk);
+            engine.setScenarioRisk(scenarioRisk);
+            BarAggregationEngine barEngine = new BarAggregationEngine(new AdaptiveVolumeThresholds(
+                    Long.parseLong(ConfigLoader.getProperty("volume.threshold", "1000"))));
+            barEngine.subscribe(BarAggregationEngine.Resolution.M1, bar -> {
+                scheduler.onBar(bar);
+                engine.onVolumeBar(bar);
+                if (dashboard != null) dashboard.render(bar, optionChainProvider, engine, positionManager);
+            });
+            MarketBreadthEngine breadth = new MarketBreadthEngine();
+            engine.setMarketBreadth(breadth);
+            streamer = new TVMarketDataStreamer(barEngine::onCandle, optionChainProvider, breadth, null);
+            streamer.mute();
+            CrossSectionEngine crossSection = new CrossSectionEngine(null);
+            CorrelationMatrix correlations = new CorrelationMatrix();
+            engine.setCorrelationMatrix(correlations);
+            scenarioRisk.setCorrelationMatrix(correlations);
+            streamer.setBatchListener(batch -> {
+                crossSection.onBatch(batch);
+                correlations.onBatch(batch);
+                breadth.onBatch(batch);
+            });
+        }
+
+        /**
+         * Replays one synthetic session as bridge messages: two snapshots per minute (a
+         * revision and the final candle), plus option chain and breadth updates. Returns the
+         * latency of each minute's final candle message in ns.
+         */
+        long[] replaySession(Random rnd, int equities) {
+            int n = equities + INDICES.length;
+            String[] symbols = new String[n];
+            double[] price = new double[n];
+            double[] drift = new double[n];
+            double[] cumPv = new double[n];
+            long[] cumVol = new long[n];
+            for (int i = 0; i < n; i++) {
+                boolean index = i < INDICES.length;
+                symbols[i] = index ? INDICES[i] : "WARMUP" + i;
+                price[i] = index ? (i == 0 ? 22000 : 48000) : 200 + rnd.nextInt(3000);
+            }
+
+            long open = LocalDate.now(IST).minusDays(7).atTime(9, 15).atZone(IST).toInstant().toEpochMilli();
+            long[] latency = new long[SESSION_MINUTES];
+            StringBuilder sb = new StringBuilder(512 * n);
+            double[] o = new double[n], h = new double[n], l = new double[n];
+            long[] v = new long[n];
+            for (int m = 0; m < SESSION_MINUTES; m++) {
+                long ts = open + m * 60_000L;
+                for (int i = 0; i < n; i++) {
+                    if (m % 30 == 0) drift[i] = rnd.nextGaussian() * 0.0004; // Trend regimes
+                    double step = price[i] * (drift[i] + rnd.nextGaussian() * 0.001);
+                    o[i] = price[i];
+                    price[i] = Math.max(1, price[i] + step);
+                    h[i] = Math.max(o[i], price[i]) + Math.abs(rnd.nextGaussian()) * price[i] * 0.0005;
+                    l[i] = Math.min(o[i], price[i]) - Math.abs(rnd.nextGaussian()) * price[i] * 0.0005;
+                    double spike = rnd.nextDouble() < 0.05 ? 4 + rnd.nextInt(4) : 1;
+                    v[i] = (long) ((m < 15 || m > 345 ? 3 : 1) * spike * (5_000 + rnd.nextInt(10_000)));
+                }
+                // Mid-minute revision, then the final snapshot of the minute
+                for (int pass = 0; pass < 2; pass++) {
+                    sb.setLength(0);
+                    sb.append("{\"type\":\"candle_update\",\"data\":[");
+                    for (int i = 0; i < n; i++) {
+                        double close = pass == 0 ? (o[i] + price[i]) / 2 : price[i];
+                        long vol = pass == 0 ? v[i] / 2 : v[i];
+                        if (pass == 1) {
+                            cumPv[i] += close * vol;
+                            cumVol[i] += vol;
+                        }
+                        double vwap = cumVol[i] > 0 ? cumPv[i] / cumVol[i] : close;
+                        if (i > 0) sb.append(',');
+                        sb.append("{\"symbol\":\"").append(symbols[i]).append("\",\"timestamp\":").append(ts)
+                                .append(",\"1m\":{\"open\":").append(o[i])
+                                .append(",\"high\":").append(pass == 0 ? Math.max(o[i], close) : h[i])
+                                .append(",\"low\":").append(pass == 0 ? Math.min(o[i], close) : l[i])
+                                .append(",\"close\":").append(close)
+                                .append(",\"volume\":").append(vol)
+                                .append(",\"vwap\":").append(vwap).append('}');
+                        if (i < INDICES.length) sb.append(",\"pcr\":").append(0.7 + rnd.nextDouble() * 0.6);
+                        sb.append('}');
+                    }
+                    sb.append("]}");
+                    long t0 = System.nanoTime();
+                    streamer.handleTextMessage(sb.toString());
+                    if (pass == 1) latency[m] = System.nanoTime() - t0;
+                }
+                if (m % 5 == 0) {
+                    streamer.handleTextMessage(optionChain(rnd, price[0], ts));
+                    int adv = rnd.nextInt(51);
+                    streamer.handleTextMessage("{\"type\":\"market_breadth\",\"timestamp\":" + ts + ",\"data\":{\"advances\":"
+                            + adv + ",\"declines\":" + (50 - adv) + ",\"unchanged\":0,\"total\":50}}");
+                }
+            }
+            return latency;
+        }
+
+        private static String optionChain(Random rnd, double spot, long ts) {
+            StringBuilder sb = new StringBuilder(2048);
+            sb.append("{\"type\":\"option_chain\",\"symbol\":\"NSE_INDEX|Nifty 50\",\"timestamp\":").append(ts)
+                    .append(",\"data\":[");
+            long atm = Math.round(spot / 50) * 50;
+            for (int k = -10; k <= 10; k++) {
+                if (k > -10) sb.append(',');
+                sb.append("{\"strike\":").append(atm + k * 50)
+                        .append(",\"call_oi\":").append(500_000 + rnd.nextInt(2_000_000))
+                        .append(",\"put_oi\":").append(500_000 + rnd.nextInt(2_000_000))
+                        .append(",\"call_oi_chg\":").append(rnd.nextInt(200_000) - 100_000)
+                        .append(",\"put_oi_chg\":").append(rnd.nextInt(200_000) - 100_000).append('}');
+            }
+            return sb.append("]}").toString();
+        }
+    }
+}
@@ -2,23 +2,251 @@ package com.trading.hf;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * MarketBreadthEngine stores the latest market-wide advance/decline data.
+ * MarketBreadthEngine computes market-wide advance/decline data from the constituent candles
+ * of each candle_update batch.
+ *
+ * Every equity counts as advancing, declining or unchanged against its previous close, and
+ * its volume so far today goes to the up or down side accordingly (volume-weighted breadth).
+ * The counters are adjusted per bar by removing the symbol's previous contribution, so a
+ * batch costs one pass over its bars. One entry per minute is kept in a primitive ring for
+ * the intraday history. The bridge's own market_breadth message is kept as a fallback for
+ * when too few constituents stream.
  */
 public class MarketBreadthEngine {
     private static final Logger logger = LoggerFactory.getLogger(MarketBreadthEngine.class);
+    private static final long IST_OFFSET_MS = 19_800_000L;
+    private static final long DAY_MS = 86_400_000L;
+
     private final AtomicReference<BreadthSnapshot> latestSnapshot = new AtomicReference<>(new BreadthSnapshot(0, 0, 0, 0));
+    private final AtomicReference<BreadthSnapshot> localSnapshot = new AtomicReference<>();
+    private final int minSymbols;
+
+    // Per-slot columns
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<String, Double> seededCloses = new HashMap<>();
+    private long[] day = new long[64];
+    private double[] prevClose = new double[64];
+    private double[] lastClose = new double[64];
+    private long[] lastMinute = new long[64];
+    private long[] dayVolume = new long[64];   // Completed minutes of the day
+    private long[] minuteVolume = new long[64]; // Latest snapshot of the running minute
+    private int[] sign = new int[64];           // Current contribution: 1, -1 or 0
+    private long[] weight = new long[64];       // Volume currently counted for the slot
+    private boolean[] counted = new boolean[64];
 
+    // Running totals for the current day
+    private long currentDay = Long.MIN_VALUE;
+    private int advances, declines, unchanged;
+    private long upVolume, downVolume;
+
+    // Intraday history, one entry per minute
+    private final long[] histMinute;
+    private final int[] histAdvances;
+    private final int[] histDeclines;
+    private final int[] histUnchanged;
+    private final double[] histVolumeBreadth;
+    private int histHead;
+    private int histCount;
+
+    public MarketBreadthEngine() {
+        this.minSymbols = Integer.parseInt(ConfigLoader.getProperty("breadth.min.symbols", "10"));
+        int capacity = Integer.parseInt(ConfigLoader.getProperty("breadth.history.minutes", "375"));
+        this.histMinute = new long[capacity];
+        this.histAdvances = new int[capacity];
+        this.histDeclines = new int[capacity];
+        this.histUnchanged = new int[capacity];
+        this.histVolumeBreadth = new double[capacity];
+    }
+
+    /** Breadth as reported by the bridge's market_breadth message. */
     public void update(int advances, int declines, int unchanged, int total) {
         BreadthSnapshot next = new BreadthSnapshot(advances, declines, unchanged, total);
         latestSnapshot.set(next);
-        logger.info("Market Breadth Updated: Adv: {}, Dec: {}, Total: {}", advances, declines, total);
+        logger.debug("Market Breadth Updated: Adv: {}, Dec: {}, Total: {}", advances, declines, total);
+    }
+
+    /**
+     * Previous closes for the first session the engine sees (e.g. yesterday's close from the
+     * warm-started indicators). Later sessions use the last close streamed the day before;
+     * symbols with neither are judged against their day's open.
+     */
+    public synchronized void seedPreviousCloses(Map<String, TechnicalIndicators> indicators) {
+        indicators.forEach((symbol, ind) -> {
+            if (ind.getYesterdayClose() > 0) seededCloses.put(symbol, ind.getYesterdayClose());
+        });
+    }
+
+    /**
+     * Folds one candle_update batch into the counters and records the minute in the history.
+     * Index candles are skipped.
+     */
+    public synchronized void onBatch(List<VolumeBar> bars) {
+        if (bars.isEmpty()) return;
+        long batchMinute = bars.get(0).getStartTime();
+        long batchDay = Math.floorDiv(batchMinute + IST_OFFSET_MS, DAY_MS);
+        if (batchDay > currentDay) {
+            currentDay = batchDay;
+            advances = declines = unchanged = 0;
+            upVolume = downVolume = 0;
+            histCount = 0;
+            Arrays.fill(counted, false);
+        }
+        for (VolumeBar bar : bars) {
+            if (bar.getSymbol().startsWith("NSE_INDEX|")) continue;
+            long barDay = Math.floorDiv(bar.getStartTime() + IST_OFFSET_MS, DAY_MS);
+            if (barDay != currentDay) continue; // Late candle of a previous day
+            track(slotOf(bar.getSymbol()), bar, barDay);
+        }
+        record(batchMinute);
+        int total = advances + declines + unchanged;
+        if (total > 0) {
+            localSnapshot.set(new BreadthSnapshot(advances, declines, unchanged, total, volumeBreadth(), batchMinute));
+        }
+    }
+
+    private void track(int slot, VolumeBar bar, long barDay) {
+        if (barDay != day[slot]) {
+            if (day[slot] != Long.MIN_VALUE && lastClose[slot] > 0) {
+                prevClose[slot] = lastClose[slot];
+            } else {
+                Double seeded = seededCloses.get(bar.getSymbol());
+                prevClose[slot] = (seeded != null) ? seeded : bar.getOpen();
+            }
+            day[slot] = barDay;
+            dayVolume[slot] = 0;
+            minuteVolume[slot] = 0;
+        }
+        long minute = bar.getStartTime();
+        if (minute > lastMinute[slot]) {
+            dayVolume[slot] += minuteVolume[slot]; // The previous minute is final now
+            lastMinute[slot] = minute;
+        } else if (minute < lastMinute[slot]) {
+            return; // Stale revision
+        }
+        minuteVolume[slot] = bar.getVolume();
+        lastClose[slot] = bar.getClose();
+
+        if (counted[slot]) remove(sign[slot], weight[slot]);
+        double ref = prevClose[slot];
+        int s = (ref <= 0 || bar.getClose() == ref) ? 0 : (bar.getClose() > ref ? 1 : -1);
+        long w = dayVolume[slot] + minuteVolume[slot];
+        add(s, w);
+        sign[slot] = s;
+        weight[slot] = w;
+        counted[slot] = true;
+    }
+
+    private void add(int s, long w) {
+        if (s > 0) {
+            advances++;
+            upVolume += w;
+        } else if (s < 0) {
+            declines++;
+            downVolume += w;
+        } else {
+            unchanged++;
+        }
+    }
+
+    private void remove(int s, long w) {
+        if (s > 0) {
+            advances--;
+            upVolume -= w;
+        } else if (s < 0) {
+            declines--;
+            downVolume -= w;
+        } else {
+            unchanged--;
+        }
+    }
+
+    private double volumeBreadth() {
+        long total = upVolume + downVolume;
+        return total > 0 ? (double) (upVolume - downVolume) / total : 0.0;
     }
 
+    /** Writes the current counters to the minute's history entry (revisions overwrite it). */
+    private void record(long minute) {
+        int capacity = histMinute.length;
+        int last = (histHead - 1 + capacity) % capacity;
+        int i;
+        if (histCount > 0 && histMinute[last] == minute) {
+            i = last;
+        } else if (histCount > 0 && minute < histMinute[last]) {
+            return;
+        } else {
+            i = histHead;
+            histHead = (histHead + 1) % capacity;
+            if (histCount < capacity) histCount++;
+        }
+        histMinute[i] = minute;
+        histAdvances[i] = advances;
+        histDeclines[i] = declines;
+        histUnchanged[i] = unchanged;
+        histVolumeBreadth[i] = volumeBreadth();
+    }
+
+    /**
+     * Breadth computed from the streamed constituents once at least breadth.min.symbols of
+     * them have traded today, otherwise the bridge's last report.
+     */
     public BreadthSnapshot getLatest() {
-        return latestSnapshot.get();
+        BreadthSnapshot local = localSnapshot.get();
+        return (local != null && local.total >= minSymbols) ? local : latestSnapshot.get();
+    }
+
+    /**
+     * Change in volume-weighted breadth over the last n minutes of today's history; 0 until
+     * there are n minutes.
+     */
+    public synchronized double volumeBreadthChange(int minutes) {
+        if (histCount <= minutes) return 0.0;
+        int capacity = histMinute.length;
+        int now = (histHead - 1 + capacity) % capacity;
+        int then = (histHead - 1 - minutes + capacity) % capacity;
+        return histVolumeBreadth[now] - histVolumeBreadth[then];
+    }
+
+    /** Today's per-minute history, oldest first. */
+    public synchronized List<BreadthSnapshot> getHistory() {
+        int capacity = histMinute.length;
+        List<BreadthSnapshot> out = new ArrayList<>(histCount);
+        for (int k = histCount; k > 0; k--) {
+            int i = (histHead - k + capacity) % capacity;
+            out.add(new BreadthSnapshot(histAdvances[i], histDeclines[i], histUnchanged[i],
+                    histAdvances[i] + histDeclines[i] + histUnchanged[i], histVolumeBreadth[i], histMinute[i]));
+        }
+        return out;
+    }
+
+    private int slotOf(String symbol) {
+        Integer slot = slots.get(symbol);
+        if (slot != null) return slot;
+        int s = slots.size();
+        if (s == day.length) {
+            int cap = s * 2;
+            day = Arrays.copyOf(day, cap);
+            prevClose = Arrays.copyOf(prevClose, cap);
+            lastClose = Arrays.copyOf(lastClose, cap);
+            lastMinute = Arrays.copyOf(lastMinute, cap);
+            dayVolume = Arrays.copyOf(dayVolume, cap);
+            minuteVolume = Arrays.copyOf(minuteVolume, cap);
+            sign = Arrays.copyOf(sign, cap);
+            weight = Arrays.copyOf(weight, cap);
+            counted = Arrays.copyOf(counted, cap);
+        }
+        day[s] = Long.MIN_VALUE;
+        slots.put(symbol, s);
+        return s;
     }
 
     public static class BreadthSnapshot {
@@ -26,16 +254,30 @@ public class MarketBreadthEngine {
         public final int declines;
         public final int unchanged;
         public final int total;
+        public final double volumeBreadth; // (up volume - down volume) / traded volume; NaN from the bridge
+        public final long timestamp;
 
         public BreadthSnapshot(int advances, int declines, int unchanged, int total) {
+            this(advances, declines, unchanged, total, Double.NaN, 0L);
+        }
+
+        public BreadthSnapshot(int advances, int declines, int unchanged, int total, double volumeBreadth,
+                long timestamp) {
             this.advances = advances;
             this.declines = declines;
             this.unchanged = unchanged;
             this.total = total;
+            this.volumeBreadth = volumeBreadth;
+            this.timestamp = timestamp;
         }
 
         public double getRatio() {
             return (declines == 0) ? advances : (double) advances / declines;
         }
+
+        /** (advances - declines) / total, in [-1, 1]. */
+        public double getNet() {
+            return (total == 0) ? 0.0 : (double) (advances - declines) / total;
+        }
     }
 }
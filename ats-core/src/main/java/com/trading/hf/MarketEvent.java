@@ -17,6 +17,13 @@ public class MarketEvent {
     private double bestBidPrice;
     private double bestAskPrice;
 
+    // MarketLevel depth quotes; the arrays are reused across snapshots
+    private final double[] bidPrices = new double[DepthBook.MAX_LEVELS];
+    private final long[] bidQtys = new long[DepthBook.MAX_LEVELS];
+    private final double[] askPrices = new double[DepthBook.MAX_LEVELS];
+    private final long[] askQtys = new long[DepthBook.MAX_LEVELS];
+    private int depthLevels;
+
     // Simplified MarketEvent without padding or Disruptor dependencies
 
     public double getBestBidPrice() {
@@ -35,6 +42,39 @@ public class MarketEvent {
         this.bestAskPrice = bestAskPrice;
     }
 
+    /** Sets depth level i (0 = best) from a MarketLevel bidAskQuote. */
+    public void setDepthLevel(int i, double bidPrice, long bidQty, double askPrice, long askQty) {
+        bidPrices[i] = bidPrice;
+        bidQtys[i] = bidQty;
+        askPrices[i] = askPrice;
+        askQtys[i] = askQty;
+    }
+
+    /** Number of depth levels set for this snapshot; 0 when the event carries no depth. */
+    public void setDepthLevels(int depthLevels) {
+        this.depthLevels = Math.min(depthLevels, DepthBook.MAX_LEVELS);
+    }
+
+    public int getDepthLevels() {
+        return depthLevels;
+    }
+
+    public double getBidPrice(int i) {
+        return bidPrices[i];
+    }
+
+    public long getBidQty(int i) {
+        return bidQtys[i];
+    }
+
+    public double getAskPrice(int i) {
+        return askPrices[i];
+    }
+
+    public long getAskQty(int i) {
+        return askQtys[i];
+    }
+
     public String getSymbol() {
         return symbol;
     }
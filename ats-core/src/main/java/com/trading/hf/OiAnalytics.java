@@ -0,0 +1,154 @@
+package com.trading.hf;
+
+/**
+ * Open-interest analytics of one option chain version, computed once when the chain is
+ * published (see OptionChainRegistry) and immutable afterwards, so signal sizing and the
+ * dashboard read them without touching the chain entries.
+ *
+ * Per strike: CE/PE OI, PCR and the day's OI change on each side. The change percent is
+ * against the earlier OI, so the absolute change is OI x pct / (100 + pct). Chain-wide:
+ * PCR, PCR of the OI change, max pain and the strikes with the largest call and put OI.
+ * Strike lookups are array reads; strikes outside the chain read as 0.
+ */
+public final class OiAnalytics {
+
+    public final String underlying;
+    public final long version;
+    public final long timestamp;
+    public final double pcr;
+    public final double pcrOfChange;
+    public final int maxPain;
+    public final int callWall;
+    public final int putWall;
+
+    private final OptionChainRegistry.ChainVersion chain;
+    private final double[] ceChange;
+    private final double[] peChange;
+
+    private OiAnalytics(OptionChainRegistry.ChainVersion chain) {
+        this.chain = chain;
+        this.underlying = chain.underlying;
+        this.version = chain.version;
+        this.timestamp = chain.timestamp;
+        int n = chain.size();
+        this.ceChange = new double[n];
+        this.peChange = new double[n];
+
+        double ceTotal = 0, peTotal = 0, ceChgTotal = 0, peChgTotal = 0;
+        int callMax = 0, putMax = 0;
+        for (int i = 0; i < n; i++) {
+            ceChange[i] = added(chain.oi(i, true), chain.oiChangePercent(i, true));
+            peChange[i] = added(chain.oi(i, false), chain.oiChangePercent(i, false));
+            ceTotal += chain.oi(i, true);
+            peTotal += chain.oi(i, false);
+            ceChgTotal += ceChange[i];
+            peChgTotal += peChange[i];
+            if (chain.oi(i, true) > chain.oi(callMax, true)) callMax = i;
+            if (chain.oi(i, false) > chain.oi(putMax, false)) putMax = i;
+        }
+        this.pcr = (ceTotal > 0) ? peTotal / ceTotal : 1.0;
+        // Put OI added relative to call OI added today (>1: puts written faster)
+        this.pcrOfChange = (ceChgTotal == 0) ? (peChgTotal > 0 ? 10.0 : 1.0) : Math.max(0.1, peChgTotal / ceChgTotal);
+        this.callWall = chain.strikeAt(callMax);
+        this.putWall = chain.strikeAt(putMax);
+        this.maxPain = maxPain(chain);
+    }
+
+    /** Analytics of a chain version. */
+    public static OiAnalytics of(OptionChainRegistry.ChainVersion chain) {
+        return new OiAnalytics(chain);
+    }
+
+    /** OI added since the earlier reading, from the current OI and the change in percent of the earlier OI. */
+    static double added(double oi, double changePercent) {
+        double base = 100.0 + changePercent;
+        return (base > 0) ? oi * changePercent / base : 0.0;
+    }
+
+    /**
+     * Expiry settlement with the least total payout to option holders. Writer loss at
+     * settlement S_i is sum_{j<i} ce_j (S_i - K_j) + sum_{j>i} pe_j (K_j - S_i), evaluated for
+     * every strike with running sums in two passes.
+     */
+    private static int maxPain(OptionChainRegistry.ChainVersion chain) {
+        int n = chain.size();
+        double[] pain = new double[n];
+        double oi = 0, weighted = 0; // Calls below: sum ce_j and sum ce_j * K_j
+        for (int i = 0; i < n; i++) {
+            double s = chain.strikeAt(i);
+            pain[i] = oi * s - weighted;
+            oi += chain.oi(i, true);
+            weighted += chain.oi(i, true) * s;
+        }
+        oi = 0;
+        weighted = 0; // Puts above
+        for (int i = n - 1; i >= 0; i--) {
+            double s = chain.strikeAt(i);
+            pain[i] += weighted - oi * s;
+            oi += chain.oi(i, false);
+            weighted += chain.oi(i, false) * s;
+        }
+        int best = 0;
+        for (int i = 1; i < n; i++) {
+            if (pain[i] < pain[best]) best = i;
+        }
+        return chain.strikeAt(best);
+    }
+
+    public OptionChainRegistry.ChainVersion chain() {
+        return chain;
+    }
+
+    public double callOi(int strike) {
+        int i = chain.indexOf(strike);
+        return (i >= 0) ? chain.oi(i, true) : 0.0;
+    }
+
+    public double putOi(int strike) {
+        int i = chain.indexOf(strike);
+        return (i >= 0) ? chain.oi(i, false) : 0.0;
+    }
+
+    /** Call OI added today at the strike. */
+    public double callChange(int strike) {
+        int i = chain.indexOf(strike);
+        return (i >= 0) ? ceChange[i] : 0.0;
+    }
+
+    /** Put OI added today at the strike. */
+    public double putChange(int strike) {
+        int i = chain.indexOf(strike);
+        return (i >= 0) ? peChange[i] : 0.0;
+    }
+
+    /** Put/call OI ratio at the strike; NaN when the strike has no call OI. */
+    public double strikePcr(int strike) {
+        double ce = callOi(strike);
+        return (ce > 0) ? putOi(strike) / ce : Double.NaN;
+    }
+
+    /** Call change minus put change at the strike. */
+    public double netChange(int strike) {
+        return callChange(strike) - putChange(strike);
+    }
+
+    /** Strike with the most call OI among the k strikes above ATM (ATM itself when none). */
+    public int callWallAbove(double spot, int k) {
+        int atm = chain.atmIndex(spot);
+        int best = -1;
+        for (int i = atm + 1; i <= atm + k && i < chain.size(); i++) {
+            if (best < 0 || chain.oi(i, true) > chain.oi(best, true)) best = i;
+        }
+        return chain.strikeAt(best < 0 ? atm : best);
+    }
+
+    /** Strike with the most put OI among the k strikes below ATM (ATM itself when none). */
+    public int putWallBelow(double spot, int k) {
+        int atm = chain.atmIndex(spot);
+        int best = -1;
+        for (int i = atm - 1; i >= atm - k && i >= 0; i--) {
+            if (best < 0 || chain.oi(i, false) > chain.oi(best, false)) best = i;
+        }
+        return chain.strikeAt(best < 0 ? atm : best);
+    }
+}
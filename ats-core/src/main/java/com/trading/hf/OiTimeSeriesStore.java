@@ -0,0 +1,349 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Session history of option OI, LTP and PCR per underlying, one value per session minute.
+ *
+ * Every strike has CE/PE OI and LTP columns and every underlying has chain OI totals, chain
+ * PCR and the bridge's index PCR, each a primitive array of 375 minutes (09:15 - 15:30). A
+ * write sets its minute and carries the previous value over any minutes that had none, so a
+ * read of minute m is an array read and "change over the last n minutes" is two of them.
+ * Columns also keep prefix sums of v and m * v, which give the mean and least-squares slope
+ * of any window in O(1) (used for the PCR trend).
+ *
+ * Values are as-of: writes to a minute before the column's latest are dropped, and the
+ * first write of a later IST day starts a new session. Chains come from the bridge
+ * ({@link #record(OptionChainRegistry.ChainVersion)}), option ticks from the feed, and
+ * earlier minutes of a session from options_data.db ({@link #load}).
+ */
+public class OiTimeSeriesStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OiTimeSeriesStore.class);
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final long IST_OFFSET_MS = 19_800_000L;
+    private static final long DAY_MS = 86_400_000L;
+    private static final int SESSION_OPEN_MINUTE = 9 * 60 + 15;
+    static final int SESSION_MINUTES = 375; // 09:15 - 15:30
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    /** Records a bridge chain version: every strike's OI and LTP, the totals and the PCR. */
+    public void record(OptionChainRegistry.ChainVersion chain) {
+        if (chain == null) return;
+        long ts = (chain.timestamp > 0) ? chain.timestamp : System.currentTimeMillis();
+        Series s = seriesFor(chain.underlying, ts);
+        if (s == null) return;
+        int minute = minuteOf(ts);
+        synchronized (s) {
+            double ceTotal = 0, peTotal = 0;
+            for (int i = 0; i < chain.size(); i++) {
+                double ceOi = chain.oi(i, true), peOi = chain.oi(i, false);
+                if (ceOi == 0 && peOi == 0 && chain.ltp(i, true) == 0 && chain.ltp(i, false) == 0) continue;
+                Strike k = s.strike(chain.strikeAt(i));
+                k.ceOi.set(minute, ceOi);
+                k.peOi.set(minute, peOi);
+                k.ceLtp.set(minute, chain.ltp(i, true));
+                k.peLtp.set(minute, chain.ltp(i, false));
+                ceTotal += ceOi;
+                peTotal += peOi;
+            }
+            s.ceTotal.set(minute, ceTotal);
+            s.peTotal.set(minute, peTotal);
+            if (ceTotal > 0) s.pcr.set(minute, peTotal / ceTotal);
+        }
+    }
+
+    /** Records one option tick (the tick-built chain when no bridge chain streams). */
+    public void recordOption(OptionSymbolCodec.OptionInstrument option, long ts, double oi, double ltp) {
+        Series s = seriesFor(option.underlying, ts);
+        if (s == null) return;
+        int minute = minuteOf(ts);
+        synchronized (s) {
+            Strike k = s.strike(option.getStrike());
+            (option.call ? k.ceOi : k.peOi).set(minute, oi);
+            (option.call ? k.ceLtp : k.peLtp).set(minute, ltp);
+        }
+    }
+
+    /** Records the index PCR reported by the bridge. */
+    public void recordIndexPcr(String underlying, long ts, double pcr) {
+        Series s = seriesFor(underlying, ts);
+        if (s == null) return;
+        synchronized (s) {
+            s.indexPcr.set(minuteOf(ts), pcr);
+        }
+    }
+
+    /** Latest OI of the strike's side, or NaN when it was never recorded today. */
+    public double latestOi(String underlying, int strike, boolean call) {
+        Series s = series.get(SymbolUtil.canonicalUnderlying(underlying));
+        if (s == null) return Double.NaN;
+        synchronized (s) {
+            Column c = s.oi(strike, call);
+            return (c == null) ? Double.NaN : c.latest();
+        }
+    }
+
+    /** OI change of the strike's side over the last n minutes (since its first reading when shorter). */
+    public double oiChange(String underlying, int strike, boolean call, int minutes) {
+        Series s = series.get(SymbolUtil.canonicalUnderlying(underlying));
+        if (s == null) return 0.0;
+        synchronized (s) {
+            Column c = s.oi(strike, call);
+            return (c == null) ? 0.0 : c.change(minutes);
+        }
+    }
+
+    /** OI change of the strike's side since its first reading today, in percent. */
+    public double dayOiChangePercent(String underlying, int strike, boolean call) {
+        Series s = series.get(SymbolUtil.canonicalUnderlying(underlying));
+        if (s == null) return 0.0;
+        synchronized (s) {
+            Column c = s.oi(strike, call);
+            double first = (c == null) ? 0.0 : c.first();
+            return (first > 0) ? (c.latest() - first) / first * 100.0 : 0.0;
+        }
+    }
+
+    /** Change in total chain OI of one side over the last n minutes. */
+    public double totalOiChange(String underlying, boolean call, int minutes) {
+        Series s = series.get(SymbolUtil.canonicalUnderlying(underlying));
+        if (s == null) return 0.0;
+        synchronized (s) {
+            return (call ? s.ceTotal : s.peTotal).change(minutes);
+        }
+    }
+
+    /** Change in chain PCR over the last n minutes. */
+    public double pcrChange(String underlying, int minutes) {
+        Series s = series.get(SymbolUtil.canonicalUnderlying(underlying));
+        if (s == null) return 0.0;
+        synchronized (s) {
+            return s.pcr.change(minutes);
+        }
+    }
+
+    /** Least-squares slope of the chain PCR per minute over the last n minutes; 0 with fewer than 2. */
+    public double pcrTrend(String underlying, int minutes) {
+        Series s = series.get(SymbolUtil.canonicalUnderlying(underlying));
+        if (s == null) return 0.0;
+        synchronized (s) {
+            return s.pcr.slope(minutes);
+        }
+    }
+
+    /** Mean chain PCR over the last n minutes, or NaN before the first chain. */
+    public double pcrMean(String underlying, int minutes) {
+        Series s = series.get(SymbolUtil.canonicalUnderlying(underlying));
+        if (s == null) return Double.NaN;
+        synchronized (s) {
+            return s.pcr.mean(minutes);
+        }
+    }
+
+    /** Percent change of the bridge's index PCR over the last n minutes; 0 without history. */
+    public double indexPcrChangePercent(String underlying, int minutes) {
+        Series s = series.get(SymbolUtil.canonicalUnderlying(underlying));
+        if (s == null) return 0.0;
+        synchronized (s) {
+            double now = s.indexPcr.latest();
+            double then = s.indexPcr.at(s.indexPcr.last - minutes);
+            return (then > 0 && !Double.isNaN(now)) ? (now - then) / then * 100.0 : 0.0;
+        }
+    }
+
+    /**
+     * Loads a session's snapshots from options_data.db (option_chain_details, written by the
+     * Trendlyne collector) for both indices. Returns the number of rows read.
+     */
+    public int load(String dbUrl, LocalDate date) {
+        long start = System.nanoTime();
+        String sql = "SELECT symbol, timestamp, strike, call_oi, put_oi FROM option_chain_details "
+                + "WHERE date = ? ORDER BY timestamp, strike";
+        int rows = 0;
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, date.toString());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long ts = date.atTime(LocalTime.parse(rs.getString("timestamp"))).atZone(IST).toInstant().toEpochMilli();
+                    Series s = seriesFor(rs.getString("symbol"), ts);
+                    if (s == null) continue;
+                    int minute = minuteOf(ts);
+                    synchronized (s) {
+                        Strike k = s.strike((int) Math.round(rs.getDouble("strike")));
+                        k.ceOi.set(minute, rs.getLong("call_oi"));
+                        k.peOi.set(minute, rs.getLong("put_oi"));
+                    }
+                    rows++;
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("OI history load from {} skipped: {}", dbUrl, e.getMessage());
+            return 0;
+        }
+        // Totals and PCR per minute from the loaded strikes
+        series.values().forEach(Series::rebuildTotals);
+        logger.info("Loaded {} option chain rows for {} from {} in {} ms", rows, date, dbUrl,
+                (System.nanoTime() - start) / 1_000_000);
+        return rows;
+    }
+
+    public void clear() {
+        series.clear();
+    }
+
+    /** The underlying's series for the time's session; null for a day before it. */
+    private Series seriesFor(String underlying, long ts) {
+        String key = SymbolUtil.canonicalUnderlying(underlying);
+        long day = Math.floorDiv(ts + IST_OFFSET_MS, DAY_MS);
+        Series s = series.get(key);
+        if (s != null && s.day == day) return s;
+        if (s != null && s.day > day) return null;
+        Series current = series.compute(key, (k, old) -> (old == null || old.day < day) ? new Series(day) : old);
+        return (current.day == day) ? current : null;
+    }
+
+    /** Session minute of the time, clamped to the session (pre-open is minute 0). */
+    static int minuteOf(long ts) {
+        int minuteOfDay = (int) Math.floorMod(Math.floorDiv(ts + IST_OFFSET_MS, 60_000L), 1440L);
+        return Math.max(0, Math.min(SESSION_MINUTES - 1, minuteOfDay - SESSION_OPEN_MINUTE));
+    }
+
+    private static final class Series {
+        final long day;
+        final Map<Integer, Strike> strikes = new HashMap<>();
+        final Column ceTotal = new Column();
+        final Column peTotal = new Column();
+        final Column pcr = new Column();
+        final Column indexPcr = new Column();
+
+        Series(long day) {
+            this.day = day;
+        }
+
+        Strike strike(int strike) {
+            return strikes.computeIfAbsent(strike, k -> new Strike());
+        }
+
+        Column oi(int strike, boolean call) {
+            Strike k = strikes.get(strike);
+            return (k == null) ? null : (call ? k.ceOi : k.peOi);
+        }
+
+        synchronized void rebuildTotals() {
+            int until = -1;
+            for (Strike k : strikes.values()) until = Math.max(until, Math.max(k.ceOi.last, k.peOi.last));
+            for (int m = Math.max(0, ceTotal.last + 1); m <= until; m++) {
+                double ce = 0, pe = 0;
+                boolean any = false;
+                for (Strike k : strikes.values()) {
+                    if (k.ceOi.firstMinute <= m && k.ceOi.last >= 0) {
+                        ce += k.ceOi.at(m);
+                        any = true;
+                    }
+                    if (k.peOi.firstMinute <= m && k.peOi.last >= 0) {
+                        pe += k.peOi.at(m);
+                        any = true;
+                    }
+                }
+                if (!any) continue;
+                ceTotal.set(m, ce);
+                peTotal.set(m, pe);
+                if (ce > 0) pcr.set(m, pe / ce);
+            }
+        }
+    }
+
+    private static final class Strike {
+        final Column ceOi = new Column();
+        final Column peOi = new Column();
+        final Column ceLtp = new Column();
+        final Column peLtp = new Column();
+    }
+
+    /**
+     * One value per session minute, forward-filled, with prefix sums of v and m * v up to
+     * the latest written minute.
+     */
+    private static final class Column {
+        final double[] values = new double[SESSION_MINUTES];
+        final double[] sum = new double[SESSION_MINUTES];
+        final double[] weighted = new double[SESSION_MINUTES];
+        int firstMinute = -1;
+        int last = -1;
+
+        void set(int minute, double v) {
+            if (minute < last) return;
+            if (last < 0) firstMinute = minute;
+            for (int m = Math.max(last + 1, firstMinute); m < minute; m++) put(m, values[last]);
+            put(minute, v);
+            last = minute;
+        }
+
+        private void put(int m, double v) {
+            values[m] = v;
+            double prev = (m > firstMinute) ? sum[m - 1] : 0.0;
+            double prevW = (m > firstMinute) ? weighted[m - 1] : 0.0;
+            sum[m] = prev + v;
+            weighted[m] = prevW + m * v;
+        }
+
+        double latest() {
+            return (last < 0) ? Double.NaN : values[last];
+        }
+
+        double first() {
+            return (last < 0) ? Double.NaN : values[firstMinute];
+        }
+
+        /** Value as of the minute, clamped to the written minutes; NaN before any write. */
+        double at(int minute) {
+            if (last < 0) return Double.NaN;
+            return values[Math.max(firstMinute, Math.min(last, minute))];
+        }
+
+        double change(int minutes) {
+            return (last < 0) ? 0.0 : values[last] - at(last - minutes);
+        }
+
+        double mean(int minutes) {
+            if (last < 0) return Double.NaN;
+            int from = Math.max(firstMinute, last - minutes + 1);
+            double total = sum[last] - ((from > firstMinute) ? sum[from - 1] : 0.0);
+            return total / (last - from + 1);
+        }
+
+        double slope(int minutes) {
+            if (last < 0) return 0.0;
+            int from = Math.max(firstMinute, last - minutes + 1);
+            int n = last - from + 1;
+            if (n < 2) return 0.0;
+            double sy = sum[last] - ((from > firstMinute) ? sum[from - 1] : 0.0);
+            double sxy = weighted[last] - ((from > firstMinute) ? weighted[from - 1] : 0.0);
+            // x = from .. last: sum x and sum x^2 in closed form
+            double sx = (double) n * (from + last) / 2.0;
+            double sxx = sumSquares(last) - sumSquares(from - 1);
+            double denom = n * sxx - sx * sx;
+            return (denom == 0) ? 0.0 : (n * sxy - sx * sy) / denom;
+        }
+
+        private static double sumSquares(long k) {
+            return (k <= 0) ? 0.0 : k * (k + 1) * (2 * k + 1) / 6.0;
+        }
+    }
+}
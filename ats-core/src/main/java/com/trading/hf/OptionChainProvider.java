@@ -4,7 +4,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.Comparator;
 
@@ -12,19 +12,36 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class OptionChainProvider implements MarketEventListener {
+
+    /**
+     * Receives every index spot update (after the synthetic option prices were refreshed).
+     */
+    public interface SpotListener {
+        void onSpot(String underlying, double spot, long timestamp);
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(OptionChainProvider.class);
     private final Map<String, MarketEvent> optionState = new ConcurrentHashMap<>();
-    private final Map<String, Double> previousOi = new ConcurrentHashMap<>();
     private final Map<String, Double> indexSpots = new ConcurrentHashMap<>();
+    private final Map<String, Long> spotTimes = new ConcurrentHashMap<>();
+    private final Map<String, BlackScholesPricer.Surface> syntheticSurfaces = new ConcurrentHashMap<>();
     private final Map<String, Double> indexPcr = new ConcurrentHashMap<>();
-    private final Map<String, Double> prevIndexPcr = new ConcurrentHashMap<>();
-    private final AtomicReference<Double> spotPrice = new AtomicReference<>(0.0);
-    private static final int STRIKE_DIFFERENCE = 50;
-    private static final int BANKNIFTY_STRIKE_DIFF = 100;
+    private static final String DEFAULT_UNDERLYING = "NIFTY";
     private static final int WINDOW_SIZE = 2; // ATM +/- 2 strikes
+    // Index PCR change is measured over this many minutes of the session history
+    private final int pcrChangeMinutes = Integer.parseInt(ConfigLoader.getProperty("oi.pcr.change.minutes", "1"));
     
     private final PositionManager positionManager;
-    private final AtomicReference<List<OptionChainDto>> injectedChain = new AtomicReference<>(List.of());
+    private volatile SpotListener spotListener;
+    // Bridge chains per underlying/expiry; spots, PCR and chains are keyed by canonical underlying
+    private final OptionChainRegistry chainRegistry = new OptionChainRegistry();
+    // Synthetic premiums and Greeks when the chain has no price for a strike
+    private final BlackScholesPricer pricer = new BlackScholesPricer();
+    // Per-minute OI/LTP/PCR history of the session
+    private final OiTimeSeriesStore oiHistory = new OiTimeSeriesStore();
+    // Analytics of the tick-built window, reused until an option tick or the ATM strike changes it
+    private final AtomicLong optionTicks = new AtomicLong();
+    private final Map<String, TickChain> tickChains = new ConcurrentHashMap<>();
 
     public OptionChainProvider(PositionManager positionManager) {
         this.positionManager = positionManager;
@@ -36,87 +53,178 @@ public class OptionChainProvider implements MarketEventListener {
         if (symbol == null) return;
 
         if (symbol.startsWith("NSE|INDEX|")) {
-            indexSpots.put(symbol, event.getLtp());
-            if ("NSE|INDEX|NIFTY".equals(symbol)) {
-                spotPrice.set(event.getLtp());
-            }
+            indexSpots.put(SymbolUtil.canonicalUnderlying(symbol), event.getLtp());
+            spotTimes.put(SymbolUtil.canonicalUnderlying(symbol), event.getTs() > 0 ? event.getTs() : System.currentTimeMillis());
         } else if (symbol.contains("CE") || symbol.contains("PE")) {
             optionState.put(symbol, event);
+            optionTicks.incrementAndGet();
+            OptionSymbolCodec.OptionInstrument option = OptionSymbolCodec.parse(symbol);
+            if (option != null) {
+                oiHistory.recordOption(option, event.getTs() > 0 ? event.getTs() : System.currentTimeMillis(),
+                        event.getOi(), event.getLtp());
+            }
             if (positionManager != null) {
                 positionManager.updateLtp(symbol, event.getLtp());
             }
         }
         
         // Generate Synthetic Option Prices from Spot for Backtesting if Data Missing
-        if (symbol.startsWith("NSE|INDEX|") && indexSpots.containsKey(symbol)) {
-            updateSyntheticOptions(symbol, event.getLtp());
+        if (symbol.startsWith("NSE|INDEX|")) {
+            String underlying = SymbolUtil.canonicalUnderlying(symbol);
+            updateSyntheticOptions(underlying, event.getLtp(), spotTimes.get(underlying));
+            notifySpot(underlying, event.getLtp(), spotTimes.get(underlying));
         }
     }
 
+    private static boolean isIndex(String symbol) {
+        return symbol.startsWith("NSE|INDEX|") || symbol.startsWith("NSE_INDEX|");
+    }
+
     public void updateSpot(String symbol, double price) {
-        if (symbol.startsWith("NSE|INDEX|")) {
-             indexSpots.put(symbol, price);
+        updateSpot(symbol, price, System.currentTimeMillis());
+    }
+
+    /** Index spot as of the given time (bar time in replays), which drives time to expiry. */
+    public void updateSpot(String symbol, double price, long timestamp) {
+        if (isIndex(symbol)) {
+             String underlying = SymbolUtil.canonicalUnderlying(symbol);
+             indexSpots.put(underlying, price);
+             spotTimes.put(underlying, timestamp);
              // Also update synthetic options immediately
-             updateSyntheticOptions(symbol, price);
+             updateSyntheticOptions(underlying, price, timestamp);
+             notifySpot(underlying, price, timestamp);
         }
     }
 
+    private void notifySpot(String underlying, double spot, long timestamp) {
+        SpotListener listener = spotListener;
+        if (listener != null && spot > 0) listener.onSpot(underlying, spot, timestamp);
+    }
+
+    public void setSpotListener(SpotListener listener) {
+        this.spotListener = listener;
+    }
+
+    /** Last spot of the underlying (any index form), or 0 before the first. */
+    public double getSpot(String underlying) {
+        return indexSpots.getOrDefault(SymbolUtil.canonicalUnderlying(underlying), 0.0);
+    }
+
     public void updateIndexPcr(String symbol, double pcr) {
+        updateIndexPcr(symbol, pcr, marketTime(symbol));
+    }
+
+    public void updateIndexPcr(String symbol, double pcr, long timestamp) {
         if (symbol == null) return;
-        if (symbol.startsWith("NSE|INDEX|")) {
-            Double current = indexPcr.get(symbol);
-            if (current != null) prevIndexPcr.put(symbol, current);
-            indexPcr.put(symbol, pcr);
-            logger.debug("Index PCR updated: {} -> {} (prev: {})", symbol, pcr, current);
+        if (isIndex(symbol)) {
+            String underlying = SymbolUtil.canonicalUnderlying(symbol);
+            Double current = indexPcr.put(underlying, pcr);
+            oiHistory.recordIndexPcr(underlying, timestamp, pcr);
+            logger.debug("Index PCR updated: {} -> {} (prev: {})", underlying, pcr, current);
         }
     }
 
+    /** Percent change of the index PCR over the last oi.pcr.change.minutes minutes. */
     public double getIndexPcrChange(String symbol) {
-        Double current = indexPcr.get(symbol);
-        Double prev = prevIndexPcr.get(symbol);
-        if (current == null || prev == null || prev == 0) return 0.0;
-        return ((current - prev) / prev) * 100.0;
+        return oiHistory.indexPcrChangePercent(symbol, pcrChangeMinutes);
     }
 
     public double getIndexPcr(String symbol) {
-        return indexPcr.getOrDefault(symbol, 1.0);
+        return indexPcr.getOrDefault(SymbolUtil.canonicalUnderlying(symbol), 1.0);
     }
 
-    public void updateFromBridge(List<OptionChainDto> chain) {
+    /**
+     * Publishes a bridge option_chain message as the underlying's current chain (expiry ""
+     * when the message does not carry one) and calibrates the pricer's vols to it.
+     */
+    public void updateFromBridge(String underlying, String expiry, long timestamp, List<OptionChainDto> chain) {
         if (chain == null || chain.isEmpty()) return;
-        injectedChain.set(chain);
-        logger.debug("Option Chain Window injected from bridge (size: {})", chain.size());
+        if (timestamp <= 0) timestamp = marketTime(underlying);
+        OptionChainRegistry.ChainVersion version = chainRegistry.publish(underlying, expiry, timestamp, chain);
+        oiHistory.record(version);
+        Double spot = indexSpots.get(version.underlying);
+        // Time to expiry runs on the market clock, whatever clock stamped the chain
+        if (spot != null) pricer.calibrate(version, spot, marketTime(version.underlying));
+        logger.debug("Option chain v{} for {} published from bridge ({} strikes from {} step {})", version.version,
+                version.underlying, version.size(), version.minStrike, version.step);
+    }
+
+    /**
+     * Market time for an unstamped message: the underlying's last spot (bar) time, else the
+     * latest spot time of any index, else the wall clock (nothing streamed yet). Replays of
+     * past dates thus stay on the replayed day.
+     */
+    long marketTime(String underlying) {
+        Long t = spotTimes.get(SymbolUtil.canonicalUnderlying(underlying));
+        if (t != null) return t;
+        long latest = 0;
+        for (long v : spotTimes.values()) latest = Math.max(latest, v);
+        return (latest > 0) ? latest : System.currentTimeMillis();
+    }
+
+    public OptionChainRegistry getChainRegistry() {
+        return chainRegistry;
+    }
+
+    public OiTimeSeriesStore getOiHistory() {
+        return oiHistory;
+    }
+
+    public BlackScholesPricer getPricer() {
+        return pricer;
+    }
+
+    /** The pricer's surface at the underlying's last spot, or null before the first spot. */
+    public BlackScholesPricer.Surface getSurface(String underlying) {
+        String baseName = SymbolUtil.canonicalUnderlying(underlying);
+        Double spot = indexSpots.get(baseName);
+        if (spot == null) return null;
+        return pricer.surface(baseName, spot, marketTime(baseName));
     }
 
     public static class OptionData {
         public final String symbol;
         public final double ltp;
-        public OptionData(String symbol, double ltp) { this.symbol = symbol; this.ltp = ltp; }
+        public final OptionSymbolCodec.OptionInstrument instrument; // null for non-unified symbols
+        public final double delta; // Model Greeks at the current spot; NaN when not priced
+        public final double gamma;
+        public OptionData(String symbol, double ltp) { this(OptionSymbolCodec.parse(symbol), symbol, ltp, Double.NaN, Double.NaN); }
+        public OptionData(OptionSymbolCodec.OptionInstrument instrument, double ltp) { this(instrument, instrument.symbol, ltp, Double.NaN, Double.NaN); }
+        public OptionData(OptionSymbolCodec.OptionInstrument instrument, double ltp, double delta, double gamma) {
+            this(instrument, instrument.symbol, ltp, delta, gamma);
+        }
+        private OptionData(OptionSymbolCodec.OptionInstrument instrument, String symbol, double ltp, double delta, double gamma) {
+            this.instrument = instrument;
+            this.symbol = symbol;
+            this.ltp = ltp;
+            this.delta = delta;
+            this.gamma = gamma;
+        }
+
+        public boolean hasGreeks() {
+            return !Double.isNaN(delta);
+        }
     }
 
-    private void updateSyntheticOptions(String indexSymbol, double spot) {
+    /**
+     * Pushes model premiums of the strikes around ATM to the position manager for backtests
+     * without option prices. Only runs when the pricer reprices; contracts with real ticks
+     * keep their own prices.
+     */
+    private void updateSyntheticOptions(String baseName, double spot, long timestamp) {
         if (positionManager == null || spot <= 0) return;
-        
-        // Calculate ATM Strike
-        int strikeDiff = indexSymbol.contains("Bank") ? BANKNIFTY_STRIKE_DIFF : STRIKE_DIFFERENCE;
-        int atmStrike = (int) (Math.round(spot / strikeDiff) * strikeDiff);
-        
-        // Synthetic Base Name Logic
-        String baseName = indexSymbol.split("\\|")[2];
-        
-        String ceSymbol = String.format("NSE|OPTION|%s_%d_CE", baseName, atmStrike);
-        String peSymbol = String.format("NSE|OPTION|%s_%d_PE", baseName, atmStrike);
-        
-        // Use a realistic premium (e.g., 0.5% of spot)
-        double premium = spot * 0.005;
-        
-        // CE Price = Intrinsic + Premium
-        double cePrice = Math.max(5.0, (spot - atmStrike) + premium);
-        positionManager.updateLtp(ceSymbol, cePrice);
-        
-        // PE Price = Intrinsic + Premium
-        double pePrice = Math.max(5.0, (atmStrike - spot) + premium);
-        positionManager.updateLtp(peSymbol, pePrice);
+        BlackScholesPricer.Surface previous = syntheticSurfaces.get(baseName);
+        BlackScholesPricer.Surface surface = pricer.surface(baseName, spot, timestamp);
+        if (surface == null || surface == previous) return;
+        syntheticSurfaces.put(baseName, surface);
+
+        for (int i = 0; i < surface.size(); i++) {
+            int strike = surface.strikeAt(i);
+            String ceSymbol = OptionSymbolCodec.instrument(baseName, strike, true).symbol;
+            if (!optionState.containsKey(ceSymbol)) positionManager.updateLtp(ceSymbol, surface.price(i, true));
+            String peSymbol = OptionSymbolCodec.instrument(baseName, strike, false).symbol;
+            if (!optionState.containsKey(peSymbol)) positionManager.updateLtp(peSymbol, surface.price(i, false));
+        }
     }
 
     public double getLtpForSymbol(String symbol) {
@@ -127,81 +235,94 @@ public class OptionChainProvider implements MarketEventListener {
         return 0.0;
     }
     public OptionData getAtmOption(String indexSymbol, String side) {
-        Double spot = indexSpots.get(indexSymbol);
+        String baseName = SymbolUtil.canonicalUnderlying(indexSymbol);
+        Double spot = indexSpots.get(baseName);
         if (spot == null || spot <= 0) return null;
 
-        int strikeDiff = indexSymbol.contains("Bank") ? BANKNIFTY_STRIKE_DIFF : STRIKE_DIFFERENCE;
+        int strikeDiff = SymbolUtil.strikeStep(baseName);
         int atmStrike = (int) (Math.round(spot / strikeDiff) * strikeDiff);
-        
-        String type = "BUY".equals(side) ? "CE" : "PE";
-        
-        // 1. Try Injected Chain from Bridge (High Priority in Live)
-        List<OptionChainDto> injected = injectedChain.get();
-        String baseName = indexSymbol.split("\\|")[2];
-        String unifiedSymbol = String.format("NSE|OPTION|%s_%d_%s", baseName, atmStrike, type);
-
-        if (injected != null && !injected.isEmpty()) {
-            OptionChainDto match = injected.stream()
-                .filter(d -> d.getStrike() == atmStrike && type.equals(d.getType()))
-                .findFirst()
-                .orElse(null);
-            
-            if (match != null && match.getLtp() > 0) {
-                logger.debug("Found ATM option in injected chain: {} @ {}", unifiedSymbol, match.getLtp());
-                return new OptionData(unifiedSymbol, match.getLtp());
+        return optionAt(baseName, atmStrike, "BUY".equals(side), indexSymbol);
+    }
+
+    /**
+     * The option on the signal's side (BUY = CE, SELL = PE) whose model delta is closest to
+     * the target in absolute terms (0.5 = ATM, lower = further out of the money).
+     */
+    public OptionData getOptionByDelta(String indexSymbol, String side, double targetDelta) {
+        String baseName = SymbolUtil.canonicalUnderlying(indexSymbol);
+        BlackScholesPricer.Surface surface = getSurface(baseName);
+        if (surface == null) return null;
+        boolean call = "BUY".equals(side);
+        int strike = surface.strikeAt(surface.indexOfDelta(targetDelta, call));
+        return optionAt(baseName, strike, call, indexSymbol);
+    }
+
+    private OptionData optionAt(String baseName, int strike, boolean call, String indexSymbol) {
+        OptionSymbolCodec.OptionInstrument option = OptionSymbolCodec.instrument(baseName, strike, call);
+        BlackScholesPricer.Surface surface = getSurface(baseName);
+        int slot = (surface != null) ? surface.indexOf(strike) : -1;
+        double delta = (slot >= 0) ? surface.delta(slot, call) : Double.NaN;
+        double gamma = (slot >= 0) ? surface.gamma(slot) : Double.NaN;
+
+        // 1. Try the bridge chain (High Priority in Live)
+        OptionChainRegistry.ChainVersion chain = chainRegistry.latest(baseName);
+        if (chain != null) {
+            int i = chain.indexOf(strike);
+            double ltp = (i >= 0) ? chain.ltp(i, call) : 0.0;
+            if (ltp > 0) {
+                logger.debug("Found option in bridge chain: {} @ {}", option, ltp);
+                return new OptionData(option, ltp, delta, gamma);
             }
         }
 
         // 2. Try Real Tick Data (fallback)
-        OptionData realOpt = optionState.values().stream()
-            .filter(e -> {
-                 SymbolUtil.OptionSymbol os = SymbolUtil.parseOptionSymbol(e.getSymbol());
-                 return os != null && os.getStrike() == atmStrike && e.getSymbol().endsWith(type);
-            })
-            .findFirst()
-            .map(e -> new OptionData(e.getSymbol(), e.getLtp()))
-            .orElse(null);
-            
-        if (realOpt != null && realOpt.ltp > 0) return realOpt;
-        
-        // 3. Return Synthetic using the same realistic model
-        double premium = spot * 0.005;
-        double intrinsic = type.equals("CE") ? (spot - atmStrike) : (atmStrike - spot);
-        double synthPrice = Math.max(5.0, intrinsic + premium);
-        
-        logger.debug("Returning SYNTHETIC ATM option {} @ {} for index {} side={}", unifiedSymbol, synthPrice, indexSymbol, side);
-        return new OptionData(unifiedSymbol, synthPrice);
+        MarketEvent real = optionState.get(option.symbol);
+        if (real != null && real.getLtp() > 0) return new OptionData(option, real.getLtp(), delta, gamma);
+
+        // 3. Return the model premium
+        if (slot < 0) return null;
+        double synthPrice = surface.price(slot, call);
+        logger.debug("Returning SYNTHETIC option {} @ {} (delta {}) for index {}", option, synthPrice, delta, indexSymbol);
+        return new OptionData(option, synthPrice, delta, gamma);
     }
 
+    /** Nifty's option chain window (see {@link #getOptionChainWindow(String)}). */
     public List<OptionChainDto> getOptionChainWindow() {
-        // Priority 1: Use injected chain from bridge (Python processed)
-        List<OptionChainDto> injected = injectedChain.get();
-        if (injected != null && !injected.isEmpty()) {
-            return injected;
+        return getOptionChainWindow(DEFAULT_UNDERLYING);
+    }
+
+    /**
+     * The underlying's latest bridge chain, or else a window of ATM +/- 2 strikes built from
+     * option ticks, with the OI change since each contract's first reading today.
+     */
+    public List<OptionChainDto> getOptionChainWindow(String underlying) {
+        String baseName = SymbolUtil.canonicalUnderlying(underlying);
+        // Priority 1: Use the chain from bridge (Python processed)
+        OptionChainRegistry.ChainVersion chain = chainRegistry.latest(baseName);
+        if (chain != null) {
+            return chain.entries();
         }
 
         // Priority 2: Local calculation fallback
-        double currentSpot = spotPrice.get();
-        if (currentSpot == 0.0) {
+        Double currentSpot = indexSpots.get(baseName);
+        if (currentSpot == null || currentSpot == 0.0) {
             return List.of();
         }
 
-        int atmStrike = (int) (Math.round(currentSpot / STRIKE_DIFFERENCE) * STRIKE_DIFFERENCE);
+        int strikeDiff = SymbolUtil.strikeStep(baseName);
+        int atmStrike = (int) (Math.round(currentSpot / strikeDiff) * strikeDiff);
 
         java.util.List<OptionChainDto> window = optionState.values().stream()
                 .map(event -> {
-                    SymbolUtil.OptionSymbol optionSymbol = SymbolUtil.parseOptionSymbol(event.getSymbol());
-                    if (optionSymbol == null) return null;
+                    OptionSymbolCodec.OptionInstrument optionSymbol = OptionSymbolCodec.parse(event.getSymbol());
+                    if (optionSymbol == null || !optionSymbol.underlying.equals(baseName)) return null;
 
                     int strike = optionSymbol.getStrike();
-                    int lowerBound = atmStrike - (WINDOW_SIZE * STRIKE_DIFFERENCE);
-                    int upperBound = atmStrike + (WINDOW_SIZE * STRIKE_DIFFERENCE);
+                    int lowerBound = atmStrike - (WINDOW_SIZE * strikeDiff);
+                    int upperBound = atmStrike + (WINDOW_SIZE * strikeDiff);
 
                     if (strike >= lowerBound && strike <= upperBound) {
-                        double currentOi = event.getOi();
-                        double prevOi = previousOi.getOrDefault(event.getSymbol(), currentOi);
-                        double oiChangePercent = (prevOi == 0) ? 0 : ((currentOi - prevOi) / prevOi) * 100;
-                        previousOi.put(event.getSymbol(), currentOi);
+                        double oiChangePercent = oiHistory.dayOiChangePercent(baseName, strike, optionSymbol.call);
 
                         return new OptionChainDto(
                             strike,
@@ -227,27 +348,60 @@ public class OptionChainProvider implements MarketEventListener {
         return window;
     }
     public double getPcrOfChangeInOi() {
-        List<OptionChainDto> window = getOptionChainWindow();
-        if (window == null || window.isEmpty()) return 1.0;
+        return getPcrOfChangeInOi(DEFAULT_UNDERLYING);
+    }
 
-        double putChangeTotal = 0;
-        double callChangeTotal = 0;
+    public double getPcrOfChangeInOi(String underlying) {
+        OiAnalytics analytics = getOiAnalytics(underlying);
+        return (analytics == null) ? 1.0 : analytics.pcrOfChange;
+    }
 
-        for (OptionChainDto dto : window) {
-            // OptionChainDto already has ltp, oi, and oiChangePercent. 
-            // We need absolute change = (oi * (oiChangePercent/100)) / (1 + (oiChangePercent/100)) ??
-            // Actually, we should store absolute change in the DTO or track it here.
-            // Let's assume we want to know if Put OI is growing faster than Call OI today.
-            
-            double deltaOi = dto.getOi() * (dto.getOiChangePercent() / 100.0);
-            if ("PE".equals(dto.getType())) {
-                putChangeTotal += deltaOi;
-            } else {
-                callChangeTotal += deltaOi;
-            }
+    /**
+     * OI analytics of the underlying's latest bridge chain (precomputed when it was
+     * published), or computed from the tick-built window when there is no bridge chain; null
+     * when there is neither.
+     */
+    public OiAnalytics getOiAnalytics(String underlying) {
+        OptionChainRegistry.ChainVersion chain = chainRegistry.latest(underlying);
+        if (chain != null) return chain.analytics();
+        String baseName = SymbolUtil.canonicalUnderlying(underlying);
+        Double spot = indexSpots.get(baseName);
+        if (spot == null || spot == 0.0) return null;
+        long ticks = optionTicks.get(); // Read first: a tick racing the build only costs a rebuild
+        int step = SymbolUtil.strikeStep(baseName);
+        int atm = (int) (Math.round(spot / step) * step);
+        TickChain cached = tickChains.get(baseName);
+        if (cached != null && cached.ticks == ticks && cached.atm == atm) return cached.analytics;
+        List<OptionChainDto> window = getOptionChainWindow(baseName);
+        if (window.isEmpty()) return null;
+        OiAnalytics analytics = OptionChainRegistry.ChainVersion.build(baseName, "", 0L, 0L, window).analytics();
+        tickChains.put(baseName, new TickChain(ticks, atm, analytics));
+        return analytics;
+    }
+
+    private static final class TickChain {
+        final long ticks;
+        final int atm;
+        final OiAnalytics analytics;
+
+        TickChain(long ticks, int atm, OiAnalytics analytics) {
+            this.ticks = ticks;
+            this.atm = atm;
+            this.analytics = analytics;
         }
+    }
 
-        if (callChangeTotal == 0) return putChangeTotal > 0 ? 10.0 : 1.0;
-        return Math.max(0.1, putChangeTotal / callChangeTotal);
+    /**
+     * Clears per-day chain state (contracts, OI baselines, PCR) at session rollover.
+     * Index spots are kept so ATM lookups work before the first new-day tick.
+     */
+    public void rollSession() {
+        optionState.clear();
+        indexPcr.clear();
+        oiHistory.clear();
+        chainRegistry.clear();
+        tickChains.clear();
+        pricer.clear();
+        syntheticSurfaces.clear();
     }
 }
@@ -0,0 +1,194 @@
+package com.trading.hf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Option chains per underlying and expiry, each stored as an immutable {@link ChainVersion}
+ * with CE and PE columns indexed by (strike - minStrike) / step.
+ *
+ * A bridge option_chain message becomes a new version that replaces the previous one in a
+ * single map put, so readers always see a complete chain and never wait on the writer. ATM
+ * and ATM +/- k lookups are array reads. Each version carries its {@link OiAnalytics},
+ * computed while it is built. Underlyings are keyed by
+ * {@link SymbolUtil#canonicalUnderlying(String)}, so NSE_INDEX|Nifty 50, NSE|INDEX|NIFTY and
+ * NIFTY all find the same chain.
+ */
+public class OptionChainRegistry {
+
+    private final Map<String, ChainVersion> chains = new ConcurrentHashMap<>();     // underlying|expiry
+    private final Map<String, ChainVersion> latest = new ConcurrentHashMap<>();     // underlying
+    private long versions;
+
+    /**
+     * Publishes a chain for the underlying and expiry ("" when the feed does not say) built
+     * from bridge entries; strikes missing from the entries stay empty. Returns the new
+     * version, or null when the entries hold no strike.
+     */
+    public synchronized ChainVersion publish(String underlying, String expiry, long timestamp,
+            List<OptionChainDto> entries) {
+        if (entries == null || entries.isEmpty()) return null;
+        String key = SymbolUtil.canonicalUnderlying(underlying);
+        String exp = (expiry == null) ? "" : expiry;
+        ChainVersion version = ChainVersion.build(key, exp, timestamp, ++versions, entries);
+        chains.put(key + "|" + exp, version);
+        latest.put(key, version);
+        return version;
+    }
+
+    /** The chain of the underlying's given expiry, or null. */
+    public ChainVersion get(String underlying, String expiry) {
+        return chains.get(SymbolUtil.canonicalUnderlying(underlying) + "|" + (expiry == null ? "" : expiry));
+    }
+
+    /** The chain most recently published for the underlying (any expiry), or null. */
+    public ChainVersion latest(String underlying) {
+        return latest.get(SymbolUtil.canonicalUnderlying(underlying));
+    }
+
+    public synchronized void clear() {
+        chains.clear();
+        latest.clear();
+    }
+
+    /**
+     * One immutable snapshot of a chain. Columns have one slot per strike step between the
+     * lowest and highest strike; ltp and oi are 0 where the chain had no entry.
+     */
+    public static final class ChainVersion {
+        public final String underlying;
+        public final String expiry;
+        public final long timestamp;
+        public final long version;
+        public final int minStrike;
+        public final int step;
+        private final double[] ceLtp;
+        private final double[] peLtp;
+        private final double[] ceOi;
+        private final double[] peOi;
+        private final double[] ceOiChangePct;
+        private final double[] peOiChangePct;
+        private final List<OptionChainDto> entries;
+        private OiAnalytics analytics;
+
+        private ChainVersion(String underlying, String expiry, long timestamp, long version, int minStrike, int step,
+                int size, List<OptionChainDto> entries) {
+            this.underlying = underlying;
+            this.expiry = expiry;
+            this.timestamp = timestamp;
+            this.version = version;
+            this.minStrike = minStrike;
+            this.step = step;
+            this.ceLtp = new double[size];
+            this.peLtp = new double[size];
+            this.ceOi = new double[size];
+            this.peOi = new double[size];
+            this.ceOiChangePct = new double[size];
+            this.peOiChangePct = new double[size];
+            this.entries = entries;
+        }
+
+        static ChainVersion build(String underlying, String expiry, long timestamp, long version,
+                List<OptionChainDto> entries) {
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (OptionChainDto d : entries) {
+                min = Math.min(min, d.getStrike());
+                max = Math.max(max, d.getStrike());
+            }
+            // The step is the greatest common divisor of the strike offsets (falls back to the
+            // underlying's listed step for a single strike)
+            int step = 0;
+            for (OptionChainDto d : entries) step = gcd(step, d.getStrike() - min);
+            if (step == 0) step = SymbolUtil.strikeStep(underlying);
+
+            List<OptionChainDto> sorted = new ArrayList<>(entries);
+            sorted.sort((a, b) -> Integer.compare(a.getStrike(), b.getStrike()));
+            ChainVersion v = new ChainVersion(underlying, expiry, timestamp, version, min, step,
+                    (max - min) / step + 1, Collections.unmodifiableList(sorted));
+            for (OptionChainDto d : entries) {
+                int i = (d.getStrike() - min) / step;
+                if ("PE".equals(d.getType())) {
+                    v.peLtp[i] = d.getLtp();
+                    v.peOi[i] = d.getOi();
+                    v.peOiChangePct[i] = d.getOiChangePercent();
+                } else {
+                    v.ceLtp[i] = d.getLtp();
+                    v.ceOi[i] = d.getOi();
+                    v.ceOiChangePct[i] = d.getOiChangePercent();
+                }
+            }
+            v.analytics = OiAnalytics.of(v);
+            return v;
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return Math.abs(a);
+        }
+
+        public int size() {
+            return ceLtp.length;
+        }
+
+        public int maxStrike() {
+            return minStrike + (size() - 1) * step;
+        }
+
+        /** Slot of the strike, or -1 when it is outside the chain or off the step grid. */
+        public int indexOf(int strike) {
+            int offset = strike - minStrike;
+            if (offset < 0 || offset % step != 0) return -1;
+            int i = offset / step;
+            return i < size() ? i : -1;
+        }
+
+        /** Slot of the strike nearest to the spot, clamped to the chain. */
+        public int atmIndex(double spot) {
+            long i = Math.round((spot - minStrike) / step);
+            return (int) Math.max(0, Math.min(size() - 1, i));
+        }
+
+        /** Strike nearest to the spot within the chain. */
+        public int atmStrike(double spot) {
+            return strikeAt(atmIndex(spot));
+        }
+
+        /** Slot k strikes away from ATM (positive = higher strikes), or -1 outside the chain. */
+        public int offsetIndex(double spot, int k) {
+            int i = atmIndex(spot) + k;
+            return (i >= 0 && i < size()) ? i : -1;
+        }
+
+        public int strikeAt(int i) {
+            return minStrike + i * step;
+        }
+
+        public double ltp(int i, boolean call) {
+            return call ? ceLtp[i] : peLtp[i];
+        }
+
+        public double oi(int i, boolean call) {
+            return call ? ceOi[i] : peOi[i];
+        }
+
+        public double oiChangePercent(int i, boolean call) {
+            return call ? ceOiChangePct[i] : peOiChangePct[i];
+        }
+
+        public OiAnalytics analytics() {
+            return analytics;
+        }
+
+        /** The entries the version was built from, sorted by strike. */
+        public List<OptionChainDto> entries() {
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.trading.hf;
+
+/**
+ * Option instruments as packed long keys (underlying, strike, CE/PE, expiry) with one shared
+ * {@link OptionInstrument} flyweight per key.
+ *
+ * Each flyweight carries the unified symbol string (NSE|OPTION|NIFTY_22000_CE), built once,
+ * so hot paths look instruments up instead of formatting and splitting symbols. The parser
+ * walks the characters of a symbol without creating substrings. Lookups read an
+ * open-addressing table without locking; only the first sighting of a key takes the lock to
+ * create its flyweight.
+ *
+ * Key layout: underlying id (16 bits) | expiry epoch day (20 bits, 0 = unspecified) |
+ * strike (26 bits) | call (1 bit).
+ */
+public final class OptionSymbolCodec {
+
+    private static final String PREFIX = "NSE|OPTION|";
+    private static final int STRIKE_BITS = 26;
+    private static final int EXPIRY_BITS = 20;
+
+    private static volatile OptionInstrument[] table = new OptionInstrument[1024];
+    private static int count;
+    private static volatile String[] underlyings = { "NIFTY", "BANKNIFTY" };
+
+    private OptionSymbolCodec() {
+    }
+
+    /** Flyweight of an option instrument; identity-comparable per key. */
+    public static final class OptionInstrument extends SymbolUtil.OptionSymbol {
+        public final long key;
+        public final String underlying;
+        public final boolean call;
+        public final int expiryDay;
+        public final String symbol;
+        private int lotSize = -1;
+
+        private OptionInstrument(long key, String underlying, int strike, boolean call, int expiryDay) {
+            super(strike, call ? "CE" : "PE");
+            this.key = key;
+            this.underlying = underlying;
+            this.call = call;
+            this.expiryDay = expiryDay;
+            this.symbol = PREFIX + underlying + "_" + strike + (call ? "_CE" : "_PE");
+        }
+
+        /** Lot size from LotSizeProvider, resolved on first use. */
+        public int lotSize() {
+            int lot = lotSize;
+            if (lot < 0) {
+                lot = LotSizeProvider.getInstance().getLotSizeForSymbol(symbol);
+                lotSize = lot;
+            }
+            return lot;
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    public static long key(int underlyingId, int strike, boolean call, int expiryDay) {
+        return ((long) underlyingId << (EXPIRY_BITS + STRIKE_BITS + 1))
+                | ((long) expiryDay << (STRIKE_BITS + 1))
+                | ((long) strike << 1)
+                | (call ? 1L : 0L);
+    }
+
+    /**
+     * Id of an underlying in any index form (see SymbolUtil#canonicalUnderlying); new
+     * underlyings are registered on first use.
+     */
+    public static int underlyingId(String underlying) {
+        String name = SymbolUtil.canonicalUnderlying(underlying);
+        String[] names = underlyings;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return register(name);
+    }
+
+    private static synchronized int register(String name) {
+        String[] names = underlyings;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        String[] grown = java.util.Arrays.copyOf(names, names.length + 1);
+        grown[names.length] = name;
+        underlyings = grown;
+        return names.length;
+    }
+
+    /** The instrument for the underlying's strike and side, without an expiry. */
+    public static OptionInstrument instrument(String underlying, int strike, boolean call) {
+        return instrument(underlyingId(underlying), strike, call, 0);
+    }
+
+    public static OptionInstrument instrument(int underlyingId, int strike, boolean call, int expiryDay) {
+        long key = key(underlyingId, strike, call, expiryDay);
+        OptionInstrument found = find(table, key);
+        return (found != null) ? found : create(key, underlyingId, strike, call, expiryDay);
+    }
+
+    /** The instrument for a packed key, or null if the key was never created. */
+    public static OptionInstrument instrument(long key) {
+        return find(table, key);
+    }
+
+    /**
+     * Parses a unified option symbol (NSE|OPTION|&lt;UNDERLYING&gt;_&lt;STRIKE&gt;_&lt;CE|PE&gt;) into its
+     * flyweight; null when the symbol is not in that form.
+     */
+    public static OptionInstrument parse(String symbol) {
+        if (symbol == null || !symbol.startsWith(PREFIX)) return null;
+        int end = symbol.length();
+        int typeSep = symbol.lastIndexOf('_');
+        if (typeSep < 0 || end - typeSep != 3) return null;
+        boolean call;
+        char c0 = symbol.charAt(typeSep + 1), c1 = symbol.charAt(typeSep + 2);
+        if (c0 == 'C' && c1 == 'E') call = true;
+        else if (c0 == 'P' && c1 == 'E') call = false;
+        else return null;
+
+        int strikeSep = symbol.lastIndexOf('_', typeSep - 1);
+        if (strikeSep <= PREFIX.length() || strikeSep == typeSep - 1) return null;
+        int strike = 0;
+        for (int i = strikeSep + 1; i < typeSep; i++) {
+            char c = symbol.charAt(i);
+            if (c < '0' || c > '9' || strike >= (1 << STRIKE_BITS) / 10) return null;
+            strike = strike * 10 + (c - '0');
+        }
+
+        int id = -1;
+        int nameLen = strikeSep - PREFIX.length();
+        String[] names = underlyings;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].length() == nameLen && symbol.startsWith(names[i], PREFIX.length())) {
+                id = i;
+                break;
+            }
+        }
+        if (id < 0) id = register(symbol.substring(PREFIX.length(), strikeSep));
+        return instrument(id, strike, call, 0);
+    }
+
+    private static OptionInstrument find(OptionInstrument[] t, long key) {
+        int mask = t.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            OptionInstrument e = t[i];
+            if (e == null) return null;
+            if (e.key == key) return e;
+        }
+    }
+
+    private static synchronized OptionInstrument create(long key, int underlyingId, int strike, boolean call,
+            int expiryDay) {
+        OptionInstrument existing = find(table, key);
+        if (existing != null) return existing;
+        OptionInstrument created = new OptionInstrument(key, underlyings[underlyingId], strike, call, expiryDay);
+        OptionInstrument[] t = table;
+        if ((count + 1) * 2 > t.length) {
+            // Readers keep probing the old table; a miss there lands here and re-checks
+            OptionInstrument[] grown = new OptionInstrument[t.length * 2];
+            for (OptionInstrument e : t) {
+                if (e != null) insert(grown, e);
+            }
+            insert(grown, created);
+            table = grown;
+        } else {
+            insert(t, created);
+        }
+        count++;
+        return created;
+    }
+
+    private static void insert(OptionInstrument[] t, OptionInstrument e) {
+        int mask = t.length - 1;
+        int i = hash(e.key) & mask;
+        while (t[i] != null) i = (i + 1) & mask;
+        t[i] = e;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,200 @@
+package com.trading.hf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resting stop/limit entries for signals whose entry level is away from the current price
+ * (e.g. MMM "entry on break of wick high"). Entries fire on the first later price update
+ * that trades through their level and are cancelled after a number of bars.
+ *
+ * Per underlying, levels are kept in two sorted primitive arrays: "rising" entries fire when
+ * the high reaches the level (buy stops, sell limits), "falling" entries when the low does
+ * (sell stops, buy limits). A price update only visits the entries it crossed.
+ * Not thread-safe; owned by the engine thread.
+ */
+public class PendingEntryBook {
+
+    public static final class PendingEntry {
+        public final long id;
+        public final String gateKey;
+        public final ScalpingSignalEngine.ScalpSignal signal;
+        public final boolean rising;
+        public final double level;
+        int barsLeft;
+
+        PendingEntry(long id, String gateKey, ScalpingSignalEngine.ScalpSignal signal, boolean rising, double level,
+                int barsLeft) {
+            this.id = id;
+            this.gateKey = gateKey;
+            this.signal = signal;
+            this.rising = rising;
+            this.level = level;
+            this.barsLeft = barsLeft;
+        }
+    }
+
+    private final Map<String, SymbolBook> books = new ConcurrentHashMap<>();
+    private final Map<String, PendingEntry> byGateKey = new HashMap<>();
+    private long nextId = 1;
+
+    /**
+     * Rests an entry for the signal at its entry price, replacing any pending entry from the
+     * same gate on the same symbol. rising = fires when price trades up to the level.
+     */
+    public PendingEntry place(String gateKey, ScalpingSignalEngine.ScalpSignal signal, boolean rising, int expiryBars) {
+        cancel(gateKey);
+        PendingEntry e = new PendingEntry(nextId++, gateKey, signal, rising, signal.entryPrice, expiryBars);
+        books.computeIfAbsent(signal.symbol, k -> new SymbolBook()).add(e);
+        byGateKey.put(gateKey, e);
+        return e;
+    }
+
+    public boolean contains(String gateKey) {
+        return byGateKey.containsKey(gateKey);
+    }
+
+    public boolean cancel(String gateKey) {
+        PendingEntry e = byGateKey.remove(gateKey);
+        if (e == null) return false;
+        SymbolBook b = books.get(e.signal.symbol);
+        if (b != null) b.remove(e);
+        return true;
+    }
+
+    /**
+     * Returns (and removes) the entries crossed by a price update with the given range.
+     */
+    public List<PendingEntry> onPrice(String symbol, double high, double low) {
+        SymbolBook b = books.get(symbol);
+        if (b == null || b.size() == 0) return List.of();
+        List<PendingEntry> fired = b.crossed(high, low);
+        for (PendingEntry e : fired) byGateKey.remove(e.gateKey);
+        return fired;
+    }
+
+    /**
+     * Counts a completed bar for the symbol and returns (and removes) the entries that expired.
+     */
+    public List<PendingEntry> onBarClosed(String symbol) {
+        SymbolBook b = books.get(symbol);
+        if (b == null || b.size() == 0) return List.of();
+        List<PendingEntry> expired = null;
+        for (PendingEntry e : b.entries.values()) {
+            if (--e.barsLeft <= 0) {
+                if (expired == null) expired = new ArrayList<>();
+                expired.add(e);
+            }
+        }
+        if (expired == null) return List.of();
+        for (PendingEntry e : expired) {
+            b.remove(e);
+            byGateKey.remove(e.gateKey);
+        }
+        return expired;
+    }
+
+    public void clear() {
+        books.clear();
+        byGateKey.clear();
+    }
+
+    public int size() {
+        return byGateKey.size();
+    }
+
+    /** The resting entries, for snapshots; do not modify the book while iterating. */
+    public Collection<PendingEntry> entries() {
+        return byGateKey.values();
+    }
+
+    private static final class SymbolBook {
+        final Map<Long, PendingEntry> entries = new HashMap<>();
+        // Ascending levels; rising fire from the bottom, falling from the top
+        double[] riseLevels = new double[4];
+        long[] riseIds = new long[4];
+        int riseSize;
+        double[] fallLevels = new double[4];
+        long[] fallIds = new long[4];
+        int fallSize;
+
+        int size() {
+            return entries.size();
+        }
+
+        void add(PendingEntry e) {
+            entries.put(e.id, e);
+            if (e.rising) {
+                if (riseSize == riseLevels.length) {
+                    riseLevels = Arrays.copyOf(riseLevels, riseSize * 2);
+                    riseIds = Arrays.copyOf(riseIds, riseSize * 2);
+                }
+                riseSize = insert(riseLevels, riseIds, riseSize, e.level, e.id);
+            } else {
+                if (fallSize == fallLevels.length) {
+                    fallLevels = Arrays.copyOf(fallLevels, fallSize * 2);
+                    fallIds = Arrays.copyOf(fallIds, fallSize * 2);
+                }
+                fallSize = insert(fallLevels, fallIds, fallSize, e.level, e.id);
+            }
+        }
+
+        void remove(PendingEntry e) {
+            if (entries.remove(e.id) == null) return;
+            if (e.rising) {
+                riseSize = delete(riseLevels, riseIds, riseSize, e.level, e.id);
+            } else {
+                fallSize = delete(fallLevels, fallIds, fallSize, e.level, e.id);
+            }
+        }
+
+        List<PendingEntry> crossed(double high, double low) {
+            int rise = 0;
+            while (rise < riseSize && riseLevels[rise] <= high) rise++;
+            int fall = fallSize;
+            while (fall > 0 && fallLevels[fall - 1] >= low) fall--;
+            if (rise == 0 && fall == fallSize) return List.of();
+
+            List<PendingEntry> fired = new ArrayList<>(rise + fallSize - fall);
+            for (int i = 0; i < rise; i++) fired.add(entries.remove(riseIds[i]));
+            for (int i = fall; i < fallSize; i++) fired.add(entries.remove(fallIds[i]));
+            System.arraycopy(riseLevels, rise, riseLevels, 0, riseSize - rise);
+            System.arraycopy(riseIds, rise, riseIds, 0, riseSize - rise);
+            riseSize -= rise;
+            fallSize = fall;
+            return fired;
+        }
+
+        private static int insert(double[] levels, long[] ids, int size, double level, long id) {
+            int pos = lowerBound(levels, size, level);
+            System.arraycopy(levels, pos, levels, pos + 1, size - pos);
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            levels[pos] = level;
+            ids[pos] = id;
+            return size + 1;
+        }
+
+        private static int delete(double[] levels, long[] ids, int size, double level, long id) {
+            int pos = lowerBound(levels, size, level);
+            while (pos < size && ids[pos] != id) pos++; // Equal levels
+            if (pos == size) return size;
+            System.arraycopy(levels, pos + 1, levels, pos, size - pos - 1);
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            return size - 1;
+        }
+
+        private static int lowerBound(double[] levels, int size, double level) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (levels[mid] < level) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.trading.hf;
 
 public class Position {
 
+    private long positionId; // Assigned by PositionManager; 0 until then
     private final String instrumentKey;
     private int quantity;
     private final int initialQuantity;
@@ -30,6 +31,26 @@ public class Position {
         this.strategy = strategy;
     }
 
+    /** Restores a persisted position as it was, partial closes and exit included. */
+    Position(long positionId, String instrumentKey, int quantity, int initialQuantity, String side, double entryPrice,
+            long entryTimestamp, double stopLoss, double takeProfit, double exitPrice, long exitTimestamp,
+            double realizedPnL, String exitReason, String strategy) {
+        this.positionId = positionId;
+        this.instrumentKey = instrumentKey;
+        this.quantity = quantity;
+        this.initialQuantity = initialQuantity;
+        this.side = side;
+        this.entryPrice = entryPrice;
+        this.entryTimestamp = entryTimestamp;
+        this.stopLoss = stopLoss;
+        this.takeProfit = takeProfit;
+        this.exitPrice = exitPrice;
+        this.exitTimestamp = exitTimestamp;
+        this.realizedPnL = realizedPnL;
+        this.exitReason = exitReason;
+        this.strategy = strategy;
+    }
+
     public void close(double exitPrice, long exitTimestamp, String exitReason) {
         this.exitPrice = exitPrice;
         this.exitTimestamp = exitTimestamp;
@@ -58,6 +79,8 @@ public class Position {
         return realized;
     }
 
+    public long getPositionId() { return positionId; }
+    void setPositionId(long positionId) { this.positionId = positionId; }
     public String getInstrumentKey() { return instrumentKey; }
     public int getQuantity() { return quantity; }
     public int getInitialQuantity() { return initialQuantity; }
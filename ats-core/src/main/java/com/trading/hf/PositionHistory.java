@@ -0,0 +1,107 @@
+package com.trading.hf;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read model over the positions tables for history views and reports: pages of trades by
+ * IST trading day (yyyyMMdd), newest first, across the live table and the archive.
+ *
+ * Pages are keyset-based on (trading_day, position_id), which both tables index, so a page
+ * deep in the history costs the same as the first one. Each call uses its own connection and
+ * never blocks the position writer (WAL readers do not wait on it). A failed read throws
+ * IllegalStateException rather than passing for an empty history.
+ */
+public class PositionHistory {
+
+    private static final String SEEK = " WHERE trading_day BETWEEN ? AND ? AND (trading_day, position_id) < (?, ?) "
+            + "ORDER BY trading_day DESC, position_id DESC LIMIT ?";
+    private static final String PAGE_SQL = "SELECT * FROM ("
+            + "SELECT * FROM (SELECT " + PositionManager.COLUMNS + " FROM positions" + SEEK + ") UNION ALL "
+            + "SELECT * FROM (SELECT " + PositionManager.COLUMNS + " FROM positions_archive" + SEEK + ")"
+            + ") ORDER BY trading_day DESC, position_id DESC LIMIT ?";
+    private static final String BY_ID_SQL = "SELECT " + PositionManager.COLUMNS + " FROM positions WHERE position_id = ? "
+            + "UNION ALL SELECT " + PositionManager.COLUMNS + " FROM positions_archive WHERE position_id = ?";
+
+    private final String dbUrl;
+
+    public PositionHistory(String dbUrl) {
+        this.dbUrl = dbUrl;
+    }
+
+    /** First page of positions entered on trading days fromDay..toDay (inclusive). */
+    public Page page(int fromDay, int toDay, int limit) {
+        return page(fromDay, toDay, null, limit);
+    }
+
+    /** The page after the given one (the first page when after is null). */
+    public Page page(int fromDay, int toDay, Page after, int limit) {
+        int seekDay = (after == null) ? Integer.MAX_VALUE : after.lastDay;
+        long seekId = (after == null) ? Long.MAX_VALUE : after.lastId;
+        List<Position> positions = new ArrayList<>(limit);
+        int lastDay = seekDay;
+        long lastId = seekId;
+        boolean more = false;
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             PreparedStatement pstmt = conn.prepareStatement(PAGE_SQL)) {
+            int i = 1;
+            for (int table = 0; table < 2; table++) {
+                pstmt.setInt(i++, fromDay);
+                pstmt.setInt(i++, toDay);
+                pstmt.setInt(i++, seekDay);
+                pstmt.setLong(i++, seekId);
+                pstmt.setInt(i++, limit + 1);
+            }
+            pstmt.setInt(i, limit + 1); // One extra tells whether another page follows
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (positions.size() == limit) {
+                        more = true;
+                        break;
+                    }
+                    positions.add(PositionWriter.read(rs).toPosition());
+                    lastDay = rs.getInt("trading_day");
+                    lastId = rs.getLong("position_id");
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot read position history " + fromDay + ".." + toDay, e);
+        }
+        return new Page(Collections.unmodifiableList(positions), more, lastDay, lastId);
+    }
+
+    /** The position with this id, live or archived, or null when there is none. */
+    public Position byId(long positionId) {
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             PreparedStatement pstmt = conn.prepareStatement(BY_ID_SQL)) {
+            pstmt.setLong(1, positionId);
+            pstmt.setLong(2, positionId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? PositionWriter.read(rs).toPosition() : null;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot read position " + positionId, e);
+        }
+    }
+
+    /** One page of history, newest first; pass it back to {@link #page} for the next. */
+    public static final class Page {
+        public final List<Position> positions;
+        public final boolean hasMore;
+        private final int lastDay;
+        private final long lastId;
+
+        Page(List<Position> positions, boolean hasMore, int lastDay, long lastId) {
+            this.positions = positions;
+            this.hasMore = hasMore;
+            this.lastDay = lastDay;
+            this.lastId = lastId;
+        }
+    }
+}
@@ -10,54 +10,162 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
 
 public class PositionManager {
 
-    private static final Logger logger = LoggerFactory.getLogger(PositionManager.class);
+    private final Logger logger;
     private static final String STATE_FILE = "positions.json";
     private static final String DB_URL = System.getProperty("db.url", "jdbc:sqlite:trading_system.db");
-    
+    private static final int SCHEMA_VERSION = 2;
+    static final String COLUMNS = "id, position_id, trading_day, instrument_key, quantity, initial_quantity, "
+            + "side, entry_price, entry_timestamp, stop_loss, take_profit, exit_price, exit_timestamp, realized_pnl, "
+            + "exit_reason, strategy, status";
+
+    private final String dbUrl;
     private final ConcurrentHashMap<String, Position> positions = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Double> latestPrices = new ConcurrentHashMap<>();
     private final List<Position> closedPositions = Collections.synchronizedList(new ArrayList<>());
     private final Gson gson = new Gson();
+    private volatile PriceListener priceListener;
+    private final PositionStore store; // Write-behind; the maps above are authoritative
+    private final Object batchLock = new Object();
+    private List<PositionStore.Row> batch; // Non-null while a batch is open
+    private final AtomicLong lastPositionId = new AtomicLong();
+
+    /**
+     * Receives every LTP update for an instrument with an open position.
+     */
+    public interface PriceListener {
+        void onPrice(String instrumentKey, double price);
+    }
 
     public PositionManager() {
+        this.logger = LoggerFactory.getLogger(PositionManager.class);
+        this.dbUrl = DB_URL;
         initializeDatabase();
+        this.store = openStore();
+        store.archive(todayStart());
+        lastPositionId.set(store.maxPositionId());
         migrateFromJson();
+        store.flush(5_000); // Migrated rows must be readable below
+        loadFromDatabase();
+    }
+
+    /**
+     * Position store on a separate database (e.g. a throwaway sandbox); skips the legacy
+     * positions.json migration.
+     */
+    public PositionManager(String dbUrl) {
+        this(dbUrl, false);
+    }
+
+    /** As {@link #PositionManager(String)}; muted logs nothing (sandbox copies, see JitWarmup). */
+    PositionManager(String dbUrl, boolean muted) {
+        this.logger = muted ? NOPLogger.NOP_LOGGER : LoggerFactory.getLogger(PositionManager.class);
+        this.dbUrl = dbUrl;
+        initializeDatabase();
+        this.store = new PositionWriter(dbUrl);
+        store.archive(todayStart());
+        lastPositionId.set(store.maxPositionId());
         loadFromDatabase();
     }
 
+    /**
+     * persist.store=journal keeps SQLite off the trading path: changes go to the mapped
+     * {@link TradeJournal} and reach the database through its mirror. Anything else, or a
+     * journal that cannot be opened, writes to SQLite directly.
+     */
+    private PositionStore openStore() {
+        if ("journal".equalsIgnoreCase(ConfigLoader.getProperty("persist.store", "sqlite").trim())) {
+            try {
+                return new TradeJournal(ConfigLoader.getProperty("persist.journal.path", "trading_journal.dat"), dbUrl);
+            } catch (IllegalStateException e) {
+                logger.error("Trade journal unavailable, persisting positions to SQLite", e);
+            }
+        }
+        return new PositionWriter(dbUrl);
+    }
+
+    private static String positionsTable(String name, String idColumn) {
+        return "CREATE TABLE IF NOT EXISTS " + name + " (" +
+               idColumn + "," +
+               "position_id INTEGER," + // Stable id, assigned when the position opens
+               "trading_day INTEGER," + // IST yyyyMMdd of the entry
+               "instrument_key TEXT," +
+               "quantity INTEGER," +
+               "initial_quantity INTEGER," +
+               "side TEXT," +
+               "entry_price REAL," +
+               "entry_timestamp INTEGER," +
+               "stop_loss REAL," +
+               "take_profit REAL," +
+               "exit_price REAL," +
+               "exit_timestamp INTEGER," +
+               "realized_pnl REAL," +
+               "exit_reason TEXT," +
+               "strategy TEXT," +
+               "status TEXT" + // ACTIVE or CLOSED
+               ")";
+    }
+
+    /**
+     * positions holds open trades and recent days; positions_archive the older closed ones
+     * (see {@link PositionStore#archive}). Updates go by position_id, the startup load by status,
+     * trading day and exit time, and history pages by trading day; each has an index.
+     */
     private void initializeDatabase() {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = DriverManager.getConnection(dbUrl);
              Statement stmt = conn.createStatement()) {
-            String sql = "CREATE TABLE IF NOT EXISTS positions (" +
-                         "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                         "instrument_key TEXT," +
-                         "quantity INTEGER," +
-                         "initial_quantity INTEGER," +
-                         "side TEXT," +
-                         "entry_price REAL," +
-                         "entry_timestamp INTEGER," +
-                         "stop_loss REAL," +
-                         "take_profit REAL," +
-                         "exit_price REAL," +
-                         "exit_timestamp INTEGER," +
-                         "realized_pnl REAL," +
-                         "exit_reason TEXT," +
-                         "strategy TEXT," +
-                         "status TEXT" + // ACTIVE or CLOSED
-                         ")";
-            stmt.execute(sql);
+            stmt.execute(positionsTable("positions", "id INTEGER PRIMARY KEY AUTOINCREMENT"));
+            stmt.execute(positionsTable("positions_archive", "id INTEGER PRIMARY KEY"));
+            migrateSchema(conn, stmt);
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_positions_id ON positions (position_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_positions_status ON positions (status)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_positions_day ON positions (trading_day, position_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_positions_exit ON positions (exit_timestamp)");
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_positions_archive_id ON positions_archive (position_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_positions_archive_day ON positions_archive (trading_day, position_id)");
             logger.info("Database initialized successfully.");
         } catch (SQLException e) {
             logger.error("Failed to initialize database", e);
         }
     }
 
+    /** Brings a table from before position ids and trading days up to SCHEMA_VERSION. */
+    private void migrateSchema(Connection conn, Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            if (rs.next() && rs.getInt(1) >= SCHEMA_VERSION) return;
+        }
+        Set<String> columns = new HashSet<>();
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(positions)")) {
+            while (rs.next()) columns.add(rs.getString("name"));
+        }
+        conn.setAutoCommit(false);
+        try {
+            if (!columns.contains("position_id")) stmt.execute("ALTER TABLE positions ADD COLUMN position_id INTEGER");
+            if (!columns.contains("trading_day")) stmt.execute("ALTER TABLE positions ADD COLUMN trading_day INTEGER");
+            int rows = stmt.executeUpdate("UPDATE positions SET position_id = id WHERE position_id IS NULL");
+            stmt.executeUpdate("UPDATE positions SET trading_day = CAST(strftime('%Y%m%d', entry_timestamp / 1000, "
+                    + "'unixepoch', '+330 minutes') AS INTEGER) WHERE trading_day IS NULL");
+            stmt.execute("DROP INDEX IF EXISTS idx_positions_key_entry"); // Updates no longer match on it
+            stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+            conn.commit();
+            if (rows > 0) logger.info("Positions schema migrated to v{}: {} existing rows numbered", SCHEMA_VERSION, rows);
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
     private void migrateFromJson() {
         if (!Files.exists(Paths.get(STATE_FILE))) return;
         
@@ -86,101 +194,82 @@ public class PositionManager {
         }
     }
 
-    private void loadFromDatabase() {
-        long todayStart = Long.parseLong(System.getProperty("mock.todayStart", String.valueOf(
+    /** Start of today (IST), or the mock.todayStart system property in replays. */
+    static long todayStart() {
+        return Long.parseLong(System.getProperty("mock.todayStart", String.valueOf(
                 LocalDate.now(ZoneId.of("Asia/Kolkata"))
                 .atStartOfDay(ZoneId.of("Asia/Kolkata"))
                 .toInstant()
                 .toEpochMilli())));
+    }
 
-        String sql = "SELECT * FROM positions WHERE entry_timestamp >= ? OR exit_timestamp >= ? OR status = 'ACTIVE'";
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setLong(1, todayStart);
-            pstmt.setLong(2, todayStart);
-            
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                Position p = new Position(
-                    rs.getString("instrument_key"),
-                    rs.getInt("quantity"),
-                    rs.getString("side"),
-                    rs.getDouble("entry_price"),
-                    rs.getLong("entry_timestamp"),
-                    rs.getDouble("stop_loss"),
-                    rs.getDouble("take_profit"),
-                    rs.getString("strategy")
-                );
-                
-                // Set closed fields if necessary
-                if ("CLOSED".equals(rs.getString("status"))) {
-                    p.close(rs.getDouble("exit_price"), rs.getLong("exit_timestamp"), rs.getString("exit_reason"));
-                    closedPositions.add(p);
-                } else {
-                    positions.put(p.getInstrumentKey(), p);
-                }
+    private void loadFromDatabase() {
+        for (PositionStore.Row row : store.load(todayStart())) {
+            Position p = row.toPosition();
+            if (row.isActive()) {
+                positions.put(p.getInstrumentKey(), p);
+            } else {
+                closedPositions.add(p);
             }
-            logger.info("Loaded {} active and {} closed positions from database.", positions.size(), closedPositions.size());
-        } catch (SQLException e) {
-            logger.error("Failed to load positions from database", e);
         }
+        logger.info("Loaded {} active and {} closed positions from the position store.", positions.size(), closedPositions.size());
     }
 
     private void saveToDb(Position p, String status) {
-        String sql = "INSERT INTO positions (instrument_key, quantity, initial_quantity, side, entry_price, " +
-                     "entry_timestamp, stop_loss, take_profit, exit_price, exit_timestamp, realized_pnl, " +
-                     "exit_reason, strategy, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, p.getInstrumentKey());
-            pstmt.setInt(2, p.getQuantity());
-            pstmt.setInt(3, p.getInitialQuantity());
-            pstmt.setString(4, p.getSide());
-            pstmt.setDouble(5, p.getEntryPrice());
-            pstmt.setLong(6, p.getEntryTimestamp());
-            pstmt.setDouble(7, p.getStopLoss());
-            pstmt.setDouble(8, p.getTakeProfit());
-            pstmt.setDouble(9, p.getExitPrice());
-            pstmt.setLong(10, p.getExitTimestamp());
-            pstmt.setDouble(11, p.getRealizedPnL());
-            pstmt.setString(12, p.getExitReason());
-            pstmt.setString(13, p.getStrategy());
-            pstmt.setString(14, status);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            logger.error("Failed to save position to DB", e);
+        if (p.getPositionId() == 0) p.setPositionId(lastPositionId.incrementAndGet());
+        write(new PositionStore.Row(PositionStore.OPEN, p, status));
+    }
+
+    private void updateInDb(Position p, byte event, String status) {
+        write(new PositionStore.Row(event, p, status));
+    }
+
+    /** Hands the row to the store; the caller never waits on the database. */
+    private void write(PositionStore.Row row) {
+        synchronized (batchLock) {
+            if (batch != null) {
+                batch.add(row);
+                return;
+            }
         }
+        store.enqueue(row);
     }
 
-    private void updateInDb(Position p, String status) {
-        String sql = "UPDATE positions SET quantity = ?, stop_loss = ?, take_profit = ?, exit_price = ?, " +
-                     "exit_timestamp = ?, realized_pnl = ?, exit_reason = ?, status = ? " +
-                     "WHERE instrument_key = ? AND entry_timestamp = ?";
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, p.getQuantity());
-            pstmt.setDouble(2, p.getStopLoss());
-            pstmt.setDouble(3, p.getTakeProfit());
-            pstmt.setDouble(4, p.getExitPrice());
-            pstmt.setLong(5, p.getExitTimestamp());
-            pstmt.setDouble(6, p.getRealizedPnL());
-            pstmt.setString(7, p.getExitReason());
-            pstmt.setString(8, status);
-            pstmt.setString(9, p.getInstrumentKey());
-            pstmt.setLong(10, p.getEntryTimestamp());
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            logger.error("Failed to update position in DB", e);
+    /**
+     * Holds position writes until {@link #commitBatch()}, which hands them over together so
+     * the store writes them at once (one transaction on SQLite). In-memory state is updated
+     * immediately as usual.
+     */
+    public void beginBatch() {
+        synchronized (batchLock) {
+            if (batch == null) batch = new ArrayList<>();
+        }
+    }
+
+    public void commitBatch() {
+        List<PositionStore.Row> rows;
+        synchronized (batchLock) {
+            rows = batch;
+            batch = null;
         }
+        if (rows != null) store.enqueueAll(rows);
+    }
+
+    /** Waits (up to the timeout) until every queued position write is on disk. */
+    public boolean flush(long timeoutMs) {
+        return store.flush(timeoutMs);
+    }
+
+    /** Writes out the queue and stops the store's threads (shutdown). */
+    public void close() {
+        commitBatch();
+        store.close();
     }
 
     public void addPosition(String instrumentKey, int quantity, String side, double entryPrice, long entryTimestamp, double stopLoss, double takeProfit, String strategy) {
         Position p = new Position(instrumentKey, quantity, side, entryPrice, entryTimestamp, stopLoss, takeProfit, strategy);
+        saveToDb(p, "ACTIVE"); // First: a store rejecting the row (IllegalArgumentException) keeps it out of the book
         positions.put(instrumentKey, p);
-        saveToDb(p, "ACTIVE");
     }
 
     public void closePosition(String instrumentKey, double exitPrice, long exitTimestamp, String reason) {
@@ -188,7 +277,7 @@ public class PositionManager {
         if (p != null) {
             p.close(exitPrice, exitTimestamp, reason);
             closedPositions.add(p);
-            updateInDb(p, "CLOSED");
+            updateInDb(p, PositionStore.CLOSE, "CLOSED");
         }
     }
 
@@ -200,9 +289,9 @@ public class PositionManager {
         if (p.getQuantity() <= 0) {
             positions.remove(instrumentKey);
             closedPositions.add(p);
-            updateInDb(p, "CLOSED");
+            updateInDb(p, PositionStore.CLOSE, "CLOSED");
         } else {
-            updateInDb(p, "ACTIVE");
+            updateInDb(p, PositionStore.PARTIAL, "ACTIVE");
         }
         return realized;
     }
@@ -219,14 +308,27 @@ public class PositionManager {
         return positions;
     }
 
+    /** Paged reads of earlier days (live table and archive) from this manager's database. */
+    public PositionHistory getHistory() {
+        return new PositionHistory(dbUrl);
+    }
+
     public void updateLtp(String symbol, double price) {
         latestPrices.put(symbol, price);
+        PriceListener listener = priceListener;
+        if (listener != null && positions.containsKey(symbol)) {
+            listener.onPrice(symbol, price);
+        }
+    }
+
+    public void setPriceListener(PriceListener listener) {
+        this.priceListener = listener;
     }
     
     public void syncPositionUpdate(String instrumentKey) {
         Position p = positions.get(instrumentKey);
         if (p != null) {
-            updateInDb(p, "ACTIVE");
+            updateInDb(p, PositionStore.MODIFY, "ACTIVE");
         }
     }
 
@@ -238,6 +340,31 @@ public class PositionManager {
         return (p != null) ? p.getEntryPrice() : 0.0;
     }
 
+    /**
+     * Archives the finished day: closed trades that exited before dayStart are dropped from
+     * memory (they stay in SQLite) and prices of instruments no longer held are forgotten.
+     * Days past positions.archive.days move to the archive table.
+     */
+    public void rollSession(long dayStart) {
+        int archived = 0;
+        double pnl = 0;
+        synchronized (closedPositions) {
+            java.util.Iterator<Position> it = closedPositions.iterator();
+            while (it.hasNext()) {
+                Position p = it.next();
+                if (p.getExitTimestamp() < dayStart) {
+                    pnl += p.getRealizedPnL();
+                    archived++;
+                    it.remove();
+                }
+            }
+        }
+        latestPrices.keySet().retainAll(positions.keySet());
+        store.archive(dayStart);
+        logger.info("Session archived: {} closed trades, realized PnL {}. {} positions carried over.",
+                archived, String.format("%.2f", pnl), positions.size());
+    }
+
     // Legacy helper class for migration
     private static class PositionState {
         List<Position> activePositions;
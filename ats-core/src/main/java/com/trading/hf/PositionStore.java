@@ -0,0 +1,97 @@
+package com.trading.hf;
+
+import java.util.List;
+
+/**
+ * Where {@link PositionManager} persists position changes. The manager's maps stay
+ * authoritative; a store only has to take rows without blocking the caller and give the
+ * live book back on startup. persist.store picks the implementation: "sqlite" (the
+ * {@link PositionWriter}, default) or "journal" (the memory-mapped {@link TradeJournal}).
+ */
+public interface PositionStore {
+
+    byte OPEN = 1;
+    byte PARTIAL = 2;
+    byte MODIFY = 3;
+    byte CLOSE = 4;
+
+    /** Positions still active, plus those entered or exited at or after since, oldest first. */
+    List<Row> load(long since);
+
+    /** Highest position id ever stored (0 when none); new positions are numbered after it. */
+    long maxPositionId();
+
+    void enqueue(Row row);
+
+    /** Stores rows back to back (one transaction where the store has them). */
+    void enqueueAll(List<Row> rows);
+
+    /**
+     * Moves trades that closed before the last positions.archive.days days (counted back
+     * from the session day starting at dayStart) to positions_archive. Runs in the background
+     * on the store's own writer; the caller does not wait.
+     */
+    void archive(long dayStart);
+
+    /** Waits (up to the timeout) until every row handed over so far is written. */
+    boolean flush(long timeoutMs);
+
+    void close();
+
+    /** A position's persisted fields at the time of the change. */
+    final class Row {
+        final byte event; // OPEN, PARTIAL, MODIFY or CLOSE
+        final long positionId;
+        final String instrumentKey;
+        final int quantity;
+        final int initialQuantity;
+        final String side;
+        final double entryPrice;
+        final long entryTimestamp;
+        final double stopLoss;
+        final double takeProfit;
+        final double exitPrice;
+        final long exitTimestamp;
+        final double realizedPnL;
+        final String exitReason;
+        final String strategy;
+        final String status;
+
+        Row(byte event, Position p, String status) {
+            this(event, p.getPositionId(), p.getInstrumentKey(), p.getQuantity(), p.getInitialQuantity(), p.getSide(),
+                    p.getEntryPrice(), p.getEntryTimestamp(), p.getStopLoss(), p.getTakeProfit(), p.getExitPrice(),
+                    p.getExitTimestamp(), p.getRealizedPnL(), p.getExitReason(), p.getStrategy(), status);
+        }
+
+        Row(byte event, long positionId, String instrumentKey, int quantity, int initialQuantity, String side,
+                double entryPrice, long entryTimestamp, double stopLoss, double takeProfit, double exitPrice,
+                long exitTimestamp, double realizedPnL, String exitReason, String strategy, String status) {
+            this.event = event;
+            this.positionId = positionId;
+            this.instrumentKey = instrumentKey;
+            this.quantity = quantity;
+            this.initialQuantity = initialQuantity;
+            this.side = side;
+            this.entryPrice = entryPrice;
+            this.entryTimestamp = entryTimestamp;
+            this.stopLoss = stopLoss;
+            this.takeProfit = takeProfit;
+            this.exitPrice = exitPrice;
+            this.exitTimestamp = exitTimestamp;
+            this.realizedPnL = realizedPnL;
+            this.exitReason = exitReason;
+            this.strategy = strategy;
+            this.status = status;
+        }
+
+        boolean isActive() {
+            return !"CLOSED".equals(status);
+        }
+
+        /** Rebuilds the in-memory position, partial fills and realized P&L included. */
+        Position toPosition() {
+            return new Position(positionId, instrumentKey, quantity, initialQuantity, side, entryPrice, entryTimestamp,
+                    stopLoss, takeProfit, exitPrice, exitTimestamp, realizedPnL, exitReason, strategy);
+        }
+    }
+}
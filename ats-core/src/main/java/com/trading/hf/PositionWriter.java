@@ -0,0 +1,423 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind persistence of position rows on a dedicated thread.
+ *
+ * Callers enqueue immutable {@link Row} snapshots on a lock-free queue and return at once;
+ * the in-memory positions stay authoritative. The writer thread owns one connection (WAL
+ * journal on SQLite) with the insert and update statements prepared once, and commits
+ * whatever has queued up in one transaction (group commit, at most persist.batch.max rows).
+ * persist.group.commit.ms lets it wait that long after the first row for more to arrive;
+ * persist.sync sets SQLite's synchronous level (OFF, NORMAL, FULL or EXTRA), i.e. how often
+ * the commits are fsynced, and persist.busy.timeout.ms how long a write waits on another
+ * connection's lock.
+ *
+ * A batch that fails is written row by row; the first row that still fails stays queued,
+ * with every row after it, and is retried with backoff (100 ms doubling to 5 s), so rows of
+ * one position are never applied out of order. A row failing persist.retry.max times on an
+ * open connection is logged and dropped. Only committed rows count as written: flush
+ * reports false while rows are pending or when one was dropped.
+ *
+ * Rows are keyed by position_id and carry their IST trading day (yyyyMMdd of the entry).
+ * Archiving old days runs on the same thread and connection, between batches.
+ *
+ * As the mirror of a {@link TradeJournal} it runs idempotent: every row updates the position
+ * by id and is inserted only when the table does not have it yet, so records replayed after
+ * a restart neither duplicate nor go missing.
+ */
+public class PositionWriter implements PositionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PositionWriter.class);
+
+    static final String INSERT_SQL = "INSERT INTO positions (position_id, trading_day, instrument_key, quantity, "
+            + "initial_quantity, side, entry_price, entry_timestamp, stop_loss, take_profit, exit_price, "
+            + "exit_timestamp, realized_pnl, exit_reason, strategy, status) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String UPDATE_SQL = "UPDATE positions SET quantity = ?, stop_loss = ?, take_profit = ?, "
+            + "exit_price = ?, exit_timestamp = ?, realized_pnl = ?, exit_reason = ?, status = ? "
+            + "WHERE position_id = ?";
+    // Each term has its own index, so SQLite answers this as a union of three index lookups;
+    // the unary + keeps it from scanning the whole table in position_id order instead
+    static final String LOAD_SQL = "SELECT * FROM positions WHERE status = 'ACTIVE' OR trading_day >= ? "
+            + "OR exit_timestamp >= ? ORDER BY +position_id";
+    // Closed before the cutoff day and before the session start
+    private static final String ARCHIVE_WHERE = " FROM positions WHERE status = 'CLOSED' AND trading_day < ? "
+            + "AND exit_timestamp < ?";
+    static final String ARCHIVE_COPY_SQL = "INSERT OR REPLACE INTO positions_archive (" + PositionManager.COLUMNS
+            + ") SELECT " + PositionManager.COLUMNS + ARCHIVE_WHERE;
+    static final String ARCHIVE_DELETE_SQL = "DELETE" + ARCHIVE_WHERE;
+    static final String MAX_ID_SQL = "SELECT MAX(m) FROM (SELECT MAX(position_id) AS m FROM positions "
+            + "UNION ALL SELECT MAX(position_id) FROM positions_archive)";
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+
+    private final String dbUrl;
+    private final String syncMode;
+    private final int maxBatch;
+    private final long groupCommitNanos;
+    private final boolean idempotent;
+    private final int busyTimeoutMs;
+    private final int maxAttempts;
+    private final int archiveDays;
+    private final AtomicLong archiveRequest = new AtomicLong(); // Session start to archive for; 0 when none
+    private final Queue<Row> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong enqueued = new AtomicLong();
+    private volatile long written; // Rows committed
+    private volatile long dropped; // Rows given up on
+    private int headAttempts; // Failed attempts of the first pending row
+    private volatile boolean running = true;
+    private final Thread thread;
+
+    private Connection conn;
+    private PreparedStatement insert;
+    private PreparedStatement update;
+
+    public PositionWriter(String dbUrl) {
+        this(dbUrl, false);
+    }
+
+    public PositionWriter(String dbUrl, boolean idempotent) {
+        this.dbUrl = dbUrl;
+        this.idempotent = idempotent;
+        String sync = ConfigLoader.getProperty("persist.sync", "NORMAL").trim().toUpperCase();
+        if (!List.of("OFF", "NORMAL", "FULL", "EXTRA").contains(sync)) {
+            logger.warn("Unknown persist.sync {}, using NORMAL", sync);
+            sync = "NORMAL";
+        }
+        this.syncMode = sync;
+        this.maxBatch = Integer.parseInt(ConfigLoader.getProperty("persist.batch.max", "256"));
+        this.groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(ConfigLoader.getProperty("persist.group.commit.ms", "0")));
+        this.busyTimeoutMs = Integer.parseInt(ConfigLoader.getProperty("persist.busy.timeout.ms", "5000"));
+        this.maxAttempts = Math.max(1, Integer.parseInt(ConfigLoader.getProperty("persist.retry.max", "5")));
+        this.archiveDays = Integer.parseInt(ConfigLoader.getProperty("positions.archive.days", "30"));
+        this.thread = new Thread(this::run, "position-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public List<Row> load(long since) {
+        List<Row> rows = new ArrayList<>();
+        try (Connection c = DriverManager.getConnection(dbUrl);
+             PreparedStatement pstmt = c.prepareStatement(LOAD_SQL)) {
+            pstmt.setInt(1, tradingDay(since));
+            pstmt.setLong(2, since);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) rows.add(read(rs));
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to load positions from database", e);
+        }
+        return rows;
+    }
+
+    @Override
+    public long maxPositionId() {
+        try (Connection c = DriverManager.getConnection(dbUrl);
+             Statement stmt = c.createStatement();
+             ResultSet rs = stmt.executeQuery(MAX_ID_SQL)) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        } catch (SQLException e) {
+            logger.error("Failed to read the last position id", e);
+            return 0L;
+        }
+    }
+
+    /** The row at the result set's cursor (positions or positions_archive). */
+    static Row read(ResultSet rs) throws SQLException {
+        int quantity = rs.getInt("quantity");
+        int initial = rs.getInt("initial_quantity");
+        return new Row(OPEN, rs.getLong("position_id"), rs.getString("instrument_key"), quantity,
+                (initial > 0) ? initial : quantity, rs.getString("side"), rs.getDouble("entry_price"),
+                rs.getLong("entry_timestamp"), rs.getDouble("stop_loss"), rs.getDouble("take_profit"),
+                rs.getDouble("exit_price"), rs.getLong("exit_timestamp"), rs.getDouble("realized_pnl"),
+                rs.getString("exit_reason"), rs.getString("strategy"), rs.getString("status"));
+    }
+
+    /** IST trading day of an epoch-millis timestamp as yyyyMMdd. */
+    static int tradingDay(long epochMillis) {
+        LocalDate d = Instant.ofEpochMilli(epochMillis).atZone(IST).toLocalDate();
+        return d.getYear() * 10_000 + d.getMonthValue() * 100 + d.getDayOfMonth();
+    }
+
+    @Override
+    public void enqueue(Row row) {
+        queue.add(row);
+        enqueued.incrementAndGet();
+        LockSupport.unpark(thread);
+    }
+
+    /** Enqueues rows back to back so the writer usually commits them together. */
+    @Override
+    public void enqueueAll(List<Row> rows) {
+        if (rows.isEmpty()) return;
+        queue.addAll(rows);
+        enqueued.addAndGet(rows.size());
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Queues archiving for the session starting at dayStart (0 keeps everything when
+     * positions.archive.days is 0); the writer runs it once its pending rows are written.
+     */
+    @Override
+    public void archive(long dayStart) {
+        if (archiveDays <= 0) return;
+        archiveRequest.set(dayStart);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Waits until every row enqueued before the call has been committed, or the timeout
+     * passes. Returns false when the writer did not catch up or dropped a row meanwhile.
+     */
+    @Override
+    public boolean flush(long timeoutMs) {
+        long target = enqueued.get();
+        long droppedBefore = dropped;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (written + dropped < target) {
+            if (!thread.isAlive() || System.nanoTime() > deadline) return false;
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(100_000L);
+        }
+        return dropped == droppedBefore;
+    }
+
+    /** Rows enqueued but neither committed nor dropped yet. */
+    public long backlog() {
+        return enqueued.get() - written - dropped;
+    }
+
+    /** Rows given up on after persist.retry.max failed attempts (or unwritten at close). */
+    public long dropped() {
+        return dropped;
+    }
+
+    /** Writes what is queued, then stops the thread and closes the connection. */
+    @Override
+    public void close() {
+        flush(5_000);
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Row> batch = new ArrayList<>(maxBatch); // Pending rows, oldest first
+        long backoffMs = 0;
+        try {
+            while (running || !queue.isEmpty() || !batch.isEmpty()) {
+                if (batch.isEmpty()) {
+                    Row first = queue.poll();
+                    if (first == null) {
+                        long dayStart = archiveRequest.getAndSet(0);
+                        if (dayStart > 0) {
+                            archiveOldDays(dayStart);
+                            continue;
+                        }
+                        LockSupport.parkNanos(50_000_000L);
+                        continue;
+                    }
+                    batch.add(first);
+                    if (groupCommitNanos > 0) LockSupport.parkNanos(groupCommitNanos);
+                }
+                Row next;
+                while (batch.size() < maxBatch && (next = queue.poll()) != null) batch.add(next);
+                commit(batch);
+                if (batch.isEmpty()) {
+                    backoffMs = 0;
+                } else if (running) {
+                    backoffMs = (backoffMs == 0) ? 100 : Math.min(5_000, backoffMs * 2);
+                    long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+                    long left;
+                    // flush() unparks the thread repeatedly; keep waiting out the backoff
+                    while (running && (left = until - System.nanoTime()) > 0) LockSupport.parkNanos(left);
+                } else {
+                    giveUp(batch); // Closing and the last attempt failed
+                }
+            }
+        } finally {
+            closeConnection();
+        }
+    }
+
+    /**
+     * Commits the pending rows, in one transaction when it succeeds and row by row up to the
+     * first failing row otherwise. Committed (and dropped) rows are removed from the list;
+     * the rest stay for the next attempt.
+     */
+    private void commit(List<Row> batch) {
+        int done = 0;
+        int gaveUp = 0;
+        try {
+            ensureOpen();
+            conn.setAutoCommit(false);
+            try {
+                for (Row row : batch) apply(row);
+                conn.commit();
+                done = batch.size();
+                return;
+            } catch (SQLException e) {
+                conn.rollback();
+                logger.warn("Position batch of {} rows failed ({}); writing rows one by one", batch.size(),
+                        e.getMessage());
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            while (done < batch.size()) {
+                Row row = batch.get(done);
+                try {
+                    apply(row);
+                    headAttempts = 0;
+                } catch (SQLException e) {
+                    if (++headAttempts < maxAttempts) {
+                        logger.warn("Failed to write position {} ({}), attempt {}: {}", row.positionId, row.status,
+                                headAttempts, e.getMessage());
+                        return;
+                    }
+                    logger.error("Dropping position {} {} ({}) after {} failed attempts: {}", row.positionId,
+                            row.instrumentKey, row.status, headAttempts, e.getMessage());
+                    headAttempts = 0;
+                    gaveUp++;
+                }
+                done++;
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to write {} position rows; retrying", batch.size() - done, e);
+            closeConnection(); // Reopened for the next attempt
+        } finally {
+            batch.subList(0, done).clear();
+            written += done - gaveUp;
+            dropped += gaveUp;
+        }
+    }
+
+    private void giveUp(List<Row> batch) {
+        Row row;
+        while ((row = queue.poll()) != null) batch.add(row);
+        logger.error("Position writer closing with {} rows unwritten (first: position {} {})", batch.size(),
+                batch.get(0).positionId, batch.get(0).status);
+        dropped += batch.size();
+        batch.clear();
+    }
+
+    /** Moves trades closed before the last archiveDays days ahead of the session to positions_archive. */
+    private void archiveOldDays(long dayStart) {
+        int cutoff = tradingDay(dayStart - archiveDays * 86_400_000L);
+        try {
+            ensureOpen();
+            conn.setAutoCommit(false);
+            try (PreparedStatement copy = conn.prepareStatement(ARCHIVE_COPY_SQL);
+                 PreparedStatement delete = conn.prepareStatement(ARCHIVE_DELETE_SQL)) {
+                copy.setInt(1, cutoff);
+                copy.setLong(2, dayStart);
+                int archived = copy.executeUpdate();
+                delete.setInt(1, cutoff);
+                delete.setLong(2, dayStart);
+                delete.executeUpdate();
+                conn.commit();
+                if (archived > 0) logger.info("Archived {} positions closed before {}", archived, cutoff);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to archive old positions", e);
+            closeConnection();
+        }
+    }
+
+    private void apply(Row r) throws SQLException {
+        if (r.event == OPEN && !idempotent) {
+            insert(r);
+        } else if (update(r) == 0 && idempotent) {
+            insert(r); // Replayed, or its OPEN never reached the table
+        }
+    }
+
+    private void insert(Row r) throws SQLException {
+        insert.setLong(1, r.positionId);
+        insert.setInt(2, tradingDay(r.entryTimestamp));
+        insert.setString(3, r.instrumentKey);
+        insert.setInt(4, r.quantity);
+        insert.setInt(5, r.initialQuantity);
+        insert.setString(6, r.side);
+        insert.setDouble(7, r.entryPrice);
+        insert.setLong(8, r.entryTimestamp);
+        insert.setDouble(9, r.stopLoss);
+        insert.setDouble(10, r.takeProfit);
+        insert.setDouble(11, r.exitPrice);
+        insert.setLong(12, r.exitTimestamp);
+        insert.setDouble(13, r.realizedPnL);
+        insert.setString(14, r.exitReason);
+        insert.setString(15, r.strategy);
+        insert.setString(16, r.status);
+        insert.executeUpdate();
+    }
+
+    private int update(Row r) throws SQLException {
+        update.setInt(1, r.quantity);
+        update.setDouble(2, r.stopLoss);
+        update.setDouble(3, r.takeProfit);
+        update.setDouble(4, r.exitPrice);
+        update.setLong(5, r.exitTimestamp);
+        update.setDouble(6, r.realizedPnL);
+        update.setString(7, r.exitReason);
+        update.setString(8, r.status);
+        update.setLong(9, r.positionId);
+        return update.executeUpdate();
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (conn != null) return;
+        conn = DriverManager.getConnection(dbUrl);
+        if (dbUrl.startsWith("jdbc:sqlite:")) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("PRAGMA synchronous=" + syncMode);
+                stmt.execute("PRAGMA busy_timeout=" + busyTimeoutMs);
+            }
+        }
+        insert = conn.prepareStatement(INSERT_SQL);
+        update = conn.prepareStatement(UPDATE_SQL);
+    }
+
+    private void closeConnection() {
+        if (conn == null) return;
+        try {
+            conn.close(); // Closes the cached statements too
+        } catch (SQLException e) {
+            logger.debug("Closing position writer connection: {}", e.getMessage());
+        }
+        conn = null;
+        insert = null;
+        update = null;
+    }
+}
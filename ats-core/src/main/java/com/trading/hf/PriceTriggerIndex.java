@@ -0,0 +1,149 @@
+package com.trading.hf;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Price triggers (stop, target, break-even) per traded instrument, kept in sorted primitive
+ * arrays so a price update only has to look at the triggers it actually crossed.
+ *
+ * Each instrument has a "falling" side (fires when price <= level) and a "rising" side
+ * (fires when price >= level). Falling levels are sorted ascending and fire from the top,
+ * rising levels are sorted ascending and fire from the bottom, so the common no-trigger
+ * case is two comparisons. Moving a trigger (break-even, trailing) is a binary-search re-key.
+ * A trigger fires on the update that crosses it, not on every update while the price stays
+ * beyond it.
+ */
+public class PriceTriggerIndex {
+
+    public static final int STOP = 0;
+    public static final int TARGET = 1;
+    public static final int BREAK_EVEN = 2;
+    private static final int KINDS = 3;
+
+    /** Bit returned by {@link #onPrice} when a pending (price-independent) exit was armed. */
+    public static final int PENDING = 1 << KINDS;
+
+    private final Map<String, Book> books = new ConcurrentHashMap<>();
+
+    /**
+     * Sets (or moves) a trigger. rising = fire when price goes at/above the level.
+     */
+    public void set(String instrument, int kind, boolean rising, double level) {
+        books.computeIfAbsent(instrument, k -> new Book()).set(kind, rising, level);
+    }
+
+    public void remove(String instrument, int kind) {
+        Book b = books.get(instrument);
+        if (b != null) b.remove(kind);
+    }
+
+    public void clear(String instrument) {
+        books.remove(instrument);
+    }
+
+    public boolean contains(String instrument) {
+        return books.containsKey(instrument);
+    }
+
+    /**
+     * Makes the next price update for the instrument report {@link #PENDING}, e.g. for an
+     * exit decided on the underlying that needs the instrument's own price to execute.
+     */
+    public void markPending(String instrument) {
+        books.computeIfAbsent(instrument, k -> new Book()).pending = true;
+    }
+
+    /**
+     * Returns a bit mask (1 << kind, plus {@link #PENDING}) of the triggers crossed by the
+     * price, or 0. A trigger that fired fires again only once the price has come back to its
+     * near side or the trigger has been moved.
+     */
+    public int onPrice(String instrument, double price) {
+        Book b = books.get(instrument);
+        return (b == null) ? 0 : b.crossed(price);
+    }
+
+    public int size() {
+        return books.size();
+    }
+
+    private static final class Book {
+        final double[] fallLevels = new double[KINDS];
+        final int[] fallKinds = new int[KINDS];
+        int fallSize;
+        final double[] riseLevels = new double[KINDS];
+        final int[] riseKinds = new int[KINDS];
+        int riseSize;
+
+        // Current placement per kind, for O(log n) removal on re-key
+        final double[] levelOf = new double[KINDS];
+        final byte[] sideOf = new byte[KINDS]; // 0 = unset, 1 = falling, 2 = rising
+        int beyond; // Kinds the last price was at or beyond (already fired)
+        volatile boolean pending;
+
+        synchronized void set(int kind, boolean rising, double level) {
+            byte side = rising ? (byte) 2 : (byte) 1;
+            if (sideOf[kind] == side && levelOf[kind] == level) return;
+            remove(kind);
+            if (rising) {
+                riseSize = insert(riseLevels, riseKinds, riseSize, level, kind);
+            } else {
+                fallSize = insert(fallLevels, fallKinds, fallSize, level, kind);
+            }
+            levelOf[kind] = level;
+            sideOf[kind] = side;
+        }
+
+        synchronized void remove(int kind) {
+            if (sideOf[kind] == 1) {
+                fallSize = delete(fallLevels, fallKinds, fallSize, levelOf[kind], kind);
+            } else if (sideOf[kind] == 2) {
+                riseSize = delete(riseLevels, riseKinds, riseSize, levelOf[kind], kind);
+            }
+            sideOf[kind] = 0;
+            beyond &= ~(1 << kind); // Re-armed: a moved trigger the price is already past fires next
+        }
+
+        synchronized int crossed(double price) {
+            int mask = 0;
+            if (pending) {
+                pending = false;
+                mask |= PENDING;
+            }
+            int now = 0;
+            for (int i = fallSize - 1; i >= 0 && price <= fallLevels[i]; i--) now |= 1 << fallKinds[i];
+            for (int i = 0; i < riseSize && price >= riseLevels[i]; i++) now |= 1 << riseKinds[i];
+            mask |= now & ~beyond;
+            beyond = now;
+            return mask;
+        }
+
+        private static int insert(double[] levels, int[] kinds, int size, double level, int kind) {
+            int pos = lowerBound(levels, size, level);
+            System.arraycopy(levels, pos, levels, pos + 1, size - pos);
+            System.arraycopy(kinds, pos, kinds, pos + 1, size - pos);
+            levels[pos] = level;
+            kinds[pos] = kind;
+            return size + 1;
+        }
+
+        private static int delete(double[] levels, int[] kinds, int size, double level, int kind) {
+            int pos = lowerBound(levels, size, level);
+            while (pos < size && kinds[pos] != kind) pos++; // Equal levels
+            if (pos == size) return size;
+            System.arraycopy(levels, pos + 1, levels, pos, size - pos - 1);
+            System.arraycopy(kinds, pos + 1, kinds, pos, size - pos - 1);
+            return size - 1;
+        }
+
+        private static int lowerBound(double[] levels, int size, double level) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (levels[mid] < level) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
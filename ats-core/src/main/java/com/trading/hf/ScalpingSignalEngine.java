@@ -2,19 +2,27 @@ package com.trading.hf;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
 
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 public class ScalpingSignalEngine {
 
-    private static final Logger logger = LoggerFactory.getLogger(ScalpingSignalEngine.class);
+    private Logger logger = LoggerFactory.getLogger(ScalpingSignalEngine.class);
+    private PrintStream console = System.out; // [SIGNAL_DATA]/[EXEC_DATA]/[EXIT_DATA] lines
     private static final double ADX_THRESHOLD = 25.0;
     private static final double VOL_THRESHOLD = 0.5; // Rel Vol must be > 0.5
 
@@ -50,6 +58,59 @@ public class ScalpingSignalEngine {
     // Cooldown: symbol + gate -> last exit/execution time (Market Time)
     private final Map<String, Long> gateCooldowns = new ConcurrentHashMap<>();
 
+    // SL/TP/BE levels of open positions, checked on every LTP update of the traded instrument
+    private final PriceTriggerIndex exitTriggers = new PriceTriggerIndex();
+    // Latest bar time seen; stamps exits that happen on price updates between bars
+    private volatile long lastMarketTime = 0;
+
+    // Stop/limit entries resting until price trades through the signal's entry level
+    private static final double ENTRY_TOLERANCE = 0.0001; // Entries within 1 bp of the close execute at once
+    private final PendingEntryBook pendingEntries = new PendingEntryBook();
+    private final boolean pendingEntriesEnabled = ConfigLoader.getBooleanProperty("entry.pending.enabled", true);
+    private final int pendingExpiryBars = Integer.parseInt(ConfigLoader.getProperty("entry.pending.expiry.bars", "3"));
+    // Index signals trade the option whose |delta| is closest to this (0.5 = ATM)
+    private final double optionTargetDelta = Double.parseDouble(ConfigLoader.getProperty("option.target.delta", "0.5"));
+
+    // Market clock: session phases, per-position time stops and the EOD square-off
+    private SessionScheduler scheduler;
+    private volatile SessionScheduler.SessionPhase sessionPhase;
+    private final Map<String, TimerWheel.Timer> timeStops = new ConcurrentHashMap<>();
+    private final Map<String, Long> restoredTimeStops = new HashMap<>(); // Deadlines awaiting a scheduler
+    private final long timeStopMs = Long.parseLong(ConfigLoader.getProperty("exit.time.stop.minutes", "0")) * 60_000L;
+
+    // Signals of the current bar, executed together by flushSignals()
+    private final List<ScalpSignal> barSignals = new ArrayList<>();
+    private final Set<String> barClaims = new HashSet<>(); // Tradeable instruments taken this bar
+    private final Map<OptionSymbolCodec.OptionInstrument, OiAssessment> oiAssessments = new HashMap<>();
+
+    // Optional trained model: gates and sizes signals by predicted win probability
+    private SignalScorer scorer;
+
+    // Time-of-day volume curves; volume ratios fall back to the 50-bar average without one
+    private VolumeProfileCache volumeProfile;
+
+    // Equity setups only from the N strongest (longs) / weakest (shorts) of the minute; 0 = off
+    private final int crossSectionTopN = Integer.parseInt(ConfigLoader.getProperty("cross.section.top.n", "0"));
+
+    // Index signals need the heavyweights (weighted by index weight x correlation) behind them; off by default
+    private CorrelationMatrix correlations;
+    private final boolean heavyweightFilter = ConfigLoader.getBooleanProperty("correlation.confirm.enabled", false);
+    private final double minHeavyweightConfirmation = Double.parseDouble(
+            ConfigLoader.getProperty("correlation.confirm.min", "0.0"));
+
+    // Market breadth adds to (or takes from) the score of signals it agrees (disagrees) with
+    private MarketBreadthEngine breadth;
+    private final double breadthThreshold = Double.parseDouble(ConfigLoader.getProperty("breadth.score.threshold", "0.3"));
+    private final double breadthWeight = Double.parseDouble(ConfigLoader.getProperty("breadth.score.weight", "1.0"));
+
+    // Open book revalued over spot x vol shocks; option entries must keep its worst cell in limits
+    private ScenarioRiskEngine scenarioRisk;
+
+    // Rejection gates need a book that is not leaning against them (bars with depth only)
+    private final double maxSpreadBps = Double.parseDouble(ConfigLoader.getProperty("depth.max.spread.bps", "15"));
+    private final double maxAdverseImbalance = Double.parseDouble(
+            ConfigLoader.getProperty("depth.max.adverse.imbalance", "0.4"));
+
     public ScalpingSignalEngine() {
         this.riskPerTrade = Double.parseDouble(ConfigLoader.getProperty("risk.per.trade", "1000.0"));
     }
@@ -61,6 +122,9 @@ public class ScalpingSignalEngine {
         
         this.autoExecute = autoExecute;
         this.riskPerTrade = Double.parseDouble(ConfigLoader.getProperty("risk.per.trade", "1000.0"));
+        if (positionManager != null) {
+            positionManager.setPriceListener(this::onTick);
+        }
     }
 
     public enum Gate {
@@ -90,6 +154,9 @@ public class ScalpingSignalEngine {
         public String status; // "ACTIVE", "CLOSED"
         public double oiScale = 1.0; // scaling factor when OI walls are detected (1.0 = no scale)
         public double playbookScore = 0.0; // Playbook grade (0-10)
+        public double[] features; // Scorer inputs at signal time (null without a scorer)
+        public double edge = Double.NaN; // Predicted win probability (NaN = not scored)
+        public double edgeScale = 1.0; // Size multiplier from the predicted edge
 
         public ScalpSignal(String symbol, String side, Gate gate, double entryPrice, double stopLoss, double takeProfit,
                 long marketTime) {
@@ -109,12 +176,15 @@ public class ScalpingSignalEngine {
         }
     }
 
-    public void onVolumeBar(VolumeBar bar) {
+    public synchronized void onVolumeBar(VolumeBar bar) {
         String symbol = bar.getSymbol();
+        if (bar.getStartTime() > lastMarketTime) lastMarketTime = bar.getStartTime();
 
         // 1. Maintain History
-        history.computeIfAbsent(symbol, k -> new ArrayList<>()).add(bar);
-        List<VolumeBar> bars = history.get(symbol);
+        List<VolumeBar> bars = history.computeIfAbsent(symbol, k -> new ArrayList<>());
+        // The bridge re-sends the running minute; only a later start time is a new bar
+        boolean newBar = bars.isEmpty() || bar.getStartTime() > bars.get(bars.size() - 1).getStartTime();
+        bars.add(bar);
         if (bars.size() > 500)
             bars.remove(0);
 
@@ -150,10 +220,17 @@ public class ScalpingSignalEngine {
         }
 
         // 5. Check Tradeable Exits (Hard SL/TP on the traded symbol itself)
-        checkExits(symbol, bar);
+        checkExits(symbol, bar.getClose(), bar.getVwap(), bar.getStartTime());
+        if (positionManager != null && positionManager.getPosition(symbol) != null) syncExitTriggers(symbol);
+
+        // 6. Resting Entries (fill on this update, expire by bar count)
+        fillPendingEntries(symbol, bar, newBar);
 
-        // 6. Check Gates
+        // 7. Check Gates
         checkGates(symbol, bars, indicators);
+
+        // 8. Execute this bar's signals, best first, in one position-store transaction
+        flushSignals();
     }
 
     private void checkTechnicalExits(VolumeBar underlyingBar) {
@@ -198,6 +275,7 @@ public class ScalpingSignalEngine {
                         // The main `checkExits` method will detect this status on the next bar
                         // for the actual traded option, and execute the close with a timely LTP.
                         signal.status = "CLOSED_PENDING_" + reason;
+                        exitTriggers.markPending(tradeableSymbol);
                     }
                 }
             }
@@ -251,7 +329,7 @@ public class ScalpingSignalEngine {
         double low = c0.getLow();
         double atr = Math.max(ind.getAtr(), close * 0.001);
         double vwap = c0.getVwap();
-        double volRatio = c0.getVolume() / Math.max(1, ind.getAvgVolume());
+        double volRatio = relativeVolume(c0, ind);
         double candleRange = high - low;
         double upperWick = high - Math.max(open, close);
         double lowerWick = Math.min(open, close) - low;
@@ -276,6 +354,8 @@ public class ScalpingSignalEngine {
         }
 
         // --- GROUP 1: INSTITUTIONAL REJECTION ---
+        boolean bookBacksLong = depthAllows(c0, true);
+        boolean bookBacksShort = depthAllows(c0, false);
         double baseScore = 5.0;
         if (isStrongLevel(symbol, close, ind))
             baseScore += 2.0;
@@ -287,24 +367,25 @@ public class ScalpingSignalEngine {
 
         // Gate 1: Stuff_S
         if (high >= ind.getSessionHigh() && upperWick > candleRange * 0.4 && close < vwap
-                && isStrongLevel(symbol, high, ind) && volRatio > 1.5) {
+                && isStrongLevel(symbol, high, ind) && volRatio > 1.5 && bookBacksShort) {
             emitSignal(symbol, Gate.STUFF_S, low, high + 0.25 * atr, close - 2.0 * atr, c0.getStartTime(),
                     baseScore + 1.0);
         }
         // Gate 2: Crush_L
         if (low <= ind.getSessionLow() && lowerWick > candleRange * 0.4 && (close > vwap || close > ind.getEma20())
-                && isStrongLevel(symbol, low, ind) && volRatio > 1.5) {
+                && isStrongLevel(symbol, low, ind) && volRatio > 1.5 && bookBacksLong) {
             emitSignal(symbol, Gate.CRUSH_L, high, low - 0.25 * atr, close + 2.0 * atr, c0.getStartTime(),
                     baseScore + 1.0);
         }
         // Gate 3: Rebid (LOD Reclamation + Vol)
         if (c1.getLow() <= ind.getSessionLow() && close > ind.getSessionLow() && volRatio > 1.5
-                && isStrongLevel(symbol, ind.getSessionLow(), ind)) {
+                && isStrongLevel(symbol, ind.getSessionLow(), ind) && bookBacksLong) {
             emitSignal(symbol, Gate.REBID, high, low - 0.1 * atr, close + 1.5 * atr, c0.getStartTime(), baseScore);
         }
         // Gate 4: Reset (HOD Reclamation + Vol + Wick Rejection)
         if (c1.getHigh() >= ind.getSessionHigh() && close < ind.getSessionHigh() && volRatio > 1.8
-                && upperWick > candleRange * 0.4 && isStrongLevel(symbol, ind.getSessionHigh(), ind)) {
+                && upperWick > candleRange * 0.4 && isStrongLevel(symbol, ind.getSessionHigh(), ind)
+                && bookBacksShort) {
             emitSignal(symbol, Gate.RESET, low, high + 0.05 * atr, close - 1.5 * atr, c0.getStartTime(), baseScore);
         }
 
@@ -546,20 +627,90 @@ public class ScalpingSignalEngine {
             return true; // Noise
         if (time.isAfter(LocalTime.of(15, 10)))
             return true; // Sq Off
+        SessionScheduler.SessionPhase phase = sessionPhase;
+        if (phase != null && phase.compareTo(SessionScheduler.SessionPhase.NO_NEW_ENTRIES) >= 0)
+            return true; // Clock is past the cutoff even if this bar is late
 
         if (ind.getAdx() < ADX_THRESHOLD)
             return true;
 
         // 3. Volume Participation Filter
-        // If current volume is dead (< 50% of avg), moves are fake interactions.
-        double avgVol = ind.getAvgVolume();
-        if (avgVol > 0 && bar.getVolume() < (avgVol * VOL_THRESHOLD)) {
+        // If current volume is dead (< 50% of normal), moves are fake interactions.
+        if (ind.getAvgVolume() > 0 && relativeVolume(bar, ind) < VOL_THRESHOLD) {
             return true;
         }
 
         return false;
     }
 
+    /**
+     * Whether the bar's symbol ranks in the top cross.section.top.n of its minute's
+     * cross-section for the trade direction. Always true when the limit is off or the bar was
+     * not ranked (indices, no batch).
+     */
+    private boolean isCrossSectionLeader(VolumeBar bar, boolean bullish) {
+        if (crossSectionTopN <= 0 || bar.getCrossSectionSize() == 0) return true;
+        return (bullish ? bar.getLongRank() : bar.getShortRank()) <= crossSectionTopN;
+    }
+
+    /**
+     * For index signals: whether the heavyweights' recent moves back the direction (see
+     * CorrelationMatrix#heavyweightConfirmation). True when correlation.confirm.enabled is
+     * off, for other symbols and until the correlation window has filled.
+     */
+    private boolean heavyweightsConfirm(String symbol, boolean bullish) {
+        if (!heavyweightFilter || correlations == null || !symbol.startsWith("NSE_INDEX|") || !correlations.isWarm()) {
+            return true;
+        }
+        double confirmation = correlations.heavyweightConfirmation(symbol, bullish);
+        if (Double.isNaN(confirmation) || confirmation >= minHeavyweightConfirmation) return true;
+        logger.debug("Signal {} {} skipped: heavyweight confirmation {} below {}", symbol,
+                bullish ? "long" : "short", String.format("%.2f", confirmation), minHeavyweightConfirmation);
+        return false;
+    }
+
+    /**
+     * Whether the level-2 book at the bar's close allows a rejection trade in the direction:
+     * spread within depth.max.spread.bps and depth imbalance not beyond
+     * depth.max.adverse.imbalance against the trade. True for bars without depth (bridge
+     * candles).
+     */
+    private boolean depthAllows(VolumeBar bar, boolean bullish) {
+        if (!bar.hasDepth()) return true;
+        if (bar.getSpreadBps() > maxSpreadBps) return false;
+        double imbalance = bullish ? bar.getOrderBookImbalance() : -bar.getOrderBookImbalance();
+        return imbalance >= -maxAdverseImbalance;
+    }
+
+    /**
+     * Score adjustment from market breadth: +breadth.score.weight when volume-weighted breadth
+     * (advance/decline net when only the bridge count is known) is beyond
+     * breadth.score.threshold in the trade direction, minus as much when it is beyond it
+     * against the trade.
+     */
+    private double breadthAdjustment(boolean bullish) {
+        if (breadth == null || breadthWeight == 0) return 0.0;
+        MarketBreadthEngine.BreadthSnapshot snapshot = breadth.getLatest();
+        if (snapshot.total == 0) return 0.0;
+        double b = Double.isNaN(snapshot.volumeBreadth) ? snapshot.getNet() : snapshot.volumeBreadth;
+        if (!bullish) b = -b;
+        if (b >= breadthThreshold) return breadthWeight;
+        if (b <= -breadthThreshold) return -breadthWeight;
+        return 0.0;
+    }
+
+    /**
+     * Bar volume relative to what is normal for its minute of the session, falling back to the
+     * 50-bar average when the symbol has no volume profile.
+     */
+    private double relativeVolume(VolumeBar bar, TechnicalIndicators ind) {
+        if (volumeProfile != null) {
+            double rvol = volumeProfile.relativeVolume(bar);
+            if (!Double.isNaN(rvol)) return rvol;
+        }
+        return bar.getVolume() / Math.max(1, ind.getAvgVolume());
+    }
+
     private boolean isStrongLevel(String symbol, double price, TechnicalIndicators ind) {
         // HTF 10/10 S/R Check:
         // 1. Session High/Low (10/10)
@@ -597,16 +748,241 @@ public class ScalpingSignalEngine {
         if (lastTime != null && (marketTime - lastTime) < 300000) {
             return;
         }
+        if (pendingEntries.contains(gateKey)) {
+            return; // Already resting for this gate
+        }
 
         ScalpSignal signal = SignalFactory.createSignal(symbol, gate, entry, sl, tp, marketTime, score);
+        List<VolumeBar> bars = history.get(symbol);
+        VolumeBar lastBar = (bars == null || bars.isEmpty()) ? null : bars.get(bars.size() - 1);
+        if (lastBar != null && !isCrossSectionLeader(lastBar, "BUY".equals(signal.side))) {
+            logger.debug("Signal {} {} skipped: outside the top {} of the cross-section", symbol, gate, crossSectionTopN);
+            return;
+        }
+        if (!heavyweightsConfirm(symbol, "BUY".equals(signal.side))) {
+            return;
+        }
+        score = Math.max(0.0, Math.min(10.0, score + breadthAdjustment("BUY".equals(signal.side))));
+        signal.playbookScore = score;
         logger.info("[SIGNAL_DATA] Gate={}, Symbol={}, Entry={}, SL={}, TP={}, Score={}, Time={}", gate, symbol, entry,
                 sl, tp, score, marketTime);
-        System.out.println(
+        console.println(
                 String.format("[SIGNAL_DATA] Gate=%s, Symbol=%s, Entry=%.2f, SL=%.2f, TP=%.2f, Score=%.2f, Time=%d",
                         gate, symbol, entry, sl, tp, score, marketTime));
 
         if (autoExecute && positionManager != null) {
-            executeSignal(signal);
+            // Entries away from the last price (e.g. break of wick high) rest as stop/limit orders
+            double last = (lastBar == null) ? 0 : lastBar.getClose();
+            TechnicalIndicators ind = indicatorsMap.get(symbol);
+            if (scorer != null && last > 0 && ind != null) {
+                signal.features = new double[SignalScorer.FEATURE_COUNT];
+                SignalScorer.features(signal.features, signal, lastBar, ind, correlations, breadth);
+            }
+            if (pendingEntriesEnabled && last > 0 && Math.abs(entry - last) > ENTRY_TOLERANCE * last) {
+                // +1: the signal bar itself does not count towards expiry
+                pendingEntries.place(gateKey, signal, entry > last, pendingExpiryBars + 1);
+                logger.info("[ENTRY_PENDING] Gate={}, Symbol={}, Level={}, Type={}", gate, symbol, entry,
+                        (entry > last) == "BUY".equals(signal.side) ? "STOP" : "LIMIT");
+                return;
+            }
+            barSignals.add(signal);
+        }
+    }
+
+    /**
+     * Ranks the bar's signals by predicted edge (playbook score without a model) and executes
+     * them; each tradeable instrument goes to the best signal only, and position writes are
+     * committed together.
+     */
+    private void flushSignals() {
+        if (barSignals.isEmpty()) return;
+        boolean scored = scoreSignals();
+        if (barSignals.size() > 1) {
+            barSignals.sort(Comparator.comparingDouble((ScalpSignal sig) -> scored ? sig.edge : sig.playbookScore)
+                    .thenComparingDouble(sig -> sig.playbookScore).reversed());
+        }
+        positionManager.beginBatch();
+        try {
+            for (ScalpSignal signal : barSignals) {
+                if (scored && !scorer.accept(signal.edge)) {
+                    logger.info("[SIGNAL_REJECTED] Gate={}, Symbol={}, Edge={}", signal.gate, signal.symbol,
+                            String.format("%.3f", signal.edge));
+                    continue;
+                }
+                executeSignal(signal);
+            }
+        } finally {
+            positionManager.commitBatch();
+            barSignals.clear();
+            barClaims.clear();
+            oiAssessments.clear();
+        }
+    }
+
+    /**
+     * Predicts each pending signal's win probability; false when there is no model to score with.
+     */
+    private boolean scoreSignals() {
+        if (scorer == null) return false;
+        scorer.reloadIfChanged();
+        if (!scorer.hasModel()) return false;
+        for (ScalpSignal signal : barSignals) {
+            if (signal.features == null) {
+                signal.edge = 0.5; // Unscorable (no history yet): neutral
+                continue;
+            }
+            signal.edge = scorer.predict(signal.features);
+            signal.edgeScale = scorer.sizeScale(signal.edge);
+        }
+        return true;
+    }
+
+    /**
+     * Claims a tradeable instrument for this bar; false if a better signal took it or a
+     * position is already open on it.
+     */
+    private boolean claimInstrument(ScalpSignal signal, String instrument) {
+        if (positionManager.getPosition(instrument) != null || !barClaims.add(instrument)) {
+            logger.debug("Signal {} {} skipped: {} already taken", signal.symbol, signal.gate, instrument);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fills resting entries crossed by this update and expires those that outlived their bars.
+     * A new bar is checked over its whole range (and fills at its open if it gapped through the
+     * level); a revision of the running minute only counts its latest price, since its range
+     * includes prices from before the entry was placed. A fill at or beyond the signal's stop
+     * or target (a gap through both levels) is not taken.
+     */
+    private void fillPendingEntries(String symbol, VolumeBar bar, boolean newBar) {
+        if (pendingEntries.size() == 0) return;
+        if (newBar) {
+            for (PendingEntryBook.PendingEntry e : pendingEntries.onBarClosed(symbol)) {
+                logger.info("[ENTRY_EXPIRED] Gate={}, Symbol={}, Level={}", e.signal.gate, symbol, e.level);
+            }
+        }
+        double high = newBar ? bar.getHigh() : bar.getClose();
+        double low = newBar ? bar.getLow() : bar.getClose();
+        for (PendingEntryBook.PendingEntry e : pendingEntries.onPrice(symbol, high, low)) {
+            ScalpSignal signal = e.signal;
+            double fill = e.level;
+            if (newBar) {
+                fill = e.rising ? Math.max(e.level, bar.getOpen()) : Math.min(e.level, bar.getOpen());
+            }
+            boolean buy = "BUY".equals(signal.side);
+            if (buy ? (fill <= signal.stopLoss || fill >= signal.takeProfit)
+                    : (fill >= signal.stopLoss || fill <= signal.takeProfit)) {
+                logger.info("[ENTRY_SKIPPED] Gate={}, Symbol={}, Level={}, Fill={}, SL={}, TP={}", signal.gate, symbol,
+                        e.level, fill, signal.stopLoss, signal.takeProfit);
+                continue;
+            }
+            signal.entryPrice = fill;
+            signal.timestamp = bar.getStartTime();
+            logger.info("[ENTRY_FILLED] Gate={}, Symbol={}, Level={}, Fill={}", signal.gate, symbol, e.level, fill);
+            barSignals.add(signal);
+        }
+    }
+
+    /**
+     * OI walls near the money and the day's OI flow for an index option entry. Signals of one
+     * bar on the same underlying, direction and strike share the result.
+     */
+    private OiAssessment assessOptionFlow(String underlying, boolean isBullish, double currentSpot) {
+        try {
+            // Precomputed when the chain was published
+            OiAnalytics analytics = optionChainProvider.getOiAnalytics(underlying);
+            double idxPcr = optionChainProvider.getIndexPcr(underlying);
+            double pcrChg = optionChainProvider.getIndexPcrChange(underlying);
+
+            if (analytics != null) {
+                double pcrDeltaNet = analytics.pcrOfChange;
+
+                // Heuristic: Check Overhead Resistance (for CE Buy) or Downside Support (for PE
+                // Buy)
+                double scale = 1.0;
+                String wallReason = "";
+
+                if (isBullish) {
+                    // Look at 3 strikes above spot for CE walls
+                    int strikeStep = SymbolUtil.strikeStep(underlying);
+                    for (int i = 1; i <= 3; i++) {
+                        int overheadStrike = (int) (Math.round(currentSpot / strikeStep) * strikeStep)
+                                + (i * strikeStep);
+                        double ceOi = analytics.callOi(overheadStrike);
+                        double peOi = analytics.putOi(overheadStrike);
+                        double ceChg = analytics.callChange(overheadStrike);
+                        double peChg = analytics.putChange(overheadStrike);
+                        double strikePcr = (ceOi > 0) ? peOi / ceOi : 10.0;
+
+                        // Absolute difference in change (Aggression)
+                        double netChgDiff = ceChg - peChg; // Positive means more Calls added than Puts at this
+                                                           // strike
+
+                        // Wall checking: High Call OI OR Call OI is growing much faster than Put OI
+                        if ((strikePcr < 0.5 && ceOi > 1000000) || (netChgDiff > 300000)) {
+                            scale = Math.min(scale, 0.5);
+                            wallReason = "CE_RESISTANCE_AT_" + overheadStrike + "_AGGRESSIVE_"
+                                    + (int) netChgDiff;
+                        }
+                    }
+                    // PCR Trend Check (Net flow of OI Change across window)
+                    if (pcrDeltaNet < 0.7) { // More Calls being added than Puts today (Bearish flow)
+                        scale *= 0.8;
+                        wallReason += "_BEARISH_OI_FLOW";
+                    }
+                } else {
+                    // Look at 3 strikes below spot for PE walls
+                    int strikeStep = SymbolUtil.strikeStep(underlying);
+                    for (int i = 1; i <= 3; i++) {
+                        int downsideStrike = (int) (Math.round(currentSpot / strikeStep) * strikeStep)
+                                - (i * strikeStep);
+                        double peOi = analytics.putOi(downsideStrike);
+                        double ceOi = analytics.callOi(downsideStrike);
+                        double peChg = analytics.putChange(downsideStrike);
+                        double ceChg = analytics.callChange(downsideStrike);
+                        double strikePcr = (ceOi > 0) ? peOi / ceOi : 1.0;
+
+                        double netChgDiff = peChg - ceChg; // Positive means more Puts added (Support/Resistance
+                                                           // for Short)
+
+                        if ((strikePcr > 2.0 && peOi > 1000000) || (netChgDiff > 300000)) {
+                            scale = Math.min(scale, 0.5);
+                            wallReason = "PE_SUPPORT_AT_" + downsideStrike + "_AGGRESSIVE_" + (int) netChgDiff;
+                        }
+                    }
+                    // PCR Trend Check
+                    if (pcrDeltaNet > 1.3) { // More Puts being added (Bullish flow, bad for our Put Buy)
+                        scale *= 0.8;
+                        wallReason += "_BULLISH_OI_FLOW";
+                    }
+                }
+
+                if (scale < 1.0) {
+                    logger.info(
+                            "OPTION_SIZE_ADJUSTED: Scale={} Reason={} (Index PCR={}, Delta Net={}, PCR Chg={})",
+                            scale, wallReason, idxPcr, pcrDeltaNet, pcrChg);
+                } else {
+                    logger.info("OPTION_DATA_FAVORABLE: PCR={}, Delta Net={}, PCR Chg={}, No immediate walls.",
+                            idxPcr, pcrDeltaNet, pcrChg);
+                }
+                return new OiAssessment(scale, wallReason);
+            }
+        } catch (Exception e) {
+            logger.debug("Advanced option heuristic failed: {}", e.getMessage());
+        }
+        return OiAssessment.NEUTRAL;
+    }
+
+    private static final class OiAssessment {
+        static final OiAssessment NEUTRAL = new OiAssessment(1.0, "");
+        final double scale;
+        final String reason;
+
+        OiAssessment(double scale, String reason) {
+            this.scale = scale;
+            this.reason = reason;
         }
     }
 
@@ -615,137 +991,61 @@ public class ScalpingSignalEngine {
             return;
 
         String symbolToTrade = signal.symbol;
-        // Infer side from TP/Entry relationship
-        String side = (signal.takeProfit > signal.entryPrice) ? "BUY" : "SELL";
+        // The signal's own side: a filled entry's price says nothing about direction
+        String side = signal.side;
 
         double entryPrice = signal.entryPrice;
         double targetSl = signal.stopLoss;
         double targetTp = signal.takeProfit;
+        boolean indexSignal = symbolToTrade.startsWith("NSE|INDEX|") && optionChainProvider != null;
+        if (!indexSignal && !claimInstrument(signal, symbolToTrade))
+            return;
 
         // Handle Index -> ATM Option Conversion
-        if (symbolToTrade.startsWith("NSE|INDEX|") && optionChainProvider != null) {
-            OptionChainProvider.OptionData opt = optionChainProvider.getAtmOption(symbolToTrade, side);
+        OptionSymbolCodec.OptionInstrument optionInstrument = null;
+        if (indexSignal) {
+            OptionChainProvider.OptionData opt = optionChainProvider.getOptionByDelta(symbolToTrade, side, optionTargetDelta);
 
             if (opt != null) {
+                if (!claimInstrument(signal, opt.symbol))
+                    return;
+                optionInstrument = opt.instrument;
                 symbolToTrade = opt.symbol;
                 entryPrice = opt.ltp;
                 side = "BUY"; // Always BUY the option
 
-                // For Options, use % based SL/TP (10% SL, 20% TP)
-                // ISSUE: Fixed 10% SL might be huge if Premium is high (e.g. 500 * 0.1 = 50
-                // pts).
-                // FIX: Use Risk-per-trade derived limits.
-                // If we are risking 'riskPerTrade' (e.g. 1000), and Qty is derived from that,
-                // we should stick to the SL distance.
-                // But for Options, '10% SL' is a good heuristic for "Total Failure".
-                // 10% SL, 20% TP = 1:2 R:R
-
-                double optionSlPct = 0.10; // 10% Stop
-                double optionTpPct = 0.20; // 20% Target
-
-                targetSl = entryPrice * (1.0 - optionSlPct);
-                targetTp = entryPrice * (1.0 + optionTpPct);
+                // Map the index SL/TP onto the premium with delta and gamma:
+                // dP = delta * dS + gamma * dS^2 / 2 (delta is negative for puts)
+                double slMove = signal.stopLoss - signal.entryPrice;
+                double tpMove = signal.takeProfit - signal.entryPrice;
+                double greekSl = opt.hasGreeks() ? entryPrice + opt.delta * slMove + 0.5 * opt.gamma * slMove * slMove : 0.0;
+                double greekTp = opt.hasGreeks() ? entryPrice + opt.delta * tpMove + 0.5 * opt.gamma * tpMove * tpMove : 0.0;
+                if (greekSl > 0 && greekSl < entryPrice && greekTp > entryPrice) {
+                    targetSl = greekSl;
+                    targetTp = greekTp;
+                } else {
+                    // No Greeks: % based SL/TP (10% SL, 20% TP = 1:2 R:R)
+                    targetSl = entryPrice * (1.0 - 0.10);
+                    targetTp = entryPrice * (1.0 + 0.20);
+                }
 
                 logger.info(
                         ">>> VERIFIED MAPPING: Index {} ({}) -> Option {} @ {} SL: {} TP: {}",
                         signal.symbol, signal.gate, symbolToTrade, entryPrice, targetSl, targetTp);
 
-                // --- ADVANCED INDEX OPTION HEURISTICS ---
-                try {
-                    java.util.List<OptionChainDto> window = optionChainProvider.getOptionChainWindow();
-                    double idxPcr = optionChainProvider.getIndexPcr(signal.symbol);
-                    double pcrChg = optionChainProvider.getIndexPcrChange(signal.symbol);
-                    double pcrDeltaNet = optionChainProvider.getPcrOfChangeInOi();
-
-                    if (window != null && !window.isEmpty()) {
-                        // 1. Strike-wise PCR and Walls
-                        Map<Integer, Double> strikeCeOi = window.stream().filter(d -> "CE".equals(d.getType())).collect(
-                                Collectors.toMap(OptionChainDto::getStrike, OptionChainDto::getOi, (a, b) -> a));
-                        Map<Integer, Double> strikePeOi = window.stream().filter(d -> "PE".equals(d.getType())).collect(
-                                Collectors.toMap(OptionChainDto::getStrike, OptionChainDto::getOi, (a, b) -> a));
-                        Map<Integer, Double> strikeCeChg = window.stream().filter(d -> "CE".equals(d.getType()))
-                                .collect(Collectors.toMap(OptionChainDto::getStrike,
-                                        d -> d.getOi() * d.getOiChangePercent() / 100.0, (a, b) -> a));
-                        Map<Integer, Double> strikePeChg = window.stream().filter(d -> "PE".equals(d.getType()))
-                                .collect(Collectors.toMap(OptionChainDto::getStrike,
-                                        d -> d.getOi() * d.getOiChangePercent() / 100.0, (a, b) -> a));
-
-                        double currentSpot = signal.entryPrice;
-                        boolean isBullish = "BUY".equals(side); // Index Side (Buy=CE, Sell=PE)
-
-                        // Heuristic: Check Overhead Resistance (for CE Buy) or Downside Support (for PE
-                        // Buy)
-                        double scale = 1.0;
-                        String wallReason = "";
-
-                        if (isBullish) {
-                            // Look at 3 strikes above spot for CE walls
-                            int strikeStep = signal.symbol.contains("Bank") ? 100 : 50;
-                            for (int i = 1; i <= 3; i++) {
-                                int overheadStrike = (int) (Math.round(currentSpot / strikeStep) * strikeStep)
-                                        + (i * strikeStep);
-                                double ceOi = strikeCeOi.getOrDefault(overheadStrike, 0.0);
-                                double peOi = strikePeOi.getOrDefault(overheadStrike, 0.0);
-                                double ceChg = strikeCeChg.getOrDefault(overheadStrike, 0.0);
-                                double peChg = strikePeChg.getOrDefault(overheadStrike, 0.0);
-                                double strikePcr = (ceOi > 0) ? peOi / ceOi : 10.0;
-
-                                // Absolute difference in change (Aggression)
-                                double netChgDiff = ceChg - peChg; // Positive means more Calls added than Puts at this
-                                                                   // strike
-
-                                // Wall checking: High Call OI OR Call OI is growing much faster than Put OI
-                                if ((strikePcr < 0.5 && ceOi > 1000000) || (netChgDiff > 300000)) {
-                                    scale = Math.min(scale, 0.5);
-                                    wallReason = "CE_RESISTANCE_AT_" + overheadStrike + "_AGGRESSIVE_"
-                                            + (int) netChgDiff;
-                                }
-                            }
-                            // PCR Trend Check (Net flow of OI Change across window)
-                            if (pcrDeltaNet < 0.7) { // More Calls being added than Puts today (Bearish flow)
-                                scale *= 0.8;
-                                wallReason += "_BEARISH_OI_FLOW";
-                            }
-                        } else {
-                            // Look at 3 strikes below spot for PE walls
-                            int strikeStep = signal.symbol.contains("Bank") ? 100 : 50;
-                            for (int i = 1; i <= 3; i++) {
-                                int downsideStrike = (int) (Math.round(currentSpot / strikeStep) * strikeStep)
-                                        - (i * strikeStep);
-                                double peOi = strikePeOi.getOrDefault(downsideStrike, 0.0);
-                                double ceOi = strikeCeOi.getOrDefault(downsideStrike, 0.0);
-                                double peChg = strikePeChg.getOrDefault(downsideStrike, 0.0);
-                                double ceChg = strikeCeChg.getOrDefault(downsideStrike, 0.0);
-                                double strikePcr = (ceOi > 0) ? peOi / ceOi : 1.0;
-
-                                double netChgDiff = peChg - ceChg; // Positive means more Puts added (Support/Resistance
-                                                                   // for Short)
-
-                                if ((strikePcr > 2.0 && peOi > 1000000) || (netChgDiff > 300000)) {
-                                    scale = Math.min(scale, 0.5);
-                                    wallReason = "PE_SUPPORT_AT_" + downsideStrike + "_AGGRESSIVE_" + (int) netChgDiff;
-                                }
-                            }
-                            // PCR Trend Check
-                            if (pcrDeltaNet > 1.3) { // More Puts being added (Bullish flow, bad for our Put Buy)
-                                scale *= 0.8;
-                                wallReason += "_BULLISH_OI_FLOW";
-                            }
-                        }
-
-                        if (scale < 1.0) {
-                            signal.oiScale = scale;
-                            signal.status = "OI_WALL_" + wallReason;
-                            logger.info(
-                                    "OPTION_SIZE_ADJUSTED: Scale={} Reason={} (Index PCR={}, Delta Net={}, PCR Chg={})",
-                                    scale, wallReason, idxPcr, pcrDeltaNet, pcrChg);
-                        } else {
-                            logger.info("OPTION_DATA_FAVORABLE: PCR={}, Delta Net={}, PCR Chg={}, No immediate walls.",
-                                    idxPcr, pcrDeltaNet, pcrChg);
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.debug("Advanced option heuristic failed: {}", e.getMessage());
+                // --- ADVANCED INDEX OPTION HEURISTICS (shared by signals of one bar) ---
+                boolean isBullish = "BUY".equals(side); // Index Side (Buy=CE, Sell=PE)
+                int strikeStep = SymbolUtil.strikeStep(signal.symbol);
+                OptionSymbolCodec.OptionInstrument oiKey = OptionSymbolCodec.instrument(signal.symbol,
+                        (int) Math.round(signal.entryPrice / strikeStep) * strikeStep, isBullish);
+                OiAssessment oi = oiAssessments.get(oiKey);
+                if (oi == null) {
+                    oi = assessOptionFlow(signal.symbol, isBullish, signal.entryPrice);
+                    oiAssessments.put(oiKey, oi);
+                }
+                if (oi.scale < 1.0) {
+                    signal.oiScale = oi.scale;
+                    signal.status = "OI_WALL_" + oi.reason;
                 }
             } else {
                 logger.warn(">>> MAPPING FAILED: ATM option not found for {} {}", symbolToTrade, side);
@@ -763,8 +1063,8 @@ public class ScalpingSignalEngine {
         int rawQty = (int) Math.floor(riskPerTrade / Math.max(0.01, slDistance)) / 2;
 
         // Determine lot size first
-        int lotSize = LotSizeProvider.getInstance()
-                .getLotSizeForSymbol(symbolToTrade != null ? symbolToTrade : signal.symbol);
+        int lotSize = (optionInstrument != null) ? optionInstrument.lotSize()
+                : LotSizeProvider.getInstance().getLotSizeForSymbol(symbolToTrade != null ? symbolToTrade : signal.symbol);
         if (rawQty < lotSize)
             rawQty = lotSize; // Ensure at least one lot
 
@@ -790,9 +1090,9 @@ public class ScalpingSignalEngine {
             logger.warn("Raw quantity ({}) exceeds maxQty ({}). Will cap to {}.", rawQty, maxQty, maxQty);
         }
         // If an OI wall scaling factor was detected earlier for this tradeable, apply
-        // it
+        // it, together with the scorer's edge-based size multiplier
         try {
-            double scale = (signal != null) ? signal.oiScale : 1.0;
+            double scale = (signal != null) ? signal.oiScale * signal.edgeScale : 1.0;
             if (scale > 0.0 && scale < 1.0) {
                 int scaledQty = Math.max(1, (int) Math.floor(quantity * scale));
                 // Round scaledQty down to nearest lot multiple
@@ -804,6 +1104,14 @@ public class ScalpingSignalEngine {
             logger.debug("Failed applying OI scale: {}", e.getMessage());
         }
 
+        // Pre-trade: the book plus this option must survive the spot x vol scenario grid
+        if (scenarioRisk != null && optionInstrument != null
+                && !scenarioRisk.allows(optionInstrument, "BUY".equals(side), quantity, signal.timestamp)) {
+            signal.status = "RISK_BLOCK";
+            barClaims.remove(symbolToTrade); // A later signal this bar may still fit the book
+            return;
+        }
+
         // Cooldown Key usage (Underlying_Gate)
         String gateKey = signal.symbol + "_" + signal.gate.name();
 
@@ -815,11 +1123,22 @@ public class ScalpingSignalEngine {
             activeSignals.put(symbolToTrade, signal);
             signalOriginMap.put(symbolToTrade, gateKey);
 
-            positionManager.addPosition(symbolToTrade, quantity, side, entryPrice, signal.timestamp, targetSl, targetTp,
-                    signal.gate.name());
+            try {
+                positionManager.addPosition(symbolToTrade, quantity, side, entryPrice, signal.timestamp, targetSl,
+                        targetTp, signal.gate.name());
+            } catch (IllegalArgumentException e) {
+                logger.error("Entry on {} rejected by the position store: {}", symbolToTrade, e.getMessage());
+                activeSignals.remove(symbolToTrade);
+                signalOriginMap.remove(symbolToTrade);
+                barClaims.remove(symbolToTrade);
+                signal.status = "STORE_REJECTED";
+                return;
+            }
+            syncExitTriggers(symbolToTrade);
+            scheduleTimeStop(symbolToTrade, signal.timestamp);
             logger.info("[EXEC_DATA] Side={}, Symbol={}, Qty={}, Price={}, SL={}, TP={}, Gate={}", side, symbolToTrade,
                     quantity, entryPrice, targetSl, targetTp, gateKey);
-            System.out.println(
+            console.println(
                     String.format("[EXEC_DATA] Side=%s, Symbol=%s, Qty=%d, Price=%.2f, SL=%.2f, TP=%.2f, Gate=%s", side,
                             symbolToTrade, quantity, entryPrice, targetSl, targetTp, gateKey));
             // Post-creation position debug: show estimated risk and lot-size alignment
@@ -837,7 +1156,78 @@ public class ScalpingSignalEngine {
         }
     }
 
-    private void checkExits(String symbol, VolumeBar bar) {
+    /**
+     * Price update for a traded instrument (wired to PositionManager.updateLtp). Only runs the
+     * exit logic when the price crossed one of the instrument's triggers, so option positions
+     * whose prices never arrive as bars still get their SL/TP/BE handled on time.
+     */
+    public synchronized void onTick(String instrument, double ltp) {
+        if (ltp <= 0) return;
+        if (!exitTriggers.contains(instrument)) {
+            if (positionManager.getPosition(instrument) == null) return;
+            syncExitTriggers(instrument); // Position opened before this engine (DB load, restore)
+        }
+        if (exitTriggers.onPrice(instrument, ltp) == 0) return;
+
+        checkExits(instrument, ltp, Double.NaN, lastMarketTime);
+        if (positionManager.getPosition(instrument) != null) {
+            syncExitTriggers(instrument);
+        } else {
+            exitTriggers.clear(instrument);
+        }
+    }
+
+    /**
+     * Re-keys the instrument's triggers to its position's current SL/TP and, until break-even
+     * has been applied, the 1R level that moves the stop to entry.
+     */
+    private void syncExitTriggers(String instrument) {
+        Position p = positionManager.getPosition(instrument);
+        if (p == null) {
+            exitTriggers.clear(instrument);
+            return;
+        }
+        boolean isLong = "BUY".equals(p.getSide());
+        exitTriggers.set(instrument, PriceTriggerIndex.STOP, !isLong, p.getStopLoss());
+        exitTriggers.set(instrument, PriceTriggerIndex.TARGET, isLong, p.getTakeProfit());
+        if (isBreakEvenMap.getOrDefault(instrument, false)) {
+            exitTriggers.remove(instrument, PriceTriggerIndex.BREAK_EVEN);
+        } else {
+            double risk = Math.abs(p.getEntryPrice() - p.getStopLoss());
+            exitTriggers.set(instrument, PriceTriggerIndex.BREAK_EVEN, isLong,
+                    isLong ? p.getEntryPrice() + risk : p.getEntryPrice() - risk);
+        }
+    }
+
+    /**
+     * Target for what remains after a partial take-profit: partial.remaining.tp.multiplier ATRs
+     * from entry, but at least the original reward beyond the price that took the partial, so
+     * it cannot fire again on the next update.
+     */
+    private double remainingTarget(String symbol, Position p, double ltp, boolean isLong) {
+        double entryPrice = p.getEntryPrice();
+        double reward = Math.abs(p.getTakeProfit() - entryPrice);
+        double atrVal = 0.0;
+        double remMult = 3.0;
+        try {
+            TechnicalIndicators indLocal = indicatorsMap.get(symbol);
+            if (indLocal == null) {
+                String base = symbol;
+                if (symbol.contains("|"))
+                    base = symbol.substring(symbol.indexOf('|') + 1);
+                indLocal = indicatorsMap.get(base);
+            }
+            atrVal = (indLocal != null) ? indLocal.getAtr() : 0.0;
+            remMult = Double.parseDouble(ConfigLoader.getProperty("partial.remaining.tp.multiplier", "3.0"));
+        } catch (Exception e) {
+            logger.debug("Failed to read remaining TP inputs: {}", e.getMessage());
+        }
+        double unit = Math.max(atrVal, entryPrice * 0.001);
+        return isLong ? Math.max(entryPrice + remMult * unit, ltp + reward)
+                : Math.min(entryPrice - remMult * unit, ltp - reward);
+    }
+
+    private void checkExits(String symbol, double ltp, double vwap, long time) {
         if (positionManager == null)
             return;
 
@@ -845,9 +1235,8 @@ public class ScalpingSignalEngine {
         if (p == null)
             return;
 
-        double ltp = bar.getClose();
         if (ltp <= 0) {
-            System.out.println("ERROR -----------------------------> CLOSE is ZERO Checking exits for " + symbol
+            console.println("ERROR -----------------------------> CLOSE is ZERO Checking exits for " + symbol
                     + " at LTP " + ltp);
             return;
         }
@@ -900,9 +1289,8 @@ public class ScalpingSignalEngine {
                                 double ema9 = indLocal.getEma9();
                                 candidateSl = Math.max(candidateSl, ema9 - (0.5 * atrVal));
                             }
-                            if (trailingVwap) {
-                                double vwapCurr = bar.getVwap();
-                                candidateSl = Math.max(candidateSl, vwapCurr - (0.5 * atrVal));
+                            if (trailingVwap && !Double.isNaN(vwap)) {
+                                candidateSl = Math.max(candidateSl, vwap - (0.5 * atrVal));
                             }
                             if (candidateSl > p.getStopLoss()) {
                                 p.setStopLoss(candidateSl);
@@ -928,7 +1316,7 @@ public class ScalpingSignalEngine {
                     int qtyToClose = Math.max(1, (int) Math.floor(p.getQuantity() * partialPct));
                     double realized = 0.0;
                     try {
-                        realized = positionManager.partialClosePosition(symbol, qtyToClose, ltp, bar.getStartTime(),
+                        realized = positionManager.partialClosePosition(symbol, qtyToClose, ltp, time,
                                 "PARTIAL_TP");
                         logger.info("PARTIAL_TP: {} closed {} @ {} realizedPnL={} remainingQty={}", symbol, qtyToClose,
                                 ltp, realized, p.getQuantity());
@@ -941,6 +1329,11 @@ public class ScalpingSignalEngine {
                         if (p.getQuantity() <= 0) {
                             exit = true;
                             reason = "HARD_TP_HIT";
+                        } else {
+                            // Set a new TP for remaining based on ATR
+                            double newTp = remainingTarget(symbol, p, ltp, true);
+                            p.setTakeProfit(newTp);
+                            logger.info("AFTER_PARTIAL: {} new TP set to {}", symbol, newTp);
                         }
                     } catch (Exception e) {
                         logger.debug("Partial close failed: {}", e.getMessage());
@@ -976,7 +1369,7 @@ public class ScalpingSignalEngine {
                     int qtyToClose = Math.max(1, (int) Math.floor(p.getQuantity() * partialPct));
                     double realized = 0.0;
                     try {
-                        realized = positionManager.partialClosePosition(symbol, qtyToClose, ltp, bar.getStartTime(),
+                        realized = positionManager.partialClosePosition(symbol, qtyToClose, ltp, time,
                                 "PARTIAL_TP");
                         logger.info("PARTIAL_TP (Short): {} closed {} @ {} realizedPnL={} remainingQty={}", symbol,
                                 qtyToClose, ltp, realized, p.getQuantity());
@@ -991,23 +1384,9 @@ public class ScalpingSignalEngine {
                             reason = "HARD_TP_HIT";
                         } else {
                             // Set a new TP for remaining based on ATR
-                            try {
-                                TechnicalIndicators indLocal = indicatorsMap.get(symbol);
-                                if (indLocal == null) {
-                                    String base = symbol;
-                                    if (symbol.contains("|"))
-                                        base = symbol.substring(symbol.indexOf('|') + 1);
-                                    indLocal = indicatorsMap.get(base);
-                                }
-                                double atrVal = (indLocal != null) ? indLocal.getAtr() : 0.0;
-                                double remMult = Double.parseDouble(
-                                        ConfigLoader.getProperty("partial.remaining.tp.multiplier", "3.0"));
-                                double newTp = entryPrice - (remMult * Math.max(atrVal, entryPrice * 0.001));
-                                p.setTakeProfit(newTp);
-                                logger.info("AFTER_PARTIAL (Short): {} new TP set to {}", symbol, newTp);
-                            } catch (Exception e) {
-                                logger.debug("Failed to set remaining TP (Short): {}", e.getMessage());
-                            }
+                            double newTp = remainingTarget(symbol, p, ltp, false);
+                            p.setTakeProfit(newTp);
+                            logger.info("AFTER_PARTIAL (Short): {} new TP set to {}", symbol, newTp);
                         }
                     } catch (Exception e) {
                         logger.debug("Partial close failed (Short): {}", e.getMessage());
@@ -1019,27 +1398,461 @@ public class ScalpingSignalEngine {
         }
 
         if (exit) {
-            extremePriceMap.remove(symbol);
-            isBreakEvenMap.remove(symbol);
-            String gateKey = signalOriginMap.remove(symbol);
-            if (gateKey != null) {
-                // Refresh cooldown to be FROM THE EXIT TIME, plus 5 mins
-                gateCooldowns.put(gateKey, bar.getStartTime());
-            }
+            closeTrade(symbol, p, ltp, time, reason);
+        }
+    }
+
+    private void closeTrade(String symbol, Position p, double ltp, long time, String reason) {
+        extremePriceMap.remove(symbol);
+        isBreakEvenMap.remove(symbol);
+        String gateKey = signalOriginMap.remove(symbol);
+        if (gateKey != null) {
+            // Refresh cooldown to be FROM THE EXIT TIME, plus 5 mins
+            gateCooldowns.put(gateKey, time);
+        }
+
+        positionManager.closePosition(symbol, ltp, time, reason);
+        ScalpSignal signal = activeSignals.remove(symbol);
+        if (scorer != null && signal != null && p.getEntryPrice() > 0) {
+            double direction = "BUY".equalsIgnoreCase(p.getSide()) ? 1 : -1;
+            scorer.record(signal, (ltp - p.getEntryPrice()) * direction / p.getEntryPrice());
+        }
+        exitTriggers.clear(symbol);
+        TimerWheel.Timer timeStop = timeStops.remove(symbol);
+        if (timeStop != null) timeStop.cancel();
+        restoredTimeStops.remove(symbol);
+
+        double pnl = (ltp - p.getEntryPrice()) * ("BUY".equalsIgnoreCase(p.getSide()) ? 1 : -1) * p.getQuantity();
+        logger.info("[EXIT_DATA] Side={}, Symbol={}, Price={}, Reason={}, PnL={}, Gate={}",
+                p.getSide(), symbol, ltp, reason, pnl, gateKey);
+        console.println(String.format("[EXIT_DATA] Side=%s, Symbol=%s, Price=%.2f, Reason=%s, PnL=%.2f, Gate=%s",
+                p.getSide(), symbol, ltp, reason, pnl, gateKey));
+    }
+
+    /**
+     * Enables model scoring of signals and the closed-trade dataset (see SignalScorer).
+     */
+    public void setSignalScorer(SignalScorer scorer) {
+        this.scorer = scorer;
+    }
+
+    public void setVolumeProfile(VolumeProfileCache volumeProfile) {
+        this.volumeProfile = volumeProfile;
+    }
+
+    public void setCorrelationMatrix(CorrelationMatrix correlations) {
+        this.correlations = correlations;
+    }
+
+    public void setMarketBreadth(MarketBreadthEngine breadth) {
+        this.breadth = breadth;
+    }
+
+    /** Enables the scenario-grid pre-trade check for option entries. */
+    public void setScenarioRisk(ScenarioRiskEngine scenarioRisk) {
+        this.scenarioRisk = scenarioRisk;
+    }
+
+    public ScenarioRiskEngine getScenarioRisk() {
+        return scenarioRisk;
+    }
+
+    /**
+     * Wires the engine to the market clock: session phases gate new entries and trigger the
+     * EOD square-off, and new positions get a time stop when exit.time.stop.minutes is set.
+     */
+    public synchronized void setScheduler(SessionScheduler scheduler) {
+        this.scheduler = scheduler;
+        scheduler.addListener(this::onSessionPhase);
+        // Time stops restored from a snapshot before the scheduler was wired
+        for (Map.Entry<String, Long> e : restoredTimeStops.entrySet()) scheduleTimeStopAt(e.getKey(), e.getValue());
+        restoredTimeStops.clear();
+    }
 
-            positionManager.closePosition(symbol, ltp, bar.getStartTime(), reason);
-            activeSignals.remove(symbol);
+    public synchronized void onSessionPhase(SessionScheduler.SessionPhase phase, long marketTime) {
+        sessionPhase = phase;
+        if (phase == SessionScheduler.SessionPhase.NO_NEW_ENTRIES) {
+            pendingEntries.clear();
+        } else if (phase == SessionScheduler.SessionPhase.SQUARE_OFF) {
+            squareOffAll(marketTime, "EOD_SQUARE_OFF");
+        }
+    }
 
-            double pnl = (ltp - p.getEntryPrice()) * ("BUY".equalsIgnoreCase(p.getSide()) ? 1 : -1) * p.getQuantity();
-            logger.info("[EXIT_DATA] Side={}, Symbol={}, Price={}, Reason={}, PnL={}, Gate={}",
-                    p.getSide(), symbol, ltp, reason, pnl, gateKey);
-            System.out.println(String.format("[EXIT_DATA] Side=%s, Symbol=%s, Price=%.2f, Reason=%s, PnL=%.2f, Gate=%s",
-                    p.getSide(), symbol, ltp, reason, pnl, gateKey));
+    /**
+     * Closes every open position at its last known price.
+     */
+    public synchronized void squareOffAll(long marketTime, String reason) {
+        pendingEntries.clear();
+        if (positionManager == null) return;
+        for (String symbol : new ArrayList<>(positionManager.getAllPositions().keySet())) {
+            Position p = positionManager.getPosition(symbol);
+            if (p != null) closeTrade(symbol, p, positionManager.getLtp(symbol), marketTime, reason);
         }
     }
 
+    private void scheduleTimeStop(String symbol, long entryTime) {
+        if (scheduler == null || timeStopMs <= 0) return;
+        scheduleTimeStopAt(symbol, entryTime + timeStopMs);
+    }
+
+    private void scheduleTimeStopAt(String symbol, long deadline) {
+        TimerWheel.Timer old = timeStops.put(symbol, scheduler.schedule(deadline, () -> onTimeStop(symbol)));
+        if (old != null) old.cancel();
+    }
+
+    private synchronized void onTimeStop(String symbol) {
+        timeStops.remove(symbol);
+        Position p = (positionManager != null) ? positionManager.getPosition(symbol) : null;
+        if (p == null) return;
+        closeTrade(symbol, p, positionManager.getLtp(symbol), scheduler.now(), "TIME_STOP");
+    }
+
+    /** Silences this instance's log and console output; for sandbox copies (see JitWarmup). */
+    void mute() {
+        logger = NOPLogger.NOP_LOGGER;
+        console = new PrintStream(OutputStream.nullOutputStream());
+    }
+
     public Map<String, ScalpSignal> getActiveSignals() {
         return activeSignals;
     }
 
-}
\ No newline at end of file
+    /**
+     * Installs warm-started indicators (see IndicatorWarmStart). Call before the feed connects.
+     */
+    public void seedIndicators(Map<String, TechnicalIndicators> seeded) {
+        indicatorsMap.putAll(seeded);
+    }
+
+    public Map<String, TechnicalIndicators> getIndicators() {
+        return indicatorsMap;
+    }
+
+    /** Start time of the latest bar seen, 0 before the first. */
+    public long getLastMarketTime() {
+        return lastMarketTime;
+    }
+
+    /**
+     * Starts a new trading day (see SessionLifecycleManager): indicators roll their session
+     * extremes into yesterday's stats, and ORB levels, cloud counters and gate cooldowns are
+     * cleared. Bar history, EMAs and signals for positions still open carry over.
+     */
+    public synchronized void rollSession() {
+        indicatorsMap.values().forEach(TechnicalIndicators::startNewSession);
+        orbHigh.clear();
+        orbLow.clear();
+        cloudAboveCount.clear();
+        cloudBelowCount.clear();
+        gateCooldowns.clear();
+        pendingEntries.clear();
+    }
+
+    /**
+     * Drops all state kept for an underlying that has stopped trading. Signals on instruments
+     * that are still open are left alone.
+     */
+    public synchronized void evictSymbol(String symbol) {
+        history.remove(symbol);
+        indicatorsMap.remove(symbol);
+        orbHigh.remove(symbol);
+        orbLow.remove(symbol);
+        cloudAboveCount.remove(symbol);
+        cloudBelowCount.remove(symbol);
+        gateCooldowns.keySet().removeIf(key -> key.startsWith(symbol + "_"));
+    }
+
+    // --- Engine state snapshot (see EngineSnapshotter) ---
+
+    private static final int STATE_VERSION = 2;
+    private static final int BAR_BYTES = 8 + 8 * 8 + 8;
+
+    /** Upper bound of the bytes {@link #writeState(ByteBuffer)} needs. */
+    int stateSize() {
+        int size = 4;
+        size += 4;
+        for (Map.Entry<String, List<VolumeBar>> e : history.entrySet()) {
+            size += BinaryCodec.sizeOf(e.getKey()) + 4 + e.getValue().size() * BAR_BYTES;
+        }
+        size += 4;
+        for (Map.Entry<String, TechnicalIndicators> e : indicatorsMap.entrySet()) {
+            size += BinaryCodec.sizeOf(e.getKey()) + e.getValue().stateSize();
+        }
+        size += BinaryCodec.sizeOfKeys(orbHigh, 8) + BinaryCodec.sizeOfKeys(orbLow, 8);
+        size += BinaryCodec.sizeOfKeys(cloudAboveCount, 4) + BinaryCodec.sizeOfKeys(cloudBelowCount, 4);
+        size += 4;
+        for (Map.Entry<String, ScalpSignal> e : activeSignals.entrySet()) {
+            size += BinaryCodec.sizeOf(e.getKey()) + signalSize(e.getValue());
+        }
+        size += 4;
+        for (PendingEntryBook.PendingEntry e : pendingEntries.entries()) {
+            size += BinaryCodec.sizeOf(e.gateKey) + signalSize(e.signal) + 1 + 4;
+        }
+        size += BinaryCodec.sizeOfKeys(timeStops, 8) + BinaryCodec.sizeOfKeys(restoredTimeStops, 8);
+        size += 4;
+        for (Map.Entry<String, String> e : signalOriginMap.entrySet()) {
+            size += BinaryCodec.sizeOf(e.getKey()) + BinaryCodec.sizeOf(e.getValue());
+        }
+        size += BinaryCodec.sizeOfKeys(extremePriceMap, 8) + BinaryCodec.sizeOfKeys(isBreakEvenMap, 1);
+        size += BinaryCodec.sizeOfKeys(gateCooldowns, 8);
+        size += 4;
+        if (positionManager != null) {
+            for (String key : positionManager.getAllPositions().keySet()) size += BinaryCodec.sizeOf(key) + 16;
+        }
+        return size;
+    }
+
+    /**
+     * Encodes all per-symbol state. Must run on the thread that drives onVolumeBar so the
+     * picture is consistent; the caller owns the buffer and the I/O.
+     */
+    void writeState(ByteBuffer buf) {
+        buf.putInt(STATE_VERSION);
+
+        buf.putInt(history.size());
+        for (Map.Entry<String, List<VolumeBar>> e : history.entrySet()) {
+            BinaryCodec.putString(buf, e.getKey());
+            List<VolumeBar> bars = e.getValue();
+            buf.putInt(bars.size());
+            for (VolumeBar b : bars) {
+                buf.putLong(b.getStartTime());
+                buf.putDouble(b.getOpen()).putDouble(b.getHigh()).putDouble(b.getLow()).putDouble(b.getClose());
+                buf.putDouble(b.getVwap()).putDouble(b.getCumulativeVolumeDelta());
+                buf.putDouble(b.getOrderBookImbalance()).putDouble(b.getPcr());
+                buf.putLong(b.getVolume());
+            }
+        }
+
+        buf.putInt(indicatorsMap.size());
+        for (Map.Entry<String, TechnicalIndicators> e : indicatorsMap.entrySet()) {
+            BinaryCodec.putString(buf, e.getKey());
+            e.getValue().writeState(buf);
+        }
+
+        BinaryCodec.putDoubleMap(buf, orbHigh);
+        BinaryCodec.putDoubleMap(buf, orbLow);
+        BinaryCodec.putIntMap(buf, cloudAboveCount);
+        BinaryCodec.putIntMap(buf, cloudBelowCount);
+
+        buf.putInt(activeSignals.size());
+        for (Map.Entry<String, ScalpSignal> e : activeSignals.entrySet()) {
+            BinaryCodec.putString(buf, e.getKey());
+            putSignal(buf, e.getValue());
+        }
+
+        buf.putInt(pendingEntries.size());
+        for (PendingEntryBook.PendingEntry e : pendingEntries.entries()) {
+            BinaryCodec.putString(buf, e.gateKey);
+            putSignal(buf, e.signal);
+            buf.put((byte) (e.rising ? 1 : 0));
+            buf.putInt(e.barsLeft);
+        }
+
+        // Time stops as deadlines on the market clock; the timers are rebuilt on restore
+        buf.putInt(timeStops.size() + restoredTimeStops.size());
+        for (Map.Entry<String, TimerWheel.Timer> e : timeStops.entrySet()) {
+            BinaryCodec.putString(buf, e.getKey());
+            buf.putLong(e.getValue().getDeadline());
+        }
+        for (Map.Entry<String, Long> e : restoredTimeStops.entrySet()) {
+            BinaryCodec.putString(buf, e.getKey());
+            buf.putLong(e.getValue());
+        }
+
+        BinaryCodec.putStringMap(buf, signalOriginMap);
+        BinaryCodec.putDoubleMap(buf, extremePriceMap);
+        buf.putInt(isBreakEvenMap.size());
+        for (Map.Entry<String, Boolean> e : isBreakEvenMap.entrySet()) {
+            BinaryCodec.putString(buf, e.getKey());
+            buf.put((byte) (e.getValue() ? 1 : 0));
+        }
+        BinaryCodec.putLongMap(buf, gateCooldowns);
+
+        // Trailing/BE-adjusted stops live on the Position objects, not in SQLite
+        if (positionManager == null) {
+            buf.putInt(0);
+        } else {
+            Map<String, Position> open = positionManager.getAllPositions();
+            buf.putInt(open.size());
+            for (Position p : open.values()) {
+                BinaryCodec.putString(buf, p.getInstrumentKey());
+                buf.putDouble(p.getStopLoss()).putDouble(p.getTakeProfit());
+            }
+        }
+    }
+
+    /**
+     * Replaces all per-symbol state with the snapshot contents. Stops/targets are re-applied
+     * to positions that are still open in the PositionManager; pending entries rest again and
+     * time stops are rescheduled at their original deadlines (once a scheduler is wired).
+     * The whole snapshot is decoded before anything is replaced, so a truncated or corrupt
+     * file leaves the engine as it was.
+     */
+    void readState(ByteBuffer buf) {
+        int version = buf.getInt();
+        if (version != STATE_VERSION) {
+            throw new IllegalStateException("Unsupported engine snapshot version: " + version);
+        }
+
+        Map<String, List<VolumeBar>> newHistory = new HashMap<>();
+        int symbols = buf.getInt();
+        for (int i = 0; i < symbols; i++) {
+            String symbol = BinaryCodec.getString(buf);
+            int n = buf.getInt();
+            List<VolumeBar> bars = new ArrayList<>(Math.max(n, 16));
+            for (int j = 0; j < n; j++) {
+                long start = buf.getLong();
+                VolumeBar b = new VolumeBar(symbol, start, buf.getDouble(), 0);
+                b.setHigh(buf.getDouble());
+                b.setLow(buf.getDouble());
+                b.setClose(buf.getDouble());
+                b.setVwap(buf.getDouble());
+                b.setCumulativeVolumeDelta(buf.getDouble());
+                b.setOrderBookImbalance(buf.getDouble());
+                b.setPcr(buf.getDouble());
+                b.setVolume(buf.getLong());
+                bars.add(b);
+            }
+            newHistory.put(symbol, bars);
+        }
+
+        Map<String, TechnicalIndicators> newIndicators = new HashMap<>();
+        int indicators = buf.getInt();
+        for (int i = 0; i < indicators; i++) {
+            String symbol = BinaryCodec.getString(buf);
+            TechnicalIndicators ind = new TechnicalIndicators();
+            ind.readState(buf);
+            newIndicators.put(symbol, ind);
+        }
+
+        Map<String, Double> newOrbHigh = new HashMap<>();
+        Map<String, Double> newOrbLow = new HashMap<>();
+        Map<String, Integer> newCloudAbove = new HashMap<>();
+        Map<String, Integer> newCloudBelow = new HashMap<>();
+        BinaryCodec.getDoubleMap(buf, newOrbHigh);
+        BinaryCodec.getDoubleMap(buf, newOrbLow);
+        BinaryCodec.getIntMap(buf, newCloudAbove);
+        BinaryCodec.getIntMap(buf, newCloudBelow);
+
+        Map<String, ScalpSignal> newSignals = new HashMap<>();
+        int signals = buf.getInt();
+        for (int i = 0; i < signals; i++) {
+            String key = BinaryCodec.getString(buf);
+            newSignals.put(key, getSignal(buf));
+        }
+
+        List<PendingEntryBook.PendingEntry> newPending = new ArrayList<>();
+        int pending = buf.getInt();
+        for (int i = 0; i < pending; i++) {
+            String gateKey = BinaryCodec.getString(buf);
+            ScalpSignal sig = getSignal(buf);
+            boolean rising = buf.get() != 0;
+            newPending.add(new PendingEntryBook.PendingEntry(0, gateKey, sig, rising, sig.entryPrice, buf.getInt()));
+        }
+
+        Map<String, Long> newTimeStops = new HashMap<>();
+        BinaryCodec.getLongMap(buf, newTimeStops);
+
+        Map<String, String> newOrigins = new HashMap<>();
+        Map<String, Double> newExtremes = new HashMap<>();
+        Map<String, Boolean> newBreakEven = new HashMap<>();
+        Map<String, Long> newCooldowns = new HashMap<>();
+        BinaryCodec.getStringMap(buf, newOrigins);
+        BinaryCodec.getDoubleMap(buf, newExtremes);
+        int be = buf.getInt();
+        for (int i = 0; i < be; i++) {
+            newBreakEven.put(BinaryCodec.getString(buf), buf.get() != 0);
+        }
+        BinaryCodec.getLongMap(buf, newCooldowns);
+
+        Map<String, double[]> newStops = new HashMap<>();
+        int stops = buf.getInt();
+        for (int i = 0; i < stops; i++) {
+            String key = BinaryCodec.getString(buf);
+            newStops.put(key, new double[] {buf.getDouble(), buf.getDouble()});
+        }
+
+        // Parsed in full: swap the new state in
+        replace(history, newHistory);
+        replace(indicatorsMap, newIndicators);
+        replace(orbHigh, newOrbHigh);
+        replace(orbLow, newOrbLow);
+        replace(cloudAboveCount, newCloudAbove);
+        replace(cloudBelowCount, newCloudBelow);
+        replace(activeSignals, newSignals);
+        pendingEntries.clear();
+        for (PendingEntryBook.PendingEntry e : newPending) pendingEntries.place(e.gateKey, e.signal, e.rising, e.barsLeft);
+        for (TimerWheel.Timer t : timeStops.values()) t.cancel();
+        timeStops.clear();
+        restoredTimeStops.clear();
+        for (Map.Entry<String, Long> e : newTimeStops.entrySet()) {
+            if (scheduler != null) {
+                scheduleTimeStopAt(e.getKey(), e.getValue()); // A deadline already passed fires on the next advance
+            } else {
+                restoredTimeStops.put(e.getKey(), e.getValue());
+            }
+        }
+        replace(signalOriginMap, newOrigins);
+        replace(extremePriceMap, newExtremes);
+        replace(isBreakEvenMap, newBreakEven);
+        replace(gateCooldowns, newCooldowns);
+        for (Map.Entry<String, double[]> e : newStops.entrySet()) {
+            Position p = (positionManager != null) ? positionManager.getPosition(e.getKey()) : null;
+            if (p != null) {
+                p.setStopLoss(e.getValue()[0]);
+                p.setTakeProfit(e.getValue()[1]);
+                exitTriggers.clear(e.getKey()); // Re-armed at the restored levels on the next price
+            }
+        }
+    }
+
+    private static <V> void replace(Map<String, V> target, Map<String, V> source) {
+        target.clear();
+        target.putAll(source);
+    }
+
+    private static int signalSize(ScalpSignal sig) {
+        int features = (sig.features == null) ? 0 : sig.features.length * 8;
+        return BinaryCodec.sizeOf(sig.symbol) + BinaryCodec.sizeOf(sig.side) + BinaryCodec.sizeOf(sig.gate.name())
+                + BinaryCodec.sizeOf(sig.status) + 8 * 8 + 4 + features;
+    }
+
+    private static void putSignal(ByteBuffer buf, ScalpSignal sig) {
+        BinaryCodec.putString(buf, sig.symbol);
+        BinaryCodec.putString(buf, sig.side);
+        BinaryCodec.putString(buf, sig.gate.name());
+        BinaryCodec.putString(buf, sig.status);
+        buf.putLong(sig.timestamp);
+        buf.putDouble(sig.entryPrice).putDouble(sig.stopLoss).putDouble(sig.takeProfit);
+        buf.putDouble(sig.oiScale).putDouble(sig.playbookScore);
+        buf.putDouble(sig.edge).putDouble(sig.edgeScale);
+        // Scorer inputs, so a trade opened before the restart still records its outcome
+        if (sig.features == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(sig.features.length);
+            for (double f : sig.features) buf.putDouble(f);
+        }
+    }
+
+    private static ScalpSignal getSignal(ByteBuffer buf) {
+        String symbol = BinaryCodec.getString(buf);
+        String side = BinaryCodec.getString(buf);
+        Gate gate = Gate.valueOf(BinaryCodec.getString(buf));
+        String status = BinaryCodec.getString(buf);
+        long ts = buf.getLong();
+        ScalpSignal sig = new ScalpSignal(symbol, side, gate, buf.getDouble(), buf.getDouble(), buf.getDouble(), ts);
+        sig.status = status;
+        sig.oiScale = buf.getDouble();
+        sig.playbookScore = buf.getDouble();
+        sig.edge = buf.getDouble();
+        sig.edgeScale = buf.getDouble();
+        int n = buf.getInt();
+        if (n >= 0) {
+            sig.features = new double[n];
+            for (int i = 0; i < n; i++) sig.features[i] = buf.getDouble();
+        }
+        return sig;
+    }
+
+}
@@ -0,0 +1,280 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Spot x vol scenario P&L of the open book.
+ *
+ * Each open position becomes one slot in primitive arrays (strike, side, signed quantity,
+ * spot, vol, time to expiry and its model value now). Every cell of the grid (by default
+ * 21 spot moves over +/-1% times 7 IV shocks) revalues all of them with Black-Scholes,
+ * using the vols and expiry of the pricer's current surface. Non-option positions move with
+ * the spot shock times their beta to Nifty 50 from the {@link CorrelationMatrix} (1 without
+ * one, or for symbols it does not track). Cells are independent, so large books are split
+ * over the fork-join pool by cell range; small ones are priced inline, where forking would
+ * cost more than the work.
+ *
+ * Index spot updates recompute the grid at most once per risk.scenario.min.interval.ms of
+ * market time, so the feed thread does not revalue the book on every tick; a run longer
+ * than risk.scenario.budget.us is logged. {@link #allows} is the pre-trade check: it always
+ * revalues, and the worst cell with the candidate added must stay within
+ * risk.scenario.max.loss.
+ */
+public class ScenarioRiskEngine implements OptionChainProvider.SpotListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScenarioRiskEngine.class);
+    private static final int CELL_GRAIN = 8;
+
+    private final PositionManager positionManager;
+    private final OptionChainProvider optionChainProvider;
+    private final double[] spotShocks; // Fractions of spot
+    private final double[] volShocks;  // Fractions of IV
+    private final long budgetNanos;
+    private final long minIntervalMs;
+    private final double maxLoss;
+    private final int parallelThreshold;
+
+    // Position slots, reused between runs
+    private int count;
+    private boolean[] option = new boolean[16];
+    private boolean[] call = new boolean[16];
+    private double[] strike = new double[16];
+    private double[] quantity = new double[16]; // Signed: SELL is negative
+    private double[] spot = new double[16];
+    private double[] vol = new double[16];
+    private double[] years = new double[16];
+    private double[] value = new double[16];   // Model (option) or last (other) price now
+    private double[] beta = new double[16];    // Spot sensitivity of non-option positions
+    private double rate;
+    private volatile CorrelationMatrix correlations;
+
+    private volatile ScenarioGrid latest;
+    private long lastRunMs; // Market time of the last run; meaningful once latest is set
+    private boolean overBudget;
+
+    public ScenarioRiskEngine(PositionManager positionManager, OptionChainProvider optionChainProvider) {
+        this.positionManager = positionManager;
+        this.optionChainProvider = optionChainProvider;
+        int steps = Integer.parseInt(ConfigLoader.getProperty("risk.scenario.spot.steps", "21"));
+        double range = Double.parseDouble(ConfigLoader.getProperty("risk.scenario.spot.range.pct", "1.0")) / 100.0;
+        this.spotShocks = new double[steps];
+        for (int i = 0; i < steps; i++) {
+            spotShocks[i] = (steps == 1) ? 0.0 : -range + 2 * range * i / (steps - 1);
+        }
+        this.volShocks = Arrays.stream(ConfigLoader.getProperty("risk.scenario.vol.shocks.pct", "-30,-20,-10,0,20,50,100")
+                .split(",")).mapToDouble(v -> Double.parseDouble(v.trim()) / 100.0).toArray();
+        this.budgetNanos = Long.parseLong(ConfigLoader.getProperty("risk.scenario.budget.us", "1000")) * 1000L;
+        this.minIntervalMs = Long.parseLong(ConfigLoader.getProperty("risk.scenario.min.interval.ms", "1000"));
+        this.maxLoss = Double.parseDouble(ConfigLoader.getProperty("risk.scenario.max.loss", "0"));
+        this.parallelThreshold = Integer.parseInt(ConfigLoader.getProperty("risk.scenario.parallel.threshold", "4096"));
+    }
+
+    /** Supplies the betas that scale the spot shock for non-option positions. */
+    public void setCorrelationMatrix(CorrelationMatrix correlations) {
+        this.correlations = correlations;
+    }
+
+    @Override
+    public synchronized void onSpot(String underlying, double spotPrice, long timestamp) {
+        if (positionManager.getAllPositions().isEmpty()) {
+            if (latest != null && latest.positions > 0) revalue(timestamp); // Book went flat
+            return;
+        }
+        if (latest != null && timestamp >= lastRunMs && timestamp - lastRunMs < minIntervalMs) return;
+        revalue(timestamp);
+    }
+
+    /** Revalues the open book over the grid and publishes the result. */
+    public synchronized ScenarioGrid revalue(long now) {
+        long start = System.nanoTime();
+        loadPositions(now);
+        int cells = spotShocks.length * volShocks.length;
+        double[] pnl = new double[cells];
+        if ((long) count * cells >= parallelThreshold) {
+            ForkJoinPool.commonPool().invoke(new CellRange(pnl, 0, cells));
+        } else {
+            for (int c = 0; c < cells; c++) pnl[c] = cellPnl(c);
+        }
+        long nanos = System.nanoTime() - start;
+        ScenarioGrid grid = new ScenarioGrid(spotShocks, volShocks, pnl, count, now, nanos);
+        latest = grid;
+        lastRunMs = now;
+
+        boolean over = nanos > budgetNanos;
+        if (over != overBudget) {
+            if (over) {
+                logger.warn("Scenario grid took {} us for {} positions (budget {} us)", nanos / 1000, count,
+                        budgetNanos / 1000);
+            } else {
+                logger.debug("Scenario grid back within budget ({} us)", nanos / 1000);
+            }
+            overBudget = over;
+        }
+        return grid;
+    }
+
+    /**
+     * Pre-trade check for buying or selling qty of an option: false when the worst cell of
+     * the current book plus the candidate loses more than risk.scenario.max.loss. Always true
+     * when the limit is not set (0) or the option cannot be priced.
+     */
+    public synchronized boolean allows(OptionSymbolCodec.OptionInstrument candidate, boolean buy, int qty, long now) {
+        if (maxLoss <= 0) return true;
+        double s = optionChainProvider.getSpot(candidate.underlying);
+        BlackScholesPricer.Surface surface = optionChainProvider.getSurface(candidate.underlying);
+        if (s <= 0 || surface == null) return true;
+
+        ScenarioGrid grid = revalue(now);
+        double k = candidate.getStrike();
+        double sigma = surface.ivAt(candidate.getStrike());
+        double base = BlackScholesPricer.price(candidate.call, s, k, surface.years, rate, sigma);
+        double signed = buy ? qty : -qty;
+        double worst = 0.0;
+        for (int i = 0; i < spotShocks.length; i++) {
+            for (int j = 0; j < volShocks.length; j++) {
+                double shocked = BlackScholesPricer.price(candidate.call, s * (1 + spotShocks[i]), k, surface.years,
+                        rate, Math.max(0.01, sigma * (1 + volShocks[j])));
+                worst = Math.min(worst, grid.pnl(i, j) + signed * (shocked - base));
+            }
+        }
+        if (-worst > maxLoss) {
+            logger.warn("[RISK_BLOCK] {} {} x{}: worst scenario loss {} exceeds {}", buy ? "BUY" : "SELL", candidate,
+                    qty, String.format("%.0f", -worst), maxLoss);
+            return false;
+        }
+        return true;
+    }
+
+    /** The last published grid, or null before the first run. */
+    public ScenarioGrid getLatest() {
+        return latest;
+    }
+
+    private void loadPositions(long now) {
+        count = 0;
+        rate = optionChainProvider.getPricer().getRate();
+        CorrelationMatrix betas = correlations;
+        for (Position p : positionManager.getAllPositions().values()) {
+            if (p.getQuantity() <= 0) continue;
+            ensureCapacity(count + 1);
+            int n = count;
+            double signed = "SELL".equals(p.getSide()) ? -p.getQuantity() : p.getQuantity();
+            OptionSymbolCodec.OptionInstrument instrument = OptionSymbolCodec.parse(p.getInstrumentKey());
+            double s = (instrument != null) ? optionChainProvider.getSpot(instrument.underlying) : 0.0;
+            BlackScholesPricer.Surface surface = (s > 0) ? optionChainProvider.getSurface(instrument.underlying) : null;
+            quantity[n] = signed;
+            if (surface != null) {
+                option[n] = true;
+                call[n] = instrument.call;
+                strike[n] = instrument.getStrike();
+                spot[n] = s;
+                vol[n] = surface.ivAt(instrument.getStrike());
+                years[n] = surface.years;
+                value[n] = BlackScholesPricer.price(call[n], s, strike[n], years[n], rate, vol[n]);
+            } else {
+                option[n] = false;
+                value[n] = positionManager.getLtp(p.getInstrumentKey());
+                double b = (betas != null) ? betas.beta(p.getInstrumentKey()) : Double.NaN;
+                beta[n] = Double.isNaN(b) ? 1.0 : b;
+            }
+            count++;
+        }
+    }
+
+    private double cellPnl(int cell) {
+        double ds = spotShocks[cell / volShocks.length];
+        double dv = volShocks[cell % volShocks.length];
+        double pnl = 0.0;
+        for (int n = 0; n < count; n++) {
+            if (option[n]) {
+                double shocked = BlackScholesPricer.price(call[n], spot[n] * (1 + ds), strike[n], years[n], rate,
+                        Math.max(0.01, vol[n] * (1 + dv)));
+                pnl += quantity[n] * (shocked - value[n]);
+            } else {
+                pnl += quantity[n] * value[n] * beta[n] * ds;
+            }
+        }
+        return pnl;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= option.length) return;
+        int cap = option.length * 2;
+        option = Arrays.copyOf(option, cap);
+        call = Arrays.copyOf(call, cap);
+        strike = Arrays.copyOf(strike, cap);
+        quantity = Arrays.copyOf(quantity, cap);
+        spot = Arrays.copyOf(spot, cap);
+        vol = Arrays.copyOf(vol, cap);
+        years = Arrays.copyOf(years, cap);
+        value = Arrays.copyOf(value, cap);
+        beta = Arrays.copyOf(beta, cap);
+    }
+
+    /** Fork-join task over a range of grid cells. */
+    private final class CellRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] pnl;
+        private final int from;
+        private final int to;
+
+        CellRange(double[] pnl, int from, int to) {
+            this.pnl = pnl;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CELL_GRAIN) {
+                for (int c = from; c < to; c++) pnl[c] = cellPnl(c);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new CellRange(pnl, from, mid), new CellRange(pnl, mid, to));
+        }
+    }
+
+    /**
+     * One revaluation: P&L against the current model value for every spot shock (rows) and
+     * IV shock (columns).
+     */
+    public static final class ScenarioGrid {
+        public final double[] spotShocks;
+        public final double[] volShocks;
+        public final int positions;
+        public final long timestamp;
+        public final long computeNanos;
+        public final double worstLoss; // Most negative cell P&L, 0 when no cell loses
+        public final int worstSpot;
+        public final int worstVol;
+        private final double[] pnl;
+
+        ScenarioGrid(double[] spotShocks, double[] volShocks, double[] pnl, int positions, long timestamp,
+                long computeNanos) {
+            this.spotShocks = spotShocks;
+            this.volShocks = volShocks;
+            this.pnl = pnl;
+            this.positions = positions;
+            this.timestamp = timestamp;
+            this.computeNanos = computeNanos;
+            int worst = -1;
+            for (int c = 0; c < pnl.length; c++) {
+                if (pnl[c] < 0 && (worst < 0 || pnl[c] < pnl[worst])) worst = c;
+            }
+            this.worstLoss = (worst < 0) ? 0.0 : pnl[worst];
+            this.worstSpot = (worst < 0) ? -1 : worst / volShocks.length;
+            this.worstVol = (worst < 0) ? -1 : worst % volShocks.length;
+        }
+
+        public double pnl(int spotIndex, int volIndex) {
+            return pnl[spotIndex * volShocks.length + volIndex];
+        }
+    }
+}
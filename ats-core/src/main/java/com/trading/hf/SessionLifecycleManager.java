@@ -0,0 +1,116 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rolls per-day state at the session boundary so a long-running process does not carry
+ * yesterday's ORB, cooldowns, chain state or closed trades into today, and evicts state
+ * for symbols that have stopped printing.
+ *
+ * Driven by market time: the first bar of a new IST date at or after session.rollover.time
+ * starts the new session. Call {@link #onBar(VolumeBar)} on the trading thread before the engine.
+ */
+public class SessionLifecycleManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionLifecycleManager.class);
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final long DAY_MS = 86_400_000L;
+    private static final long IST_OFFSET_MS = 19_800_000L;
+
+    private final ScalpingSignalEngine engine;
+    private final PositionManager positionManager;
+    private final OptionChainProvider optionChainProvider;
+    private final BarAggregationEngine barEngine;
+    private final AdaptiveVolumeThresholds thresholds;
+    private final VolumeProfileCache volumeProfile;
+    private final long rolloverOffsetMs;
+    private final long idleEvictMs;
+
+    // Underlying symbol -> last bar time (market time)
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private long sessionDay = Long.MIN_VALUE;
+
+    public SessionLifecycleManager(ScalpingSignalEngine engine, PositionManager positionManager,
+            OptionChainProvider optionChainProvider, BarAggregationEngine barEngine,
+            AdaptiveVolumeThresholds thresholds, VolumeProfileCache volumeProfile) {
+        this.engine = engine;
+        this.positionManager = positionManager;
+        this.optionChainProvider = optionChainProvider;
+        this.barEngine = barEngine;
+        this.thresholds = thresholds;
+        this.volumeProfile = volumeProfile;
+        this.rolloverOffsetMs = LocalTime.parse(ConfigLoader.getProperty("session.rollover.time", "09:00"))
+                .toSecondOfDay() * 1000L;
+        this.idleEvictMs = Long.parseLong(ConfigLoader.getProperty("session.idle.evict.days", "2")) * DAY_MS;
+    }
+
+    public void onBar(VolumeBar bar) {
+        long time = bar.getStartTime();
+        lastSeen.put(bar.getSymbol(), time);
+
+        long localMs = time + IST_OFFSET_MS;
+        long day = Math.floorDiv(localMs, DAY_MS);
+        if (sessionDay == Long.MIN_VALUE) {
+            // Startup: warm-start/snapshot already prepared the running session
+            sessionDay = day;
+            return;
+        }
+        if (day > sessionDay && Math.floorMod(localMs, DAY_MS) >= rolloverOffsetMs) {
+            rollover(day, time);
+        }
+    }
+
+    /**
+     * Closes the previous session and starts the one for the given IST epoch day.
+     */
+    public synchronized void rollover(long day, long marketTime) {
+        if (day <= sessionDay) return;
+        long start = System.nanoTime();
+        logger.info("Session rollover: {} -> {}", LocalDate.ofEpochDay(sessionDay), LocalDate.ofEpochDay(day));
+        sessionDay = day;
+
+        long dayStart = day * DAY_MS - IST_OFFSET_MS;
+        if (positionManager != null) positionManager.rollSession(dayStart);
+        if (optionChainProvider != null) optionChainProvider.rollSession();
+        engine.rollSession();
+        evictIdle(marketTime);
+
+        if (thresholds != null && ConfigLoader.getBooleanProperty("volume.adaptive.enabled", true)) {
+            // DB read stays off the trading thread
+            CompletableFuture.runAsync(() -> thresholds.calibrate(LocalDate.ofEpochDay(day)));
+        }
+        if (volumeProfile != null && ConfigLoader.getBooleanProperty("volume.profile.enabled", true)) {
+            CompletableFuture.runAsync(() -> volumeProfile.load(LocalDate.ofEpochDay(day))); // Yesterday joins the curves
+        }
+        logger.info("Session rollover completed in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Evicts every symbol whose last bar is older than session.idle.evict.days.
+     */
+    public int evictIdle(long marketTime) {
+        int evicted = 0;
+        for (Map.Entry<String, Long> e : lastSeen.entrySet()) {
+            if (marketTime - e.getValue() < idleEvictMs) continue;
+            String symbol = e.getKey();
+            lastSeen.remove(symbol);
+            engine.evictSymbol(symbol);
+            if (barEngine != null) barEngine.evictSymbol(symbol);
+            evicted++;
+        }
+        if (evicted > 0) logger.info("Evicted state for {} idle symbols", evicted);
+        return evicted;
+    }
+
+    public long getSessionDay() {
+        return sessionDay;
+    }
+}
@@ -0,0 +1,159 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Market clock plus a TimerWheel: publishes session-phase events and runs time-based actions
+ * (time stops, EOD square-off) even when no bar arrives.
+ *
+ * In "market" mode the clock is the latest bar time, so replays fire their events at
+ * simulated times; in "wall" mode (default for run.mode=live) a daemon thread advances it
+ * from the system clock every clock.tick.ms. Bars advance the clock in both modes.
+ */
+public class SessionScheduler {
+
+    private Logger logger = LoggerFactory.getLogger(SessionScheduler.class);
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+
+    public enum SessionPhase {
+        OPEN("09:15"),
+        ORB_CLOSED("09:30"),
+        LATE_SESSION("14:45"),
+        NO_NEW_ENTRIES("15:10"),
+        SQUARE_OFF("15:20"),
+        CLOSED("15:30");
+
+        private final String defaultTime;
+
+        SessionPhase(String defaultTime) {
+            this.defaultTime = defaultTime;
+        }
+
+        public LocalTime configuredTime() {
+            return LocalTime.parse(ConfigLoader.getProperty("session.phase." + name().toLowerCase(), defaultTime));
+        }
+    }
+
+    public interface SessionListener {
+        void onSessionPhase(SessionPhase phase, long marketTime);
+    }
+
+    private final TimerWheel wheel;
+    private final boolean wallClock;
+    private final long tickMs;
+    private final List<SessionListener> listeners = new CopyOnWriteArrayList<>();
+    private final LocalTime[] phaseTimes = new LocalTime[SessionPhase.values().length];
+    private volatile long now = 0;
+    private long scheduledDay = Long.MIN_VALUE;
+    private ScheduledExecutorService ticker;
+
+    public SessionScheduler() {
+        this(!"market".equalsIgnoreCase(ConfigLoader.getProperty("clock.mode",
+                "live".equalsIgnoreCase(ConfigLoader.getProperty("run.mode", "simulation")) ? "wall" : "market")));
+    }
+
+    public SessionScheduler(boolean wallClock) {
+        this.wallClock = wallClock;
+        this.tickMs = Long.parseLong(ConfigLoader.getProperty("clock.tick.ms", "1000"));
+        // One turn of 1s ticks covers ~68 minutes; longer timers just ride extra turns
+        this.wheel = new TimerWheel(tickMs, 4096);
+        for (SessionPhase phase : SessionPhase.values()) {
+            phaseTimes[phase.ordinal()] = phase.configuredTime();
+        }
+    }
+
+    public void addListener(SessionListener listener) {
+        listeners.add(listener);
+    }
+
+    /** Silences this instance's log output; for sandbox copies (see JitWarmup). */
+    void mute() {
+        logger = NOPLogger.NOP_LOGGER;
+    }
+
+    public void start() {
+        if (!wallClock || ticker != null) return;
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "market-clock");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(() -> advanceTo(System.currentTimeMillis()), 0, tickMs, TimeUnit.MILLISECONDS);
+        logger.info("Market clock started (wall clock, {} ms tick)", tickMs);
+    }
+
+    public void stop() {
+        if (ticker != null) ticker.shutdownNow();
+    }
+
+    /** Advances the market clock from a bar's time. */
+    public void onBar(VolumeBar bar) {
+        advanceTo(bar.getStartTime());
+    }
+
+    /**
+     * Moves the clock forward (never back) and fires everything due. The first advance of a
+     * day schedules that day's remaining phase events.
+     */
+    public void advanceTo(long time) {
+        synchronized (this) {
+            if (time <= now) return;
+            now = time;
+            long day = Math.floorDiv(time + 19_800_000L, 86_400_000L); // IST date
+            if (day > scheduledDay) scheduleDay(day, time);
+        }
+        wheel.advanceTo(time);
+    }
+
+    public long now() {
+        return now;
+    }
+
+    public TimerWheel.Timer schedule(long deadline, Runnable task) {
+        return wheel.schedule(deadline, task);
+    }
+
+    public TimerWheel.Timer scheduleAfter(long delayMs, Runnable task) {
+        return wheel.schedule(now + delayMs, task);
+    }
+
+    private void scheduleDay(long day, long time) {
+        scheduledDay = day;
+        LocalDate date = LocalDate.ofEpochDay(day);
+        SessionPhase current = null;
+        for (SessionPhase phase : SessionPhase.values()) {
+            long at = date.atTime(phaseTimes[phase.ordinal()]).atZone(IST).toInstant().toEpochMilli();
+            if (at < time) {
+                current = phase; // Joined mid-session: only the phase in force is announced
+                continue;
+            }
+            wheel.schedule(at, () -> publish(phase, at));
+        }
+        if (current != null) {
+            SessionPhase phase = current;
+            wheel.schedule(time, () -> publish(phase, time));
+        }
+    }
+
+    private void publish(SessionPhase phase, long at) {
+        logger.info("Session phase: {} at {}", phase, LocalTime.ofNanoOfDay(Math.floorMod(at + 19_800_000L, 86_400_000L) * 1_000_000L));
+        for (SessionListener l : listeners) {
+            try {
+                l.onSessionPhase(phase, at);
+            } catch (Exception e) {
+                logger.error("Session listener failed on {}", phase, e);
+            }
+        }
+    }
+}
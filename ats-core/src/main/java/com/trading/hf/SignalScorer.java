@@ -0,0 +1,366 @@
+package com.trading.hf;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scores signals with a trained model (gradient-boosted trees or logistic regression) and
+ * records a feature/label dataset from closed trades for training it.
+ *
+ * The model file (scorer.model.file, JSON) is flattened into primitive arrays on load and
+ * swapped in atomically when its modification time changes, so evaluation is a few array
+ * walks with no allocation. Without a model every signal passes unscored.
+ *
+ * Model JSON:
+ *   {"type":"logistic","bias":b,"weights":[w0..wN]}
+ *   {"type":"gbdt","base":b,"trees":[{"feature":[..],"threshold":[..],"left":[..],"right":[..],"value":[..]}]}
+ * Tree nodes with feature < 0 are leaves; a node goes left when x[feature] <= threshold.
+ * Both output log-odds, mapped to a probability with the logistic function. Each tree must
+ * be a proper tree rooted at node 0: a model whose child indices leave the tree, loop back
+ * or share a node is refused on load.
+ */
+public class SignalScorer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignalScorer.class);
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+
+    public static final String[] FEATURE_NAMES = {
+            "gate", "direction", "playbook_score", "adx", "atr_pct", "vwap_dist_atr", "ema9_dist_atr",
+            "vol_ratio", "minute_of_session", "reward_risk", "entry_dist_atr", "obi", "macd_hist_atr",
+            "day_range_pos", "relative_strength", "cross_section_pct", "beta", "heavyweight_confirm",
+            "breadth_net", "breadth_volume", "breadth_volume_change_5m"
+    };
+    public static final int FEATURE_COUNT = FEATURE_NAMES.length;
+
+    private final Path modelFile;
+    private final Path datasetFile;
+    private final long reloadIntervalMs;
+    private final double minProbability;
+    private final double fullSizeProbability;
+    private final AtomicReference<Model> model = new AtomicReference<>();
+    private long modelMtime = Long.MIN_VALUE;
+    private long lastCheckMs = 0;
+    private BufferedWriter dataset; // Owned by the writer thread
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "signal-dataset-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SignalScorer() {
+        this.modelFile = Paths.get(ConfigLoader.getProperty("scorer.model.file", "signal_model.json"));
+        this.datasetFile = Paths.get(ConfigLoader.getProperty("scorer.dataset.file", "signal_dataset.csv"));
+        this.reloadIntervalMs = Long.parseLong(ConfigLoader.getProperty("scorer.reload.interval.ms", "5000"));
+        this.minProbability = Double.parseDouble(ConfigLoader.getProperty("scorer.min.probability", "0.5"));
+        this.fullSizeProbability = Double.parseDouble(ConfigLoader.getProperty("scorer.full.size.probability", "0.65"));
+        reloadIfChanged();
+    }
+
+    /**
+     * Fills the feature vector for a signal from the bar and indicators it fired on.
+     * correlations and breadth may be null.
+     */
+    public static void features(double[] x, ScalpingSignalEngine.ScalpSignal signal, VolumeBar bar,
+            TechnicalIndicators ind, CorrelationMatrix correlations, MarketBreadthEngine breadth) {
+        double close = bar.getClose();
+        double atr = Math.max(ind.getAtr(), close * 0.0001);
+        double risk = Math.max(Math.abs(signal.entryPrice - signal.stopLoss), 1e-9);
+        double range = ind.getSessionHigh() - ind.getSessionLow();
+        LocalTime time = Instant.ofEpochMilli(bar.getStartTime()).atZone(IST).toLocalTime();
+
+        x[0] = signal.gate.ordinal();
+        x[1] = "BUY".equals(signal.side) ? 1 : -1;
+        x[2] = signal.playbookScore;
+        x[3] = ind.getAdx();
+        x[4] = atr / close;
+        x[5] = (close - bar.getVwap()) / atr;
+        x[6] = (close - ind.getEma9()) / atr;
+        x[7] = bar.getVolume() / Math.max(1, ind.getAvgVolume());
+        x[8] = time.getHour() * 60 + time.getMinute() - (9 * 60 + 15);
+        x[9] = Math.abs(signal.takeProfit - signal.entryPrice) / risk;
+        x[10] = (signal.entryPrice - close) / atr;
+        x[11] = bar.getOrderBookImbalance();
+        x[12] = ind.getMacdHist() / atr;
+        x[13] = (range > 0 && range < Double.MAX_VALUE / 2) ? (close - ind.getSessionLow()) / range : 0.5;
+        int size = bar.getCrossSectionSize();
+        int rank = (x[1] > 0) ? bar.getLongRank() : bar.getShortRank();
+        x[14] = bar.getRelativeStrength();
+        x[15] = (size > 1) ? (double) (size - rank) / (size - 1) : 0.5; // 1 = best of the minute
+        double beta = (correlations != null) ? correlations.beta(bar.getSymbol()) : Double.NaN;
+        double confirm = (correlations != null) ? correlations.heavyweightConfirmation(bar.getSymbol(), x[1] > 0) : Double.NaN;
+        x[16] = Double.isNaN(beta) ? 1.0 : beta;
+        x[17] = Double.isNaN(confirm) ? 0.0 : confirm;
+        MarketBreadthEngine.BreadthSnapshot snapshot = (breadth != null) ? breadth.getLatest() : null;
+        x[18] = (snapshot != null) ? snapshot.getNet() : 0.0;
+        x[19] = (snapshot != null && !Double.isNaN(snapshot.volumeBreadth)) ? snapshot.volumeBreadth : x[18];
+        x[20] = (breadth != null) ? breadth.volumeBreadthChange(5) : 0.0;
+    }
+
+    public boolean hasModel() {
+        return model.get() != null;
+    }
+
+    /**
+     * Probability that the trade wins, or NaN when no model is loaded.
+     */
+    public double predict(double[] x) {
+        Model m = model.get();
+        return (m == null) ? Double.NaN : m.predict(x);
+    }
+
+    /** Whether a signal with this predicted probability should trade. */
+    public boolean accept(double probability) {
+        return Double.isNaN(probability) || probability >= minProbability;
+    }
+
+    /**
+     * Size multiplier in [0.25, 1]: full size at scorer.full.size.probability, scaled down
+     * linearly towards the minimum probability.
+     */
+    public double sizeScale(double probability) {
+        if (Double.isNaN(probability) || fullSizeProbability <= minProbability) return 1.0;
+        double f = (probability - minProbability) / (fullSizeProbability - minProbability);
+        return Math.max(0.25, Math.min(1.0, f));
+    }
+
+    /**
+     * Swaps in the model file if it changed since the last load. Checks the file at most once
+     * per scorer.reload.interval.ms; cheap enough to call per bar. A file that fails to load is
+     * tried again on the next check.
+     */
+    public void reloadIfChanged() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheckMs < reloadIntervalMs) return;
+        lastCheckMs = now;
+        try {
+            if (!Files.exists(modelFile)) return;
+            long mtime = Files.getLastModifiedTime(modelFile).toMillis();
+            if (mtime == modelMtime) return;
+            Model loaded = Model.parse(JsonParser.parseString(Files.readString(modelFile)).getAsJsonObject());
+            modelMtime = mtime;
+            model.set(loaded);
+            logger.info("Signal model loaded from {} ({})", modelFile, loaded.describe());
+        } catch (Exception e) {
+            logger.error("Failed to load signal model {}; keeping the previous one", modelFile, e);
+        }
+    }
+
+    /**
+     * Queues a training row for a closed trade: entry features, label (1 = profitable) and
+     * the trade's return on the traded instrument. The row is formatted here and appended to
+     * the dataset file on a background thread, so the caller never waits on disk.
+     */
+    public void record(ScalpingSignalEngine.ScalpSignal signal, double returnPct) {
+        if (signal.features == null) return;
+        StringBuilder row = new StringBuilder(256);
+        row.append(signal.timestamp).append(',').append(signal.symbol.replace(',', ' '));
+        for (double v : signal.features) row.append(',').append(v);
+        row.append(',').append(returnPct > 0 ? 1 : 0).append(',').append(returnPct);
+        String line = row.toString();
+        try {
+            writer.execute(() -> append(line));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Signal dataset closed, dropping row for {}", signal.symbol);
+        }
+    }
+
+    private void append(String line) {
+        try {
+            if (dataset == null) {
+                boolean fresh = !Files.exists(datasetFile);
+                dataset = Files.newBufferedWriter(datasetFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+                if (fresh) {
+                    dataset.write("timestamp,symbol," + String.join(",", FEATURE_NAMES) + ",label,return_pct");
+                    dataset.newLine();
+                }
+            }
+            dataset.write(line);
+            dataset.newLine();
+            dataset.flush();
+        } catch (IOException e) {
+            logger.error("Failed to append to signal dataset {}", datasetFile, e);
+        }
+    }
+
+    /** Writes the queued rows and closes the dataset file. */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Signal dataset rows still queued after 5 s");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (dataset != null) {
+            try {
+                dataset.close();
+            } catch (IOException e) {
+                logger.error("Failed to close signal dataset {}", datasetFile, e);
+            }
+        }
+    }
+
+    /**
+     * Immutable flattened model. Trees are stored node-by-node in shared arrays; roots[t] is
+     * the first node of tree t and child indices are absolute.
+     */
+    static final class Model {
+        final boolean trees;
+        final double bias;
+        final double[] weights;
+        final int[] roots;
+        final int[] feature;
+        final double[] threshold;
+        final int[] left;
+        final int[] right;
+        final double[] value;
+
+        private Model(boolean trees, double bias, double[] weights, int[] roots, int[] feature, double[] threshold,
+                int[] left, int[] right, double[] value) {
+            this.trees = trees;
+            this.bias = bias;
+            this.weights = weights;
+            this.roots = roots;
+            this.feature = feature;
+            this.threshold = threshold;
+            this.left = left;
+            this.right = right;
+            this.value = value;
+        }
+
+        double predict(double[] x) {
+            double z = bias;
+            if (trees) {
+                for (int root : roots) {
+                    int n = root;
+                    while (feature[n] >= 0) {
+                        n = (x[feature[n]] <= threshold[n]) ? left[n] : right[n];
+                    }
+                    z += value[n];
+                }
+            } else {
+                int len = Math.min(weights.length, x.length);
+                for (int i = 0; i < len; i++) z += weights[i] * x[i];
+            }
+            return 1.0 / (1.0 + Math.exp(-z));
+        }
+
+        String describe() {
+            return trees ? roots.length + " trees, " + feature.length + " nodes" : "logistic, " + weights.length + " weights";
+        }
+
+        static Model parse(JsonObject json) {
+            String type = json.get("type").getAsString();
+            if ("logistic".equalsIgnoreCase(type)) {
+                return new Model(false, json.get("bias").getAsDouble(), doubles(json.getAsJsonArray("weights")),
+                        null, null, null, null, null, null);
+            }
+            if (!"gbdt".equalsIgnoreCase(type)) {
+                throw new IllegalArgumentException("Unknown model type: " + type);
+            }
+            JsonArray treeArray = json.getAsJsonArray("trees");
+            int total = 0;
+            for (JsonElement t : treeArray) total += t.getAsJsonObject().getAsJsonArray("feature").size();
+
+            int[] roots = new int[treeArray.size()];
+            int[] feature = new int[total];
+            double[] threshold = new double[total];
+            int[] left = new int[total];
+            int[] right = new int[total];
+            double[] value = new double[total];
+            int offset = 0;
+            for (int t = 0; t < treeArray.size(); t++) {
+                JsonObject tree = treeArray.get(t).getAsJsonObject();
+                int[] f = ints(tree.getAsJsonArray("feature"));
+                double[] th = doubles(tree.getAsJsonArray("threshold"));
+                int[] l = ints(tree.getAsJsonArray("left"));
+                int[] r = ints(tree.getAsJsonArray("right"));
+                double[] v = doubles(tree.getAsJsonArray("value"));
+                checkTree(t, f, th, l, r, v);
+                roots[t] = offset;
+                for (int i = 0; i < f.length; i++) {
+                    if (f[i] >= FEATURE_COUNT) {
+                        throw new IllegalArgumentException("Tree " + t + " uses unknown feature " + f[i]);
+                    }
+                    feature[offset + i] = f[i];
+                    threshold[offset + i] = th[i];
+                    left[offset + i] = (f[i] >= 0) ? offset + l[i] : -1;
+                    right[offset + i] = (f[i] >= 0) ? offset + r[i] : -1;
+                    value[offset + i] = v[i];
+                }
+                offset += f.length;
+            }
+            double base = json.has("base") ? json.get("base").getAsDouble() : 0.0;
+            return new Model(true, base, null, roots, feature, threshold, left, right, value);
+        }
+
+        /**
+         * Rejects a tree that scoring could not walk safely: mismatched arrays, child indices
+         * out of range, or a child reached twice (a cycle or shared node) from the root.
+         */
+        private static void checkTree(int t, int[] f, double[] th, int[] l, int[] r, double[] v) {
+            int n = f.length;
+            if (n == 0) throw new IllegalArgumentException("Tree " + t + " has no nodes");
+            if (th.length != n || l.length != n || r.length != n || v.length != n) {
+                throw new IllegalArgumentException("Tree " + t + " arrays differ in length");
+            }
+            boolean[] reached = new boolean[n];
+            int[] stack = new int[n];
+            int depth = 0;
+            stack[depth++] = 0;
+            reached[0] = true;
+            while (depth > 0) {
+                int node = stack[--depth];
+                if (f[node] < 0) continue;
+                for (int child : new int[] { l[node], r[node] }) {
+                    if (child < 0 || child >= n) {
+                        throw new IllegalArgumentException("Tree " + t + " node " + node + " has child " + child
+                                + " outside 0.." + (n - 1));
+                    }
+                    if (reached[child]) {
+                        throw new IllegalArgumentException("Tree " + t + " node " + node + " reaches node " + child
+                                + " twice (cycle or shared node)");
+                    }
+                    reached[child] = true;
+                    stack[depth++] = child;
+                }
+            }
+        }
+
+        private static double[] doubles(JsonArray a) {
+            double[] out = new double[a.size()];
+            for (int i = 0; i < out.length; i++) out[i] = a.get(i).getAsDouble();
+            return out;
+        }
+
+        private static int[] ints(JsonArray a) {
+            int[] out = new int[a.size()];
+            for (int i = 0; i < out.length; i++) out[i] = a.get(i).getAsInt();
+            return out;
+        }
+    }
+}
@@ -2,26 +2,54 @@ package com.trading.hf;
 
 public class SymbolUtil {
 
-    public static OptionSymbol parseOptionSymbol(String symbol) {
-        if (symbol == null || !symbol.startsWith("NSE|OPTION|")) {
-            return null;
-        }
+    /**
+     * Maps a bridge symbol (e.g. NIFTY, RELIANCE) to the internal key used by the engine.
+     */
+    public static String toInternalSymbol(String bridgeSymbol) {
+        if ("NIFTY".equals(bridgeSymbol)) return "NSE_INDEX|Nifty 50";
+        if ("BANKNIFTY".equals(bridgeSymbol)) return "NSE_INDEX|Nifty Bank";
+        return "NSE_EQ|" + bridgeSymbol;
+    }
+
+    /**
+     * Inverse of {@link #toInternalSymbol(String)}, used to query bridge-keyed tables
+     * such as backtest_candles.
+     */
+    public static String toBridgeSymbol(String internalSymbol) {
+        if ("NSE_INDEX|Nifty 50".equals(internalSymbol)) return "NIFTY";
+        if ("NSE_INDEX|Nifty Bank".equals(internalSymbol)) return "BANKNIFTY";
+        int sep = internalSymbol.lastIndexOf('|');
+        return sep >= 0 ? internalSymbol.substring(sep + 1) : internalSymbol;
+    }
 
-        try {
-            String[] parts = symbol.split("\\|");
-            if (parts.length != 3) return null;
+    /**
+     * Canonical name of an index underlying in any of the forms in use (NSE_INDEX|Nifty 50,
+     * NSE|INDEX|NIFTY, NIFTY): NIFTY or BANKNIFTY. Other symbols map to their upper-cased
+     * name after the last '|'.
+     */
+    public static String canonicalUnderlying(String symbol) {
+        int start = symbol.lastIndexOf('|') + 1;
+        // The two indices resolve without creating strings
+        if (nameIs(symbol, start, "NIFTY") || nameIs(symbol, start, "Nifty 50")) return "NIFTY";
+        if (nameIs(symbol, start, "BANKNIFTY") || nameIs(symbol, start, "Nifty Bank")) return "BANKNIFTY";
+        return symbol.substring(start).toUpperCase();
+    }
 
-            String instrumentPart = parts[2];
-            String[] instrumentDetails = instrumentPart.split("_");
-            if (instrumentDetails.length != 3) return null;
+    private static boolean nameIs(String symbol, int start, String name) {
+        return symbol.length() - start == name.length() && symbol.startsWith(name, start);
+    }
 
-            int strike = Integer.parseInt(instrumentDetails[1]);
-            String type = instrumentDetails[2];
+    /** Listed strike interval of an underlying's options (canonical or any index form). */
+    public static int strikeStep(String underlying) {
+        return "BANKNIFTY".equals(canonicalUnderlying(underlying)) ? 100 : 50;
+    }
 
-            return new OptionSymbol(strike, type);
-        } catch (Exception e) {
-            return null;
-        }
+    /**
+     * Strike and type of a unified option symbol (NSE|OPTION|NIFTY_22000_CE); the shared
+     * instrument flyweight from {@link OptionSymbolCodec}, or null for other symbols.
+     */
+    public static OptionSymbol parseOptionSymbol(String symbol) {
+        return OptionSymbolCodec.parse(symbol);
     }
 
     public static class OptionSymbol {
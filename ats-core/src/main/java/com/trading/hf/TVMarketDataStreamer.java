@@ -8,8 +8,13 @@ import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
 
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -18,13 +23,15 @@ import java.util.function.Consumer;
  */
 public class TVMarketDataStreamer {
 
-    private static final Logger logger = LoggerFactory.getLogger(TVMarketDataStreamer.class);
+    private Logger logger = LoggerFactory.getLogger(TVMarketDataStreamer.class);
+    private PrintStream console = System.out;
     private final Consumer<VolumeBar> barConsumer;
     private final OptionChainProvider optionChainProvider;
     private final MarketBreadthEngine breadthEngine;
     private final String url;
     private WebSocketClient webSocketClient;
     private final Gson gson = new Gson();
+    private volatile Consumer<List<VolumeBar>> batchListener;
 
     public TVMarketDataStreamer(Consumer<VolumeBar> barConsumer, OptionChainProvider ocp, MarketBreadthEngine mbe) {
         this(barConsumer, ocp, mbe, "ws://localhost:8765");
@@ -70,15 +77,28 @@ public class TVMarketDataStreamer {
         }
     }
 
-    private void handleTextMessage(String message) {
+    void handleTextMessage(String message) {
         try {
             JsonObject jsonObject = gson.fromJson(message, JsonObject.class);
             String type = jsonObject.get("type").getAsString();
             
             if ("candle_update".equals(type)) {
                 JsonArray dataArray = jsonObject.getAsJsonArray("data");
+                List<VolumeBar> bars = new ArrayList<>(dataArray.size());
                 for (JsonElement element : dataArray) {
-                    processCandle(element.getAsJsonObject());
+                    try {
+                        bars.add(parseCandle(element.getAsJsonObject()));
+                    } catch (Exception e) {
+                        logger.error("Skipping malformed candle from TV Bridge: " + e.getMessage());
+                    }
+                }
+                // The whole minute's cross-section is seen before any single bar is dispatched
+                Consumer<List<VolumeBar>> listener = batchListener;
+                if (listener != null) {
+                    listener.accept(bars);
+                }
+                for (VolumeBar bar : bars) {
+                    processCandle(bar);
                 }
             } else if ("option_chain".equals(type)) {
                 processOptionChain(jsonObject);
@@ -90,7 +110,21 @@ public class TVMarketDataStreamer {
         }
     }
 
-    private void processCandle(JsonObject data) {
+    /**
+     * Receives each candle_update batch (one minute of every symbol) before its bars are
+     * passed on individually.
+     */
+    public void setBatchListener(Consumer<List<VolumeBar>> batchListener) {
+        this.batchListener = batchListener;
+    }
+
+    /** Silences this instance's log and console output; for sandbox copies (see JitWarmup). */
+    void mute() {
+        logger = NOPLogger.NOP_LOGGER;
+        console = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    private VolumeBar parseCandle(JsonObject data) {
         String symbol = data.get("symbol").getAsString();
         long ts = data.get("timestamp").getAsLong();
         
@@ -104,13 +138,10 @@ public class TVMarketDataStreamer {
         double vwap = m1.has("vwap") ? m1.get("vwap").getAsDouble() : close;
 
         // Map to internal symbol format
-        String prefix = (symbol.equals("NIFTY") || symbol.equals("BANKNIFTY")) ? "NSE_INDEX|" : "NSE_EQ|";
-        String fullSymbol = prefix + symbol;
-        if ("NIFTY".equals(symbol)) fullSymbol = "NSE_INDEX|Nifty 50";
-        if ("BANKNIFTY".equals(symbol)) fullSymbol = "NSE_INDEX|Nifty Bank";
+        String fullSymbol = SymbolUtil.toInternalSymbol(symbol);
         
         if ("NIFTY".equals(symbol) && ts % 300000 == 0) {
-            System.out.println("Processing Nifty candle at " + ts + " Close=" + close);
+            console.println("Processing Nifty candle at " + ts + " Close=" + close);
         }
 
         // Create a VolumeBar directly from the candle data
@@ -123,13 +154,16 @@ public class TVMarketDataStreamer {
         if (data.has("pcr")) {
             bar.setPcr(data.get("pcr").getAsDouble());
         }
-        
+        return bar;
+    }
+
+    private void processCandle(VolumeBar bar) {
         // Pass to consumers
         if (optionChainProvider != null) {
-            optionChainProvider.updateSpot(bar.getSymbol(), bar.getClose());
+            optionChainProvider.updateSpot(bar.getSymbol(), bar.getClose(), bar.getStartTime());
             if (bar.getPcr() != 0.0) {
                 logger.debug("Received index candle with PCR={} for {}", bar.getPcr(), bar.getSymbol());
-                optionChainProvider.updateIndexPcr(bar.getSymbol(), bar.getPcr());
+                optionChainProvider.updateIndexPcr(bar.getSymbol(), bar.getPcr(), bar.getStartTime());
             }
         }
 
@@ -149,37 +183,44 @@ public class TVMarketDataStreamer {
                 for (JsonElement el : chainData) {
                     JsonObject d = el.getAsJsonObject();
                     int strike = (int) d.get("strike").getAsDouble();
-                    String type = d.has("type") ? d.get("type").getAsString() : (d.has("call_oi") ? "CE" : "PE");
-                    double ltp = d.has("ltp") ? d.get("ltp").getAsDouble() : 0.0;
-                    double oi = 0.0;
-                    if (d.has("oi")) oi = d.get("oi").getAsDouble();
-                    else if (d.has("call_oi") && "CE".equals(type)) oi = d.get("call_oi").getAsDouble();
-                    else if (d.has("put_oi") && "PE".equals(type)) oi = d.get("put_oi").getAsDouble();
-                    double oiChange = d.has("oi_change_pct") ? d.get("oi_change_pct").getAsDouble() : 0.0;
+                    if (!d.has("type") && (d.has("call_oi") || d.has("put_oi"))) {
+                        // One row per strike with both sides (call_oi/put_oi, *_oi_chg vs previous day)
+                        if (d.has("call_oi")) dtoList.add(sideOf(d, strike, "CE", "call"));
+                        if (d.has("put_oi")) dtoList.add(sideOf(d, strike, "PE", "put"));
+                    } else {
+                        String type = d.has("type") ? d.get("type").getAsString() : "PE";
+                        double ltp = d.has("ltp") ? d.get("ltp").getAsDouble() : 0.0;
+                        double oi = d.has("oi") ? d.get("oi").getAsDouble() : 0.0;
+                        double oiChange = d.has("oi_change_pct") ? d.get("oi_change_pct").getAsDouble() : 0.0;
+                        dtoList.add(new OptionChainDto(strike, type, ltp, oi, oiChange, "NEUTRAL"));
+                    }
 
                     if (sample < 5) {
-                        logger.debug("OptionChainEntry[{}] strike={} type={} ltp={} oi={} oiChange={}", sample, strike, type, ltp, oi, oiChange);
+                        logger.debug("OptionChainEntry[{}] {}", sample, d);
                         sample++;
                     }
-
-                    dtoList.add(new OptionChainDto(
-                        strike,
-                        type,
-                        ltp,
-                        oi,
-                        oiChange,
-                        "NEUTRAL"
-                    ));
                 }
             
             if (optionChainProvider != null) {
-                optionChainProvider.updateFromBridge(dtoList);
+                String underlying = jsonObject.has("symbol") ? jsonObject.get("symbol").getAsString() : "NIFTY";
+                String expiry = jsonObject.has("expiry") ? jsonObject.get("expiry").getAsString() : "";
+                // Unstamped chains (0) take the market clock in the provider, not the wall clock
+                long ts = jsonObject.has("timestamp") ? jsonObject.get("timestamp").getAsLong() : 0L;
+                optionChainProvider.updateFromBridge(underlying, expiry, ts, dtoList);
             }
         } catch (Exception e) {
             logger.error("Error processing option chain: {}", e.getMessage());
         }
     }
 
+    private static OptionChainDto sideOf(JsonObject d, int strike, String type, String prefix) {
+        double oi = d.get(prefix + "_oi").getAsDouble();
+        double ltp = d.has(prefix + "_ltp") ? d.get(prefix + "_ltp").getAsDouble() : 0.0;
+        double chg = d.has(prefix + "_oi_chg") ? d.get(prefix + "_oi_chg").getAsDouble() : 0.0;
+        double base = oi - chg;
+        return new OptionChainDto(strike, type, ltp, oi, base > 0 ? chg / base * 100.0 : 0.0, "NEUTRAL");
+    }
+
     private void processMarketBreadth(JsonObject jsonObject) {
         try {
             JsonObject data = jsonObject.getAsJsonObject("data");
@@ -1,10 +1,13 @@
 package com.trading.hf;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class TechnicalIndicators {
 
+    private static final int STATE_VERSION = 1;
+
     // --- Stateful Indicators for a single symbol ---
     private double ema20 = 0;
     private double ema9 = 0;
@@ -22,6 +25,7 @@ public class TechnicalIndicators {
     private double macdHist = 0;
     private double sessionHigh = 0;
     private double sessionLow = Double.MAX_VALUE;
+    private double sessionOpen = 0;
     private List<Long> recentVolumes = new ArrayList<>();
     private double avgVolume50 = 0;
     private double evwma5 = 0;
@@ -45,6 +49,7 @@ public class TechnicalIndicators {
         long volume = bar.getVolume();
 
         // 1. Session Stats
+        if (sessionOpen == 0) sessionOpen = bar.getOpen();
         sessionHigh = Math.max(sessionHigh, high);
         sessionLow = Math.min(sessionLow, low);
 
@@ -166,6 +171,69 @@ public class TechnicalIndicators {
     //     this.isYesterdayReversal = reversal;
     // }
 
+    /**
+     * Closes the current session: its high/low/close become yesterday's stats and the
+     * session extremes are cleared. EMAs, ATR and ADX carry over.
+     */
+    public void startNewSession() {
+        if (!isInitialized || sessionOpen == 0) return;
+        double close = prevClose;
+        // Reversal: took out the prior day's extreme and closed back the other way
+        boolean reversal = yesterdayHigh > 0
+                && ((close > sessionOpen && sessionLow < yesterdayLow)
+                    || (close < sessionOpen && sessionHigh > yesterdayHigh));
+        setYesterdayStats(sessionHigh, sessionLow, close, reversal);
+        sessionHigh = 0;
+        sessionLow = Double.MAX_VALUE;
+        sessionOpen = 0;
+    }
+
+    /** Number of bytes {@link #writeState(ByteBuffer)} needs for this instance. */
+    public int stateSize() {
+        return 4 + 33 * 8 + 3 + 4 + recentVolumes.size() * 8;
+    }
+
+    public void writeState(ByteBuffer buf) {
+        buf.putInt(STATE_VERSION);
+        buf.putDouble(ema20).putDouble(ema9).putDouble(prevEma9).putDouble(ema50).putDouble(ema200);
+        buf.putDouble(atr14).putDouble(evwma20).putDouble(ema12).putDouble(ema26);
+        buf.putDouble(macdLine).putDouble(prevMacdLine).putDouble(macdSignal).putDouble(prevMacdSignal).putDouble(macdHist);
+        buf.putDouble(sessionHigh).putDouble(sessionLow).putDouble(sessionOpen);
+        buf.putDouble(avgVolume50).putDouble(evwma5);
+        buf.putDouble(prevClose).putDouble(prevHigh).putDouble(prevLow);
+        buf.putDouble(smoothedTR).putDouble(smoothedPlusDM).putDouble(smoothedMinusDM).putDouble(adx);
+        buf.putDouble(yesterdayHigh).putDouble(yesterdayLow).putDouble(yesterdayClose);
+        buf.putDouble(0).putDouble(0).putDouble(0).putDouble(0); // Reserved
+        buf.put((byte) (isYesterdayReversal ? 1 : 0));
+        buf.put((byte) (isInitialized ? 1 : 0));
+        buf.put((byte) (isDayTwoCandidate ? 1 : 0));
+        buf.putInt(recentVolumes.size());
+        for (long v : recentVolumes) buf.putLong(v);
+    }
+
+    public void readState(ByteBuffer buf) {
+        int version = buf.getInt();
+        if (version != STATE_VERSION) {
+            throw new IllegalStateException("Unsupported indicator state version: " + version);
+        }
+        ema20 = buf.getDouble(); ema9 = buf.getDouble(); prevEma9 = buf.getDouble(); ema50 = buf.getDouble(); ema200 = buf.getDouble();
+        atr14 = buf.getDouble(); evwma20 = buf.getDouble(); ema12 = buf.getDouble(); ema26 = buf.getDouble();
+        macdLine = buf.getDouble(); prevMacdLine = buf.getDouble(); macdSignal = buf.getDouble();
+        prevMacdSignal = buf.getDouble(); macdHist = buf.getDouble();
+        sessionHigh = buf.getDouble(); sessionLow = buf.getDouble(); sessionOpen = buf.getDouble();
+        avgVolume50 = buf.getDouble(); evwma5 = buf.getDouble();
+        prevClose = buf.getDouble(); prevHigh = buf.getDouble(); prevLow = buf.getDouble();
+        smoothedTR = buf.getDouble(); smoothedPlusDM = buf.getDouble(); smoothedMinusDM = buf.getDouble(); adx = buf.getDouble();
+        yesterdayHigh = buf.getDouble(); yesterdayLow = buf.getDouble(); yesterdayClose = buf.getDouble();
+        buf.position(buf.position() + 4 * 8); // Reserved
+        isYesterdayReversal = buf.get() != 0;
+        isInitialized = buf.get() != 0;
+        isDayTwoCandidate = buf.get() != 0;
+        int n = buf.getInt();
+        recentVolumes.clear();
+        for (int i = 0; i < n; i++) recentVolumes.add(buf.getLong());
+    }
+
     public double getSessionHigh() { return sessionHigh; }
     public double getSessionLow() { return sessionLow; }
     public double getAvgVolume() { return avgVolume50; }
@@ -0,0 +1,141 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hashed timer wheel driven by an external clock (see SessionScheduler).
+ *
+ * Timers are intrusive doubly-linked nodes in a bucket chosen by their deadline tick, so
+ * schedule and cancel are O(1). {@link #advanceTo(long)} walks only the buckets for the
+ * ticks that elapsed (at most one full turn, however far the clock jumps) and fires the
+ * timers that are due, in deadline order. Tasks run on the advancing thread, outside the
+ * wheel's lock, and may schedule or cancel other timers.
+ */
+public class TimerWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    /** Handle returned by {@link #schedule}; cancel() is O(1) and idempotent. */
+    public final class Timer {
+        private final long deadline;
+        private final long deadlineTick;
+        private final Runnable task;
+        private Timer prev;
+        private Timer next;
+        private int bucket = -1; // -1 = not linked (fired or cancelled)
+
+        private Timer(long deadline, long deadlineTick, Runnable task) {
+            this.deadline = deadline;
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isPending() {
+            synchronized (TimerWheel.this) {
+                return bucket >= 0;
+            }
+        }
+
+        public void cancel() {
+            synchronized (TimerWheel.this) {
+                unlink(this);
+            }
+        }
+    }
+
+    private final long tickMs;
+    private final int mask;
+    private final Timer[] heads;
+    private long currentTick = Long.MIN_VALUE; // Set by the first advanceTo
+    private int size;
+
+    public TimerWheel(long tickMs, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) throw new IllegalArgumentException("wheelSize must be a power of two");
+        this.tickMs = tickMs;
+        this.mask = wheelSize - 1;
+        this.heads = new Timer[wheelSize];
+    }
+
+    /**
+     * Schedules the task for the given clock time. A deadline already in the past fires on the
+     * next advance.
+     */
+    public synchronized Timer schedule(long deadline, Runnable task) {
+        long tick = Math.floorDiv(deadline, tickMs);
+        if (currentTick != Long.MIN_VALUE && tick <= currentTick) tick = currentTick + 1;
+        Timer t = new Timer(deadline, tick, task);
+        int b = (int) (tick & mask);
+        t.bucket = b;
+        t.next = heads[b];
+        if (t.next != null) t.next.prev = t;
+        heads[b] = t;
+        size++;
+        return t;
+    }
+
+    /**
+     * Moves the clock forward and runs every timer whose deadline is at or before now.
+     * Returns the number of timers fired.
+     */
+    public int advanceTo(long now) {
+        List<Timer> due = collectDue(now);
+        for (Timer t : due) {
+            try {
+                t.task.run();
+            } catch (Exception e) {
+                logger.error("Timer task failed", e);
+            }
+        }
+        return due.size();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long currentTime() {
+        return (currentTick == Long.MIN_VALUE) ? 0 : currentTick * tickMs;
+    }
+
+    private synchronized List<Timer> collectDue(long now) {
+        long target = Math.floorDiv(now, tickMs);
+        if (currentTick == Long.MIN_VALUE) currentTick = target - heads.length; // First advance visits every bucket
+        if (target <= currentTick) return List.of();
+
+        List<Timer> due = new ArrayList<>();
+        long steps = Math.min(target - currentTick, heads.length);
+        for (long i = 1; i <= steps; i++) {
+            Timer t = heads[(int) ((currentTick + i) & mask)];
+            while (t != null) {
+                Timer next = t.next;
+                if (t.deadlineTick <= target) {
+                    unlink(t);
+                    due.add(t);
+                }
+                t = next;
+            }
+        }
+        currentTick = target;
+        if (due.size() > 1) due.sort(Comparator.comparingLong(t -> t.deadline));
+        return due;
+    }
+
+    private void unlink(Timer t) {
+        if (t.bucket < 0) return;
+        if (t.prev != null) t.prev.next = t.next; else heads[t.bucket] = t.next;
+        if (t.next != null) t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+        t.bucket = -1;
+        size--;
+    }
+}
@@ -0,0 +1,556 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped journal of position events: the store for persist.store=journal.
+ *
+ * Every open, partial close, SL/TP change and close is one fixed 256-byte record with the
+ * position's full state, written with absolute puts into a MappedByteBuffer and sealed with a
+ * CRC32C. An append is a few stores and a checksum, with no system call and no allocation.
+ * The bytes are in the page cache as soon as they are written, so they survive the process
+ * being killed (kill -9); surviving a power cut needs persist.journal.force=true, which
+ * msyncs every record (milliseconds each).
+ *
+ * On startup the journal is read up to the first empty, torn or stale record and replayed
+ * into the latest state of each position. A mirror thread copies new records into
+ * trading_system.db every persist.journal.mirror.ms through an idempotent
+ * {@link PositionWriter}, so reporting reads SQLite as before.
+ *
+ * Compaction alternates between the journal file and a sibling ".alt" file; neither is ever
+ * renamed or deleted while mapped (which Windows refuses). Once the journal is three quarters
+ * full the mirror thread waits for the database to catch up, then writes the latest state of
+ * today's and still-open positions into the other file and switches to it by raising the
+ * generation in its header. A crash before that header is forced leaves the old file current.
+ * Records are sequenced across files, so leftovers of an earlier generation end the replay.
+ * A journal that fills before compaction is done grows in place.
+ *
+ * Strings are stored as UTF-8 in fixed fields: the instrument key in up to 96 bytes, the
+ * strategy in 32 and the exit reason in 36. A row whose key does not fit is rejected
+ * (IllegalArgumentException, nothing written), since a cut key would name another
+ * instrument on replay; a longer strategy or reason is cut at a character boundary and
+ * logged.
+ *
+ * Each file starts with a one-record header: magic, format version, record size, generation
+ * and the sequence number its records follow. A file without it (written before the header
+ * existed) or of another version is refused at open rather than decoded with the wrong
+ * layout; once its records are in the database it can be moved aside and a new journal seeds
+ * itself from there.
+ */
+public class TradeJournal implements PositionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TradeJournal.class);
+
+    static final int RECORD = 256;
+    // Header: "ATSJRNL" magic, format version, record size; records follow it
+    static final long MAGIC = 0x004C4E524A535441L;
+    static final int VERSION = 1;
+    private static final int HEADER = RECORD;
+    private static final int HEADER_VERSION = 8;
+    private static final int HEADER_RECORD = 12;
+    private static final int HEADER_GENERATION = 16;
+    private static final int HEADER_BASE_SEQ = 24;
+    private static final long COMPACT_RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Record layout (little-endian); the CRC covers bytes 4..255
+    private static final int CRC = 0;
+    private static final int EVENT = 4;
+    private static final int STATUS = 5;       // 0 ACTIVE, 1 CLOSED
+    private static final int SIDE = 6;         // 0 BUY, 1 SELL
+    private static final int SEQ = 8;
+    private static final int QUANTITY = 16;
+    private static final int INITIAL_QUANTITY = 20;
+    private static final int ENTRY_PRICE = 24;
+    private static final int ENTRY_TS = 32;
+    private static final int STOP_LOSS = 40;
+    private static final int TAKE_PROFIT = 48;
+    private static final int EXIT_PRICE = 56;
+    private static final int EXIT_TS = 64;
+    private static final int REALIZED_PNL = 72;
+    private static final int KEY_LEN = 80;     // String lengths; -1 for null
+    private static final int STRATEGY_LEN = 81;
+    private static final int REASON_LEN = 82;
+    private static final int KEY = 84;
+    private static final int KEY_BYTES = 96;
+    private static final int STRATEGY = KEY + KEY_BYTES;
+    private static final int STRATEGY_BYTES = 32;
+    private static final int REASON = STRATEGY + STRATEGY_BYTES;
+    private static final int REASON_BYTES = 36;
+    private static final int POSITION_ID = REASON + REASON_BYTES;
+
+    private final Path path;
+    private final Path altPath;
+    private final int minCapacity;
+    private final boolean force;
+    private final long mirrorNanos;
+    private final PositionWriter mirror;
+    private final Object mirrorLock = new Object();
+    private final CRC32C crc = new CRC32C(); // Appends and compaction only, under this
+    private final Thread mirrorThread;
+    private volatile boolean running = true;
+
+    private volatile MappedByteBuffer buffer; // Replaced only under this (and mirrorLock to compact)
+    private ByteBuffer crcView;
+    private Path current;                     // path or altPath, whichever has the newer generation
+    private long generation;
+    private int capacity;                     // Records
+    private int compactAt;                    // Records at which compaction is requested
+    private volatile int tail;                // Records written
+    private volatile boolean compactRequested;
+    private long nextCompactNanos;            // Mirror thread only
+    private long seq;
+    private long maxPositionId;
+    private int mirrored;                     // Records handed to the mirror, under mirrorLock
+    private Map<Long, Row> replayed;          // Latest row per position, until load()
+
+    public TradeJournal(String path, String dbUrl) {
+        this.path = Paths.get(path);
+        this.altPath = this.path.resolveSibling(this.path.getFileName() + ".alt");
+        this.minCapacity = Integer.parseInt(ConfigLoader.getProperty("persist.journal.capacity", "65536"));
+        this.force = ConfigLoader.getBooleanProperty("persist.journal.force", false);
+        this.mirrorNanos = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(ConfigLoader.getProperty("persist.journal.mirror.ms", "1000")));
+        try {
+            this.current = (generationOf(altPath) > generationOf(this.path)) ? altPath : this.path;
+            use(map(current, minCapacity));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot map trade journal " + path, e);
+        }
+        this.generation = buffer.getLong(HEADER_GENERATION);
+        this.replayed = recover();
+        this.mirror = new PositionWriter(dbUrl, true);
+        // Whatever the last run wrote but had not mirrored yet
+        mirror.enqueueAll(new ArrayList<>(replayed.values()));
+        this.mirrored = tail;
+        this.nextCompactNanos = System.nanoTime();
+
+        this.mirrorThread = new Thread(this::runMirror, "journal-mirror");
+        mirrorThread.setDaemon(true);
+        mirrorThread.start();
+    }
+
+    /**
+     * Replayed positions that are active or were entered or exited at or after since, in the
+     * order they were opened. A journal that was empty (first run in this mode) takes the book
+     * from the database instead and records it. A journal over half full is compacted in the
+     * background.
+     */
+    @Override
+    public synchronized List<Row> load(long since) {
+        List<Row> live = new ArrayList<>();
+        if (replayed == null) return live;
+        if (replayed.isEmpty()) {
+            live.addAll(mirror.load(since));
+            synchronized (mirrorLock) {
+                for (Row r : live) append(r);
+                mirrored = tail; // Read from the database
+            }
+            logger.info("Trade journal is empty; seeded {} positions from the database", live.size());
+        } else {
+            for (Row r : replayed.values()) {
+                if (r.isActive() || r.entryTimestamp >= since || r.exitTimestamp >= since) live.add(r);
+            }
+        }
+        replayed = null;
+        if (tail > capacity / 2) requestCompaction();
+        return live;
+    }
+
+    /** Highest id in the journal or, for positions compacted away, the database. */
+    @Override
+    public synchronized long maxPositionId() {
+        return Math.max(maxPositionId, mirror.maxPositionId());
+    }
+
+    @Override
+    public synchronized void enqueue(Row row) {
+        checkKey(row);
+        append(row);
+    }
+
+    /** All or nothing: a row with a key that does not fit rejects the whole list. */
+    @Override
+    public synchronized void enqueueAll(List<Row> rows) {
+        for (Row row : rows) checkKey(row);
+        for (Row row : rows) append(row);
+    }
+
+    private static void checkKey(Row row) {
+        if (row.instrumentKey != null && utf8Length(row.instrumentKey) > KEY_BYTES) {
+            throw new IllegalArgumentException("Instrument key longer than " + KEY_BYTES
+                    + " bytes cannot be journaled: " + row.instrumentKey);
+        }
+    }
+
+    /** Archived by the mirror, which owns the database connection. */
+    @Override
+    public void archive(long dayStart) {
+        mirror.archive(dayStart);
+    }
+
+    /** Mirrors what is pending and waits for it to reach the database. */
+    @Override
+    public boolean flush(long timeoutMs) {
+        mirrorPending();
+        return mirror.flush(timeoutMs);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(mirrorThread);
+        try {
+            mirrorThread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mirrorPending();
+        mirror.close();
+        synchronized (this) {
+            buffer.force();
+        }
+    }
+
+    /** Records written since the last compaction. */
+    public int size() {
+        return tail;
+    }
+
+    private void append(Row row) {
+        if (tail == capacity) grow();
+        int slot = tail;
+        write(slot, row);
+        if (force) buffer.force(offset(slot), RECORD);
+        tail = slot + 1; // Publishes the record to the mirror thread
+        if (tail >= compactAt && !compactRequested) requestCompaction();
+    }
+
+    private void requestCompaction() {
+        compactRequested = true;
+        LockSupport.unpark(mirrorThread);
+    }
+
+    /** Full before the mirror thread compacted: extends the file rather than compact here. */
+    private void grow() {
+        try {
+            use(map(current, capacity * 2));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot grow trade journal " + current, e);
+        }
+        logger.warn("Trade journal {} filled before compaction; grown to {} records", current, capacity);
+    }
+
+    private static int offset(int slot) {
+        return HEADER + slot * RECORD;
+    }
+
+    private void write(int slot, Row r) {
+        encode(buffer, crcView, crc, offset(slot), r, ++seq);
+        if (r.positionId > maxPositionId) maxPositionId = r.positionId;
+    }
+
+    private static void encode(ByteBuffer b, ByteBuffer crcView, CRC32C crc, int at, Row r, long seq) {
+        b.put(at + EVENT, r.event);
+        b.put(at + STATUS, (byte) (r.isActive() ? 0 : 1));
+        b.put(at + SIDE, (byte) ("SELL".equalsIgnoreCase(r.side) ? 1 : 0));
+        b.putLong(at + SEQ, seq);
+        b.putLong(at + POSITION_ID, r.positionId);
+        b.putInt(at + QUANTITY, r.quantity);
+        b.putInt(at + INITIAL_QUANTITY, r.initialQuantity);
+        b.putDouble(at + ENTRY_PRICE, r.entryPrice);
+        b.putLong(at + ENTRY_TS, r.entryTimestamp);
+        b.putDouble(at + STOP_LOSS, r.stopLoss);
+        b.putDouble(at + TAKE_PROFIT, r.takeProfit);
+        b.putDouble(at + EXIT_PRICE, r.exitPrice);
+        b.putLong(at + EXIT_TS, r.exitTimestamp);
+        b.putDouble(at + REALIZED_PNL, r.realizedPnL);
+        putString(b, at + KEY_LEN, at + KEY, KEY_BYTES, r.instrumentKey); // Checked to fit
+        if (!putString(b, at + STRATEGY_LEN, at + STRATEGY, STRATEGY_BYTES, r.strategy)) {
+            logger.warn("Strategy of position {} cut to {} bytes in the trade journal: {}", r.positionId,
+                    STRATEGY_BYTES, r.strategy);
+        }
+        if (!putString(b, at + REASON_LEN, at + REASON, REASON_BYTES, r.exitReason)) {
+            logger.warn("Exit reason of position {} cut to {} bytes in the trade journal: {}", r.positionId,
+                    REASON_BYTES, r.exitReason);
+        }
+        b.putInt(at + CRC, checksum(crcView, crc, at));
+    }
+
+    private static int checksum(ByteBuffer crcView, CRC32C crc, int at) {
+        crcView.clear().position(at + EVENT).limit(at + RECORD);
+        crc.reset();
+        crc.update(crcView);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes s as UTF-8 into at most max bytes; returns false when it had to be cut (at a
+     * character boundary). ASCII, the usual case, is copied without allocating.
+     */
+    private static boolean putString(ByteBuffer b, int lenAt, int at, int max, String s) {
+        if (s == null) {
+            b.put(lenAt, (byte) -1);
+            return true;
+        }
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) return putUtf8(b, lenAt, at, max, s);
+            if (i == max) {
+                b.put(lenAt, (byte) max);
+                return false;
+            }
+            b.put(at + i, (byte) c);
+        }
+        b.put(lenAt, (byte) n);
+        return true;
+    }
+
+    private static boolean putUtf8(ByteBuffer b, int lenAt, int at, int max, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int n = bytes.length;
+        if (n > max) {
+            n = max;
+            while (n > 0 && (bytes[n] & 0xC0) == 0x80) n--; // Not inside a multi-byte character
+        }
+        b.put(at, bytes, 0, n);
+        b.put(lenAt, (byte) n);
+        return n == bytes.length;
+    }
+
+    private static int utf8Length(String s) {
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer b, int lenAt, int at) {
+        int n = b.get(lenAt);
+        if (n < 0) return null;
+        byte[] bytes = new byte[n];
+        b.get(at, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Row decode(ByteBuffer b, int slot) {
+        int at = offset(slot);
+        return new Row(b.get(at + EVENT), b.getLong(at + POSITION_ID), getString(b, at + KEY_LEN, at + KEY),
+                b.getInt(at + QUANTITY), b.getInt(at + INITIAL_QUANTITY), b.get(at + SIDE) == 1 ? "SELL" : "BUY",
+                b.getDouble(at + ENTRY_PRICE), b.getLong(at + ENTRY_TS), b.getDouble(at + STOP_LOSS),
+                b.getDouble(at + TAKE_PROFIT), b.getDouble(at + EXIT_PRICE), b.getLong(at + EXIT_TS),
+                b.getDouble(at + REALIZED_PNL),
+                getString(b, at + REASON_LEN, at + REASON), getString(b, at + STRATEGY_LEN, at + STRATEGY),
+                b.get(at + STATUS) == 1 ? "CLOSED" : "ACTIVE");
+    }
+
+    /**
+     * Replays valid records from the start; the first empty or torn one, or one not following
+     * the previous sequence number (left from an earlier generation), ends the journal.
+     */
+    private Map<Long, Row> recover() {
+        Map<Long, Row> latest = new LinkedHashMap<>();
+        seq = buffer.getLong(HEADER_BASE_SEQ);
+        int slot = 0;
+        while (slot < capacity) {
+            int at = offset(slot);
+            byte event = buffer.get(at + EVENT);
+            if (event < OPEN || event > CLOSE) break;
+            if (buffer.getInt(at + CRC) != checksum(crcView, crc, at)) {
+                logger.warn("Trade journal record {} fails its checksum (torn write); replay stops there", slot);
+                break;
+            }
+            long recordSeq = buffer.getLong(at + SEQ);
+            if (recordSeq <= seq) break;
+            seq = recordSeq;
+            Row r = decode(buffer, slot);
+            latest.put(r.positionId, r);
+            maxPositionId = Math.max(maxPositionId, r.positionId);
+            slot++;
+        }
+        tail = slot;
+        logger.info("Trade journal {}: replayed {} records, {} positions", current, slot, latest.size());
+        return latest;
+    }
+
+    private void runMirror() {
+        while (running) {
+            LockSupport.parkNanos(mirrorNanos);
+            mirrorPending();
+            if (compactRequested && running && System.nanoTime() - nextCompactNanos >= 0) compactInBackground();
+        }
+    }
+
+    /** Hands records not yet mirrored to the database writer. */
+    private void mirrorPending() {
+        synchronized (mirrorLock) {
+            int end = tail;
+            if (mirrored >= end) return;
+            List<Row> rows = new ArrayList<>(end - mirrored);
+            for (int slot = mirrored; slot < end; slot++) rows.add(decode(buffer, slot));
+            mirrored = end;
+            mirror.enqueueAll(rows);
+        }
+    }
+
+    /**
+     * Keeps the latest state of today's and still-open positions, on the mirror thread. The
+     * records about to be dropped must be in the database first, so this waits for the mirror;
+     * when it is behind the journal keeps (and if need be grows) its file and retries later.
+     *
+     * The records up to a snapshot of the tail are compacted into the other file and forced
+     * without holding up appends. Under the lock only the records appended since are copied
+     * after them and the other file's header is forced with the next generation, which makes
+     * it current.
+     */
+    private void compactInBackground() {
+        mirrorPending();
+        if (!mirror.flush(5_000)) {
+            logger.warn("Database mirror is behind; trade journal compaction postponed");
+            nextCompactNanos = System.nanoTime() + COMPACT_RETRY_NANOS;
+            return;
+        }
+        ByteBuffer b;
+        int end;
+        long base;
+        synchronized (this) {
+            b = buffer;
+            end = tail;
+            base = seq;
+        }
+        Map<Long, Row> latest = new LinkedHashMap<>();
+        for (int slot = 0; slot < end; slot++) {
+            Row r = decode(b, slot);
+            latest.put(r.positionId, r);
+        }
+        long since = PositionManager.todayStart();
+        List<Row> live = new ArrayList<>();
+        for (Row r : latest.values()) {
+            if (r.isActive() || r.entryTimestamp >= since || r.exitTimestamp >= since) live.add(r);
+        }
+
+        Path next = current.equals(path) ? altPath : path;
+        MappedByteBuffer target;
+        try {
+            target = map(next, Math.max(minCapacity, 2 * live.size()));
+        } catch (IOException e) {
+            logger.error("Cannot compact trade journal into {}", next, e);
+            nextCompactNanos = System.nanoTime() + COMPACT_RETRY_NANOS;
+            return;
+        }
+        ByteBuffer targetView = target.duplicate();
+        CRC32C targetCrc = new CRC32C();
+        int n = 0;
+        for (Row r : live) {
+            encode(target, targetView, targetCrc, offset(n), r, base + n + 1);
+            n++;
+        }
+        target.force();
+
+        synchronized (this) {
+            synchronized (mirrorLock) {
+                mirrorPending(); // Appended since the snapshot; handed over before the switch
+                int appended = tail - end;
+                if (n + appended > capacityOf(target)) {
+                    nextCompactNanos = System.nanoTime() + COMPACT_RETRY_NANOS;
+                    return;
+                }
+                long last = Math.max(seq, base + n); // Beyond every record in either file
+                for (int slot = end; slot < tail; slot++) {
+                    encode(target, targetView, targetCrc, offset(n++), decode(buffer, slot), ++last);
+                }
+                if (appended > 0) target.force(offset(n - appended), appended * RECORD);
+                target.putLong(HEADER_BASE_SEQ, base);
+                target.putLong(HEADER_GENERATION, generation + 1);
+                target.force(0, HEADER);
+                generation++;
+                current = next;
+                seq = last;
+                use(target);
+                tail = n;
+                mirrored = n;
+                compactRequested = false;
+            }
+        }
+        logger.info("Trade journal compacted into {}: {} records, room for {}", next, n, capacity);
+    }
+
+    /** Generation in the file's header; -1 when there is no such file or it is not a journal. */
+    private static long generationOf(Path file) throws IOException {
+        if (!Files.exists(file)) return -1;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BASE_SEQ).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) return -1;
+            }
+            if (header.getLong(0) != MAGIC) return -1;
+            return header.getLong(HEADER_GENERATION);
+        }
+    }
+
+    /** Maps the file with room for at least the given records, writing the header of a new file. */
+    private static MappedByteBuffer map(Path file, int records) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long existing = Math.max(0, channel.size() - HEADER) / RECORD;
+            int size = (int) Math.max(records, existing);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) size * RECORD);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            long magic = mapped.getLong(0);
+            if (magic == 0) {
+                mapped.putInt(HEADER_VERSION, VERSION);
+                mapped.putInt(HEADER_RECORD, RECORD);
+                mapped.putLong(0, MAGIC);
+                mapped.force(0, HEADER);
+            } else if (magic != MAGIC) {
+                throw new IOException("not a trade journal, or one written before the format header; "
+                        + "move it aside once its positions are in the database");
+            } else if (mapped.getInt(HEADER_VERSION) != VERSION || mapped.getInt(HEADER_RECORD) != RECORD) {
+                throw new IOException("journal format version " + mapped.getInt(HEADER_VERSION) + " with "
+                        + mapped.getInt(HEADER_RECORD) + "-byte records; this build reads version " + VERSION);
+            }
+            return mapped;
+        }
+    }
+
+    private static int capacityOf(MappedByteBuffer mapped) {
+        return (mapped.capacity() - HEADER) / RECORD;
+    }
+
+    /** Appends go to this mapping from now on. */
+    private void use(MappedByteBuffer mapped) {
+        buffer = mapped;
+        crcView = mapped.duplicate();
+        capacity = capacityOf(mapped);
+        compactAt = capacity - capacity / 4;
+    }
+}
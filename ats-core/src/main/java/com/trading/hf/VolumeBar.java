@@ -13,6 +13,21 @@ public class VolumeBar {
     private double orderBookImbalance;
     private double pcr = 1.0; // Put-Call Ratio default to 1.0
 
+    // Level-2 book at the bar's close (see DepthBook); 0 when the feed carries no depth
+    private double microprice;
+    private double spreadBps;
+    private double queueImbalance;
+
+    // Cross-sectional features of the minute this bar belongs to (see CrossSectionEngine).
+    // Ranks are 1 = best; crossSectionSize 0 means the bar was not ranked.
+    private double relativeStrength;
+    private int rvolRank;
+    private int vwapRank;
+    private int sectorRank;
+    private int longRank;
+    private int shortRank;
+    private int crossSectionSize;
+
     public VolumeBar(String symbol, long startTime, double price, long volume) {
         this.symbol = symbol;
         this.startTime = startTime;
@@ -40,6 +55,28 @@ public class VolumeBar {
         this.cumulativeVolumeDelta += (tickVolume * side);
     }
 
+    /**
+     * Folds a completed lower-resolution bar into this one (time roll-ups).
+     */
+    public void merge(VolumeBar other) {
+        this.high = Math.max(this.high, other.high);
+        this.low = Math.min(this.low, other.low);
+        this.close = other.close;
+        long newTotalVolume = this.volume + other.volume;
+        if (newTotalVolume > 0) {
+            this.vwap = ((this.vwap * this.volume) + (other.vwap * other.volume)) / newTotalVolume;
+        } else {
+            this.vwap = other.vwap;
+        }
+        this.volume = newTotalVolume;
+        this.cumulativeVolumeDelta += other.cumulativeVolumeDelta;
+        this.orderBookImbalance = other.orderBookImbalance;
+        this.pcr = other.pcr;
+        setDepth(other.microprice, other.spreadBps, other.queueImbalance);
+        setCrossSection(other.relativeStrength, other.rvolRank, other.vwapRank, other.sectorRank, other.longRank,
+                other.shortRank, other.crossSectionSize);
+    }
+
     public void setHigh(double high) { this.high = high; }
     public void setLow(double low) { this.low = low; }
     public void setClose(double close) { this.close = close; }
@@ -83,6 +120,10 @@ public class VolumeBar {
         return cumulativeVolumeDelta;
     }
 
+    public void setCumulativeVolumeDelta(double cumulativeVolumeDelta) {
+        this.cumulativeVolumeDelta = cumulativeVolumeDelta;
+    }
+
     public double getOrderBookImbalance() {
         return orderBookImbalance;
     }
@@ -98,4 +139,71 @@ public class VolumeBar {
     public void setPcr(double pcr) {
         this.pcr = pcr;
     }
+
+    public void setDepth(double microprice, double spreadBps, double queueImbalance) {
+        this.microprice = microprice;
+        this.spreadBps = spreadBps;
+        this.queueImbalance = queueImbalance;
+    }
+
+    /** Whether the bar carries level-2 book features. */
+    public boolean hasDepth() {
+        return microprice > 0;
+    }
+
+    public double getMicroprice() {
+        return microprice;
+    }
+
+    public double getSpreadBps() {
+        return spreadBps;
+    }
+
+    /** Best-level (bid - ask) / (bid + ask) queue sizes. */
+    public double getQueueImbalance() {
+        return queueImbalance;
+    }
+
+    public void setCrossSection(double relativeStrength, int rvolRank, int vwapRank, int sectorRank, int longRank,
+            int shortRank, int crossSectionSize) {
+        this.relativeStrength = relativeStrength;
+        this.rvolRank = rvolRank;
+        this.vwapRank = vwapRank;
+        this.sectorRank = sectorRank;
+        this.longRank = longRank;
+        this.shortRank = shortRank;
+        this.crossSectionSize = crossSectionSize;
+    }
+
+    /** Return since the day's open minus Nifty's, in percent. */
+    public double getRelativeStrength() {
+        return relativeStrength;
+    }
+
+    public int getRvolRank() {
+        return rvolRank;
+    }
+
+    public int getVwapRank() {
+        return vwapRank;
+    }
+
+    /** Rank of the symbol's sector by mean relative strength; 0 if the symbol has no sector. */
+    public int getSectorRank() {
+        return sectorRank;
+    }
+
+    /** Composite rank as a long candidate (strength, VWAP, sector, RVOL). */
+    public int getLongRank() {
+        return longRank;
+    }
+
+    /** Composite rank as a short candidate (weakness, VWAP, sector, RVOL). */
+    public int getShortRank() {
+        return shortRank;
+    }
+
+    public int getCrossSectionSize() {
+        return crossSectionSize;
+    }
 }
@@ -6,12 +6,20 @@ import java.util.function.Consumer;
 public class VolumeBarGenerator implements MarketEventListener {
 
     private final long volumeThreshold;
-    private final ConcurrentHashMap<String, VolumeBar> runningBars = new ConcurrentHashMap<>();
+    private final AdaptiveVolumeThresholds thresholds;
+    private final ConcurrentHashMap<String, SymbolState> states = new ConcurrentHashMap<>();
     private final Consumer<VolumeBar> barConsumer;
     private Consumer<VolumeBar> dashboardConsumer;
 
     public VolumeBarGenerator(long volumeThreshold, Consumer<VolumeBar> barConsumer) {
         this.volumeThreshold = volumeThreshold;
+        this.thresholds = null;
+        this.barConsumer = barConsumer;
+    }
+
+    public VolumeBarGenerator(AdaptiveVolumeThresholds thresholds, Consumer<VolumeBar> barConsumer) {
+        this.volumeThreshold = 0;
+        this.thresholds = thresholds;
         this.barConsumer = barConsumer;
     }
 
@@ -19,29 +27,48 @@ public class VolumeBarGenerator implements MarketEventListener {
         this.dashboardConsumer = dashboardConsumer;
     }
 
+    /** A symbol's running bar and its threshold slot, resolved once. */
+    private static final class SymbolState {
+        final int slot; // -1 with a fixed threshold
+        VolumeBar bar;  // null until the next tick starts one
+
+        SymbolState(int slot) {
+            this.slot = slot;
+        }
+    }
+
     @Override
     public void onEvent(MarketEvent event) {
-        runningBars.compute(event.getSymbol(), (symbol, bar) -> {
+        String symbol = event.getSymbol();
+        SymbolState state = states.get(symbol);
+        if (state == null) {
+            state = states.computeIfAbsent(symbol, s -> new SymbolState(thresholds != null ? thresholds.slotOf(s) : -1));
+        }
+        synchronized (state) {
+            VolumeBar bar = state.bar;
             if (bar == null) {
                 bar = new VolumeBar(symbol, event.getLtt(), event.getLtp(), event.getLtq());
+                state.bar = bar;
             } else {
                 int side = determineSide(event);
                 bar.addTick(event.getLtp(), event.getLtq(), side);
             }
 
-            if (bar.getVolume() >= volumeThreshold) {
+            int slot = state.slot;
+            long threshold = (slot >= 0) ? thresholds.thresholdAt(slot) : volumeThreshold;
+            if (bar.getVolume() >= threshold) {
+                if (slot >= 0) thresholds.onBarCompleted(slot, bar.getStartTime());
                 bar.setOrderBookImbalance(calculateOBI(event));
                 barConsumer.accept(bar); // for console logging
                 if (dashboardConsumer != null) {
                     dashboardConsumer.accept(bar); // for dashboard broadcasting
                 }
-                return null; // Start a new bar
+                state.bar = null; // Start a new bar
             }
-            return bar;
-        });
+        }
     }
 
-    private int determineSide(MarketEvent event) {
+    static int determineSide(MarketEvent event) {
         if (event.getBestAskPrice() > 0 && event.getLtp() >= event.getBestAskPrice()) {
             return 1; // Aggressive Buyer
         } else if (event.getBestBidPrice() > 0 && event.getLtp() <= event.getBestBidPrice()) {
@@ -50,7 +77,7 @@ public class VolumeBarGenerator implements MarketEventListener {
         return 0; // Neutral or indeterminate
     }
 
-    private double calculateOBI(MarketEvent event) {
+    static double calculateOBI(MarketEvent event) {
         if (event.getTbq() + event.getTsq() == 0) {
             return 0;
         }
@@ -0,0 +1,134 @@
+package com.trading.hf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-symbol time-of-day volume curves: the average 1-minute volume at each minute of the
+ * session over the last N sessions in backtest_data.db.
+ *
+ * Relative volume against the curve compares a bar with what is normal for that minute, so
+ * the open and the close are not read as volume spikes the way they are against a rolling
+ * bar average. Curves live in one flat float table (375 minutes per symbol slot); a lookup
+ * is a map get plus an array read. {@link #load(LocalDate)} builds a new table and swaps it in, so it
+ * can run off the trading thread.
+ */
+public class VolumeProfileCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(VolumeProfileCache.class);
+    private static final int SESSION_OPEN_MINUTE = 9 * 60 + 15;
+    private static final int SESSION_MINUTES = 375; // 09:15 - 15:30
+
+    private static final class Table {
+        final Map<String, Integer> slots;
+        final float[] curves; // slot * SESSION_MINUTES + minute
+
+        Table(Map<String, Integer> slots, float[] curves) {
+            this.slots = slots;
+            this.curves = curves;
+        }
+    }
+
+    private final String dbUrl;
+    private final int lookbackDays;
+    private final int minDays;
+    private volatile Table table = new Table(Map.of(), new float[0]);
+
+    public VolumeProfileCache() {
+        this.dbUrl = ConfigLoader.getProperty("backtest.db.url", "jdbc:sqlite:backtest_data.db");
+        this.lookbackDays = Integer.parseInt(ConfigLoader.getProperty("volume.profile.lookback.days", "20"));
+        this.minDays = Integer.parseInt(ConfigLoader.getProperty("volume.profile.min.days", "3"));
+    }
+
+    /**
+     * Rebuilds every curve from the last N sessions before sessionDate (the session being
+     * traded, excluded). Symbols with fewer than volume.profile.min.days sessions (or no
+     * volume, e.g. indices) get no curve.
+     */
+    public void load(LocalDate sessionDate) {
+        long start = System.nanoTime();
+        String before = sessionDate.toString();
+        String dates = "SELECT DISTINCT date FROM backtest_candles WHERE date < ? ORDER BY date DESC LIMIT ?";
+        String sql = "SELECT c.symbol, c.timestamp, SUM(c.volume) AS vol, d.days FROM backtest_candles c " +
+                     "JOIN (SELECT symbol, COUNT(DISTINCT date) AS days FROM backtest_candles " +
+                     "      WHERE date IN (" + dates + ") GROUP BY symbol) d ON d.symbol = c.symbol " +
+                     "WHERE c.date IN (" + dates + ") " +
+                     "GROUP BY c.symbol, c.timestamp";
+
+        Map<String, Integer> slots = new HashMap<>();
+        float[] curves = new float[64 * SESSION_MINUTES];
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, before);
+            pstmt.setInt(2, lookbackDays);
+            pstmt.setString(3, before);
+            pstmt.setInt(4, lookbackDays);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int days = rs.getInt("days");
+                    long vol = rs.getLong("vol");
+                    if (days < minDays || vol <= 0) continue;
+                    LocalTime time = LocalTime.parse(rs.getString("timestamp"));
+                    int minute = time.getHour() * 60 + time.getMinute() - SESSION_OPEN_MINUTE;
+                    if (minute < 0 || minute >= SESSION_MINUTES) continue;
+
+                    String symbol = SymbolUtil.toInternalSymbol(rs.getString("symbol"));
+                    Integer slot = slots.get(symbol);
+                    if (slot == null) {
+                        slot = slots.size();
+                        slots.put(symbol, slot);
+                        if ((slot + 1) * SESSION_MINUTES > curves.length) {
+                            curves = Arrays.copyOf(curves, curves.length * 2);
+                        }
+                    }
+                    // Missing minutes count as zero volume for that session
+                    curves[slot * SESSION_MINUTES + minute] = (float) vol / days;
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Volume profile load from {} skipped: {}", dbUrl, e.getMessage());
+            return;
+        }
+        table = new Table(slots, curves);
+        logger.info("Loaded time-of-day volume profiles for {} symbols from last {} sessions in {} ms",
+                slots.size(), lookbackDays, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Normal volume for the 1-minute bar starting at barTime, or NaN when the symbol has no
+     * curve or the bar is outside the session.
+     */
+    public double expectedVolume(String symbol, long barTime) {
+        Table t = table;
+        Integer slot = t.slots.get(symbol);
+        if (slot == null) return Double.NaN;
+        int minute = (int) Math.floorMod(Math.floorDiv(barTime, 60_000L) + 330, 1440L) - SESSION_OPEN_MINUTE;
+        if (minute < 0 || minute >= SESSION_MINUTES) return Double.NaN;
+        float expected = t.curves[slot * SESSION_MINUTES + minute];
+        return expected > 0 ? expected : Double.NaN;
+    }
+
+    /**
+     * Bar volume relative to the normal volume for its minute of the session, or NaN when
+     * there is no curve to compare with (callers fall back to the rolling average).
+     */
+    public double relativeVolume(VolumeBar bar) {
+        double expected = expectedVolume(bar.getSymbol(), bar.getStartTime());
+        return Double.isNaN(expected) ? Double.NaN : bar.getVolume() / expected;
+    }
+
+    public int size() {
+        return table.slots.size();
+    }
+}
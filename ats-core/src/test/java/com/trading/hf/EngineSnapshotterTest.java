@@ -0,0 +1,87 @@
+package com.trading.hf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class EngineSnapshotterTest extends TestCase {
+
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final LocalDate TUE = LocalDate.of(2026, 1, 6);
+
+    private Path dir;
+    private Path snapshot;
+    private PositionManager positions;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("engine-snapshot");
+        snapshot = dir.resolve("engine.snap");
+        System.setProperty("snapshot.file", snapshot.toString());
+        positions = new PositionManager("jdbc:sqlite:" + dir.resolve("positions.db"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        positions.close();
+        System.clearProperty("snapshot.file");
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    public void testRestoresOnlyIntoTheSessionOfTheLastBar() {
+        ScalpingSignalEngine source = engine();
+        EngineSnapshotter snapshotter = new EngineSnapshotter(source);
+        snapshotter.snapshotNow();
+        assertFalse("nothing is written before the first bar", Files.exists(snapshot));
+
+        feed(source, "NSE_EQ|RELIANCE", TUE, 200);
+        snapshotter.snapshotNow();
+        snapshotter.shutdown();
+
+        assertFalse(new EngineSnapshotter(engine()).restore(TUE.minusDays(1)));
+        assertFalse(new EngineSnapshotter(engine()).restore(TUE.plusDays(1)));
+
+        ScalpingSignalEngine target = engine();
+        assertTrue(new EngineSnapshotter(target).restore(TUE));
+        assertEquals(201.0, target.getIndicators().get("NSE_EQ|RELIANCE").getSessionHigh(), 1e-9);
+    }
+
+    public void testCorruptSnapshotLeavesTheEngineUntouched() throws Exception {
+        ScalpingSignalEngine source = engine();
+        feed(source, "NSE_EQ|RELIANCE", TUE, 200);
+        EngineSnapshotter snapshotter = new EngineSnapshotter(source);
+        snapshotter.snapshotNow();
+        snapshotter.shutdown();
+        byte[] full = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(full, full.length - 16));
+
+        ScalpingSignalEngine target = engine();
+        feed(target, "NSE_EQ|INFY", TUE, 50);
+        assertFalse(new EngineSnapshotter(target).restore(TUE));
+        assertNotNull(target.getIndicators().get("NSE_EQ|INFY"));
+        assertNull(target.getIndicators().get("NSE_EQ|RELIANCE"));
+    }
+
+    private ScalpingSignalEngine engine() {
+        return new ScalpingSignalEngine(positions, new OptionChainProvider(positions), false);
+    }
+
+    private static void feed(ScalpingSignalEngine engine, String symbol, LocalDate day, double price) {
+        long open = day.atTime(9, 15).atZone(IST).toInstant().toEpochMilli();
+        for (int m = 0; m < 5; m++) {
+            VolumeBar bar = new VolumeBar(symbol, open + m * 60_000L, price, 1000);
+            bar.setHigh(price + 1);
+            bar.setLow(price - 1);
+            bar.setClose(price);
+            bar.setVwap(price);
+            engine.onVolumeBar(bar);
+        }
+    }
+}
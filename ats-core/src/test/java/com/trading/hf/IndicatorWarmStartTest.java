@@ -0,0 +1,101 @@
+package com.trading.hf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class IndicatorWarmStartTest extends TestCase {
+
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final String SYMBOL = "NSE_EQ|RELIANCE";
+    private static final LocalDate MON = LocalDate.of(2026, 1, 5);
+    private static final LocalDate TUE = MON.plusDays(1);
+    private static final LocalDate WED = MON.plusDays(2);
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("warm-start");
+        System.setProperty("backtest.db.url", "jdbc:sqlite:" + dir.resolve("backtest.db"));
+        System.setProperty("indicator.checkpoint.file", dir.resolve("indicators.ckpt").toString());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty("backtest.db.url");
+        System.clearProperty("indicator.checkpoint.file");
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    public void testHistoryStopsBeforeTheSessionDate() throws Exception {
+        try (Connection conn = DriverManager.getConnection(System.getProperty("backtest.db.url"));
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE backtest_candles (symbol TEXT, date TEXT, timestamp TEXT, open REAL, high REAL, " +
+                       "low REAL, close REAL, volume INTEGER)");
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO backtest_candles VALUES ('RELIANCE', ?, ?, ?, ?, ?, ?, 1000)")) {
+                LocalDate[] days = {MON, TUE, WED};
+                for (int d = 0; d < days.length; d++) {
+                    double close = 100 * (d + 1);
+                    for (int m = 0; m < 5; m++) {
+                        ps.setString(1, days[d].toString());
+                        ps.setString(2, String.format("09:%02d", 15 + m));
+                        ps.setDouble(3, close);
+                        ps.setDouble(4, close + 1);
+                        ps.setDouble(5, close - 1);
+                        ps.setDouble(6, close);
+                        ps.executeUpdate();
+                    }
+                }
+            }
+        }
+
+        TechnicalIndicators ind = new IndicatorWarmStart().loadFromDatabase(TUE).get(SYMBOL);
+        assertNotNull(ind);
+        assertEquals("replaying Tuesday must not see Tuesday's bars", 100.0, ind.getYesterdayClose(), 1e-9);
+    }
+
+    public void testCheckpointIsKeyedToTheDayOfTheLastBar() throws Exception {
+        Path db = dir.resolve("positions.db");
+        PositionManager positions = new PositionManager("jdbc:sqlite:" + db);
+        try {
+            ScalpingSignalEngine engine = new ScalpingSignalEngine(positions, new OptionChainProvider(positions), false);
+            IndicatorWarmStart warmStart = new IndicatorWarmStart();
+            warmStart.checkpoint(engine);
+            assertTrue("nothing to checkpoint before the first bar", warmStart.loadFromCheckpoint(TUE).isEmpty());
+
+            long open = TUE.atTime(9, 15).atZone(IST).toInstant().toEpochMilli();
+            for (int m = 0; m < 5; m++) {
+                VolumeBar bar = new VolumeBar(SYMBOL, open + m * 60_000L, 200, 1000);
+                bar.setHigh(201);
+                bar.setLow(199);
+                bar.setClose(200);
+                bar.setVwap(200);
+                engine.onVolumeBar(bar);
+            }
+            warmStart.checkpoint(engine);
+        } finally {
+            positions.close();
+        }
+
+        IndicatorWarmStart warmStart = new IndicatorWarmStart();
+        Map<String, TechnicalIndicators> sameDay = warmStart.loadFromCheckpoint(TUE);
+        assertEquals("intraday restart keeps the session", 201.0, sameDay.get(SYMBOL).getSessionHigh(), 1e-9);
+
+        Map<String, TechnicalIndicators> nextDay = warmStart.loadFromCheckpoint(WED);
+        assertEquals("next session rolls the checkpoint forward", 200.0, nextDay.get(SYMBOL).getYesterdayClose(), 1e-9);
+
+        assertTrue("a replay of an earlier day ignores a later checkpoint", warmStart.loadFromCheckpoint(MON).isEmpty());
+    }
+}
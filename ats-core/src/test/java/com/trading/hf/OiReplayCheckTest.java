@@ -0,0 +1,49 @@
+package com.trading.hf;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Replay check for the per-minute OI/PCR history: streams a past session the way
+ * backtest_replay.py does (index bars stamped with their bar time, option chains without a
+ * timestamp) and verifies the series fill on the replayed day rather than being dropped
+ * against the wall clock.
+ */
+public class OiReplayCheckTest extends TestCase {
+
+    public void testReplayedSessionFillsTheHistory() {
+        LocalDate day = LocalDate.now(ZoneId.of("Asia/Kolkata")).minusDays(7);
+        long open = day.atTime(LocalTime.of(9, 15)).atZone(ZoneId.of("Asia/Kolkata")).toInstant().toEpochMilli();
+
+        OptionChainProvider provider = new OptionChainProvider(null);
+        OiTimeSeriesStore history = provider.getOiHistory();
+        int minutes = 30;
+        for (int m = 0; m < minutes; m++) {
+            long barTime = open + m * 60_000L;
+            provider.updateSpot("NSE_INDEX|Nifty 50", 24_000 + m, barTime);
+            provider.updateIndexPcr("NSE_INDEX|Nifty 50", 0.9 + m * 0.01, barTime);
+            provider.updateFromBridge("NIFTY", "", 0L, chain(m));
+        }
+
+        assertEquals("latestOi(24000 CE)", 100_000.0 + (minutes - 1) * 1_000, history.latestOi("NIFTY", 24_000, true), 0);
+        assertEquals("oiChange(24000 PE, 10m)", 10.0 * 2_000, history.oiChange("NIFTY", 24_000, false, 10), 0);
+        double pcrChange = history.pcrChange("NIFTY", 10);
+        assertTrue("pcrChange(10m) = " + pcrChange, pcrChange > 0);
+        assertTrue("getIndexPcrChange = 0", provider.getIndexPcrChange("NIFTY") != 0);
+    }
+
+    /** Three strikes around 24000; put OI builds twice as fast as call OI, so the PCR rises. */
+    private static List<OptionChainDto> chain(int minute) {
+        List<OptionChainDto> chain = new ArrayList<>();
+        for (int strike = 23_950; strike <= 24_050; strike += 50) {
+            chain.add(new OptionChainDto(strike, "CE", 100, 100_000 + minute * 1_000, 0, "NEUTRAL"));
+            chain.add(new OptionChainDto(strike, "PE", 100, 100_000 + minute * 2_000, 0, "NEUTRAL"));
+        }
+        return chain;
+    }
+}
@@ -0,0 +1,53 @@
+package com.trading.hf;
+
+import junit.framework.TestCase;
+
+public class PriceTriggerIndexTest extends TestCase {
+
+    private static final String KEY = "NSE|OPTION|NIFTY_24000_CE";
+    private static final int STOP = 1 << PriceTriggerIndex.STOP;
+    private static final int TARGET = 1 << PriceTriggerIndex.TARGET;
+
+    public void testFiresOnTheCrossingOnly() {
+        PriceTriggerIndex index = new PriceTriggerIndex();
+        index.set(KEY, PriceTriggerIndex.STOP, false, 80);
+        index.set(KEY, PriceTriggerIndex.TARGET, true, 150);
+
+        assertEquals(0, index.onPrice(KEY, 100));
+        assertEquals(TARGET, index.onPrice(KEY, 151));
+        assertEquals("still beyond the target", 0, index.onPrice(KEY, 155));
+        assertEquals(0, index.onPrice(KEY, 140));
+        assertEquals("crossed again", TARGET, index.onPrice(KEY, 150));
+        assertEquals(STOP, index.onPrice(KEY, 70));
+        assertEquals(0, index.onPrice(KEY, 75));
+    }
+
+    public void testFirstPriceBeyondALevelFires() {
+        PriceTriggerIndex index = new PriceTriggerIndex();
+        index.set(KEY, PriceTriggerIndex.STOP, false, 80);
+        assertEquals(STOP, index.onPrice(KEY, 79));
+    }
+
+    public void testMovedTriggerRearms() {
+        PriceTriggerIndex index = new PriceTriggerIndex();
+        index.set(KEY, PriceTriggerIndex.TARGET, true, 150);
+        assertEquals(TARGET, index.onPrice(KEY, 160));
+
+        index.set(KEY, PriceTriggerIndex.TARGET, true, 150); // Unchanged level stays fired
+        assertEquals(0, index.onPrice(KEY, 160));
+
+        index.set(KEY, PriceTriggerIndex.TARGET, true, 170);
+        assertEquals(0, index.onPrice(KEY, 165));
+        assertEquals(TARGET, index.onPrice(KEY, 170));
+
+        index.set(KEY, PriceTriggerIndex.TARGET, true, 160); // Moved inside the price
+        assertEquals(TARGET, index.onPrice(KEY, 170));
+    }
+
+    public void testPendingIsReportedOnce() {
+        PriceTriggerIndex index = new PriceTriggerIndex();
+        index.markPending(KEY);
+        assertEquals(PriceTriggerIndex.PENDING, index.onPrice(KEY, 100));
+        assertEquals(0, index.onPrice(KEY, 100));
+    }
+}
@@ -0,0 +1,86 @@
+package com.trading.hf;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Microbenchmark for {@link BlackScholesPricer}: a full strip reprice (option.pricer.strikes
+ * each side of ATM), one implied-vol solve and the calibration of a 41-strike chain, each
+ * timed over several rounds after a warm-up and reported as the median ns per operation.
+ *
+ * The build runs a short pass with generous per-operation ceilings that only catch gross
+ * regressions; -Dbench.rounds and -Dbench.ops run it at full length.
+ */
+public class PricerBenchTest extends TestCase {
+
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+
+    public void testPricerHotPaths() {
+        int rounds = Integer.getInteger("bench.rounds", 5);
+        int ops = Integer.getInteger("bench.ops", 10_000);
+        long now = LocalDateTime.of(2025, 1, 6, 10, 0).atZone(IST).toInstant().toEpochMilli(); // A Monday
+
+        BlackScholesPricer pricer = new BlackScholesPricer();
+        double rate = pricer.getRate();
+        double years = pricer.yearsToExpiry("NIFTY", "", now);
+        OptionChainRegistry.ChainVersion chain = new OptionChainRegistry()
+                .publish("NIFTY", "", now, chain(24_000, years, rate));
+        pricer.calibrate(chain, 24_000, now);
+        double atmPrice = BlackScholesPricer.price(true, 24_000, 24_000, years, rate, 0.13);
+        assertEquals(0.13, BlackScholesPricer.impliedVol(true, 24_000, 24_000, years, rate, atmPrice), 1e-4);
+
+        double[] sink = new double[1];
+        double reprice = report("reprice strip", rounds, ops, i -> {
+            // Alternate beyond option.pricer.reprice.bps so every call reprices
+            BlackScholesPricer.Surface s = pricer.surface("NIFTY", (i & 1) == 0 ? 24_000 : 24_020, now);
+            sink[0] += s.price(s.size() / 2, true);
+        });
+        double iv = report("implied vol", rounds, ops, i -> sink[0] += BlackScholesPricer.impliedVol(true, 24_000, 24_000,
+                years, rate, atmPrice + (i & 7) * 0.01));
+        double calibrate = report("calibrate chain (" + chain.size() + " strikes)", rounds, ops / 20,
+                i -> pricer.calibrate(chain, 24_000 + (i & 1), now));
+        assertFalse(Double.isNaN(sink[0])); // Keeps the results live
+
+        assertTrue("reprice strip " + reprice + " ns/op", reprice < 1_000_000);
+        assertTrue("implied vol " + iv + " ns/op", iv < 100_000);
+        assertTrue("calibrate chain " + calibrate + " ns/op", calibrate < 10_000_000);
+    }
+
+    private interface Op {
+        void run(int i);
+    }
+
+    /** Median ns per operation. */
+    private static double report(String name, int rounds, int ops, Op op) {
+        for (int i = 0; i < ops; i++) op.run(i); // Warm-up
+        double[] nsPerOp = new double[rounds];
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ops; i++) op.run(i);
+            nsPerOp[r] = (System.nanoTime() - start) / (double) ops;
+        }
+        Arrays.sort(nsPerOp);
+        System.out.printf("%-30s median %10.1f ns/op  (min %.1f, max %.1f)%n", name, nsPerOp[rounds / 2], nsPerOp[0],
+                nsPerOp[rounds - 1]);
+        return nsPerOp[rounds / 2];
+    }
+
+    /** CE and PE quotes for 41 strikes around the spot, priced off a mild smile. */
+    private static List<OptionChainDto> chain(int spot, double years, double rate) {
+        List<OptionChainDto> chain = new ArrayList<>();
+        for (int strike = spot - 1_000; strike <= spot + 1_000; strike += 50) {
+            double m = (strike - spot) / (double) spot;
+            double vol = 0.13 + 0.8 * m * m;
+            chain.add(new OptionChainDto(strike, "CE", BlackScholesPricer.price(true, spot, strike, years, rate, vol),
+                    100_000, 0, "NEUTRAL"));
+            chain.add(new OptionChainDto(strike, "PE", BlackScholesPricer.price(false, spot, strike, years, rate, vol),
+                    100_000, 0, "NEUTRAL"));
+        }
+        return chain;
+    }
+}
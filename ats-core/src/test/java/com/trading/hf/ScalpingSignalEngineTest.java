@@ -0,0 +1,57 @@
+package com.trading.hf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import junit.framework.TestCase;
+
+public class ScalpingSignalEngineTest extends TestCase {
+
+    private static final String OPTION = "NSE|OPTION|NIFTY_24000_CE";
+
+    private Path db;
+    private PositionManager positions;
+    private ScalpingSignalEngine engine;
+
+    @Override
+    protected void setUp() throws Exception {
+        db = Files.createTempFile("signal-engine", ".db");
+        positions = new PositionManager("jdbc:sqlite:" + db);
+        engine = new ScalpingSignalEngine(positions, new OptionChainProvider(positions), false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        positions.close();
+        Files.deleteIfExists(db);
+    }
+
+    public void testLongPartialTakeProfitMovesTheTarget() {
+        positions.addPosition(OPTION, 100, "BUY", 100, 0, 80, 150, "TEST");
+        engine.onTick(OPTION, 120);
+        assertEquals(100, positions.getPosition(OPTION).getQuantity());
+
+        engine.onTick(OPTION, 160);
+        Position p = positions.getPosition(OPTION);
+        assertEquals("half is taken at the target", 50, p.getQuantity());
+        assertTrue("target moves beyond the fill", p.getTakeProfit() > 160);
+        assertEquals("stop moves to break-even", 101.0, p.getStopLoss(), 1e-9);
+
+        engine.onTick(OPTION, 161);
+        engine.onTick(OPTION, 159);
+        engine.onTick(OPTION, 162);
+        assertEquals("no repeated partials", 50, positions.getPosition(OPTION).getQuantity());
+    }
+
+    public void testShortPartialTakeProfitMovesTheTarget() {
+        String stock = "NSE_EQ|RELIANCE";
+        positions.addPosition(stock, 100, "SELL", 100, 0, 120, 90, "TEST");
+        engine.onTick(stock, 85);
+        Position p = positions.getPosition(stock);
+        assertEquals(50, p.getQuantity());
+        assertTrue(p.getTakeProfit() < 85);
+
+        engine.onTick(stock, 84);
+        assertEquals(50, positions.getPosition(stock).getQuantity());
+    }
+}
@@ -0,0 +1,48 @@
+package com.trading.hf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import junit.framework.TestCase;
+
+public class ScenarioRiskEngineTest extends TestCase {
+
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+
+    private Path db;
+    private PositionManager positions;
+
+    @Override
+    protected void setUp() throws Exception {
+        db = Files.createTempFile("scenario-risk", ".db");
+        positions = new PositionManager("jdbc:sqlite:" + db);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        positions.close();
+        Files.deleteIfExists(db);
+    }
+
+    public void testFirstSpotUpdateWithOpenPositionPublishesGrid() {
+        long open = LocalDateTime.of(2026, 1, 5, 10, 0).atZone(IST).toInstant().toEpochMilli();
+        OptionChainProvider chains = new OptionChainProvider(positions);
+        ScenarioRiskEngine risk = new ScenarioRiskEngine(positions, chains);
+        chains.setSpotListener(risk);
+        positions.addPosition("NSE|OPTION|NIFTY_24000_CE", 50, "BUY", 100, open, 80, 150, "TEST");
+
+        chains.updateSpot("NSE_INDEX|Nifty 50", 24_000, open);
+        ScenarioRiskEngine.ScenarioGrid first = risk.getLatest();
+        assertNotNull("first spot update must publish a grid", first);
+        assertEquals(1, first.positions);
+        assertEquals(open, first.timestamp);
+
+        chains.updateSpot("NSE_INDEX|Nifty 50", 24_010, open + 100);
+        assertSame("updates inside the interval are throttled", first, risk.getLatest());
+
+        chains.updateSpot("NSE_INDEX|Nifty 50", 24_020, open + 5_000);
+        assertEquals(open + 5_000, risk.getLatest().timestamp);
+    }
+}
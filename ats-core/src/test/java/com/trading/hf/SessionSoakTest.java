@@ -0,0 +1,100 @@
+package com.trading.hf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Soak check for the session lifecycle: drives simulated sessions through the engine, the
+ * bar aggregator and the {@link SessionLifecycleManager} (60 symbols a day, 10 of them new
+ * each day, 375 one-minute bars, a trade opened and closed every 10 minutes) and verifies
+ * that retained heap, closed trades and per-symbol state stop growing once the idle
+ * symbols start being evicted.
+ *
+ * Runs with the build over 6 sessions; -Dsoak.days=N runs a longer soak.
+ */
+public class SessionSoakTest extends TestCase {
+
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final int SYMBOLS = 60;
+    private static final int CHURN = 10;
+    private static final int BARS = 375;
+
+    public void testStateStaysBoundedAcrossSessions() throws Exception {
+        int days = Math.max(6, Integer.getInteger("soak.days", 6));
+        Path db = Files.createTempFile("session-soak", ".db");
+        PositionManager positions = new PositionManager("jdbc:sqlite:" + db);
+        String failures;
+        try {
+            failures = run(days, positions);
+        } finally {
+            positions.close();
+            Files.deleteIfExists(db);
+        }
+        assertTrue("Session soak failed:" + failures, failures.isEmpty());
+    }
+
+    private static String run(int days, PositionManager positions) throws InterruptedException {
+        OptionChainProvider chains = new OptionChainProvider(positions);
+        ScalpingSignalEngine engine = new ScalpingSignalEngine(positions, chains, false);
+        BarAggregationEngine barEngine = new BarAggregationEngine();
+        SessionLifecycleManager lifecycle = new SessionLifecycleManager(engine, positions, chains, barEngine, null, null);
+        Random random = new Random(1);
+
+        long[] retained = new long[days];
+        int tradesPerDay = 0;
+        StringBuilder failures = new StringBuilder();
+        for (int d = 0; d < days; d++) {
+            long open = LocalDate.of(2026, 1, 5).plusDays(d).atTime(9, 15).atZone(IST).toInstant().toEpochMilli();
+            tradesPerDay = 0;
+            for (int i = 0; i < BARS; i++) {
+                long time = open + i * 60_000L;
+                for (int s = 0; s < SYMBOLS; s++) {
+                    VolumeBar bar = new VolumeBar("NSE_EQ|S" + (s + d * CHURN), time, 100 + random.nextGaussian(), 1000);
+                    bar.setHigh(bar.getOpen() + 1);
+                    bar.setLow(bar.getOpen() - 1);
+                    bar.setClose(bar.getOpen());
+                    bar.setVwap(bar.getOpen());
+                    lifecycle.onBar(bar);
+                    engine.onVolumeBar(bar);
+                    barEngine.onCandle(bar);
+                }
+                if (i % 10 == 0) {
+                    String key = "NSE|OPTION|SOAK" + d + "_" + i;
+                    positions.addPosition(key, 50, "BUY", 100, time, 90, 120, "SOAK");
+                    positions.closePosition(key, 101, time + 1, "TP");
+                    tradesPerDay++;
+                }
+            }
+            retained[d] = retainedHeap();
+            int closed = positions.getClosedPositions().size();
+            int symbols = engine.getIndicators().size();
+            System.out.printf("day %d: retained heap %d KB, closed trades %d, symbols with state %d%n",
+                    d + 1, retained[d] / 1024, closed, symbols);
+            if (closed > tradesPerDay) failures.append(" day ").append(d + 1).append(": ").append(closed).append(" closed trades kept;");
+            if (symbols > SYMBOLS + 2 * CHURN) failures.append(" day ").append(d + 1).append(": ").append(symbols).append(" symbols kept;");
+        }
+        // Idle symbols are first evicted on the third rollover; the last days (the lower of the
+        // two, as one reading can catch background work) must stay level with day 4
+        long last = Math.min(retained[days - 1], retained[days - 2]);
+        if (last > retained[3] * 5 / 4 + (2 << 20)) {
+            failures.append(" heap grew to ").append(last / 1024).append(" KB from ")
+                    .append(retained[3] / 1024).append(" KB on day 4;");
+        }
+
+        return failures.toString();
+    }
+
+    private static long retainedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,65 @@
+package com.trading.hf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SignalScorerTest extends TestCase {
+
+    private Path dir;
+    private Path modelFile;
+    private Path datasetFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("signal-scorer");
+        modelFile = dir.resolve("model.json");
+        datasetFile = dir.resolve("dataset.csv");
+        System.setProperty("scorer.model.file", modelFile.toString());
+        System.setProperty("scorer.dataset.file", datasetFile.toString());
+        System.setProperty("scorer.reload.interval.ms", "0");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty("scorer.model.file");
+        System.clearProperty("scorer.dataset.file");
+        System.clearProperty("scorer.reload.interval.ms");
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    public void testModelThatFailedToLoadIsRetried() throws Exception {
+        Files.writeString(modelFile, "{\"type\":\"logistic\",\"bias\":");
+        FileTime mtime = Files.getLastModifiedTime(modelFile);
+        SignalScorer scorer = new SignalScorer();
+        assertFalse(scorer.hasModel());
+
+        Files.writeString(modelFile, "{\"type\":\"logistic\",\"bias\":0,\"weights\":[]}");
+        Files.setLastModifiedTime(modelFile, mtime); // Same mtime as the broken file
+        scorer.reloadIfChanged();
+        assertTrue(scorer.hasModel());
+        scorer.close();
+    }
+
+    public void testRecordedRowsAreWrittenByClose() throws Exception {
+        SignalScorer scorer = new SignalScorer();
+        for (int i = 0; i < 3; i++) {
+            ScalpingSignalEngine.ScalpSignal signal = new ScalpingSignalEngine.ScalpSignal("NSE_EQ|RELIANCE", "BUY",
+                    ScalpingSignalEngine.Gate.HITCH_L, 100, 99, 102, 1_000L * i);
+            signal.features = new double[SignalScorer.FEATURE_COUNT];
+            scorer.record(signal, i - 1);
+        }
+        scorer.close();
+
+        List<String> lines = Files.readAllLines(datasetFile);
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).startsWith("timestamp,symbol,gate"));
+        assertTrue(lines.get(3).endsWith(",1,1.0"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.trading.hf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import junit.framework.TestCase;
+
+public class VolumeProfileCacheTest extends TestCase {
+
+    private static final LocalDate MON = LocalDate.of(2026, 1, 5);
+
+    private Path db;
+
+    @Override
+    protected void setUp() throws Exception {
+        db = Files.createTempFile("volume-profile", ".db");
+        System.setProperty("backtest.db.url", "jdbc:sqlite:" + db);
+        System.setProperty("volume.profile.min.days", "1");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db);
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE backtest_candles (symbol TEXT, date TEXT, timestamp TEXT, volume INTEGER)");
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO backtest_candles VALUES ('RELIANCE', ?, '09:15', ?)")) {
+                for (int d = 0; d < 3; d++) {
+                    ps.setString(1, MON.plusDays(d).toString());
+                    ps.setLong(2, 100L * (d + 1));
+                    ps.executeUpdate();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty("backtest.db.url");
+        System.clearProperty("volume.profile.min.days");
+        Files.deleteIfExists(db);
+    }
+
+    public void testCurvesExcludeTheSessionDateAndLater() {
+        VolumeProfileCache cache = new VolumeProfileCache();
+        LocalDate tue = MON.plusDays(1);
+        cache.load(tue);
+        long open = tue.atTime(9, 15).atZone(ZoneId.of("Asia/Kolkata")).toInstant().toEpochMilli();
+        assertEquals(100.0, cache.expectedVolume("NSE_EQ|RELIANCE", open), 1e-9);
+    }
+}
@@ -39,6 +39,7 @@
  
   
      private static OptionChainProvider optionChainProvider;
+     private static volatile OptionChainView cachedChainView;
      private static ScalpingSignalEngine scalpingSignalEngine;
      private static PositionManager positionManager;
  
@@ -54,6 +55,17 @@
          // from clearing the dashboard state if the frontend isn't handling multi-symbol gracefully.
          if (!volumeBar.getSymbol().contains("Nifty 50")) return;
  
+         // Serialize and broadcast
+         String json = render(volumeBar, optionChainProvider, scalpingSignalEngine, positionManager);
+         dashboardService.broadcast(json);
+     }
+
+     /**
+      * Builds the dashboard JSON for a bar from the given components. Also used by the
+      * pre-open JIT warm-up against its sandboxed components.
+      */
+     public static String render(VolumeBar volumeBar, OptionChainProvider optionChainProvider,
+             ScalpingSignalEngine scalpingSignalEngine, PositionManager positionManager) {
          DashboardViewModel viewModel = new DashboardViewModel();
  
          // 1. Populate Header Info
@@ -69,23 +81,28 @@
  
      
 
-         // 4. Populate Option Chain
+         // 4. Populate Option Chain (view rebuilt only when a new chain version is published)
          if (optionChainProvider != null) {
-             viewModel.optionChain = optionChainProvider.getOptionChainWindow().stream()
-                     .map(dto -> {
-                         DashboardViewModel.OptionViewModel ovm = new DashboardViewModel.OptionViewModel();
-                         ovm.strike = dto.getStrike();
-                         ovm.type = dto.getType();
-                         ovm.ltp = dto.getLtp();
-                         ovm.oiChangePercent = dto.getOiChangePercent();
-                         ovm.sentiment = dto.getSentiment();
-                         return ovm;
-                     })
-                     .collect(Collectors.toList());
+             OiAnalytics analytics = optionChainProvider.getOiAnalytics("NIFTY");
+             OptionChainView chainView = cachedChainView;
+             if (analytics == null || chainView == null || chainView.analytics != analytics) {
+                 chainView = new OptionChainView(analytics, optionChainProvider.getOptionChainWindow());
+                 if (analytics != null) cachedChainView = chainView; // Same instance until the chain changes
+             }
+             viewModel.optionChain = chainView.options;
+             viewModel.oiAnalytics = chainView.summary;
+             if (analytics != null) viewModel.pcr = analytics.pcr;
          }
  
        
          viewModel.alerts = new ArrayList<>();
+
+         // 5. Scenario risk of the open book
+         ScenarioRiskEngine scenarioRisk = (scalpingSignalEngine != null) ? scalpingSignalEngine.getScenarioRisk() : null;
+         ScenarioRiskEngine.ScenarioGrid grid = (scenarioRisk != null) ? scenarioRisk.getLatest() : null;
+         if (grid != null && grid.positions > 0) {
+             viewModel.scenarioRisk = scenarioView(grid);
+         }
  
          // 6. Populate Scalping Signals
          if (scalpingSignalEngine != null) {
@@ -164,8 +181,57 @@
                      .collect(Collectors.toList());
          }
  
-         // Serialize and broadcast
-         String json = gson.toJson(viewModel);
-         dashboardService.broadcast(json);
+         return gson.toJson(viewModel);
+     }
+ 
+     /** Option chain rows and OI summary rendered for one chain version. */
+     private static DashboardViewModel.ScenarioRiskViewModel scenarioView(ScenarioRiskEngine.ScenarioGrid grid) {
+         DashboardViewModel.ScenarioRiskViewModel view = new DashboardViewModel.ScenarioRiskViewModel();
+         int rows = grid.spotShocks.length, cols = grid.volShocks.length;
+         view.spotShocksPct = new double[rows];
+         view.volShocksPct = new double[cols];
+         view.pnl = new double[rows][cols];
+         for (int i = 0; i < rows; i++) {
+             view.spotShocksPct[i] = grid.spotShocks[i] * 100.0;
+             for (int j = 0; j < cols; j++) view.pnl[i][j] = grid.pnl(i, j);
+         }
+         for (int j = 0; j < cols; j++) view.volShocksPct[j] = grid.volShocks[j] * 100.0;
+         view.worstLoss = grid.worstLoss;
+         view.worstSpotShockPct = (grid.worstSpot >= 0) ? view.spotShocksPct[grid.worstSpot] : 0.0;
+         view.worstVolShockPct = (grid.worstVol >= 0) ? view.volShocksPct[grid.worstVol] : 0.0;
+         view.positions = grid.positions;
+         view.computeMicros = grid.computeNanos / 1000;
+         return view;
+     }
+
+     private static final class OptionChainView {
+         final OiAnalytics analytics;
+         final java.util.List<DashboardViewModel.OptionViewModel> options;
+         final DashboardViewModel.OiAnalyticsViewModel summary;
+
+         OptionChainView(OiAnalytics analytics, java.util.List<OptionChainDto> window) {
+             this.analytics = analytics;
+             this.options = window.stream()
+                     .map(dto -> {
+                         DashboardViewModel.OptionViewModel ovm = new DashboardViewModel.OptionViewModel();
+                         ovm.strike = dto.getStrike();
+                         ovm.type = dto.getType();
+                         ovm.ltp = dto.getLtp();
+                         ovm.oiChangePercent = dto.getOiChangePercent();
+                         ovm.sentiment = dto.getSentiment();
+                         return ovm;
+                     })
+                     .collect(Collectors.toList());
+             if (analytics != null) {
+                 summary = new DashboardViewModel.OiAnalyticsViewModel();
+                 summary.pcr = analytics.pcr;
+                 summary.pcrOfChange = analytics.pcrOfChange;
+                 summary.maxPain = analytics.maxPain;
+                 summary.callWall = analytics.callWall;
+                 summary.putWall = analytics.putWall;
+             } else {
+                 summary = null;
+             }
+         }
      }
  }
@@ -1,5 +1,8 @@
 package com.trading.hf;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+
 public class Main {
 
     private static TVMarketDataStreamer tvStreamer = null;
@@ -7,9 +10,18 @@ public class Main {
     public static void main(String[] args) {
         // --- Configuration ---
         String runMode = ConfigLoader.getProperty("run.mode", "simulation");
+        // The session being traded; state built from history is keyed to it (null: not known)
+        LocalDate sessionDate = sessionDate(runMode);
 
         // --- Initialization ---
         boolean dashboardEnabled = ConfigLoader.getBooleanProperty("dashboard.enabled", true);
+
+        // Compile the hot paths on a sandboxed pipeline before anything live starts
+        if (ConfigLoader.getBooleanProperty("warmup.enabled", true)) {
+            new JitWarmup((bar, ocp, engine, pm) -> {
+                if (bar.getSymbol().contains("Nifty 50")) DashboardBridge.render(bar, ocp, engine, pm);
+            }).run();
+        }
         
         // Initialize Listeners
         PositionManager positionManager = new PositionManager();
@@ -18,20 +30,113 @@ public class Main {
         
         
         ScalpingSignalEngine scalpingSignalEngine = new ScalpingSignalEngine(positionManager, optionChainProvider,  true);
+
+        // Warm-start indicators before the open and checkpoint them on shutdown
+        IndicatorWarmStart warmStart = new IndicatorWarmStart();
+        boolean warmStartEnabled = ConfigLoader.getBooleanProperty("warmstart.enabled", true);
+        if (warmStartEnabled && sessionDate != null) {
+            scalpingSignalEngine.seedIndicators(warmStart.load(sessionDate));
+        }
+
+        // Intraday restart: the session's full engine snapshot supersedes the indicator warm-start
+        EngineSnapshotter snapshotter = new EngineSnapshotter(scalpingSignalEngine);
+        boolean snapshotsEnabled = ConfigLoader.getBooleanProperty("snapshot.enabled", true);
+        if (snapshotsEnabled) {
+            if (sessionDate != null) snapshotter.restore(sessionDate);
+        }
         
 
         //InstrumentMaster instrumentMaster = new InstrumentMaster("instrument-master.json");
+        // Advance/decline and volume-weighted breadth from the streamed constituents
         MarketBreadthEngine marketBreadthEngine = new MarketBreadthEngine();
+        marketBreadthEngine.seedPreviousCloses(scalpingSignalEngine.getIndicators());
+        scalpingSignalEngine.setMarketBreadth(marketBreadthEngine);
         
         long volumeThreshold = Long.parseLong(ConfigLoader.getProperty("volume.threshold", "1000"));
         
+        // Per-symbol volume-bar thresholds from rolling ADV (falls back to volume.threshold)
+        AdaptiveVolumeThresholds volumeThresholds = new AdaptiveVolumeThresholds(volumeThreshold);
+        if (ConfigLoader.getBooleanProperty("volume.adaptive.enabled", true) && sessionDate != null) {
+            volumeThresholds.calibrate(sessionDate);
+        }
+
+        // Per-minute volume curves so relative volume is judged against the time of day
+        VolumeProfileCache volumeProfile = new VolumeProfileCache();
+        if (ConfigLoader.getBooleanProperty("volume.profile.enabled", true)) {
+            if (sessionDate != null) volumeProfile.load(sessionDate);
+            scalpingSignalEngine.setVolumeProfile(volumeProfile);
+        }
+
+        // Live restarts mid-session: earlier minutes of today's OI history from the Trendlyne DB
+        // (replays rebuild it from the chains the bridge sends)
+        if ("live".equalsIgnoreCase(runMode) && ConfigLoader.getBooleanProperty("oi.history.load.enabled", true)) {
+            optionChainProvider.getOiHistory().load(
+                    ConfigLoader.getProperty("oi.history.db.url", "jdbc:sqlite:options_data.db"),
+                    java.time.LocalDate.now(java.time.ZoneId.of("Asia/Kolkata")));
+        }
+
+        // Spot x vol scenario P&L of the open book on index updates (throttled); pre-trade check for options
+        if (ConfigLoader.getBooleanProperty("risk.scenario.enabled", true)) {
+            ScenarioRiskEngine scenarioRisk = new ScenarioRiskEngine(positionManager, optionChainProvider);
+            optionChainProvider.setSpotListener(scenarioRisk);
+            scalpingSignalEngine.setScenarioRisk(scenarioRisk);
+        }
+
+        // Ranks each minute's candles across all symbols before the engine sees them
+        CrossSectionEngine crossSection = new CrossSectionEngine(volumeProfile);
+
+        // Rolling constituent/index correlations: betas and heavyweight confirmation of index signals
+        CorrelationMatrix correlations = new CorrelationMatrix();
+        scalpingSignalEngine.setCorrelationMatrix(correlations);
+        if (scalpingSignalEngine.getScenarioRisk() != null) {
+            scalpingSignalEngine.getScenarioRisk().setCorrelationMatrix(correlations);
+        }
+
+        // One pass over the feed builds every resolution; strategies subscribe per resolution
+        BarAggregationEngine barEngine = new BarAggregationEngine(volumeThresholds);
+
+        // Rolls per-day state at the session boundary and evicts idle symbols
+        SessionLifecycleManager sessionManager = new SessionLifecycleManager(scalpingSignalEngine,
+                positionManager, optionChainProvider, barEngine, volumeThresholds, volumeProfile);
+
+        // Market clock: session phases, time stops and the EOD square-off fire even if bars stop
+        SessionScheduler sessionScheduler = new SessionScheduler();
+        scalpingSignalEngine.setScheduler(sessionScheduler);
+        sessionScheduler.start();
+
+        // Trained signal model (hot-reloaded) and the closed-trade dataset it is trained on
+        SignalScorer scorer = ConfigLoader.getBooleanProperty("scorer.enabled", true) ? new SignalScorer() : null;
+        if (scorer != null) scalpingSignalEngine.setSignalScorer(scorer);
+
+        // One shutdown hook so the steps run in order: stop the feed and the clock, persist the
+        // engine state they no longer change, then drain the queued dataset and position writes
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (tvStreamer != null) tvStreamer.disconnect();
+                sessionScheduler.stop();
+                if (snapshotsEnabled) {
+                    snapshotter.shutdown();
+                    snapshotter.snapshotNow();
+                }
+                if (warmStartEnabled) warmStart.checkpoint(scalpingSignalEngine);
+                if (scorer != null) scorer.close();
+            } finally {
+                positionManager.close();
+            }
+        }, "ats-shutdown"));
+
+
         java.util.function.Consumer<VolumeBar> barHandler = bar -> {
-            
+            sessionScheduler.onBar(bar);
+            sessionManager.onBar(bar);
             scalpingSignalEngine.onVolumeBar(bar);
+            if (snapshotsEnabled) snapshotter.onBar(bar);
             if (dashboardEnabled) DashboardBridge.onVolumeBar(bar);
         };
 
-        VolumeBarGenerator volumeBarGenerator = new VolumeBarGenerator(volumeThreshold, barHandler);
+        VolumeBarGenerator volumeBarGenerator = new VolumeBarGenerator(volumeThresholds, barHandler);
+
+        barEngine.subscribe(BarAggregationEngine.Resolution.M1, barHandler);
  
 
         if (dashboardEnabled) {
@@ -52,12 +157,13 @@ public class Main {
             if ("tradingview".equalsIgnoreCase(dataSource)) {
                 String wsUrl = ConfigLoader.getProperty("ws.url", "ws://127.0.0.1:8765");
                 System.out.println("Connecting to TV Bridge at: " + wsUrl);
-                tvStreamer = new TVMarketDataStreamer(barHandler, optionChainProvider, marketBreadthEngine, wsUrl);
+                tvStreamer = new TVMarketDataStreamer(barEngine::onCandle, optionChainProvider, marketBreadthEngine, wsUrl);
+                tvStreamer.setBatchListener(batch -> {
+                    crossSection.onBatch(batch);
+                    correlations.onBatch(batch);
+                    marketBreadthEngine.onBatch(batch);
+                });
                 tvStreamer.connect();
-
-                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                    if (tvStreamer != null) tvStreamer.disconnect();
-                }));
             } else {
                 System.err.println("FATAL: Unsupported data source: " + dataSource);
             }
@@ -65,4 +171,16 @@ public class Main {
             System.err.println("FATAL: Unknown run.mode: " + runMode);
         }
     }
+
+    /**
+     * Today (IST) when live; in simulation the replayed date from session.date, else null so
+     * nothing from the replayed day or after it leaks into the warm-up.
+     */
+    private static LocalDate sessionDate(String runMode) {
+        String configured = ConfigLoader.getProperty("session.date", "");
+        if (!configured.isBlank()) return LocalDate.parse(configured.trim());
+        if ("live".equalsIgnoreCase(runMode)) return LocalDate.now(ZoneId.of("Asia/Kolkata"));
+        System.out.println("No session.date set for " + runMode + " mode: skipping warm-start from history.");
+        return null;
+    }
 }
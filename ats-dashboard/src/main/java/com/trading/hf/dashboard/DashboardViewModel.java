@@ -21,6 +21,8 @@ public class DashboardViewModel {
 
     // Option Chain
     public List<OptionViewModel> optionChain;
+    public OiAnalyticsViewModel oiAnalytics;
+    public ScenarioRiskViewModel scenarioRisk;
 
     // Sentiment & Alerts
     public String auctionState;
@@ -44,6 +46,25 @@ public class DashboardViewModel {
         public String sentiment;
     }
 
+    public static class OiAnalyticsViewModel {
+        public double pcr;
+        public double pcrOfChange;
+        public int maxPain;
+        public int callWall;
+        public int putWall;
+    }
+
+    public static class ScenarioRiskViewModel {
+        public double[] spotShocksPct;
+        public double[] volShocksPct;
+        public double[][] pnl; // [spot shock][vol shock]
+        public double worstLoss;
+        public double worstSpotShockPct;
+        public double worstVolShockPct;
+        public int positions;
+        public long computeMicros;
+    }
+
     public static class ScalpSignalViewModel {
         public String symbol;
         public String gate;
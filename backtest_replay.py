@@ -153,9 +153,12 @@ class BacktestReplayEngine:
         for symbol in ['NIFTY', 'BANKNIFTY']:
             chain = self._get_option_chain(symbol, self.current_time)
             if chain:
+                # Stamp with the replayed minute so the engine files it under the replay date
+                dt = datetime.strptime(f"{self.target_date} {self.current_time}", "%Y-%m-%d %H:%M")
                 message = {
                     "type": "option_chain",
                     "symbol": symbol,
+                    "timestamp": int(dt.timestamp() * 1000),
                     "data": chain
                 }
                 